@@ -0,0 +1,40 @@
+package com.kinghy.invoiceanalysis.benchmark;
+
+import com.kinghy.invoiceanalysis.InvoiceAnalysisApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基准测试用Spring上下文（不启动Web容器）
+ * 关闭业务INFO/DEBUG日志：热路径日志会淹没被测代码本身的开销，需要单独评估日志成本时可通过参数覆盖。
+ */
+final class BenchmarkApplication {
+
+    private static final String[] DEFAULT_ARGS = {
+            "--template.cache.enabled=true",
+            "--logging.level.root=WARN",
+            "--logging.level.com.kinghy.invoiceanalysis=WARN",
+            "--logging.level.com.kinghy.invoiceanalysis.strategy=WARN",
+            "--logging.level.org.apache.pdfbox=ERROR",
+            "--spring.main.banner-mode=off"
+    };
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * @param args 追加的启动参数，同名参数覆盖默认值
+     */
+    static ConfigurableApplicationContext start(String... args) {
+        List<String> all = new ArrayList<>(Arrays.asList(DEFAULT_ARGS));
+        all.addAll(Arrays.asList(args));
+        SpringApplication application = new SpringApplication(InvoiceAnalysisApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        return application.run(all.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,73 @@
+package com.kinghy.invoiceanalysis.benchmark;
+
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceAnalysisResult;
+import com.kinghy.invoiceanalysis.service.InvoiceProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端：InvoiceProcessor.process处理内置模板对应的票据（加载、剥离、布局、模板匹配、字段与明细提取）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvoiceProcessBenchmark {
+
+    @Param({SampleInvoices.JILIN, SampleInvoices.TONGZHOU})
+    public String sample;
+
+    /**
+     * 是否开启单张票据内字段并行提取
+     */
+    @Param({"false"})
+    public boolean parallelFields;
+
+    private ConfigurableApplicationContext context;
+
+    private InvoiceProcessor invoiceProcessor;
+
+    private byte[] pdf;
+
+    private String fileName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkApplication.start("--analysis.field.parallel.enabled=" + parallelFields);
+        invoiceProcessor = context.getBean(InvoiceProcessor.class);
+        pdf = SampleInvoices.pdf(sample);
+        fileName = sample + ".pdf";
+        String expected = SampleInvoices.template(sample).getTemplateName();
+        if (!expected.equals(process().getTemplateName())) {
+            throw new IllegalStateException("样本 " + sample + " 未匹配到模板 " + expected);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public InvoiceAnalysisResult process() {
+        return invoiceProcessor.process(new ByteArrayInputStream(pdf), fileName);
+    }
+}
@@ -0,0 +1,46 @@
+package com.kinghy.invoiceanalysis.benchmark;
+
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import com.kinghy.invoiceanalysis.strategy.util.PageLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 视觉行布局构建（原InvoiceProcessor.rebuildVisualLines）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageLayoutBenchmark {
+
+    @Param({SampleInvoices.JILIN, SampleInvoices.TONGZHOU})
+    public String sample;
+
+    private PageGlyphs glyphs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        glyphs = SampleInvoices.glyphs(SampleInvoices.pdf(sample));
+    }
+
+    @Benchmark
+    public PageLayout build() {
+        return PageLayout.build(glyphs);
+    }
+}
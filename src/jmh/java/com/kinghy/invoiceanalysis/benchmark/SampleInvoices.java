@@ -0,0 +1,78 @@
+package com.kinghy.invoiceanalysis.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.sample.SyntheticInvoiceGenerator;
+import com.kinghy.invoiceanalysis.sample.SyntheticInvoiceOptions;
+import com.kinghy.invoiceanalysis.service.PageGlyphCollector;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * 基准测试样本
+ * 样本为内置的吉林大学第一医院、北京通州两个模板对应的单页票据。
+ * 指定 -Dbenchmark.samples=目录 且目录下存在 jilin.pdf / tongzhou.pdf 时使用真实票据，
+ * 否则用SyntheticInvoiceGenerator按模板合成（固定种子、无噪声，明细表20行）。
+ */
+final class SampleInvoices {
+
+    static final String JILIN = "jilin";
+    static final String TONGZHOU = "tongzhou";
+
+    private static final String SAMPLES_PROPERTY = "benchmark.samples";
+
+    /**
+     * 固定种子，保证各次基准运行使用相同的合成样本
+     */
+    private static final long SEED = 20240517L;
+
+    private SampleInvoices() {
+    }
+
+    static String templateResource(String sample) {
+        switch (sample) {
+            case JILIN:
+                return "templates/invoice/jilin-university-hospital-template.json";
+            case TONGZHOU:
+                return "templates/invoice/beijing-tongzhou-hospital-template.json";
+            default:
+                throw new IllegalArgumentException("未知样本: " + sample);
+        }
+    }
+
+    static InvoiceTemplate template(String sample) throws IOException {
+        try (InputStream in = new ClassPathResource(templateResource(sample)).getInputStream()) {
+            return new ObjectMapper().readValue(in, InvoiceTemplate.class);
+        }
+    }
+
+    /**
+     * 样本PDF字节
+     */
+    static byte[] pdf(String sample) throws IOException {
+        String dir = System.getProperty(SAMPLES_PROPERTY);
+        if (dir != null && !dir.isEmpty()) {
+            File file = new File(dir, sample + ".pdf");
+            if (file.isFile()) {
+                return Files.readAllBytes(file.toPath());
+            }
+        }
+        SyntheticInvoiceOptions options = SyntheticInvoiceOptions.builder().seed(SEED).build();
+        return new SyntheticInvoiceGenerator(template(sample), options).generate(sample + ".pdf").getPdf();
+    }
+
+    /**
+     * 提取样本第1页字形
+     */
+    static PageGlyphs glyphs(byte[] pdf) throws IOException {
+        try (PDDocument document = PDDocument.load(pdf)) {
+            return PageGlyphCollector.forCurrentThread().collect(document, 1);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.kinghy.invoiceanalysis.benchmark;
+
+import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.sample.SyntheticPdfWriter;
+import com.kinghy.invoiceanalysis.strategy.ExtractionContext;
+import com.kinghy.invoiceanalysis.strategy.ExtractionStrategy;
+import com.kinghy.invoiceanalysis.strategy.StrategyFactory;
+import com.kinghy.invoiceanalysis.strategy.util.KeywordIndex;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import com.kinghy.invoiceanalysis.strategy.util.PageLayout;
+import com.kinghy.invoiceanalysis.strategy.util.SpatialIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个字段策略的执行开销
+ * 页面级数据（字形、布局、关键字索引、空间索引）在setUp中构建并共享，与InvoiceProcessor一致，只测策略本身。
+ *
+ * 字段：
+ * - SAME_LINE：吉林模板 eInvoiceNumber
+ * - BELOW：北京通州模板 businessId
+ * - AREA：北京通州模板 hospitalName
+ * - TABLE：吉林票据明细表"金额（元）"整列（内置模板未使用该策略）
+ * - REGEX：吉林票据业务流水号（内置模板未使用该策略）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrategyBenchmark {
+
+    @Param({"SAME_LINE", "BELOW", "AREA", "TABLE", "REGEX"})
+    public String strategyName;
+
+    private ConfigurableApplicationContext applicationContext;
+
+    private ExtractionStrategy strategy;
+
+    private ExtractionContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        applicationContext = BenchmarkApplication.start();
+        strategy = applicationContext.getBean(StrategyFactory.class).getStrategy(strategyName);
+
+        String sample;
+        InvoiceTemplate template;
+        FieldDefinition field;
+        switch (strategyName) {
+            case "SAME_LINE":
+                sample = SampleInvoices.JILIN;
+                template = SampleInvoices.template(sample);
+                field = field(template, "eInvoiceNumber");
+                break;
+            case "BELOW":
+                sample = SampleInvoices.TONGZHOU;
+                template = SampleInvoices.template(sample);
+                field = field(template, "businessId");
+                break;
+            case "AREA":
+                sample = SampleInvoices.TONGZHOU;
+                template = SampleInvoices.template(sample);
+                field = field(template, "hospitalName");
+                break;
+            case "TABLE":
+                sample = SampleInvoices.JILIN;
+                template = SampleInvoices.template(sample);
+                field = new FieldDefinition();
+                field.setFieldName("itemAmounts");
+                field.setStrategy("TABLE");
+                field.setKeywords(Collections.singletonList("金额（元）"));
+                break;
+            case "REGEX":
+                sample = SampleInvoices.JILIN;
+                template = SampleInvoices.template(sample);
+                field = new FieldDefinition();
+                field.setFieldName("bizCodeByRegex");
+                field.setStrategy("REGEX");
+                field.setKeywords(Collections.singletonList("业务流水号"));
+                Map<String, Object> options = new HashMap<>();
+                options.put("pattern", "业务流水号[:：]\\s*(\\d{8,20})");
+                options.put("groupIndex", 1);
+                field.setOptions(options);
+                break;
+            default:
+                throw new IllegalArgumentException("未知策略: " + strategyName);
+        }
+
+        PageGlyphs glyphs = SampleInvoices.glyphs(SampleInvoices.pdf(sample));
+        PageLayout layout = PageLayout.build(glyphs);
+        if ("TABLE".equals(strategyName)) {
+            field.setOptions(tableOptions(layout));
+        }
+        List<FieldDefinition> templateFields = new ArrayList<>(template.getFields());
+        if (!templateFields.contains(field)) {
+            templateFields.add(field);
+        }
+
+        context = ExtractionContext.builder()
+                .pageNumber(1)
+                .fullText(layout.getText())
+                .pageGlyphs(glyphs)
+                .pageLayout(layout)
+                .fieldDefinition(field)
+                .compiledOptions(strategy.compileOptions(field.getOptions()))
+                .templateFields(templateFields)
+                .keywordIndex(KeywordIndex.build(glyphs, KeywordIndex.collectKeywords(templateFields)))
+                .spatialIndex(SpatialIndex.build(glyphs))
+                .pageWidth(SyntheticPdfWriter.PAGE_WIDTH)
+                .pageHeight(SyntheticPdfWriter.PAGE_HEIGHT)
+                .build();
+        String value = strategy.extract(context);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalStateException("策略 " + strategyName + " 在样本 " + sample + " 上未提取到值");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public String extract() {
+        return strategy.extract(context);
+    }
+
+    private static FieldDefinition field(InvoiceTemplate template, String fieldName) {
+        for (FieldDefinition field : template.getFields()) {
+            if (fieldName.equals(field.getFieldName())) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("模板 " + template.getTemplateName() + " 不含字段 " + fieldName);
+    }
+
+    /**
+     * 以明细表表头行为表格起点，提取"金额（元）"整列
+     */
+    private static Map<String, Object> tableOptions(PageLayout layout) {
+        Map<String, Object> options = new HashMap<>();
+        options.put("headerKeyword", "金额（元）");
+        for (int line = 0; line < layout.lineCount(); line++) {
+            if (layout.lineText(line).contains("项目名称")) {
+                options.put("tableStartY", (double) layout.lineTop(line));
+                break;
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,100 @@
+package com.kinghy.invoiceanalysis.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.service.TemplateService;
+import com.kinghy.invoiceanalysis.strategy.util.PageLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模板匹配：TemplateService.findTemplateFor在不同模板数量下的开销
+ * 模板目录由两个内置模板加上若干干扰模板（复制北京通州模板并替换名称与identifiers）组成，
+ * hit为吉林票据页面文本，miss为去掉全部identifiers后的同一文本。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateMatchBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int templateCount;
+
+    private File templateDir;
+
+    private ConfigurableApplicationContext context;
+
+    private TemplateService templateService;
+
+    private String hitText;
+
+    private String missText;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        templateDir = Files.createTempDirectory("benchmark-templates").toFile();
+        InvoiceTemplate jilin = SampleInvoices.template(SampleInvoices.JILIN);
+        InvoiceTemplate tongzhou = SampleInvoices.template(SampleInvoices.TONGZHOU);
+        objectMapper.writeValue(new File(templateDir, "jilin.json"), jilin);
+        objectMapper.writeValue(new File(templateDir, "tongzhou.json"), tongzhou);
+        for (int i = 2; i < templateCount; i++) {
+            InvoiceTemplate decoy = objectMapper.readValue(objectMapper.writeValueAsBytes(tongzhou), InvoiceTemplate.class);
+            String hospital = String.format("基准医院%04d", i);
+            decoy.setTemplateName(hospital + "医疗收费票据");
+            decoy.setIdentifiers(Arrays.asList(hospital + "门诊收费票据", hospital + "住院收费票据"));
+            objectMapper.writeValue(new File(templateDir, String.format("decoy-%04d.json", i)), decoy);
+        }
+
+        context = BenchmarkApplication.start("--template.filesystem.path=" + templateDir.getAbsolutePath());
+        templateService = context.getBean(TemplateService.class);
+
+        hitText = PageLayout.build(SampleInvoices.glyphs(SampleInvoices.pdf(SampleInvoices.JILIN))).getText();
+        String text = hitText;
+        for (String identifier : jilin.getIdentifiers()) {
+            text = text.replace(identifier, "");
+        }
+        missText = text;
+        if (templateService.findTemplateFor(hitText) == null || templateService.findTemplateFor(missText) != null) {
+            throw new IllegalStateException("模板匹配样本不符合预期");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        FileSystemUtils.deleteRecursively(templateDir);
+    }
+
+    @Benchmark
+    public InvoiceTemplate hit() {
+        return templateService.findTemplateFor(hitText);
+    }
+
+    @Benchmark
+    public InvoiceTemplate miss() {
+        return templateService.findTemplateFor(missText);
+    }
+}
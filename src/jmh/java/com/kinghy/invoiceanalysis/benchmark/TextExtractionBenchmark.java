@@ -0,0 +1,73 @@
+package com.kinghy.invoiceanalysis.benchmark;
+
+import com.kinghy.invoiceanalysis.service.PageGlyphCollector;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文本提取：PDDocument加载与PageGlyphCollector收集第1页字形
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextExtractionBenchmark {
+
+    @Param({SampleInvoices.JILIN, SampleInvoices.TONGZHOU})
+    public String sample;
+
+    private byte[] pdf;
+
+    private PDDocument document;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pdf = SampleInvoices.pdf(sample);
+        document = PDDocument.load(pdf);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        document.close();
+    }
+
+    /**
+     * 仅剥离字形（文档已加载）
+     */
+    @Benchmark
+    public PageGlyphs strip() throws IOException {
+        return strip(document);
+    }
+
+    /**
+     * 加载文档并剥离字形（与请求链路一致）
+     */
+    @Benchmark
+    public PageGlyphs loadAndStrip() throws IOException {
+        try (PDDocument loaded = PDDocument.load(pdf)) {
+            return strip(loaded);
+        }
+    }
+
+    private static PageGlyphs strip(PDDocument document) throws IOException {
+        return PageGlyphCollector.forCurrentThread().collect(document, 1);
+    }
+}
@@ -0,0 +1,130 @@
+package com.kinghy.invoiceanalysis.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 发票分析线程池配置
+ * 固定大小的有界线程池，队列满时直接拒绝，由调用方转换为"系统繁忙"而不是无限堆积请求。
+ */
+@Configuration
+public class AnalysisExecutorConfig {
+
+    public static final String ANALYSIS_EXECUTOR = "invoiceAnalysisExecutor";
+
+    public static final String JOB_EXECUTOR = "invoiceJobExecutor";
+
+    public static final String FIELD_EXECUTOR = "invoiceFieldExecutor";
+
+    public static final String PAGE_EXECUTOR = "invoicePageExecutor";
+
+    /**
+     * 并发解析数，<=0 时取CPU核数
+     */
+    @Value("${analysis.executor.concurrency:0}")
+    private int concurrency;
+
+    @Value("${analysis.executor.queue-capacity:200}")
+    private int queueCapacity;
+
+    /**
+     * 异步任务并发数，<=0 时取CPU核数
+     */
+    @Value("${analysis.job.concurrency:0}")
+    private int jobConcurrency;
+
+    @Value("${analysis.job.queue-capacity:100}")
+    private int jobQueueCapacity;
+
+    /**
+     * 字段并行提取并发数，<=0 时取CPU核数
+     */
+    @Value("${analysis.field.concurrency:0}")
+    private int fieldConcurrency;
+
+    @Value("${analysis.field.queue-capacity:256}")
+    private int fieldQueueCapacity;
+
+    /**
+     * 多页模式逐页并行并发数，<=0 时取CPU核数
+     */
+    @Value("${analysis.page.concurrency:0}")
+    private int pageConcurrency;
+
+    @Value("${analysis.page.queue-capacity:256}")
+    private int pageQueueCapacity;
+
+    @Bean(name = ANALYSIS_EXECUTOR)
+    public ThreadPoolTaskExecutor invoiceAnalysisExecutor() {
+        int poolSize = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("invoice-analysis-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 异步任务专用线程池，与Web线程池、批量线程池相互独立，可单独调优吞吐
+     */
+    @Bean(name = JOB_EXECUTOR)
+    public ThreadPoolTaskExecutor invoiceJobExecutor() {
+        int poolSize = jobConcurrency > 0 ? jobConcurrency : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(jobQueueCapacity);
+        executor.setThreadNamePrefix("invoice-job-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 单张票据内字段并行提取线程池
+     * 只执行字段策略（不再向其他线程池提交任务，不会与解析线程池互相等待而死锁）；
+     * 队列满时由提交字段的解析线程直接执行，退化为顺序提取而不是拒绝请求。
+     */
+    @Bean(name = FIELD_EXECUTOR)
+    public ThreadPoolTaskExecutor invoiceFieldExecutor() {
+        int poolSize = fieldConcurrency > 0 ? fieldConcurrency : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(fieldQueueCapacity);
+        executor.setThreadNamePrefix("invoice-field-");
+        // 与CallerRunsPolicy不同，线程池关闭期间同样在调用线程执行，避免任务被丢弃后调用方永久等待
+        executor.setRejectedExecutionHandler((task, pool) -> task.run());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 多页模式逐页处理线程池
+     * 每个任务独立加载一份PDDocument（PDFBox文档对象不是线程安全的），从共享页码计数器领取页面处理；
+     * 页面内的字段并行仍提交到字段线程池，二者不会互相等待。队列满时由调用线程直接执行。
+     */
+    @Bean(name = PAGE_EXECUTOR)
+    public ThreadPoolTaskExecutor invoicePageExecutor() {
+        int poolSize = pageConcurrency > 0 ? pageConcurrency : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(pageQueueCapacity);
+        executor.setThreadNamePrefix("invoice-page-");
+        executor.setRejectedExecutionHandler((task, pool) -> task.run());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -1,17 +1,39 @@
 package com.kinghy.invoiceanalysis.controller;
 
+import com.kinghy.invoiceanalysis.entity.dto.AnalysisJob;
 import com.kinghy.invoiceanalysis.entity.dto.ApiResponse;
+import com.kinghy.invoiceanalysis.entity.dto.BatchAnalysisResult;
+import com.kinghy.invoiceanalysis.entity.dto.DiagnosticRecord;
 import com.kinghy.invoiceanalysis.entity.dto.InvoiceAnalysisResult;
+import com.kinghy.invoiceanalysis.entity.dto.MultiPageAnalysisResult;
+import com.kinghy.invoiceanalysis.exception.ErrorCode;
 import com.kinghy.invoiceanalysis.exception.InvalidRequestException;
+import com.kinghy.invoiceanalysis.exception.JobNotFoundException;
+import com.kinghy.invoiceanalysis.exception.ServerBusyException;
+import com.kinghy.invoiceanalysis.service.AnalysisDiagnostics;
+import com.kinghy.invoiceanalysis.service.AnalysisJobService;
+import com.kinghy.invoiceanalysis.service.AnalysisSource;
+import com.kinghy.invoiceanalysis.service.BatchInvoiceProcessor;
 import com.kinghy.invoiceanalysis.service.InvoiceProcessor;
+import com.kinghy.invoiceanalysis.service.UploadSpooler;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author WangHaiYang
  * @version 1.0
@@ -22,11 +44,159 @@ import org.springframework.web.multipart.MultipartFile;
 @RestController
 @RequestMapping("/analysis")
 public class InvoiceAnalysisController {
+    private static final String TRACE_HEADER = "X-Analysis-Trace";
+
     @Autowired
     private InvoiceProcessor invoiceProcessor;
 
+    @Autowired
+    private BatchInvoiceProcessor batchInvoiceProcessor;
+
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    @Autowired
+    private UploadSpooler uploadSpooler;
+
+    @Autowired
+    private AnalysisDiagnostics analysisDiagnostics;
+
+    /**
+     * 发票分析：请求参数trace=true或请求头X-Analysis-Trace: true时，结果中附带执行追踪
+     */
     @PostMapping("/invoice")
-    public ApiResponse<InvoiceAnalysisResult> invoiceAnalysis(@RequestParam("file") MultipartFile file) {
+    public ApiResponse<InvoiceAnalysisResult> invoiceAnalysis(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "trace", defaultValue = "false") boolean trace,
+            @RequestHeader(value = TRACE_HEADER, required = false) String traceHeader) {
+        String fileName = validatePdf(file);
+
+        log.info("开始执行发票分析: {}", fileName);
+        try (AnalysisSource source = uploadSpooler.spool(file)) {
+            InvoiceAnalysisResult result = invoiceProcessor.process(source, trace || "true".equalsIgnoreCase(traceHeader));
+            return ApiResponse.success(result);
+        } catch (java.io.IOException e) {
+            throw new InvalidRequestException("读取上传文件失败");
+        }
+    }
+
+    /**
+     * 多页发票分析：合并PDF中每页为一张独立票据，逐页匹配模板并提取字段（页面并行处理），按页码返回结果或错误
+     */
+    @PostMapping("/invoice/pages")
+    public ApiResponse<MultiPageAnalysisResult> multiPageInvoiceAnalysis(@RequestParam("file") MultipartFile file) {
+        String fileName = validatePdf(file);
+
+        log.info("开始执行多页发票分析: {}", fileName);
+        try (AnalysisSource source = uploadSpooler.spool(file)) {
+            return ApiResponse.success(invoiceProcessor.processPages(source));
+        } catch (java.io.IOException e) {
+            throw new InvalidRequestException("读取上传文件失败");
+        }
+    }
+
+    /**
+     * 批量发票分析：支持多个PDF及ZIP压缩包（解压其中的PDF），逐文件返回结果或错误
+     */
+    @PostMapping("/invoices")
+    public ApiResponse<BatchAnalysisResult> batchInvoiceAnalysis(@RequestParam("files") MultipartFile[] files) {
+        if (files == null || files.length == 0) {
+            throw new InvalidRequestException("上传文件不能为空");
+        }
+
+        List<AnalysisSource> sources = new ArrayList<>();
+        try {
+            for (MultipartFile file : files) {
+                sources.addAll(spoolBatchFile(file));
+            }
+        } catch (RuntimeException e) {
+            sources.forEach(AnalysisSource::close);
+            throw e;
+        }
+        if (sources.isEmpty()) {
+            throw new InvalidRequestException("上传内容中未找到PDF文件");
+        }
+
+        log.info("开始执行批量发票分析，文件数: {}", sources.size());
+        return ApiResponse.success(batchInvoiceProcessor.process(sources));
+    }
+
+    /**
+     * 提交异步分析任务，立即返回任务ID；任务队列已满时返回HTTP 429
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<ApiResponse<AnalysisJob>> submitJob(@RequestParam("file") MultipartFile file) {
+        validatePdf(file);
+        AnalysisSource source;
+        try {
+            source = uploadSpooler.spool(file);
+        } catch (java.io.IOException e) {
+            throw new InvalidRequestException("读取上传文件失败");
+        }
+
+        try {
+            AnalysisJob job = analysisJobService.submit(source);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(ApiResponse.success(job));
+        } catch (ServerBusyException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(ApiResponse.fail(e.getErrorCode().getCode(), e.getMessage()));
+        }
+    }
+
+    /**
+     * 查询异步分析任务状态及结果
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<AnalysisJob>> getJob(@PathVariable("jobId") String jobId) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(analysisJobService.getJob(jobId)));
+        } catch (JobNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.fail(e.getErrorCode().getCode(), e.getMessage()));
+        }
+    }
+
+    /**
+     * 最近的失败与慢分析诊断记录（按时间倒序），kind可选 FAILURE / TEMPLATE_MISS / SLOW
+     */
+    @GetMapping("/diagnostics")
+    public ApiResponse<List<DiagnosticRecord>> listDiagnostics(
+            @RequestParam(value = "kind", required = false) DiagnosticRecord.Kind kind,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return ApiResponse.success(analysisDiagnostics.recent(kind, Math.max(limit, 0)));
+    }
+
+    /**
+     * 按序号查询诊断记录
+     */
+    @GetMapping("/diagnostics/{id}")
+    public ResponseEntity<ApiResponse<DiagnosticRecord>> getDiagnostic(@PathVariable("id") long id) {
+        DiagnosticRecord record = analysisDiagnostics.get(id);
+        if (record == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.fail(ErrorCode.INVALID_REQUEST.getCode(), "诊断记录不存在或已被覆盖: " + id));
+        }
+        return ResponseEntity.ok(ApiResponse.success(record));
+    }
+
+    private List<AnalysisSource> spoolBatchFile(MultipartFile file) {
+        String fileName = file.getOriginalFilename();
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new InvalidRequestException("上传文件名不能为空");
+        }
+        try {
+            if (fileName.toLowerCase().endsWith(".zip")) {
+                return batchInvoiceProcessor.unzip(fileName, file.getInputStream());
+            }
+            // 非PDF文件在结果中单独标记失败，不影响同批其他文件
+            return Collections.singletonList(uploadSpooler.spool(file));
+        } catch (java.io.IOException e) {
+            throw new InvalidRequestException("读取上传文件失败: " + fileName);
+        }
+    }
+
+    private String validatePdf(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new InvalidRequestException("上传文件不能为空");
         }
@@ -37,13 +207,6 @@ public class InvoiceAnalysisController {
         if (!fileName.toLowerCase().endsWith(".pdf")) {
             throw new InvalidRequestException("仅支持PDF文件");
         }
-
-        log.info("开始执行发票分析: {}", fileName);
-        try {
-            InvoiceAnalysisResult result = invoiceProcessor.process(file.getInputStream(), fileName);
-            return ApiResponse.success(result);
-        } catch (java.io.IOException e) {
-            throw new InvalidRequestException("读取上传文件失败");
-        }
+        return fileName;
     }
 }
@@ -0,0 +1,49 @@
+package com.kinghy.invoiceanalysis.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 异步分析任务
+ * 状态变更时整体替换存储中的对象，读取方拿到的始终是一致的快照
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalysisJob {
+
+    public enum Status {
+        /**
+         * 排队中
+         */
+        PENDING,
+        /**
+         * 解析中
+         */
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    private String jobId;
+    private String fileName;
+    private Status status;
+
+    /**
+     * 时间戳（毫秒）
+     */
+    private Long createdAt;
+    private Long startedAt;
+    private Long finishedAt;
+
+    private InvoiceAnalysisResult result;
+
+    /**
+     * 失败时的错误码与错误信息
+     */
+    private Integer errorCode;
+    private String errorMessage;
+}
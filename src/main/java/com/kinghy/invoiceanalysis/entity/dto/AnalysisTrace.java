@@ -0,0 +1,41 @@
+package com.kinghy.invoiceanalysis.entity.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单次分析的执行追踪（请求开启trace时随结果返回）
+ */
+@Data
+public class AnalysisTrace {
+    /**
+     * 各阶段耗时（毫秒），键为 load / strip / layout / match / fields / details
+     */
+    private Map<String, Double> stageMillis = new LinkedHashMap<>();
+    /**
+     * 端到端耗时（毫秒，含PDF加载）
+     */
+    private double totalMillis;
+    /**
+     * 非内嵌字体解析耗时（毫秒，已计入strip/details阶段）
+     */
+    private double fontMillis;
+    /**
+     * 请求线程在分析期间分配的字节数（ThreadMXBean）；字段并行提取时不含工作线程的分配，JVM不支持时为null
+     */
+    private Long allocatedBytes;
+    /**
+     * 按模板顺序的字段追踪
+     */
+    private List<FieldTrace> fields = new ArrayList<>();
+    /**
+     * 首页视觉行文本（只用于诊断记录，不随追踪输出）
+     */
+    @JsonIgnore
+    private String pageText;
+}
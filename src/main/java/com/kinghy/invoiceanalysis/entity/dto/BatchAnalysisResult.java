@@ -0,0 +1,22 @@
+package com.kinghy.invoiceanalysis.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量分析结果，results顺序与上传顺序（ZIP内为条目顺序）一致
+ */
+@Data
+@AllArgsConstructor
+public class BatchAnalysisResult {
+    private Integer total;
+    private Integer successCount;
+    private Integer failureCount;
+    /**
+     * 整批处理耗时（毫秒）
+     */
+    private Long elapsedMs;
+    private List<BatchFileResult> results;
+}
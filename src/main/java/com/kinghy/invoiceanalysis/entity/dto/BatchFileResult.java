@@ -0,0 +1,32 @@
+package com.kinghy.invoiceanalysis.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 批量分析中单个文件的处理结果
+ */
+@Data
+@AllArgsConstructor
+public class BatchFileResult {
+    private String fileName;
+    private Boolean success;
+    /**
+     * 成功为0，失败为ErrorCode中的错误码
+     */
+    private Integer code;
+    private String message;
+    private InvoiceAnalysisResult result;
+    /**
+     * 单文件处理耗时（毫秒）
+     */
+    private Long elapsedMs;
+
+    public static BatchFileResult success(String fileName, InvoiceAnalysisResult result, long elapsedMs) {
+        return new BatchFileResult(fileName, true, 0, "success", result, elapsedMs);
+    }
+
+    public static BatchFileResult fail(String fileName, Integer code, String message, long elapsedMs) {
+        return new BatchFileResult(fileName, false, code, message, null, elapsedMs);
+    }
+}
@@ -8,4 +8,8 @@ import java.util.List;
 public class DetailFieldsDefinition {
     private List<String> tableIdentifiers;
     private List<DetailFieldColumn> columns;
+    /**
+     * 明细表结束关键字（可选），遇到包含任一关键字的行即结束明细提取
+     */
+    private List<String> endKeywords;
 }
@@ -0,0 +1,65 @@
+package com.kinghy.invoiceanalysis.entity.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 诊断记录：一次失败或慢分析的完整现场
+ */
+@Data
+public class DiagnosticRecord {
+
+    public enum Kind {
+        /**
+         * 处理失败
+         */
+        FAILURE,
+        /**
+         * 未匹配到模板
+         */
+        TEMPLATE_MISS,
+        /**
+         * 成功但耗时超过阈值
+         */
+        SLOW
+    }
+
+    /**
+     * 记录序号（进程内递增）
+     */
+    private long id;
+    private Kind kind;
+
+    /**
+     * 时间戳（毫秒）
+     */
+    private Long occurredAt;
+    private String fileName;
+    private String templateName;
+
+    /**
+     * 失败发生的阶段（load / strip / layout / match / fields / details）
+     */
+    private String stage;
+
+    /**
+     * 失败时的错误码与错误信息
+     */
+    private Integer errorCode;
+    private String errorMessage;
+
+    private double totalMillis;
+    private Map<String, Double> stageMillis;
+
+    /**
+     * 首页视觉行文本（解析到视觉行之前失败时为null）
+     */
+    private String pageText;
+
+    /**
+     * 已执行字段的策略、耗时、命中关键字与结果
+     */
+    private List<FieldTrace> fields;
+}
@@ -0,0 +1,43 @@
+package com.kinghy.invoiceanalysis.entity.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个字段的执行追踪
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class FieldTrace {
+    private String fieldName;
+    private String strategy;
+    /**
+     * 策略耗时（毫秒）
+     */
+    private double elapsedMillis;
+    private String value;
+    /**
+     * 命中的关键字（keywords中的具体写法；TABLE为headerKeyword）
+     */
+    private String matchedKeyword;
+    /**
+     * 命中关键字的外接框
+     */
+    private GlyphBox keywordBox;
+    /**
+     * 策略取用的字形（拼接值之前，未经trimChars、valuePattern处理）
+     */
+    private List<GlyphBox> glyphs = new ArrayList<>();
+    /**
+     * 策略异常信息
+     */
+    private String error;
+
+    public FieldTrace(String fieldName, String strategy) {
+        this.fieldName = fieldName;
+        this.strategy = strategy;
+    }
+}
@@ -0,0 +1,17 @@
+package com.kinghy.invoiceanalysis.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 字形（或字形区间）外接框，坐标原点在页面左上角，与AREA策略的x_start/y_start一致
+ */
+@Data
+@AllArgsConstructor
+public class GlyphBox {
+    private String text;
+    private float x;
+    private float top;
+    private float width;
+    private float height;
+}
@@ -1,8 +1,10 @@
 package com.kinghy.invoiceanalysis.entity.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.util.List;
 import java.util.Map;
 
 @Data
@@ -11,4 +13,22 @@ public class InvoiceAnalysisResult {
     private String fileName;
     private String templateName;
     private Map<String, String> fields;
+    /**
+     * 明细项目（模板配置了detailFields时输出）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<PjcyItemNode> items;
+    /**
+     * 执行追踪（请求开启trace时输出）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private AnalysisTrace trace;
+
+    public InvoiceAnalysisResult(String fileName, String templateName, Map<String, String> fields) {
+        this(fileName, templateName, fields, null, null);
+    }
+
+    public InvoiceAnalysisResult(String fileName, String templateName, Map<String, String> fields, List<PjcyItemNode> items) {
+        this(fileName, templateName, fields, items, null);
+    }
 }
@@ -0,0 +1,23 @@
+package com.kinghy.invoiceanalysis.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 多页模式分析结果（每页一张票据），pages按页码顺序排列
+ */
+@Data
+@AllArgsConstructor
+public class MultiPageAnalysisResult {
+    private String fileName;
+    private Integer pageCount;
+    private Integer successCount;
+    private Integer failureCount;
+    /**
+     * 整个文件处理耗时（毫秒）
+     */
+    private Long elapsedMs;
+    private List<PageAnalysisResult> pages;
+}
@@ -0,0 +1,35 @@
+package com.kinghy.invoiceanalysis.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 多页模式中单页票据的处理结果
+ */
+@Data
+@AllArgsConstructor
+public class PageAnalysisResult {
+    /**
+     * 页码（从1开始）
+     */
+    private Integer pageNumber;
+    private Boolean success;
+    /**
+     * 成功为0，失败为ErrorCode中的错误码
+     */
+    private Integer code;
+    private String message;
+    private InvoiceAnalysisResult result;
+    /**
+     * 单页处理耗时（毫秒）
+     */
+    private Long elapsedMs;
+
+    public static PageAnalysisResult success(int pageNumber, InvoiceAnalysisResult result, long elapsedMs) {
+        return new PageAnalysisResult(pageNumber, true, 0, "success", result, elapsedMs);
+    }
+
+    public static PageAnalysisResult fail(int pageNumber, Integer code, String message, long elapsedMs) {
+        return new PageAnalysisResult(pageNumber, false, code, message, null, elapsedMs);
+    }
+}
@@ -37,6 +37,13 @@ public class InvoiceTemplateEntity {
     @Column(name = "fields_json", columnDefinition = "TEXT", nullable = false)
     private String fieldsJson;
 
+    /**
+     * 明细表定义JSON（可选）
+     * 模板未配置detailFields时为空
+     */
+    @Column(name = "detail_fields_json", columnDefinition = "TEXT")
+    private String detailFieldsJson;
+
     /**
      * 是否启用
      */
@@ -0,0 +1,10 @@
+package com.kinghy.invoiceanalysis.exception;
+
+public class InvalidDetailFieldsException extends BusinessException {
+    public InvalidDetailFieldsException(String templateName, String reason) {
+        super(
+                ErrorCode.INVALID_TEMPLATE_OPTIONS,
+                "模板 " + templateName + " 的明细表配置非法: " + reason
+        );
+    }
+}
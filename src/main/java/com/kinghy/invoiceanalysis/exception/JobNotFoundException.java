@@ -0,0 +1,7 @@
+package com.kinghy.invoiceanalysis.exception;
+
+public class JobNotFoundException extends BusinessException {
+    public JobNotFoundException(String jobId) {
+        super(ErrorCode.JOB_NOT_FOUND, "分析任务不存在或已过期: " + jobId);
+    }
+}
@@ -0,0 +1,7 @@
+package com.kinghy.invoiceanalysis.exception;
+
+public class ServerBusyException extends BusinessException {
+    public ServerBusyException(String message) {
+        super(ErrorCode.SERVER_BUSY, message);
+    }
+}
@@ -4,6 +4,7 @@ import com.kinghy.invoiceanalysis.entity.pojo.InvoiceTemplateEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,6 +24,16 @@ public interface InvoiceTemplateRepository extends JpaRepository<InvoiceTemplate
      */
     List<InvoiceTemplateEntity> findByEnabledTrue();
 
+    /**
+     * 查询更新时间不早于指定时间的模板（含停用模板，用于增量刷新）
+     */
+    List<InvoiceTemplateEntity> findByUpdatedAtGreaterThanEqual(LocalDateTime updatedAt);
+
+    /**
+     * 统计启用的模板数量
+     */
+    long countByEnabledTrue();
+
     /**
      * 根据模板名称删除
      */
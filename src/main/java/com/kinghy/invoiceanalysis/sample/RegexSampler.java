@@ -0,0 +1,405 @@
+package com.kinghy.invoiceanalysis.sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * 按正则表达式生成匹配的示例字符串
+ * 支持模板valuePattern中常见的子集：字面量、转义（\d \w \s \\uXXXX 等）、字符类（含范围与取反）、
+ * 分组与 | 分支、量词 ? * + {n} {n,} {n,m}（懒惰/占有修饰忽略），^ $ 忽略。
+ * 无界量词最多在下限基础上追加 UNBOUNDED_EXTRA 次。
+ *
+ * 汉字范围内的字符从cjkPool中选取（常用字，且调用方可剔除模板关键字用字，避免值中意外出现关键字）。
+ */
+public final class RegexSampler {
+
+    private static final int UNBOUNDED_EXTRA = 6;
+
+    private static final int MAX_ATTEMPTS = 20;
+
+    private static final char CJK_FIRST = '一';
+    private static final char CJK_LAST = '龥';
+
+    /**
+     * 取反字符类、"."的候选字符
+     */
+    private static final String FALLBACK_ALPHABET = "ABCDEFGHJKLMNPQRSTUVWXYZabcdefghjkmnpqrstuvwxyz0123456789";
+
+    private final Random random;
+
+    private final String cjkPool;
+
+    public RegexSampler(Random random, String cjkPool) {
+        this.random = random;
+        this.cjkPool = cjkPool;
+    }
+
+    /**
+     * 生成一个完整匹配regex的字符串
+     * @return 匹配的字符串；表达式超出支持范围或多次尝试都不匹配时返回null
+     */
+    public String sample(String regex) {
+        Pattern pattern;
+        Node node;
+        try {
+            pattern = Pattern.compile(regex);
+            node = new Parser(regex).parse();
+        } catch (RuntimeException e) {
+            return null;
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            StringBuilder sb = new StringBuilder();
+            node.emit(sb);
+            String value = sb.toString();
+            if (pattern.matcher(value).matches()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从cjkPool随机取count个汉字
+     */
+    public String cjk(int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(cjkPool.charAt(random.nextInt(cjkPool.length())));
+        }
+        return sb.toString();
+    }
+
+    private interface Node {
+        void emit(StringBuilder sb);
+    }
+
+    private static final class Sequence implements Node {
+        private final List<Node> nodes = new ArrayList<>();
+
+        @Override
+        public void emit(StringBuilder sb) {
+            for (Node node : nodes) {
+                node.emit(sb);
+            }
+        }
+    }
+
+    private final class Alternation implements Node {
+        private final List<Node> branches = new ArrayList<>();
+
+        @Override
+        public void emit(StringBuilder sb) {
+            branches.get(random.nextInt(branches.size())).emit(sb);
+        }
+    }
+
+    private final class Repeat implements Node {
+        private final Node node;
+        private final int min;
+        private final int max;
+
+        private Repeat(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public void emit(StringBuilder sb) {
+            int count = min + random.nextInt(max - min + 1);
+            for (int i = 0; i < count; i++) {
+                node.emit(sb);
+            }
+        }
+    }
+
+    /**
+     * 字符集合：若干闭区间，可取反
+     */
+    private final class CharSet implements Node {
+        private final List<char[]> ranges = new ArrayList<>();
+        private boolean negated;
+
+        private void add(char from, char to) {
+            ranges.add(new char[]{from, to});
+        }
+
+        private void addAll(CharSet other) {
+            ranges.addAll(other.ranges);
+        }
+
+        private boolean contains(char c) {
+            for (char[] range : ranges) {
+                if (c >= range[0] && c <= range[1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void emit(StringBuilder sb) {
+            if (negated) {
+                for (int attempt = 0; attempt < 100; attempt++) {
+                    char c = FALLBACK_ALPHABET.charAt(random.nextInt(FALLBACK_ALPHABET.length()));
+                    if (!contains(c)) {
+                        sb.append(c);
+                        return;
+                    }
+                }
+                throw new IllegalStateException("无可用字符");
+            }
+            // 按区间大小加权，汉字区间整体按一个ASCII区间的权重计算，避免混合字符类几乎只出汉字
+            int total = 0;
+            int[] weights = new int[ranges.size()];
+            for (int i = 0; i < ranges.size(); i++) {
+                char[] range = ranges.get(i);
+                weights[i] = isCjkRange(range) ? 26 : range[1] - range[0] + 1;
+                total += weights[i];
+            }
+            int pick = random.nextInt(total);
+            for (int i = 0; i < ranges.size(); i++) {
+                if (pick < weights[i]) {
+                    char[] range = ranges.get(i);
+                    sb.append(isCjkRange(range) ? pickCjk(range) : (char) (range[0] + random.nextInt(range[1] - range[0] + 1)));
+                    return;
+                }
+                pick -= weights[i];
+            }
+        }
+
+        private boolean isCjkRange(char[] range) {
+            return range[0] <= CJK_LAST && range[1] >= CJK_FIRST && range[1] - range[0] > 255;
+        }
+
+        private char pickCjk(char[] range) {
+            for (int attempt = 0; attempt < 100; attempt++) {
+                char c = cjkPool.charAt(random.nextInt(cjkPool.length()));
+                if (c >= range[0] && c <= range[1]) {
+                    return c;
+                }
+            }
+            return (char) (range[0] + random.nextInt(range[1] - range[0] + 1));
+        }
+    }
+
+    private final class Parser {
+        private final String regex;
+        private int pos;
+
+        private Parser(String regex) {
+            this.regex = regex;
+        }
+
+        private Node parse() {
+            Node node = alternation();
+            if (pos < regex.length()) {
+                throw new IllegalArgumentException("多余的 ) : " + regex);
+            }
+            return node;
+        }
+
+        private Node alternation() {
+            Alternation alternation = new Alternation();
+            alternation.branches.add(sequence());
+            while (pos < regex.length() && regex.charAt(pos) == '|') {
+                pos++;
+                alternation.branches.add(sequence());
+            }
+            return alternation.branches.size() == 1 ? alternation.branches.get(0) : alternation;
+        }
+
+        private Node sequence() {
+            Sequence sequence = new Sequence();
+            while (pos < regex.length()) {
+                char c = regex.charAt(pos);
+                if (c == '|' || c == ')') {
+                    break;
+                }
+                Node atom = atom();
+                if (atom != null) {
+                    sequence.nodes.add(quantifier(atom));
+                }
+            }
+            return sequence;
+        }
+
+        private Node atom() {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case '^':
+                case '$':
+                    return null;
+                case '(':
+                    if (regex.startsWith("?:", pos) || regex.startsWith("?=", pos) || regex.startsWith("?!", pos)) {
+                        if (regex.charAt(pos + 1) != ':') {
+                            throw new IllegalArgumentException("不支持零宽断言");
+                        }
+                        pos += 2;
+                    } else if (regex.startsWith("?<", pos)) {
+                        pos = regex.indexOf('>', pos) + 1;
+                    }
+                    Node group = alternation();
+                    expect(')');
+                    return group;
+                case '[':
+                    return charClass();
+                case '.':
+                    CharSet any = new CharSet();
+                    any.add('A', 'Z');
+                    any.add('a', 'z');
+                    any.add('0', '9');
+                    return any;
+                case '\\':
+                    return escape();
+                default:
+                    return literal(c);
+            }
+        }
+
+        private Node quantifier(Node atom) {
+            if (pos >= regex.length()) {
+                return atom;
+            }
+            char c = regex.charAt(pos);
+            int min;
+            int max;
+            if (c == '?') {
+                min = 0;
+                max = 1;
+                pos++;
+            } else if (c == '*') {
+                min = 0;
+                max = UNBOUNDED_EXTRA;
+                pos++;
+            } else if (c == '+') {
+                min = 1;
+                max = 1 + UNBOUNDED_EXTRA;
+                pos++;
+            } else if (c == '{' && regex.indexOf('}', pos) > pos) {
+                int end = regex.indexOf('}', pos);
+                String[] bounds = regex.substring(pos + 1, end).split(",", -1);
+                min = Integer.parseInt(bounds[0].trim());
+                if (bounds.length == 1) {
+                    max = min;
+                } else if (bounds[1].trim().isEmpty()) {
+                    max = min + UNBOUNDED_EXTRA;
+                } else {
+                    max = Integer.parseInt(bounds[1].trim());
+                }
+                pos = end + 1;
+            } else {
+                return atom;
+            }
+            // 懒惰/占有修饰不影响生成
+            if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+                pos++;
+            }
+            return new Repeat(atom, min, max);
+        }
+
+        private CharSet charClass() {
+            CharSet set = new CharSet();
+            if (pos < regex.length() && regex.charAt(pos) == '^') {
+                set.negated = true;
+                pos++;
+            }
+            boolean first = true;
+            while (pos < regex.length() && (regex.charAt(pos) != ']' || first)) {
+                first = false;
+                char from;
+                if (regex.charAt(pos) == '\\') {
+                    pos++;
+                    Node escaped = escape();
+                    if (escaped instanceof CharSet) {
+                        set.addAll((CharSet) escaped);
+                        continue;
+                    }
+                    from = ((Literal) escaped).c;
+                } else {
+                    from = regex.charAt(pos++);
+                }
+                char to = from;
+                if (pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+                    pos++;
+                    if (regex.charAt(pos) == '\\') {
+                        pos++;
+                        to = ((Literal) escape()).c;
+                    } else {
+                        to = regex.charAt(pos++);
+                    }
+                }
+                set.add(from, to);
+            }
+            expect(']');
+            return set;
+        }
+
+        private Node escape() {
+            char c = regex.charAt(pos++);
+            CharSet set = new CharSet();
+            switch (c) {
+                case 'd':
+                    set.add('0', '9');
+                    return set;
+                case 'w':
+                    set.add('A', 'Z');
+                    set.add('a', 'z');
+                    set.add('0', '9');
+                    set.add('_', '_');
+                    return set;
+                case 's':
+                    set.add(' ', ' ');
+                    return set;
+                case 'D':
+                case 'W':
+                case 'S':
+                    set.add('A', 'Z');
+                    return set;
+                case 'p':
+                    pos = regex.indexOf('}', pos) + 1;
+                    set.add(CJK_FIRST, CJK_LAST);
+                    return set;
+                case 'u':
+                    char unicode = (char) Integer.parseInt(regex.substring(pos, pos + 4), 16);
+                    pos += 4;
+                    return literal(unicode);
+                case 't':
+                    return literal('\t');
+                case 'n':
+                    return literal('\n');
+                case 'b':
+                case 'B':
+                    throw new IllegalArgumentException("不支持单词边界");
+                default:
+                    return literal(c);
+            }
+        }
+
+        private Literal literal(char c) {
+            return new Literal(c);
+        }
+
+        private void expect(char c) {
+            if (pos >= regex.length() || regex.charAt(pos) != c) {
+                throw new IllegalArgumentException("缺少 " + c + " : " + regex);
+            }
+            pos++;
+        }
+    }
+
+    private static final class Literal implements Node {
+        private final char c;
+
+        private Literal(char c) {
+            this.c = c;
+        }
+
+        @Override
+        public void emit(StringBuilder sb) {
+            sb.append(c);
+        }
+    }
+}
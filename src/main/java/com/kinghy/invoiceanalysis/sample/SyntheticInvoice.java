@@ -0,0 +1,17 @@
+package com.kinghy.invoiceanalysis.sample;
+
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceAnalysisResult;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 合成票据：PDF字节与期望的解析结果
+ * expected为票面实际排布的内容（真值），与InvoiceProcessor的输出结构相同，可直接比对提取准确率。
+ */
+@Getter
+@AllArgsConstructor
+public class SyntheticInvoice {
+    private final String fileName;
+    private final byte[] pdf;
+    private final InvoiceAnalysisResult expected;
+}
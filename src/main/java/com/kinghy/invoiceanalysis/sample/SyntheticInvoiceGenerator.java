@@ -0,0 +1,830 @@
+package com.kinghy.invoiceanalysis.sample;
+
+import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceAnalysisResult;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.entity.dto.PjcyItemNode;
+import com.kinghy.invoiceanalysis.strategy.CompiledDetailTable;
+import com.kinghy.invoiceanalysis.strategy.util.TextPositionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按模板合成票据PDF及期望结果
+ *
+ * 第1页排布：
+ * - AREA字段：值放入配置的矩形（并绘制矩形边框）
+ * - identifiers：居中标题
+ * - SAME_LINE等单行字段：关键字+值，两两并排，过宽时独占一行
+ * - BELOW字段：关键字、下一行值、再下一行stopAtKeywords[0]
+ * - REGEX字段：按pattern生成整行（AFTER_KEYWORD时前置关键字），真值为groupIndex分组
+ * - TABLE字段：3列3行小表格，目标列表头为headerKeyword，真值为整列（或rowIndex行）
+ * - detailFields：表头+detailRows行明细，超出页面续排到下一页
+ * 有明细表时，按医疗电子票据的版式，从第一个关键字含金额合计/大写/小写（或endKeywords）的字段起，
+ * 其后的字段排在明细表下方：先是合计行（这些合计类字段并排在同一行，金额合计在前，大写金额取小写金额的中文大写），再是“其他信息”及其余字段（如收款单位、复核人、收款人）。
+ * 合计行不含endKeywords时，在明细表与合计行之间追加一行结束关键字。
+ * 明细表续排到后续页时，表格下方的字段也落在后续页，主字段只在第1页提取，这些字段不计入期望结果。
+ * 之后追加extraPages张附页（线框与正文）。
+ *
+ * 字段值优先使用按字段名推测的真实形态（日期、金额、编号、姓名），不匹配valuePattern时按valuePattern生成，
+ * 并去除两端的trimChars。值中的汉字取自常用字且剔除了模板关键字用字，避免值中意外出现关键字。
+ *
+ * 同一实例可并发调用generate；配置seed时生成序列确定（单线程调用时）。
+ */
+@Slf4j
+public class SyntheticInvoiceGenerator {
+
+    private static final float MARGIN = 40F;
+    private static final float TOP = 40F;
+    private static final float BOTTOM = SyntheticPdfWriter.PAGE_HEIGHT - 40F;
+    private static final float TITLE_SIZE = 14F;
+    private static final float TITLE_LINE_HEIGHT = 24F;
+    private static final float COLUMN_WIDTH = (SyntheticPdfWriter.PAGE_WIDTH - MARGIN * 2) / 2;
+    private static final int MAX_VALUE_ATTEMPTS = 10;
+
+    private static final PDType1Font[] FONTS = {PDType1Font.HELVETICA, PDType1Font.TIMES_ROMAN, PDType1Font.COURIER};
+
+    private static final String COMMON_CJK = "王李张刘陈杨黄赵吴周徐孙马朱胡郭何高林罗郑梁谢宋唐许韩冯邓曹彭曾肖田董袁潘于蒋蔡余杜叶程苏魏吕丁任沈姚卢姜崔钟谭陆汪范金石廖贾夏韦付方白邹孟熊秦邱江尹薛闫段雷侯龙史陶黎贺顾毛郝龚邵万钱严覃武戴莫孔向汤"
+            + "伟芳娜敏静丽强磊军洋勇艳杰娟涛明超秀霞平刚桂英华玉兰萍红建文辉力春晓晨阳光宇浩然欣怡嘉佳思雨婷雪梅松柏海波峰";
+
+    /**
+     * 表格下方合计行的关键字标记
+     */
+    private static final String[] TOTAL_MARKERS = {"金额合计", "大写", "小写"};
+
+    private static final String UPPER_DIGITS = "零壹贰叁肆伍陆柒捌玖";
+    private static final String UPPER_UNITS = "仟佰拾";
+
+    private static final String[] ITEM_NAMES = {"西药费", "中成药费", "化验费", "检查费", "诊察费", "治疗费", "材料费", "床位费", "护理费", "手术费"};
+    private static final String[] UNITS = {"项", "次", "盒", "支", "袋", "瓶"};
+    private static final String[] REMARKS = {"", "", "甲类", "乙类"};
+
+    private final InvoiceTemplate template;
+
+    private final SyntheticInvoiceOptions options;
+
+    private final CompiledDetailTable detailTable;
+
+    private final String cjkPool;
+
+    private final Random seeds;
+
+    /**
+     * @throws com.kinghy.invoiceanalysis.exception.InvalidDetailFieldsException 明细表配置非法
+     */
+    public SyntheticInvoiceGenerator(InvoiceTemplate template, SyntheticInvoiceOptions options) {
+        this.template = template;
+        this.options = options;
+        this.detailTable = CompiledDetailTable.compile(template.getTemplateName(), template.getDetailFields());
+        this.cjkPool = cjkPool(template);
+        this.seeds = options.getSeed() != null ? new Random(options.getSeed()) : new Random();
+    }
+
+    public InvoiceTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * 生成一张票据
+     */
+    public SyntheticInvoice generate(String fileName) throws IOException {
+        return new Document(new Random(seeds.nextLong())).render(fileName);
+    }
+
+    /**
+     * 常用字剔除模板关键字、identifiers、明细表头等用字
+     */
+    private static String cjkPool(InvoiceTemplate template) {
+        Set<Character> excluded = new HashSet<>();
+        addChars(excluded, template.getIdentifiers());
+        if (template.getFields() != null) {
+            for (FieldDefinition field : template.getFields()) {
+                addChars(excluded, field.getKeywords());
+                Object stops = field.getOptions() != null ? field.getOptions().get("stopAtKeywords") : null;
+                if (stops instanceof Collection) {
+                    for (Object stop : (Collection<?>) stops) {
+                        addChars(excluded, String.valueOf(stop));
+                    }
+                }
+            }
+        }
+        if (template.getDetailFields() != null) {
+            addChars(excluded, template.getDetailFields().getTableIdentifiers());
+            addChars(excluded, template.getDetailFields().getEndKeywords());
+            if (template.getDetailFields().getColumns() != null) {
+                template.getDetailFields().getColumns().forEach(column -> addChars(excluded, column.getHeader()));
+            }
+        }
+        StringBuilder pool = new StringBuilder();
+        for (char c : COMMON_CJK.toCharArray()) {
+            if (!excluded.contains(c)) {
+                pool.append(c);
+            }
+        }
+        return pool.length() >= 20 ? pool.toString() : COMMON_CJK;
+    }
+
+    private static void addChars(Set<Character> chars, Collection<String> texts) {
+        if (texts != null) {
+            texts.forEach(text -> addChars(chars, text));
+        }
+    }
+
+    private static void addChars(Set<Character> chars, String text) {
+        if (text != null) {
+            for (char c : text.toCharArray()) {
+                chars.add(c);
+            }
+        }
+    }
+
+    /**
+     * 单张票据的排布状态
+     */
+    private final class Document {
+        private final Random random;
+        private final RegexSampler sampler;
+        private final SyntheticPdfWriter writer;
+        private final float fontSize;
+        private final float lineHeight;
+        private final List<float[]> areas = new ArrayList<>();
+        private final Map<String, String> fields = new LinkedHashMap<>();
+        private final List<PjcyItemNode> items = new ArrayList<>();
+        private float y = TOP;
+
+        private Document(Random random) {
+            this.random = random;
+            this.sampler = new RegexSampler(random, cjkPool);
+            boolean vary = options.isFontVariation();
+            this.writer = new SyntheticPdfWriter(vary ? FONTS[random.nextInt(FONTS.length)] : PDType1Font.HELVETICA);
+            this.fontSize = vary ? 8.5F + random.nextInt(5) * 0.5F : 9F;
+            this.lineHeight = lineHeight(fontSize);
+        }
+
+        private SyntheticInvoice render(String fileName) throws IOException {
+            List<FieldDefinition> tableFields = new ArrayList<>();
+            List<FieldDefinition> fieldDefinitions = template.getFields() != null ? template.getFields() : new ArrayList<>();
+            for (FieldDefinition field : fieldDefinitions) {
+                if ("AREA".equals(field.getStrategy())) {
+                    renderArea(field);
+                }
+            }
+
+            if (template.getIdentifiers() != null) {
+                for (String identifier : template.getIdentifiers()) {
+                    y = nextFreeLine(y, 1);
+                    float x = (SyntheticPdfWriter.PAGE_WIDTH - writer.width(identifier, TITLE_SIZE)) / 2;
+                    writer.text(x + jitterX(), y + jitterY(), TITLE_SIZE, identifier);
+                    y += TITLE_LINE_HEIGHT;
+                }
+            }
+
+            List<FieldDefinition> tail = tailFields(fieldDefinitions);
+            List<FieldDefinition> head = new ArrayList<>();
+            for (FieldDefinition field : fieldDefinitions) {
+                String strategy = field.getStrategy() != null ? field.getStrategy() : "";
+                if ("TABLE".equals(strategy)) {
+                    tableFields.add(field);
+                } else if (!"AREA".equals(strategy) && !tail.contains(field)) {
+                    head.add(field);
+                }
+            }
+            renderFlow(head);
+
+            for (FieldDefinition field : tableFields) {
+                renderTable(field);
+            }
+            if (detailTable != null) {
+                List<FieldDefinition> totals = new ArrayList<>();
+                List<FieldDefinition> others = new ArrayList<>();
+                for (FieldDefinition field : tail) {
+                    (isTotal(field) ? totals : others).add(field);
+                }
+                renderDetails(!endsTable(totals));
+                renderTail(totals, others);
+            }
+            for (int i = 0; i < options.getExtraPages(); i++) {
+                renderExtraPage();
+            }
+
+            InvoiceAnalysisResult expected = new InvoiceAnalysisResult(fileName, template.getTemplateName(), fields,
+                    detailTable != null ? items : null);
+            return new SyntheticInvoice(fileName, writer.toPdf(), expected);
+        }
+
+        /**
+         * 按模板顺序排布普通字段：单行字段两两并排，BELOW、REGEX字段独占行
+         */
+        private void renderFlow(List<FieldDefinition> flow) {
+            boolean rightColumn = false;
+            for (FieldDefinition field : flow) {
+                String strategy = field.getStrategy() != null ? field.getStrategy() : "";
+                if ("BELOW".equals(strategy) || "REGEX".equals(strategy)) {
+                    if (rightColumn) {
+                        y += lineHeight;
+                        rightColumn = false;
+                    }
+                    if ("BELOW".equals(strategy)) {
+                        renderBelow(field);
+                    } else {
+                        renderRegex(field);
+                    }
+                } else {
+                    rightColumn = renderSameLine(field, rightColumn);
+                }
+                if (writer.pageCount() > 1) {
+                    fields.remove(field.getFieldName());
+                }
+            }
+            if (rightColumn) {
+                y += lineHeight;
+            }
+        }
+
+        /**
+         * 排在明细表下方的字段：有明细表时，从第一个合计类字段起的普通字段（AREA、TABLE字段位置固定，不参与）
+         */
+        private List<FieldDefinition> tailFields(List<FieldDefinition> fieldDefinitions) {
+            List<FieldDefinition> tail = new ArrayList<>();
+            if (detailTable == null) {
+                return tail;
+            }
+            for (FieldDefinition field : fieldDefinitions) {
+                String strategy = field.getStrategy() != null ? field.getStrategy() : "";
+                if ("AREA".equals(strategy) || "TABLE".equals(strategy)) {
+                    continue;
+                }
+                if (!tail.isEmpty() || isTotal(field)) {
+                    tail.add(field);
+                }
+            }
+            return tail;
+        }
+
+        /**
+         * 合计类单行字段：关键字含金额合计/大写/小写或明细表结束关键字
+         */
+        private boolean isTotal(FieldDefinition field) {
+            String strategy = field.getStrategy() != null ? field.getStrategy() : "";
+            if ("BELOW".equals(strategy) || "REGEX".equals(strategy) || field.getKeywords() == null) {
+                return false;
+            }
+            for (String keyword : field.getKeywords()) {
+                if (keyword != null && (containsAny(keyword, Arrays.asList(TOTAL_MARKERS))
+                        || containsAny(keyword, detailTable.getEndKeywords()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 合计行是否必然包含明细表结束关键字（某个合计字段的全部关键字都含结束关键字）
+         */
+        private boolean endsTable(List<FieldDefinition> totals) {
+            if (detailTable.getEndKeywords().isEmpty()) {
+                return false;
+            }
+            for (FieldDefinition field : totals) {
+                boolean all = true;
+                for (String keyword : field.getKeywords()) {
+                    all &= keyword != null && containsAny(keyword, detailTable.getEndKeywords());
+                }
+                if (all) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean containsAny(String text, List<String> markers) {
+            for (String marker : markers) {
+                if (text.contains(marker)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 大写金额字段：关键字含“大写”且未配置valuePattern
+         */
+        private boolean isUpperCase(FieldDefinition field) {
+            return TextPositionUtil.getStringOption(field.getOptions(), "valuePattern", null) == null
+                    && String.join("", field.getKeywords()).contains(TOTAL_MARKERS[1]);
+        }
+
+        /**
+         * 金额的中文大写，如1205.30 -> 壹仟贰佰零伍元叁角
+         * @param amount 不超过8位整数、2位小数的金额
+         */
+        private String upperAmount(String amount) {
+            String[] parts = amount.split("\\.");
+            int yuan = Integer.parseInt(parts[0]);
+            String cents = parts.length > 1 ? (parts[1] + "0").substring(0, 2) : "00";
+            StringBuilder sb = new StringBuilder();
+            if (yuan >= 10000) {
+                sb.append(upperSection(yuan / 10000)).append('万');
+                if (yuan % 10000 > 0 && yuan % 10000 < 1000) {
+                    sb.append('零');
+                }
+            }
+            if (yuan % 10000 > 0 || yuan == 0) {
+                sb.append(upperSection(yuan % 10000));
+            }
+            sb.append('元');
+            int jiao = cents.charAt(0) - '0';
+            int fen = cents.charAt(1) - '0';
+            if (jiao == 0 && fen == 0) {
+                return sb.append('整').toString();
+            }
+            if (jiao > 0) {
+                sb.append(UPPER_DIGITS.charAt(jiao)).append('角');
+            } else if (yuan > 0) {
+                sb.append('零');
+            }
+            if (fen > 0) {
+                sb.append(UPPER_DIGITS.charAt(fen)).append('分');
+            }
+            return sb.toString();
+        }
+
+        /**
+         * 0~9999的中文大写，中间的连续零读作一个“零”
+         */
+        private String upperSection(int section) {
+            if (section == 0) {
+                return String.valueOf(UPPER_DIGITS.charAt(0));
+            }
+            StringBuilder sb = new StringBuilder();
+            boolean zero = false;
+            for (int unit = 0, divisor = 1000; divisor > 0; unit++, divisor /= 10) {
+                int digit = section / divisor % 10;
+                if (digit == 0) {
+                    zero = sb.length() > 0;
+                    continue;
+                }
+                if (zero) {
+                    sb.append(UPPER_DIGITS.charAt(0));
+                    zero = false;
+                }
+                sb.append(UPPER_DIGITS.charAt(digit));
+                if (unit < UPPER_UNITS.length()) {
+                    sb.append(UPPER_UNITS.charAt(unit));
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * 明细表下方：合计类字段并排成一行（过宽时折行，金额合计在前），其余字段排在“其他信息”之后。
+         * 未配置valuePattern的大写字段取小写金额的中文大写。
+         */
+        private void renderTail(List<FieldDefinition> totals, List<FieldDefinition> others) {
+            List<FieldDefinition> ordered = new ArrayList<>();
+            List<FieldDefinition> rest = new ArrayList<>();
+            Map<FieldDefinition, String> values = new LinkedHashMap<>();
+            String amount = null;
+            for (FieldDefinition field : totals) {
+                (String.join("", field.getKeywords()).contains(TOTAL_MARKERS[0]) ? ordered : rest).add(field);
+                String value = value(field);
+                values.put(field, value);
+                if (amount == null && value != null && value.matches("\\d{1,8}(\\.\\d{1,2})?")) {
+                    amount = value;
+                }
+            }
+            ordered.addAll(rest);
+            for (FieldDefinition field : ordered) {
+                if (values.get(field) != null && isUpperCase(field)) {
+                    values.put(field, upperAmount(amount != null ? amount : money()));
+                }
+            }
+
+            float gap = 6 + options.getJitter() * 2;
+            float x = MARGIN;
+            if (!ordered.isEmpty()) {
+                y = nextFreeLine(y + lineHeight, 1);
+            }
+            for (FieldDefinition field : ordered) {
+                String keyword = keyword(field);
+                String value = values.get(field);
+                if (keyword == null || value == null) {
+                    continue;
+                }
+                float width = writer.width(keyword, fontSize) + gap + writer.width(value, fontSize);
+                if (x > MARGIN && x + width > SyntheticPdfWriter.PAGE_WIDTH - MARGIN) {
+                    y = nextFreeLine(y + lineHeight, 1);
+                    x = MARGIN;
+                }
+                writer.text(x + jitterX(), y + jitterY(), fontSize, keyword);
+                writer.text(x + writer.width(keyword, fontSize) + gap + jitterX(), y + jitterY(), fontSize, value);
+                if (writer.pageCount() == 1) {
+                    fields.put(field.getFieldName(), value);
+                }
+                x += width + gap * 4;
+            }
+            if (others.isEmpty()) {
+                return;
+            }
+            y = nextFreeLine(y + lineHeight, 2);
+            writer.text(MARGIN + jitterX(), y + jitterY(), fontSize, "其他信息");
+            y += lineHeight;
+            renderFlow(others);
+        }
+
+        /**
+         * 字段较多时压缩行高，保证第1页容纳全部字段
+         */
+        private float lineHeight(float size) {
+            float preferred = size * 2;
+            if (template.getFields() == null) {
+                return preferred;
+            }
+            float lines = 2;
+            for (FieldDefinition field : template.getFields()) {
+                String strategy = field.getStrategy() != null ? field.getStrategy() : "";
+                if ("BELOW".equals(strategy)) {
+                    lines += 3;
+                } else if ("TABLE".equals(strategy)) {
+                    lines += 5;
+                } else if ("REGEX".equals(strategy)) {
+                    lines += 1;
+                } else if (!"AREA".equals(strategy)) {
+                    lines += 0.5F;
+                }
+            }
+            int identifiers = template.getIdentifiers() != null ? template.getIdentifiers().size() : 0;
+            float available = BOTTOM - TOP - identifiers * TITLE_LINE_HEIGHT;
+            return Math.max(size * 1.3F, Math.min(preferred, available / lines));
+        }
+
+        private void renderArea(FieldDefinition field) {
+            float x = option(field, "x_start");
+            float top = option(field, "y_start");
+            float width = option(field, "width");
+            float height = option(field, "height");
+            areas.add(new float[]{top, top + height});
+            writer.rectangle(x, top, width, height);
+            String value = value(field);
+            if (value == null) {
+                return;
+            }
+            value = value.replaceAll("\\s+", "");
+            while (value.length() > 1 && writer.width(value, fontSize) > width - 8) {
+                value = value.substring(0, value.length() - 1);
+            }
+            writer.text(x + 4, top + height / 2 + jitterY(), fontSize, value);
+            fields.put(field.getFieldName(), value);
+        }
+
+        private boolean renderSameLine(FieldDefinition field, boolean rightColumn) {
+            String keyword = keyword(field);
+            String value = value(field);
+            if (keyword == null || value == null) {
+                return rightColumn;
+            }
+            float gap = 6 + options.getJitter() * 2;
+            boolean wide = writer.width(keyword, fontSize) + gap + writer.width(value, fontSize) > COLUMN_WIDTH - 10;
+            if (wide && rightColumn) {
+                y += lineHeight;
+                rightColumn = false;
+            }
+            if (!rightColumn) {
+                y = nextFreeLine(y, 1);
+            }
+            float x = rightColumn ? MARGIN + COLUMN_WIDTH : MARGIN;
+            writer.text(x + jitterX(), y + jitterY(), fontSize, keyword);
+            writer.text(x + writer.width(keyword, fontSize) + gap + jitterX(), y + jitterY(), fontSize, value);
+            fields.put(field.getFieldName(), value);
+            if (wide || rightColumn) {
+                y += lineHeight;
+                return false;
+            }
+            return true;
+        }
+
+        private void renderBelow(FieldDefinition field) {
+            String keyword = keyword(field);
+            String value = value(field);
+            if (keyword == null || value == null) {
+                return;
+            }
+            y = nextFreeLine(y, 3);
+            writer.text(MARGIN + jitterX(), y + jitterY(), fontSize, keyword);
+            writer.text(MARGIN + jitterX(), y + lineHeight + jitterY(), fontSize, value);
+            Object stops = field.getOptions() != null ? field.getOptions().get("stopAtKeywords") : null;
+            if (stops instanceof List && !((List<?>) stops).isEmpty()) {
+                writer.text(MARGIN + jitterX(), y + lineHeight * 2 + jitterY(), fontSize, ((List<?>) stops).get(0) + digits(7));
+            }
+            fields.put(field.getFieldName(), value);
+            y += lineHeight * 3;
+        }
+
+        private void renderRegex(FieldDefinition field) {
+            String pattern = TextPositionUtil.getStringOption(field.getOptions(), "pattern", null);
+            if (pattern == null) {
+                return;
+            }
+            String text = sampler.sample(pattern);
+            if (text == null) {
+                log.warn("模板 {} 字段 {} 的pattern无法生成示例值，跳过", template.getTemplateName(), field.getFieldName());
+                return;
+            }
+            Matcher matcher = Pattern.compile(pattern).matcher(text);
+            int group = TextPositionUtil.getIntOption(field.getOptions(), "groupIndex", 0);
+            String value = matcher.matches() && group <= matcher.groupCount() ? matcher.group(group) : null;
+            String keyword = keyword(field);
+            if ("AFTER_KEYWORD".equalsIgnoreCase(TextPositionUtil.getStringOption(field.getOptions(), "searchScope", "FULL"))
+                    && keyword != null) {
+                text = keyword + " " + text;
+            }
+            y = nextFreeLine(y, 1);
+            writer.text(MARGIN + jitterX(), y + jitterY(), fontSize, text);
+            y += lineHeight;
+            if (value != null && !value.trim().isEmpty()) {
+                fields.put(field.getFieldName(), value.trim());
+            }
+        }
+
+        private void renderTable(FieldDefinition field) {
+            Map<String, Object> fieldOptions = field.getOptions();
+            Integer columnIndex = TextPositionUtil.getIntOption(fieldOptions, "columnIndex", null);
+            Integer rowIndex = TextPositionUtil.getIntOption(fieldOptions, "rowIndex", null);
+            String headerKeyword = TextPositionUtil.getStringOption(fieldOptions, "headerKeyword", null);
+            String delimiter = TextPositionUtil.getStringOption(fieldOptions, "columnDelimiter", ",");
+            Double tableStartY = TextPositionUtil.getDoubleOption(fieldOptions, "tableStartY", null);
+
+            int target = columnIndex != null ? columnIndex : 1;
+            int columns = Math.max(3, target + 1);
+            float columnWidth = (SyntheticPdfWriter.PAGE_WIDTH - MARGIN * 2) / columns;
+            if (tableStartY != null) {
+                y = Math.max(y, tableStartY.floatValue() + fontSize);
+            }
+            y = nextFreeLine(y, 4);
+            for (int c = 0; c < columns; c++) {
+                String header = c == target && headerKeyword != null ? headerKeyword : "栏" + (c + 1);
+                writer.text(MARGIN + columnWidth * c + jitterX(), y + jitterY(), fontSize, header);
+            }
+            List<String> cells = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                y += lineHeight;
+                for (int c = 0; c < columns; c++) {
+                    String cell = money();
+                    writer.text(MARGIN + columnWidth * c + jitterX(), y + jitterY(), fontSize, cell);
+                    if (c == target) {
+                        cells.add(cell);
+                    }
+                }
+            }
+            y += lineHeight * 2;
+            if (rowIndex == null) {
+                fields.put(field.getFieldName(), String.join(delimiter, cells));
+            } else if (rowIndex >= 0 && rowIndex < cells.size()) {
+                fields.put(field.getFieldName(), cells.get(rowIndex));
+            }
+        }
+
+        /**
+         * @param endLine 是否在表格末尾追加一行结束关键字（合计行本身不含结束关键字时）
+         */
+        private void renderDetails(boolean endLine) {
+            List<CompiledDetailTable.Column> columns = detailTable.getColumns();
+            float columnWidth = (SyntheticPdfWriter.PAGE_WIDTH - MARGIN * 2) / columns.size();
+            float rowHeight = Math.max(fontSize * 1.3F, lineHeight * 0.8F);
+            y = nextFreeLine(y + lineHeight, 2);
+            renderDetailHeader(columnWidth);
+            for (int r = 0; r < options.getDetailRows(); r++) {
+                y += rowHeight;
+                if (y > BOTTOM) {
+                    writer.newPage();
+                    areas.clear();
+                    y = TOP;
+                    if (options.isRepeatDetailHeader()) {
+                        renderDetailHeader(columnWidth);
+                        y += rowHeight;
+                    }
+                }
+                PjcyItemNode item = new PjcyItemNode();
+                for (int c = 0; c < columns.size(); c++) {
+                    String cell = detailCell(columns.get(c).getFieldName(), c == 0);
+                    if (cell.isEmpty()) {
+                        continue;
+                    }
+                    writer.text(MARGIN + columnWidth * c + jitterX(), y + jitterY(), fontSize, cell);
+                    columns.get(c).write(item, cell);
+                }
+                items.add(item);
+            }
+            if (endLine && !detailTable.getEndKeywords().isEmpty()) {
+                y += rowHeight;
+                if (y > BOTTOM) {
+                    writer.newPage();
+                    y = TOP;
+                }
+                writer.text(MARGIN + jitterX(), y + jitterY(), fontSize, detailTable.getEndKeywords().get(0) + " " + money());
+            }
+        }
+
+        private void renderDetailHeader(float columnWidth) {
+            List<CompiledDetailTable.Column> columns = detailTable.getColumns();
+            StringBuilder headers = new StringBuilder();
+            for (int c = 0; c < columns.size(); c++) {
+                String header = columns.get(c).getHeader();
+                headers.append(header);
+                writer.text(MARGIN + columnWidth * c + jitterX(), y + jitterY(), fontSize, header);
+            }
+            // 表头识别关键字不在列表头中时补在行尾
+            float x = SyntheticPdfWriter.PAGE_WIDTH - MARGIN;
+            for (String identifier : detailTable.getTableIdentifiers()) {
+                if (headers.indexOf(identifier) < 0) {
+                    x -= writer.width(identifier, fontSize) + 6;
+                    writer.text(x, y, fontSize, identifier);
+                }
+            }
+        }
+
+        /**
+         * 明细单元格值：按明细属性名推测形态；首列必填，其余列保证金额类非空以免被识别为续行
+         */
+        private String detailCell(String fieldName, boolean firstColumn) {
+            String lower = fieldName.toLowerCase(Locale.ROOT);
+            if (lower.contains("name")) {
+                return ITEM_NAMES[random.nextInt(ITEM_NAMES.length)];
+            }
+            if (lower.contains("amount") || lower.contains("std")) {
+                return lower.contains("percent") ? (random.nextInt(10) * 10) + "%" : money();
+            }
+            if (lower.contains("quantity")) {
+                return (1 + random.nextInt(5)) + "/" + UNITS[random.nextInt(UNITS.length)];
+            }
+            if (lower.contains("unit")) {
+                return UNITS[random.nextInt(UNITS.length)];
+            }
+            if (lower.contains("code")) {
+                return digits(10);
+            }
+            if (lower.contains("time")) {
+                return date();
+            }
+            if (lower.contains("remark") || lower.contains("type")) {
+                String remark = REMARKS[random.nextInt(REMARKS.length)];
+                return remark.isEmpty() && firstColumn ? "甲类" : remark;
+            }
+            return sampler.cjk(2 + random.nextInt(3));
+        }
+
+        /**
+         * 附页：线框图形与正文
+         */
+        private void renderExtraPage() {
+            writer.newPage();
+            writer.rectangle(MARGIN, TOP, SyntheticPdfWriter.PAGE_WIDTH - MARGIN * 2, BOTTOM - TOP);
+            for (int i = 0; i < 10; i++) {
+                float lineY = TOP + (BOTTOM - TOP) * random.nextFloat();
+                writer.line(MARGIN, lineY, SyntheticPdfWriter.PAGE_WIDTH - MARGIN, lineY);
+            }
+            for (float lineY = TOP + lineHeight; lineY < BOTTOM - lineHeight; lineY += lineHeight) {
+                writer.text(MARGIN + 4 + jitterX(), lineY + jitterY(), fontSize, sampler.cjk(15 + random.nextInt(20)));
+            }
+        }
+
+        private String keyword(FieldDefinition field) {
+            List<String> keywords = field.getKeywords();
+            if (keywords == null || keywords.isEmpty()) {
+                return null;
+            }
+            return options.isKeywordVariants() ? keywords.get(random.nextInt(keywords.size())) : keywords.get(0);
+        }
+
+        /**
+         * 生成字段值：优先按字段名推测，不匹配valuePattern时按valuePattern生成；无法生成时返回null
+         */
+        private String value(FieldDefinition field) {
+            String valuePattern = TextPositionUtil.getStringOption(field.getOptions(), "valuePattern", null);
+            String trimChars = TextPositionUtil.getStringOption(field.getOptions(), "trimChars", null);
+            Pattern pattern = valuePattern != null ? Pattern.compile(valuePattern) : null;
+            String guess = guess(field.getFieldName());
+            for (int attempt = 0; attempt < MAX_VALUE_ATTEMPTS; attempt++) {
+                String candidate;
+                if (attempt == 0 && guess != null) {
+                    candidate = guess;
+                } else if (valuePattern != null) {
+                    candidate = sampler.sample(valuePattern);
+                } else {
+                    candidate = sampler.cjk(2 + random.nextInt(5));
+                }
+                candidate = trim(candidate, trimChars);
+                if (candidate != null && !candidate.isEmpty() && (pattern == null || pattern.matcher(candidate).matches())) {
+                    return candidate;
+                }
+            }
+            log.warn("模板 {} 字段 {} 无法生成匹配valuePattern的示例值，跳过", template.getTemplateName(), field.getFieldName());
+            return null;
+        }
+
+        private String guess(String fieldName) {
+            if (fieldName == null) {
+                return null;
+            }
+            String lower = fieldName.toLowerCase(Locale.ROOT);
+            if (lower.contains("date") || lower.contains("time")) {
+                return date();
+            }
+            if (lower.contains("amount") || lower.contains("cost") || lower.contains("fee")) {
+                return money();
+            }
+            if (lower.endsWith("id") || lower.endsWith("number") || lower.endsWith("code") || lower.endsWith("no")) {
+                return digits(10 + random.nextInt(7));
+            }
+            if (lower.contains("name") || lower.contains("payer") || lower.contains("person")) {
+                return sampler.cjk(2 + random.nextInt(3));
+            }
+            return null;
+        }
+
+        private String trim(String value, String trimChars) {
+            if (value == null) {
+                return null;
+            }
+            String chars = (trimChars != null ? trimChars : "") + " ";
+            int start = 0;
+            int end = value.length();
+            while (start < end && chars.indexOf(value.charAt(start)) >= 0) {
+                start++;
+            }
+            while (end > start && chars.indexOf(value.charAt(end - 1)) >= 0) {
+                end--;
+            }
+            return value.substring(start, end);
+        }
+
+        private String date() {
+            return String.format(Locale.ROOT, "%d-%02d-%02d", 2022 + random.nextInt(4), 1 + random.nextInt(12), 1 + random.nextInt(28));
+        }
+
+        private String money() {
+            return String.format(Locale.ROOT, "%d.%02d", random.nextInt(2000), random.nextInt(100));
+        }
+
+        private String digits(int count) {
+            StringBuilder sb = new StringBuilder(count);
+            for (int i = 0; i < count; i++) {
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            return sb.toString();
+        }
+
+        private float jitterX() {
+            float jitter = options.getJitter();
+            return jitter > 0 ? (random.nextFloat() * 2 - 1) * jitter : 0F;
+        }
+
+        private float jitterY() {
+            float jitter = Math.min(options.getJitter() / 4, 0.8F);
+            return jitter > 0 ? (random.nextFloat() * 2 - 1) * jitter : 0F;
+        }
+
+        private float option(FieldDefinition field, String key) {
+            return TextPositionUtil.getDoubleOption(field.getOptions(), key, 0D).floatValue();
+        }
+
+        /**
+         * 从y开始找到连续lines行都不与AREA矩形重叠的位置，避免普通字段落入AREA区域；当前页放不下时换到新页
+         */
+        private float nextFreeLine(float start, int lines) {
+            float line = start;
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                for (float[] area : areas) {
+                    float top = line - lineHeight;
+                    float bottom = line + lineHeight * (lines - 1);
+                    if (bottom > area[0] && top < area[1]) {
+                        line = area[1] + lineHeight;
+                        moved = true;
+                    }
+                }
+            }
+            if (line + lineHeight * (lines - 1) > BOTTOM) {
+                writer.newPage();
+                areas.clear();
+                return TOP;
+            }
+            return line;
+        }
+    }
+}
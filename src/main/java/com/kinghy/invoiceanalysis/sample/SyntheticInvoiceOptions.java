@@ -0,0 +1,53 @@
+package com.kinghy.invoiceanalysis.sample;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 合成票据的噪声与规模参数
+ */
+@Data
+@Builder
+public class SyntheticInvoiceOptions {
+
+    /**
+     * 随机种子，相同模板与种子生成相同的票据序列；为null时每次不同
+     */
+    private Long seed;
+
+    /**
+     * 文字位置抖动幅度（pt）：水平方向±jitter，垂直方向±min(jitter/4, 0.8)，保证同一行仍归入同一视觉行
+     */
+    @Builder.Default
+    private float jitter = 0F;
+
+    /**
+     * 票据之后追加的附页数（只含线框图形；模板明细表配置了结束关键字时附带正文文字）
+     */
+    @Builder.Default
+    private int extraPages = 0;
+
+    /**
+     * 是否每张票据随机选择字体（Helvetica/Times/Courier字宽）与字号（8.5~10.5pt）
+     */
+    @Builder.Default
+    private boolean fontVariation = false;
+
+    /**
+     * 是否从字段的全部keywords中随机选择一个作为票面关键字，否则固定使用第一个
+     */
+    @Builder.Default
+    private boolean keywordVariants = false;
+
+    /**
+     * 明细行数，超出一页时续排到后续页
+     */
+    @Builder.Default
+    private int detailRows = 20;
+
+    /**
+     * 明细表续页是否重复表头
+     */
+    @Builder.Default
+    private boolean repeatDetailHeader = true;
+}
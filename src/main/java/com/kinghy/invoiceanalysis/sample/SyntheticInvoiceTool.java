@@ -0,0 +1,72 @@
+package com.kinghy.invoiceanalysis.sample;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * 合成票据命令行工具：按模板JSON批量生成PDF与期望结果（sidecar）
+ *
+ * 用法：SyntheticInvoiceTool <模板JSON> <输出目录> [--count=N] [--seed=S] [--jitter=PT] [--extra-pages=N]
+ *       [--detail-rows=N] [--font-variation] [--keyword-variants] [--no-repeat-header]
+ *
+ * 输出：<模板文件名>-00001.pdf 与 <模板文件名>-00001.expected.json（InvoiceAnalysisResult结构）
+ */
+public class SyntheticInvoiceTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("用法: SyntheticInvoiceTool <模板JSON> <输出目录> [--count=N] [--seed=S] [--jitter=PT]"
+                    + " [--extra-pages=N] [--detail-rows=N] [--font-variation] [--keyword-variants] [--no-repeat-header]");
+            System.exit(1);
+        }
+        File templateFile = new File(args[0]);
+        File outputDir = new File(args[1]);
+        int count = 1;
+        SyntheticInvoiceOptions.SyntheticInvoiceOptionsBuilder builder = SyntheticInvoiceOptions.builder();
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            String value = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : null;
+            if (arg.startsWith("--count=")) {
+                count = Integer.parseInt(value);
+            } else if (arg.startsWith("--seed=")) {
+                builder.seed(Long.parseLong(value));
+            } else if (arg.startsWith("--jitter=")) {
+                builder.jitter(Float.parseFloat(value));
+            } else if (arg.startsWith("--extra-pages=")) {
+                builder.extraPages(Integer.parseInt(value));
+            } else if (arg.startsWith("--detail-rows=")) {
+                builder.detailRows(Integer.parseInt(value));
+            } else if ("--font-variation".equals(arg)) {
+                builder.fontVariation(true);
+            } else if ("--keyword-variants".equals(arg)) {
+                builder.keywordVariants(true);
+            } else if ("--no-repeat-header".equals(arg)) {
+                builder.repeatDetailHeader(false);
+            } else {
+                System.err.println("未知参数: " + arg);
+                System.exit(1);
+            }
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        InvoiceTemplate template = objectMapper.readValue(templateFile, InvoiceTemplate.class);
+        SyntheticInvoiceGenerator generator = new SyntheticInvoiceGenerator(template, builder.build());
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("无法创建输出目录: " + outputDir);
+        }
+
+        String prefix = templateFile.getName().replaceFirst("\\.json$", "");
+        for (int i = 1; i <= count; i++) {
+            String name = String.format("%s-%05d", prefix, i);
+            SyntheticInvoice invoice = generator.generate(name + ".pdf");
+            Files.write(new File(outputDir, name + ".pdf").toPath(), invoice.getPdf());
+            objectMapper.writerWithDefaultPrettyPrinter()
+                    .writeValue(new File(outputDir, name + ".expected.json"), invoice.getExpected());
+        }
+        System.out.println("已生成 " + count + " 张票据: " + outputDir.getAbsolutePath());
+    }
+}
@@ -0,0 +1,261 @@
+package com.kinghy.invoiceanalysis.sample;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontFactory;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 合成PDF写入器
+ * 不依赖CJK字体：文字按标准14字体（Helvetica/Times/Courier）的字宽排版，非ASCII字符按全角宽度，
+ * 字体附带ToUnicode映射，文本提取得到的字符与坐标与真实票据同构，只是字形不可见。
+ *
+ * 坐标原点在页面左上角，text的y为基线（与TextPosition.getY一致）。
+ * 每个字体最多容纳 NON_ASCII_CODES 个非ASCII字符，超出后自动追加字体；ASCII字符在所有字体中编码相同。
+ */
+public final class SyntheticPdfWriter {
+
+    public static final float PAGE_WIDTH = PDRectangle.A4.getWidth();
+    public static final float PAGE_HEIGHT = PDRectangle.A4.getHeight();
+
+    /**
+     * 非ASCII字符可用的单字节编码：1~31、127~255
+     */
+    private static final int NON_ASCII_CODES = 31 + 129;
+
+    private static final int FULL_WIDTH = 1000;
+
+    private final PDType1Font metrics;
+
+    private final List<StringBuilder> pages = new ArrayList<>();
+
+    /**
+     * 非ASCII字符 -> 全局序号（序号 / NON_ASCII_CODES 为字体号）
+     */
+    private final Map<Character, Integer> nonAscii = new HashMap<>();
+    private final List<Character> nonAsciiOrder = new ArrayList<>();
+
+    /**
+     * @param metrics 提供字宽与BaseFont名称的标准14字体
+     */
+    public SyntheticPdfWriter(PDType1Font metrics) {
+        this.metrics = metrics;
+        newPage();
+    }
+
+    public SyntheticPdfWriter() {
+        this(PDType1Font.HELVETICA);
+    }
+
+    /**
+     * 追加一页，后续绘制都落在新页上
+     * @return 新页的页码（从1开始）
+     */
+    public int newPage() {
+        pages.add(new StringBuilder());
+        return pages.size();
+    }
+
+    public int pageCount() {
+        return pages.size();
+    }
+
+    /**
+     * 在当前页绘制一段文字
+     * @param x 左边界
+     * @param baseline 基线Y
+     */
+    public SyntheticPdfWriter text(float x, float baseline, float fontSize, String text) {
+        if (text == null || text.isEmpty()) {
+            return this;
+        }
+        for (char c : text.toCharArray()) {
+            if (!isAscii(c) && !nonAscii.containsKey(c)) {
+                nonAscii.put(c, nonAscii.size());
+                nonAsciiOrder.add(c);
+            }
+        }
+
+        StringBuilder sb = currentPage();
+        sb.append("BT\n");
+        sb.append(String.format(Locale.ROOT, "1 0 0 1 %.2f %.2f Tm\n", x, PAGE_HEIGHT - baseline));
+        int currentFont = -1;
+        StringBuilder hex = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            int font = isAscii(c) ? Math.max(currentFont, 0) : nonAscii.get(c) / NON_ASCII_CODES;
+            if (font != currentFont) {
+                flush(sb, hex);
+                sb.append(String.format(Locale.ROOT, "/%s %.2f Tf\n", fontName(font), fontSize));
+                currentFont = font;
+            }
+            hex.append(String.format("%02X", code(c)));
+        }
+        flush(sb, hex);
+        sb.append("ET\n");
+        return this;
+    }
+
+    /**
+     * 在当前页绘制矩形边框（不产生文字）
+     */
+    public SyntheticPdfWriter rectangle(float x, float top, float width, float height) {
+        currentPage().append(String.format(Locale.ROOT, "%.2f %.2f %.2f %.2f re S\n",
+                x, PAGE_HEIGHT - top - height, width, height));
+        return this;
+    }
+
+    /**
+     * 在当前页绘制线段（不产生文字）
+     */
+    public SyntheticPdfWriter line(float x1, float y1, float x2, float y2) {
+        currentPage().append(String.format(Locale.ROOT, "%.2f %.2f m %.2f %.2f l S\n",
+                x1, PAGE_HEIGHT - y1, x2, PAGE_HEIGHT - y2));
+        return this;
+    }
+
+    /**
+     * 文字宽度（与生成的PDF中的字宽一致）
+     */
+    public float width(String text, float fontSize) {
+        float units = 0;
+        for (char c : text.toCharArray()) {
+            units += isAscii(c) ? asciiWidth(c) : FULL_WIDTH;
+        }
+        return units * fontSize / 1000F;
+    }
+
+    public byte[] toPdf() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            int fontCount = Math.max(1, (nonAscii.size() + NON_ASCII_CODES - 1) / NON_ASCII_CODES);
+            List<PDFont> fonts = new ArrayList<>(fontCount);
+            for (int f = 0; f < fontCount; f++) {
+                fonts.add(PDFontFactory.createFont(fontDictionary(document, f)));
+            }
+
+            for (StringBuilder content : pages) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                PDResources resources = new PDResources();
+                for (int f = 0; f < fontCount; f++) {
+                    resources.put(COSName.getPDFName(fontName(f)), fonts.get(f));
+                }
+                page.setResources(resources);
+                PDStream stream = new PDStream(document);
+                try (OutputStream out = stream.createOutputStream(COSName.FLATE_DECODE)) {
+                    out.write(content.toString().getBytes(StandardCharsets.US_ASCII));
+                }
+                page.setContents(stream);
+                document.addPage(page);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            document.save(bytes);
+            return bytes.toByteArray();
+        }
+    }
+
+    private StringBuilder currentPage() {
+        return pages.get(pages.size() - 1);
+    }
+
+    private static void flush(StringBuilder sb, StringBuilder hex) {
+        if (hex.length() > 0) {
+            sb.append('<').append(hex).append("> Tj\n");
+            hex.setLength(0);
+        }
+    }
+
+    private COSDictionary fontDictionary(PDDocument document, int font) throws IOException {
+        COSDictionary dictionary = new COSDictionary();
+        dictionary.setItem(COSName.TYPE, COSName.FONT);
+        dictionary.setItem(COSName.SUBTYPE, COSName.TYPE1);
+        dictionary.setName(COSName.BASE_FONT, metrics.getName());
+        dictionary.setInt(COSName.FIRST_CHAR, 0);
+        dictionary.setInt(COSName.LAST_CHAR, 255);
+
+        COSArray widths = new COSArray();
+        List<String> mappings = new ArrayList<>();
+        for (int code = 0; code < 256; code++) {
+            int unicode = unicodeOf(font, code);
+            widths.add(COSInteger.get(unicode < 0 ? 0 : isAscii((char) unicode) ? asciiWidth((char) unicode) : FULL_WIDTH));
+            if (unicode >= 0) {
+                mappings.add(String.format("<%02X> <%04X>\n", code, unicode));
+            }
+        }
+        dictionary.setItem(COSName.WIDTHS, widths);
+
+        StringBuilder toUnicode = new StringBuilder("/CIDInit /ProcSet findresource begin\n12 dict begin\nbegincmap\n"
+                + "/CMapName /Synthetic-UCS def\n/CMapType 2 def\n"
+                + "1 begincodespacerange\n<00> <FF>\nendcodespacerange\n");
+        // bfchar每段最多100项
+        for (int from = 0; from < mappings.size(); from += 100) {
+            List<String> chunk = mappings.subList(from, Math.min(from + 100, mappings.size()));
+            toUnicode.append(chunk.size()).append(" beginbfchar\n");
+            chunk.forEach(toUnicode::append);
+            toUnicode.append("endbfchar\n");
+        }
+        toUnicode.append("endcmap\nCMapName currentdict /CMap defineresource pop\nend\nend\n");
+        PDStream stream = new PDStream(document);
+        try (OutputStream out = stream.createOutputStream()) {
+            out.write(toUnicode.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        dictionary.setItem(COSName.TO_UNICODE, stream);
+        return dictionary;
+    }
+
+    /**
+     * 字体font中code对应的unicode，未使用的编码返回-1
+     */
+    private int unicodeOf(int font, int code) {
+        if (code >= 32 && code < 127) {
+            return code;
+        }
+        int slot = code < 32 ? code - 1 : code - 127 + 31;
+        if (slot < 0) {
+            return -1;
+        }
+        int ordinal = font * NON_ASCII_CODES + slot;
+        return ordinal < nonAsciiOrder.size() ? nonAsciiOrder.get(ordinal) : -1;
+    }
+
+    private int code(char c) {
+        if (isAscii(c)) {
+            return c;
+        }
+        int slot = nonAscii.get(c) % NON_ASCII_CODES;
+        return slot < 31 ? slot + 1 : slot - 31 + 127;
+    }
+
+    private static String fontName(int font) {
+        return "F" + (font + 1);
+    }
+
+    private static boolean isAscii(char c) {
+        return c >= 32 && c < 127;
+    }
+
+    private int asciiWidth(char c) {
+        try {
+            return (int) metrics.getWidth(c);
+        } catch (IOException e) {
+            return 556;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.entity.dto.AnalysisTrace;
+import com.kinghy.invoiceanalysis.entity.dto.DiagnosticRecord;
+import com.kinghy.invoiceanalysis.exception.BusinessException;
+import com.kinghy.invoiceanalysis.exception.ErrorCode;
+import com.kinghy.invoiceanalysis.exception.TemplateNotMatchedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 分析诊断
+ * 在内存环形缓冲区中保留最近N次失败或慢分析的完整现场（视觉行文本、各阶段耗时、字段策略与结果），通过诊断接口查询，
+ * 替代在请求链路上以INFO级别输出全文与上下文。
+ *
+ * 详细日志采样：按 analysis.diagnostics.log-sample-rate 抽样的票据以INFO级别输出视觉行文本与逐字段结果，
+ * 其余票据只输出一行摘要（详细内容在DEBUG级别）。
+ */
+@Slf4j
+@Component
+public class AnalysisDiagnostics {
+
+    /**
+     * 环形缓冲区容量
+     */
+    @Value("${analysis.diagnostics.capacity:100}")
+    private int capacity;
+
+    /**
+     * 慢分析阈值（毫秒，含PDF加载），<=0时不记录慢分析
+     */
+    @Value("${analysis.diagnostics.slow-threshold-ms:2000}")
+    private long slowThresholdMs;
+
+    /**
+     * 详细日志采样率（0~1）
+     */
+    @Value("${analysis.diagnostics.log-sample-rate:0}")
+    private double logSampleRate;
+
+    private DiagnosticRecord[] ring;
+
+    /**
+     * 已写入的记录总数，下一条记录的序号
+     */
+    private long written;
+
+    @PostConstruct
+    public void init() {
+        ring = new DiagnosticRecord[Math.max(capacity, 0)];
+    }
+
+    /**
+     * 当前票据是否输出详细日志
+     */
+    public boolean sampleVerbose() {
+        return logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate;
+    }
+
+    /**
+     * 成功分析：耗时超过阈值时记录
+     */
+    public void recordIfSlow(String fileName, String templateName, AnalysisTrace trace) {
+        if (slowThresholdMs > 0 && trace.getTotalMillis() >= slowThresholdMs) {
+            DiagnosticRecord record = newRecord(DiagnosticRecord.Kind.SLOW, fileName, templateName, trace);
+            add(record);
+            log.warn("慢分析: {}，模板: {}，耗时: {} ms，诊断记录: {}",
+                    fileName, templateName, Math.round(trace.getTotalMillis()), record.getId());
+        }
+    }
+
+    /**
+     * 分析失败（含未匹配模板）
+     * @param stage 失败发生的阶段
+     */
+    public void recordFailure(String fileName, String templateName, String stage, AnalysisTrace trace, Throwable e) {
+        DiagnosticRecord.Kind kind = e instanceof TemplateNotMatchedException
+                ? DiagnosticRecord.Kind.TEMPLATE_MISS : DiagnosticRecord.Kind.FAILURE;
+        DiagnosticRecord record = newRecord(kind, fileName, templateName, trace);
+        record.setStage(stage);
+        ErrorCode errorCode = e instanceof BusinessException ? ((BusinessException) e).getErrorCode() : null;
+        record.setErrorCode((errorCode != null ? errorCode : ErrorCode.INTERNAL_ERROR).getCode());
+        record.setErrorMessage(e.getMessage());
+        add(record);
+    }
+
+    /**
+     * 最近的诊断记录，按时间倒序
+     * @param kind 只返回指定类型，为null时返回全部
+     * @param limit 最多返回条数
+     */
+    public List<DiagnosticRecord> recent(DiagnosticRecord.Kind kind, int limit) {
+        List<DiagnosticRecord> records = new ArrayList<>();
+        synchronized (this) {
+            int size = (int) Math.min(written, ring.length);
+            for (int i = 1; i <= size && records.size() < limit; i++) {
+                DiagnosticRecord record = ring[(int) ((written - i) % ring.length)];
+                if (kind == null || record.getKind() == kind) {
+                    records.add(record);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 按序号查询诊断记录，已被覆盖或不存在时返回null
+     */
+    public DiagnosticRecord get(long id) {
+        synchronized (this) {
+            if (id < 0 || id >= written || id < written - ring.length) {
+                return null;
+            }
+            return ring[(int) (id % ring.length)];
+        }
+    }
+
+    private DiagnosticRecord newRecord(DiagnosticRecord.Kind kind, String fileName, String templateName,
+                                       AnalysisTrace trace) {
+        DiagnosticRecord record = new DiagnosticRecord();
+        record.setKind(kind);
+        record.setOccurredAt(System.currentTimeMillis());
+        record.setFileName(fileName);
+        record.setTemplateName(templateName);
+        record.setTotalMillis(trace.getTotalMillis());
+        record.setStageMillis(trace.getStageMillis());
+        record.setPageText(trace.getPageText());
+        record.setFields(trace.getFields());
+        return record;
+    }
+
+    private void add(DiagnosticRecord record) {
+        if (ring.length == 0) {
+            return;
+        }
+        synchronized (this) {
+            record.setId(written);
+            ring[(int) (written % ring.length)] = record;
+            written++;
+        }
+    }
+}
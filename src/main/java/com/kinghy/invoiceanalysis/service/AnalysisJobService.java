@@ -0,0 +1,143 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.config.AnalysisExecutorConfig;
+import com.kinghy.invoiceanalysis.entity.dto.AnalysisJob;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceAnalysisResult;
+import com.kinghy.invoiceanalysis.exception.BusinessException;
+import com.kinghy.invoiceanalysis.exception.ErrorCode;
+import com.kinghy.invoiceanalysis.exception.JobNotFoundException;
+import com.kinghy.invoiceanalysis.exception.ServerBusyException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 异步分析任务服务
+ * 上传后立即返回任务ID，解析在独立的有界线程池中执行；队列已满时拒绝提交（HTTP 429）。
+ * 任务结果保存在内存中，完成超过TTL后由定时任务清理。
+ */
+@Slf4j
+@Service
+public class AnalysisJobService {
+
+    @Autowired
+    private InvoiceProcessor invoiceProcessor;
+
+    @Autowired
+    @Qualifier(AnalysisExecutorConfig.JOB_EXECUTOR)
+    private ThreadPoolTaskExecutor jobExecutor;
+
+    /**
+     * 已完成任务的保留时间（毫秒）
+     */
+    @Value("${analysis.job.ttl-ms:600000}")
+    private long jobTtlMs;
+
+    private final Map<String, AnalysisJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * 提交异步分析任务
+     * @param source 待分析文件（任务结束后由本服务负责释放）
+     * @return 处于PENDING状态的任务
+     * @throws ServerBusyException 任务队列已满
+     */
+    public AnalysisJob submit(AnalysisSource source) {
+        String jobId = UUID.randomUUID().toString().replace("-", "");
+        AnalysisJob job = AnalysisJob.builder()
+                .jobId(jobId)
+                .fileName(source.getFileName())
+                .status(AnalysisJob.Status.PENDING)
+                .createdAt(System.currentTimeMillis())
+                .build();
+        jobs.put(jobId, job);
+        try {
+            jobExecutor.execute(() -> run(jobId, source));
+        } catch (TaskRejectedException e) {
+            jobs.remove(jobId);
+            source.close();
+            log.warn("异步任务队列已满，拒绝文件: {}", source.getFileName());
+            throw new ServerBusyException("分析任务队列已满，请稍后重试");
+        }
+        log.info("提交异步分析任务: {} (文件: {})", jobId, source.getFileName());
+        return job;
+    }
+
+    /**
+     * 查询任务
+     * @throws JobNotFoundException 任务不存在或已过期
+     */
+    public AnalysisJob getJob(String jobId) {
+        AnalysisJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new JobNotFoundException(jobId);
+        }
+        return job;
+    }
+
+    private void run(String jobId, AnalysisSource source) {
+        try {
+            doRun(jobId, source);
+        } finally {
+            source.close();
+        }
+    }
+
+    private void doRun(String jobId, AnalysisSource source) {
+        AnalysisJob pending = jobs.get(jobId);
+        if (pending == null) {
+            return;
+        }
+        AnalysisJob running = pending.toBuilder()
+                .status(AnalysisJob.Status.RUNNING)
+                .startedAt(System.currentTimeMillis())
+                .build();
+        jobs.put(jobId, running);
+
+        AnalysisJob.AnalysisJobBuilder finished = running.toBuilder();
+        try {
+            InvoiceAnalysisResult result = invoiceProcessor.process(source);
+            finished.status(AnalysisJob.Status.SUCCEEDED).result(result);
+        } catch (BusinessException e) {
+            log.warn("异步分析任务失败: {} (文件: {})，原因: {}", jobId, source.getFileName(), e.getMessage());
+            finished.status(AnalysisJob.Status.FAILED)
+                    .errorCode(e.getErrorCode().getCode())
+                    .errorMessage(e.getMessage());
+        } catch (Exception e) {
+            log.error("异步分析任务异常: {} (文件: {})", jobId, source.getFileName(), e);
+            finished.status(AnalysisJob.Status.FAILED)
+                    .errorCode(ErrorCode.INTERNAL_ERROR.getCode())
+                    .errorMessage(ErrorCode.INTERNAL_ERROR.getDefaultMessage());
+        }
+        jobs.put(jobId, finished.finishedAt(System.currentTimeMillis()).build());
+    }
+
+    /**
+     * 清理已完成且超过TTL的任务
+     */
+    @Scheduled(fixedDelayString = "${analysis.job.cleanup-interval-ms:60000}")
+    public void evictExpiredJobs() {
+        long expireBefore = System.currentTimeMillis() - jobTtlMs;
+        int evicted = 0;
+        Iterator<AnalysisJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            AnalysisJob job = iterator.next();
+            if (job.getFinishedAt() != null && job.getFinishedAt() < expireBefore) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.info("清理过期异步分析任务 {} 个，剩余 {} 个", evicted, jobs.size());
+        }
+    }
+}
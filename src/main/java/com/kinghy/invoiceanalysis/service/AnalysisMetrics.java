@@ -0,0 +1,298 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.exception.BusinessException;
+import com.kinghy.invoiceanalysis.exception.TemplateNotMatchedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发票分析指标（Micrometer，经Actuator以Prometheus格式暴露）
+ *
+ * - invoice.analysis.document：单张票据端到端耗时，标签 template、outcome（success / template_miss / failure）
+ * - invoice.analysis.stage：各阶段耗时，标签 template、stage（load / strip / layout / match / fields / details）
+ * - invoice.analysis.field：单字段策略耗时，标签 template、strategy
+ * - invoice.analysis.template.miss：未匹配到模板的票据数
+ * - invoice.analysis.field.empty：提取结果为空的字段数，标签 template、strategy
+ * - invoice.analysis.failures：处理失败数，标签 template、stage、reason（ErrorCode或异常类名）
+ * - invoice.analysis.cache：结果缓存查询数，标签 result（hit / miss / coalesced）
+ * - invoice.analysis.font：成功票据的非内嵌字体解析耗时（PdfFontMapper，已计入strip/details阶段），标签 template
+ * - invoice.analysis.font.cache：跨文档字体缓存（SharedFontCache）查询数，标签 result（hit / miss）
+ *
+ * 模板匹配前的阶段在匹配后统一以模板名记录，未匹配时模板标签为 NO_TEMPLATE。
+ * 启动预热（AnalysisWarmup）使用不上报的计时器，预热票据不计入指标。
+ * 直方图分桶由 management.metrics.distribution.percentiles-histogram.invoice.analysis 控制。
+ */
+@Component
+public class AnalysisMetrics {
+
+    public static final String STAGE_LOAD = "load";
+    public static final String STAGE_STRIP = "strip";
+    public static final String STAGE_LAYOUT = "layout";
+    public static final String STAGE_MATCH = "match";
+    public static final String STAGE_FIELDS = "fields";
+    public static final String STAGE_DETAILS = "details";
+
+    public static final String NO_TEMPLATE = "none";
+
+    private static final String DOCUMENT_TIMER = "invoice.analysis.document";
+    private static final String STAGE_TIMER = "invoice.analysis.stage";
+    private static final String FIELD_TIMER = "invoice.analysis.field";
+    private static final String TEMPLATE_MISS_COUNTER = "invoice.analysis.template.miss";
+    private static final String FIELD_EMPTY_COUNTER = "invoice.analysis.field.empty";
+    private static final String FAILURE_COUNTER = "invoice.analysis.failures";
+    private static final String CACHE_COUNTER = "invoice.analysis.cache";
+    private static final String FONT_TIMER = "invoice.analysis.font";
+    private static final String FONT_CACHE_COUNTER = "invoice.analysis.font.cache";
+
+    private static final String[] STAGES = {STAGE_LOAD, STAGE_STRIP, STAGE_LAYOUT, STAGE_MATCH, STAGE_FIELDS, STAGE_DETAILS};
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 开始记录一张票据（每张票据一个实例，只在处理线程中使用）
+     */
+    public DocumentTimer startDocument() {
+        return new DocumentTimer(true);
+    }
+
+    /**
+     * 开始记录一张不上报指标的票据（启动预热）
+     */
+    public DocumentTimer startUnrecordedDocument() {
+        return new DocumentTimer(false);
+    }
+
+    /**
+     * 记录单字段策略耗时（字段并行提取时在工作线程中调用）
+     */
+    public void recordField(String templateName, String strategyName, long nanos, boolean empty) {
+        Timer.builder(FIELD_TIMER)
+                .description("单字段策略耗时")
+                .tag("template", templateName)
+                .tag("strategy", strategyName)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (empty) {
+            Counter.builder(FIELD_EMPTY_COUNTER)
+                    .description("提取结果为空的字段数")
+                    .tag("template", templateName)
+                    .tag("strategy", strategyName)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    /**
+     * 记录一次结果缓存查询：hit 命中缓存，miss 实际分析，coalesced 等待相同内容正在进行的分析
+     */
+    public void recordCache(String result) {
+        Counter.builder(CACHE_COUNTER)
+                .description("结果缓存查询数")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static int stageIndex(String stage) {
+        for (int i = 0; i < STAGES.length; i++) {
+            if (STAGES[i].equals(stage)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("未知阶段: " + stage);
+    }
+
+    private static String reason(Throwable e) {
+        if (e instanceof BusinessException && ((BusinessException) e).getErrorCode() != null) {
+            return ((BusinessException) e).getErrorCode().name();
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    /**
+     * 单张票据的阶段计时：stage(name)记录自上一个阶段结束以来的耗时，结束时按模板名统一上报
+     */
+    public final class DocumentTimer {
+        private final long start = System.nanoTime();
+        private final long[] stageNanos = new long[STAGES.length];
+        private final boolean recording;
+        private long fontNanos;
+        private int fontCacheHits;
+        private int fontCacheMisses;
+        private long mark = start;
+        private String templateName = NO_TEMPLATE;
+        private String currentStage = STAGE_LOAD;
+        private boolean finished;
+
+        private DocumentTimer(boolean recording) {
+            this.recording = recording;
+            for (int i = 0; i < stageNanos.length; i++) {
+                stageNanos[i] = -1;
+            }
+        }
+
+        /**
+         * 结束阶段stage
+         */
+        public void stage(String stage) {
+            long now = System.nanoTime();
+            stageNanos[stageIndex(stage)] = now - mark;
+            mark = now;
+            int next = stageIndex(stage) + 1;
+            currentStage = next < STAGES.length ? STAGES[next] : stage;
+        }
+
+        public void template(String templateName) {
+            this.templateName = templateName;
+        }
+
+        public String getTemplateName() {
+            return templateName;
+        }
+
+        /**
+         * 尚未结束的阶段（失败时即失败发生的阶段）
+         */
+        public String getCurrentStage() {
+            return currentStage;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * 记录本票据的字体解析耗时
+         */
+        public void fontResolution(long nanos) {
+            fontNanos = nanos;
+        }
+
+        /**
+         * 记录一次跨文档字体缓存查询
+         */
+        public void fontCache(boolean hit) {
+            if (hit) {
+                fontCacheHits++;
+            } else {
+                fontCacheMisses++;
+            }
+        }
+
+        /**
+         * 记录单字段策略耗时（字段并行提取时在工作线程中调用，模板名在提交字段任务前已确定）
+         */
+        public void recordField(String strategyName, long nanos, boolean empty) {
+            if (recording) {
+                AnalysisMetrics.this.recordField(templateName, strategyName, nanos, empty);
+            }
+        }
+
+        /**
+         * 已结束各阶段的耗时（毫秒，按阶段顺序），供请求追踪输出
+         */
+        public Map<String, Double> stageMillis() {
+            Map<String, Double> millis = new LinkedHashMap<>();
+            for (int i = 0; i < STAGES.length; i++) {
+                if (stageNanos[i] >= 0) {
+                    millis.put(STAGES[i], stageNanos[i] / 1_000_000.0);
+                }
+            }
+            return millis;
+        }
+
+        /**
+         * 自开始以来的耗时（毫秒）
+         */
+        public double elapsedMillis() {
+            return (System.nanoTime() - start) / 1_000_000.0;
+        }
+
+        public void success() {
+            finish("success");
+        }
+
+        /**
+         * 处理失败：失败计入当前（未结束的）阶段；未匹配模板单独计数
+         */
+        public void failure(Throwable e) {
+            if (finished) {
+                return;
+            }
+            if (!recording) {
+                finished = true;
+                return;
+            }
+            if (e instanceof TemplateNotMatchedException) {
+                Counter.builder(TEMPLATE_MISS_COUNTER)
+                        .description("未匹配到模板的票据数")
+                        .register(meterRegistry)
+                        .increment();
+                finish("template_miss");
+                return;
+            }
+            Counter.builder(FAILURE_COUNTER)
+                    .description("处理失败数")
+                    .tag("template", templateName)
+                    .tag("stage", currentStage)
+                    .tag("reason", reason(e))
+                    .register(meterRegistry)
+                    .increment();
+            finish("failure");
+        }
+
+        private void finish(String outcome) {
+            // 结果返回后关闭文档失败时不重复上报
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (!recording) {
+                return;
+            }
+            for (int i = 0; i < STAGES.length; i++) {
+                if (stageNanos[i] >= 0) {
+                    Timer.builder(STAGE_TIMER)
+                            .description("票据处理各阶段耗时")
+                            .tag("template", templateName)
+                            .tag("stage", STAGES[i])
+                            .register(meterRegistry)
+                            .record(stageNanos[i], TimeUnit.NANOSECONDS);
+                }
+            }
+            recordFontCache("hit", fontCacheHits);
+            recordFontCache("miss", fontCacheMisses);
+            if ("success".equals(outcome)) {
+                Timer.builder(FONT_TIMER)
+                        .description("单张票据非内嵌字体解析耗时")
+                        .tag("template", templateName)
+                        .register(meterRegistry)
+                        .record(fontNanos, TimeUnit.NANOSECONDS);
+            }
+            Timer.builder(DOCUMENT_TIMER)
+                    .description("单张票据端到端耗时")
+                    .tag("template", templateName)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        private void recordFontCache(String result, int count) {
+            if (count > 0) {
+                Counter.builder(FONT_CACHE_COUNTER)
+                        .description("跨文档字体缓存查询数")
+                        .tag("result", result)
+                        .register(meterRegistry)
+                        .increment(count);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceAnalysisResult;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.exception.BusinessException;
+import com.kinghy.invoiceanalysis.exception.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 分析结果缓存
+ * 以上传内容的SHA-256为键缓存成功的分析结果（LRU，按条目数限制容量），同一内容并发提交时只解析一次，其余请求等待同一结果。
+ *
+ * 模板在解析之后才能确定，因此条目按内容哈希存放并记录命中的模板；模板变更时由模板服务调用invalidate淘汰相关条目。
+ * 每次淘汰递增代数，计算开始后发生过淘汰的结果不写入缓存，避免以旧模板解析的结果在模板变更后被缓存。
+ * 未匹配模板与解析失败不缓存；等待中的请求与计算线程得到相同的异常。
+ */
+@Slf4j
+@Component
+public class AnalysisResultCache {
+
+    @Value("${analysis.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${analysis.cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+
+    /**
+     * 访问顺序的LRU表，读写均在自身锁内
+     */
+    private final LinkedHashMap<String, InvoiceAnalysisResult> entries = new LinkedHashMap<String, InvoiceAnalysisResult>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, InvoiceAnalysisResult> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * 正在计算的内容哈希
+     */
+    private final Map<String, CompletableFuture<InvoiceAnalysisResult>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 淘汰代数
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public boolean isEnabled() {
+        return enabled && maxEntries > 0;
+    }
+
+    /**
+     * 获取内容哈希对应的结果，未命中时执行loader；同一哈希正在计算时等待其结果
+     * @param contentHash 上传内容的SHA-256
+     * @param fileName 本次请求的文件名（缓存结果按本次文件名返回）
+     * @param loader 实际分析
+     */
+    public InvoiceAnalysisResult get(String contentHash, String fileName, Supplier<InvoiceAnalysisResult> loader) {
+        InvoiceAnalysisResult cached = lookup(contentHash);
+        if (cached != null) {
+            analysisMetrics.recordCache("hit");
+            return copy(cached, fileName);
+        }
+
+        CompletableFuture<InvoiceAnalysisResult> future = new CompletableFuture<>();
+        CompletableFuture<InvoiceAnalysisResult> running = inFlight.putIfAbsent(contentHash, future);
+        if (running != null) {
+            analysisMetrics.recordCache("coalesced");
+            log.debug("相同内容正在分析，等待其结果: {}", fileName);
+            return copy(await(running, fileName), fileName);
+        }
+
+        try {
+            // 注册前另一个计算可能刚好完成
+            cached = lookup(contentHash);
+            if (cached != null) {
+                analysisMetrics.recordCache("hit");
+                future.complete(cached);
+                return copy(cached, fileName);
+            }
+            analysisMetrics.recordCache("miss");
+            long startGeneration = generation.get();
+            InvoiceAnalysisResult result = loader.get();
+            synchronized (entries) {
+                if (startGeneration == generation.get()) {
+                    entries.put(contentHash, result);
+                }
+            }
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(contentHash, future);
+        }
+    }
+
+    /**
+     * 淘汰命中指定模板的结果
+     */
+    public void invalidate(String templateName) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            Iterator<InvoiceAnalysisResult> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (templateName.equals(iterator.next().getTemplateName())) {
+                    iterator.remove();
+                }
+            }
+        }
+        log.debug("模板 {} 变更，已淘汰其分析结果缓存", templateName);
+    }
+
+    /**
+     * 模板保存后淘汰缓存：识别条件未变时只影响该模板的结果，新增模板或识别条件变化可能改变其他票据的匹配结果，全部淘汰
+     * @param previous 保存前的模板，新增时为null
+     * @param saved 保存后的模板
+     */
+    public void invalidate(InvoiceTemplate previous, InvoiceTemplate saved) {
+        if (previous != null && Objects.equals(previous.getIdentifiers(), saved.getIdentifiers())) {
+            invalidate(saved.getTemplateName());
+        } else {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * 淘汰全部结果（模板重新加载时调用）
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+        log.debug("模板重新加载，已清空分析结果缓存");
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private InvoiceAnalysisResult lookup(String contentHash) {
+        synchronized (entries) {
+            return entries.get(contentHash);
+        }
+    }
+
+    private InvoiceAnalysisResult await(CompletableFuture<InvoiceAnalysisResult> running, String fileName) {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(ErrorCode.ANALYSIS_TIMEOUT, "等待相同文件的分析结果时被中断: " + fileName, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new BusinessException(ErrorCode.INTERNAL_ERROR, cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 缓存结果在多个请求间共享，按本次请求的文件名返回浅拷贝
+     */
+    private InvoiceAnalysisResult copy(InvoiceAnalysisResult result, String fileName) {
+        return new InvoiceAnalysisResult(fileName, result.getTemplateName(),
+                new HashMap<>(result.getFields()),
+                result.getItems() != null ? new ArrayList<>(result.getItems()) : null);
+    }
+}
@@ -0,0 +1,136 @@
+package com.kinghy.invoiceanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 待分析的发票文件
+ * 与MultipartFile解耦，请求线程返回后工作线程仍可读取文件内容。
+ * 小文件保存在内存中，大文件落盘为临时文件（见UploadSpooler），close时删除临时文件。
+ */
+@Slf4j
+public class AnalysisSource implements Closeable {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final String fileName;
+
+    private final byte[] content;
+
+    private final File file;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile String contentHash;
+
+    /**
+     * 内存中的文件内容
+     */
+    public AnalysisSource(String fileName, byte[] content) {
+        this.fileName = fileName;
+        this.content = content;
+        this.file = null;
+    }
+
+    /**
+     * 已落盘的临时文件，close时删除
+     */
+    public AnalysisSource(String fileName, File file) {
+        this.fileName = fileName;
+        this.content = null;
+        this.file = file;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getSize() {
+        return file != null ? file.length() : content.length;
+    }
+
+    /**
+     * 是否已落盘
+     */
+    public boolean isSpooled() {
+        return file != null;
+    }
+
+    /**
+     * 落盘文件，内存模式返回null
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 内存内容，落盘模式返回null
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    public InputStream openStream() throws IOException {
+        return file != null ? new FileInputStream(file) : new ByteArrayInputStream(content);
+    }
+
+    /**
+     * 文件内容的SHA-256（十六进制小写），落盘文件分块流式计算，首次调用后缓存
+     */
+    public String getContentHash() throws IOException {
+        String hash = contentHash;
+        if (hash == null) {
+            MessageDigest digest = sha256();
+            if (content != null) {
+                digest.update(content);
+            } else {
+                try (InputStream in = openStream()) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            }
+            hash = toHex(digest.digest());
+            contentHash = hash;
+        }
+        return hash;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM不支持SHA-256", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 删除临时文件（可重复调用）
+     */
+    @Override
+    public void close() {
+        if (file != null && closed.compareAndSet(false, true) && file.exists() && !file.delete()) {
+            log.warn("删除上传临时文件失败，将在退出时删除: {}", file.getAbsolutePath());
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.sample.SyntheticInvoiceGenerator;
+import com.kinghy.invoiceanalysis.sample.SyntheticInvoiceOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动预热
+ * 应用启动后在后台线程中将样本票据反复送入InvoiceProcessor，使PDFBox字体/CMap初始化、类加载与文本提取、
+ * 视觉行重建、各策略的JIT编译在接收真实流量之前完成。
+ *
+ * 样本：每个已加载模板按固定种子合成 samples-per-template 张票据，另可从 sample-dir 读取真实票据PDF
+ * （合成票据只使用标准14字体，真实票据的内嵌中文字体需由样本目录覆盖）。
+ * 逐轮处理全部样本，达到 min-rounds 后本轮耗时与上一轮相差不超过 stable-tolerance 即认为已稳定，
+ * 最多 max-rounds 轮或 timeout-ms。预热结果不计入指标、诊断记录与结果缓存。
+ *
+ * 作为健康检查项（analysisWarmup）：预热完成前为 OUT_OF_SERVICE，/actuator/health 返回503，
+ * 滚动发布时以此作为就绪探针，新实例在预热完成后才接收流量。预热失败或超时不阻塞就绪。
+ */
+@Slf4j
+@Component
+public class AnalysisWarmup implements HealthIndicator {
+
+    private static final long SAMPLE_SEED = 20240101L;
+
+    @Value("${analysis.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${analysis.warmup.samples-per-template:3}")
+    private int samplesPerTemplate;
+
+    /**
+     * 真实样本PDF目录（可选），目录下全部 *.pdf 参与预热
+     */
+    @Value("${analysis.warmup.sample-dir:}")
+    private String sampleDir;
+
+    @Value("${analysis.warmup.min-rounds:3}")
+    private int minRounds;
+
+    @Value("${analysis.warmup.max-rounds:30}")
+    private int maxRounds;
+
+    /**
+     * 相邻两轮耗时的相对差异不超过该值时认为已稳定
+     */
+    @Value("${analysis.warmup.stable-tolerance:0.1}")
+    private double stableTolerance;
+
+    @Value("${analysis.warmup.timeout-ms:60000}")
+    private long timeoutMs;
+
+    @Autowired
+    private TemplateService templateService;
+
+    @Autowired
+    private InvoiceProcessor invoiceProcessor;
+
+    private volatile State state = State.PENDING;
+
+    private volatile int rounds;
+    private volatile int samples;
+    private volatile long firstRoundMs = -1;
+    private volatile long lastRoundMs = -1;
+    private volatile long elapsedMs;
+
+    private enum State {
+        PENDING, RUNNING, COMPLETED, TIMED_OUT, FAILED, DISABLED
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            state = State.DISABLED;
+            log.info("启动预热未启用");
+            return;
+        }
+        state = State.RUNNING;
+        Thread warmer = new Thread(this::run, "analysis-warmup");
+        warmer.setDaemon(true);
+        warmer.start();
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder;
+        switch (state) {
+            case PENDING:
+            case RUNNING:
+                builder = Health.outOfService();
+                break;
+            default:
+                builder = Health.up();
+        }
+        builder.withDetail("state", state.name());
+        if (state != State.DISABLED) {
+            builder.withDetail("samples", samples)
+                    .withDetail("rounds", rounds)
+                    .withDetail("firstRoundMs", firstRoundMs)
+                    .withDetail("lastRoundMs", lastRoundMs)
+                    .withDetail("elapsedMs", elapsedMs);
+        }
+        return builder.build();
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        try {
+            List<Sample> sampleList = loadSamples();
+            samples = sampleList.size();
+            if (sampleList.isEmpty()) {
+                log.warn("没有可用的预热样本，跳过预热");
+                state = State.COMPLETED;
+                return;
+            }
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            log.info("开始启动预热，样本数: {}", sampleList.size());
+            while (rounds < maxRounds) {
+                long roundMs = runRound(sampleList);
+                rounds++;
+                if (firstRoundMs < 0) {
+                    firstRoundMs = roundMs;
+                }
+                boolean stable = lastRoundMs > 0
+                        && Math.abs(roundMs - lastRoundMs) <= lastRoundMs * stableTolerance;
+                lastRoundMs = roundMs;
+                elapsedMs = elapsedMs(start);
+                log.debug("预热第 {} 轮耗时 {} ms", rounds, roundMs);
+                if (rounds >= minRounds && stable) {
+                    break;
+                }
+                if (System.nanoTime() >= deadline) {
+                    state = State.TIMED_OUT;
+                    log.warn("启动预热超时，已执行 {} 轮，首轮 {} ms，末轮 {} ms", rounds, firstRoundMs, lastRoundMs);
+                    return;
+                }
+            }
+            state = State.COMPLETED;
+            log.info("启动预热完成，共 {} 轮，首轮 {} ms，末轮 {} ms，总耗时 {} ms",
+                    rounds, firstRoundMs, lastRoundMs, elapsedMs);
+        } catch (RuntimeException e) {
+            state = State.FAILED;
+            log.error("启动预热失败，跳过预热", e);
+        } finally {
+            elapsedMs = elapsedMs(start);
+        }
+    }
+
+    /**
+     * 处理全部样本一次，返回本轮耗时；单张样本失败（如合成票据未匹配模板）不影响其他样本
+     */
+    private long runRound(List<Sample> sampleList) {
+        long start = System.nanoTime();
+        for (Sample sample : sampleList) {
+            try {
+                invoiceProcessor.warmUp(new ByteArrayInputStream(sample.pdf), sample.fileName);
+            } catch (IOException | RuntimeException e) {
+                if (rounds == 0) {
+                    log.warn("预热样本处理失败: {}，原因: {}", sample.fileName, e.getMessage());
+                }
+            }
+        }
+        return elapsedMs(start);
+    }
+
+    private List<Sample> loadSamples() {
+        List<Sample> sampleList = new ArrayList<>();
+        for (InvoiceTemplate template : templateService.getAllTemplates()) {
+            try {
+                SyntheticInvoiceGenerator generator = new SyntheticInvoiceGenerator(template,
+                        SyntheticInvoiceOptions.builder().seed(SAMPLE_SEED).build());
+                for (int i = 1; i <= samplesPerTemplate; i++) {
+                    String fileName = "warmup-" + template.getTemplateName() + "-" + i + ".pdf";
+                    sampleList.add(new Sample(fileName, generator.generate(fileName).getPdf()));
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("模板 {} 无法合成预热样本，原因: {}", template.getTemplateName(), e.getMessage());
+            }
+        }
+
+        if (sampleDir != null && !sampleDir.isEmpty()) {
+            File[] files = new File(sampleDir).listFiles((d, name) -> name.toLowerCase().endsWith(".pdf"));
+            if (files == null) {
+                log.warn("预热样本目录不存在: {}", sampleDir);
+            } else {
+                Arrays.sort(files);
+                for (File file : files) {
+                    try {
+                        sampleList.add(new Sample(file.getName(), Files.readAllBytes(file.toPath())));
+                    } catch (IOException e) {
+                        log.warn("读取预热样本失败: {}，原因: {}", file.getName(), e.getMessage());
+                    }
+                }
+            }
+        }
+        return sampleList;
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static final class Sample {
+        private final String fileName;
+        private final byte[] pdf;
+
+        private Sample(String fileName, byte[] pdf) {
+            this.fileName = fileName;
+            this.pdf = pdf;
+        }
+    }
+}
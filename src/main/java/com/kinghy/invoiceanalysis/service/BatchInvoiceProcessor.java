@@ -0,0 +1,265 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.config.AnalysisExecutorConfig;
+import com.kinghy.invoiceanalysis.entity.dto.BatchAnalysisResult;
+import com.kinghy.invoiceanalysis.entity.dto.BatchFileResult;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceAnalysisResult;
+import com.kinghy.invoiceanalysis.exception.BusinessException;
+import com.kinghy.invoiceanalysis.exception.ErrorCode;
+import com.kinghy.invoiceanalysis.exception.InvalidRequestException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 批量发票处理器
+ * 将多个PDF分发到有界线程池并行调用InvoiceProcessor，整批耗时约等于最慢的单个文件。
+ * 单个文件失败或超时只影响该文件自身的结果。
+ * 整批另有从提交起算的截止时间：到期时仍在排队、尚未开始的文件直接以ANALYSIS_TIMEOUT返回，请求线程不会无限等待。
+ */
+@Slf4j
+@Service
+public class BatchInvoiceProcessor {
+
+    /**
+     * 中文Windows压缩软件默认使用GBK编码文件名；设置了UTF-8标志位的条目仍按UTF-8解析
+     */
+    private static final Charset ZIP_NAME_CHARSET = Charset.forName("GBK");
+
+    @Autowired
+    private InvoiceProcessor invoiceProcessor;
+
+    @Autowired
+    private UploadSpooler uploadSpooler;
+
+    @Autowired
+    @Qualifier(AnalysisExecutorConfig.ANALYSIS_EXECUTOR)
+    private ThreadPoolTaskExecutor analysisExecutor;
+
+    /**
+     * 单文件超时（毫秒），从该文件开始执行时计时，排队时间不计入
+     */
+    @Value("${analysis.batch.file-timeout-ms:30000}")
+    private long fileTimeoutMs;
+
+    /**
+     * 整批超时（毫秒），从提交时计时，包含排队时间
+     */
+    @Value("${analysis.batch.timeout-ms:120000}")
+    private long batchTimeoutMs;
+
+    @Value("${analysis.batch.max-files:100}")
+    private int maxFiles;
+
+    /**
+     * 单个ZIP解压后的总大小上限（字节），防止压缩炸弹
+     */
+    @Value("${analysis.batch.max-zip-bytes:209715200}")
+    private long maxZipBytes;
+
+    /**
+     * 解压ZIP中的PDF条目（忽略目录、非PDF文件和系统生成的隐藏文件）
+     * @param zipName ZIP文件名（用于日志）
+     * @param inputStream ZIP输入流
+     * @return PDF文件列表
+     */
+    public List<AnalysisSource> unzip(String zipName, InputStream inputStream) throws IOException {
+        List<AnalysisSource> sources = new ArrayList<>();
+        long totalBytes = 0;
+        try (ZipInputStream zip = new ZipInputStream(inputStream, ZIP_NAME_CHARSET)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String entryName = entry.getName();
+                String baseName = entryName.substring(entryName.lastIndexOf('/') + 1);
+                if (entry.isDirectory() || entryName.startsWith("__MACOSX/") || baseName.startsWith(".")
+                        || !baseName.toLowerCase().endsWith(".pdf")) {
+                    log.debug("跳过ZIP条目: {} ({})", entryName, zipName);
+                    continue;
+                }
+                if (sources.size() >= maxFiles) {
+                    throw new InvalidRequestException("单批最多支持 " + maxFiles + " 个文件");
+                }
+                AnalysisSource source = uploadSpooler.spool(baseName, zip, maxZipBytes - totalBytes);
+                sources.add(source);
+                totalBytes += source.getSize();
+            }
+        } catch (IOException | RuntimeException e) {
+            sources.forEach(AnalysisSource::close);
+            throw e;
+        }
+        log.info("ZIP {} 解压得到 {} 个PDF文件", zipName, sources.size());
+        return sources;
+    }
+
+    /**
+     * 并行处理一批PDF文件
+     * @param sources 待处理文件（处理结束后由本方法负责释放）
+     * @return 与输入顺序一致的逐文件结果
+     */
+    public BatchAnalysisResult process(List<AnalysisSource> sources) {
+        if (sources.size() > maxFiles) {
+            sources.forEach(AnalysisSource::close);
+            throw new InvalidRequestException("单批最多支持 " + maxFiles + " 个文件");
+        }
+        long batchStart = System.nanoTime();
+        long batchDeadline = batchStart + TimeUnit.MILLISECONDS.toNanos(batchTimeoutMs);
+
+        List<FileTask> tasks = new ArrayList<>(sources.size());
+        List<Future<BatchFileResult>> futures = new ArrayList<>(sources.size());
+        for (AnalysisSource source : sources) {
+            FileTask task = new FileTask(source);
+            tasks.add(task);
+            if (!source.getFileName().toLowerCase().endsWith(".pdf")) {
+                futures.add(null);
+                continue;
+            }
+            try {
+                futures.add(analysisExecutor.submit(task));
+            } catch (TaskRejectedException e) {
+                log.warn("分析线程池已满，拒绝文件: {}", source.getFileName());
+                futures.add(null);
+            }
+        }
+
+        List<BatchFileResult> results = new ArrayList<>(sources.size());
+        boolean interrupted = false;
+        for (int i = 0; i < tasks.size(); i++) {
+            FileTask task = tasks.get(i);
+            Future<BatchFileResult> future = futures.get(i);
+            String fileName = task.source.getFileName();
+            if (future == null) {
+                task.source.close();
+                results.add(fileName.toLowerCase().endsWith(".pdf")
+                        ? BatchFileResult.fail(fileName, ErrorCode.SERVER_BUSY.getCode(), ErrorCode.SERVER_BUSY.getDefaultMessage(), 0)
+                        : BatchFileResult.fail(fileName, ErrorCode.INVALID_REQUEST.getCode(), "仅支持PDF文件", 0));
+            } else if (interrupted) {
+                cancel(task, future);
+                results.add(BatchFileResult.fail(fileName, ErrorCode.INTERNAL_ERROR.getCode(), "批量分析被中断", 0));
+            } else {
+                try {
+                    results.add(await(task, future, batchDeadline));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    interrupted = true;
+                    cancel(task, future);
+                    results.add(BatchFileResult.fail(fileName, ErrorCode.INTERNAL_ERROR.getCode(), "批量分析被中断", 0));
+                }
+            }
+        }
+
+        int successCount = 0;
+        for (BatchFileResult result : results) {
+            if (Boolean.TRUE.equals(result.getSuccess())) {
+                successCount++;
+            }
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStart);
+        log.info("批量分析完成，共 {} 个文件，成功 {}，失败 {}，耗时 {} ms",
+                results.size(), successCount, results.size() - successCount, elapsedMs);
+        return new BatchAnalysisResult(results.size(), successCount, results.size() - successCount, elapsedMs, results);
+    }
+
+    /**
+     * 等待单个文件结果：单文件超时从任务开始执行时起算，同时不超过整批截止时间
+     * @param batchDeadline 整批截止时间（System.nanoTime()），到期时尚未开始的文件不再执行
+     */
+    private BatchFileResult await(FileTask task, Future<BatchFileResult> future, long batchDeadline)
+            throws InterruptedException {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(fileTimeoutMs);
+        while (true) {
+            long now = System.nanoTime();
+            boolean started = task.started;
+            long deadline = started ? Math.min(task.startNanos + timeoutNanos, batchDeadline) : batchDeadline;
+            long waitNanos = deadline - now;
+            if (waitNanos <= 0) {
+                // PDFBox解析不响应中断，超时的任务可能继续占用工作线程直到解析结束，但不再阻塞本批响应
+                cancel(task, future);
+                String fileName = task.source.getFileName();
+                if (!started) {
+                    log.warn("批量分析超时，文件排队未开始: {}，整批超时阈值: {} ms", fileName, batchTimeoutMs);
+                    return BatchFileResult.fail(fileName, ErrorCode.ANALYSIS_TIMEOUT.getCode(),
+                            "批量分析超时，文件未开始分析", 0);
+                }
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(now - task.startNanos);
+                log.warn("文件分析超时: {}，已执行 {} ms", fileName, elapsedMs);
+                return BatchFileResult.fail(fileName, ErrorCode.ANALYSIS_TIMEOUT.getCode(),
+                        ErrorCode.ANALYSIS_TIMEOUT.getDefaultMessage(), elapsedMs);
+            }
+            try {
+                // 排队中的任务随时可能开始执行，每次最多等待一个单文件超时后重新计算截止时间
+                return future.get(started ? waitNanos : Math.min(waitNanos, timeoutNanos), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // 任务可能已开始执行，重新计算截止时间
+            } catch (ExecutionException e) {
+                return BatchFileResult.fail(task.source.getFileName(), ErrorCode.INTERNAL_ERROR.getCode(),
+                        e.getCause() != null ? e.getCause().getMessage() : e.getMessage(), 0);
+            }
+        }
+    }
+
+    /**
+     * 取消任务；尚未开始执行的任务不会再运行，由此处释放其暂存文件
+     */
+    private void cancel(FileTask task, Future<BatchFileResult> future) {
+        if (future.cancel(true) && !task.started) {
+            task.source.close();
+        }
+    }
+
+    /**
+     * 单文件分析任务，记录实际开始执行的时间用于超时判断
+     */
+    private final class FileTask implements Callable<BatchFileResult> {
+
+        private final AnalysisSource source;
+
+        private volatile long startNanos;
+
+        private volatile boolean started;
+
+        private FileTask(AnalysisSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public BatchFileResult call() {
+            startNanos = System.nanoTime();
+            started = true;
+            String fileName = source.getFileName();
+            try {
+                InvoiceAnalysisResult result = invoiceProcessor.process(source);
+                return BatchFileResult.success(fileName, result, elapsedMs());
+            } catch (BusinessException e) {
+                log.warn("文件分析失败: {}，原因: {}", fileName, e.getMessage());
+                return BatchFileResult.fail(fileName, e.getErrorCode().getCode(), e.getMessage(), elapsedMs());
+            } catch (Exception e) {
+                log.error("文件分析异常: {}", fileName, e);
+                return BatchFileResult.fail(fileName, ErrorCode.INTERNAL_ERROR.getCode(),
+                        ErrorCode.INTERNAL_ERROR.getDefaultMessage(), elapsedMs());
+            } finally {
+                source.close();
+            }
+        }
+
+        private long elapsedMs() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.kinghy.invoiceanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fontbox.ttf.OTFParser;
+import org.apache.fontbox.ttf.OpenTypeFont;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeCollection;
+import org.apache.fontbox.ttf.TrueTypeFont;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 系统字体索引：PostScript名 -> 字体文件
+ * 只记录名称、格式与文件路径，字体程序在首次使用时才由PdfFontMapper加载。
+ *
+ * 索引可持久化（每行：格式、文件大小、修改时间、路径、PostScript名），重新扫描时大小与修改时间未变的文件直接复用已有条目，
+ * 只解析新增或变化的文件；无法解析的文件以BAD格式记录，避免每次启动重复解析。
+ * 镜像构建时可执行 main 方法预先生成索引文件，容器启动时直接加载。
+ */
+@Slf4j
+public final class FontIndex {
+
+    public static final String FORMAT_TTF = "TTF";
+    public static final String FORMAT_OTF = "OTF";
+    private static final String FORMAT_BAD = "BAD";
+
+    private static final String HEADER = "# invoice-analysis font index v1";
+
+    private static final List<String> DEFAULT_DIRS = Arrays.asList(
+            "/usr/share/fonts", "/usr/local/share/fonts", "/usr/X11R6/lib/X11/fonts", "/opt/fonts",
+            System.getProperty("user.home") + "/.fonts", System.getProperty("user.home") + "/.local/share/fonts",
+            "C:/Windows/Fonts", "/System/Library/Fonts", "/Library/Fonts", System.getProperty("user.home") + "/Library/Fonts");
+
+    /**
+     * 索引条目
+     */
+    public static final class Entry {
+        private final String format;
+        private final long length;
+        private final long lastModified;
+        private final String path;
+        private final String postScriptName;
+
+        private Entry(String format, long length, long lastModified, String path, String postScriptName) {
+            this.format = format;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.path = path;
+            this.postScriptName = postScriptName;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getPostScriptName() {
+            return postScriptName;
+        }
+
+        /**
+         * 字体集合（.ttc）中的字体需按名称从集合中取出
+         */
+        public boolean isCollection() {
+            return path.toLowerCase(Locale.ROOT).endsWith(".ttc");
+        }
+    }
+
+    private final List<Entry> entries;
+
+    private final Map<String, Entry> byName;
+
+    private FontIndex(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+        Map<String, Entry> names = new HashMap<>();
+        for (Entry entry : entries) {
+            if (!FORMAT_BAD.equals(entry.format)) {
+                names.putIfAbsent(normalize(entry.postScriptName), entry);
+            }
+        }
+        this.byName = names;
+    }
+
+    public static FontIndex empty() {
+        return new FontIndex(new ArrayList<>());
+    }
+
+    /**
+     * 字体名归一化：去掉空格、连字符与下划线并转为小写
+     */
+    public static String normalize(String name) {
+        StringBuilder normalized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != ' ' && c != '-' && c != '_') {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * 按PostScript名查找（归一化后比较），不存在时返回null
+     */
+    public Entry find(String postScriptName) {
+        return byName.get(normalize(postScriptName));
+    }
+
+    /**
+     * 可用字体数（不含无法解析的文件）
+     */
+    public int size() {
+        return byName.size();
+    }
+
+    /**
+     * 解析目录配置（逗号分隔），为空时使用各平台的系统字体目录
+     */
+    public static List<File> directories(String dirs) {
+        List<File> result = new ArrayList<>();
+        List<String> paths = dirs == null || dirs.trim().isEmpty() ? DEFAULT_DIRS : Arrays.asList(dirs.split(","));
+        for (String path : paths) {
+            if (!path.trim().isEmpty()) {
+                result.add(new File(path.trim()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 扫描字体目录
+     * @param previous 已有索引，大小与修改时间未变的文件直接复用其条目
+     */
+    public static FontIndex scan(List<File> dirs, FontIndex previous) {
+        Map<String, List<Entry>> known = new HashMap<>();
+        for (Entry entry : previous.entries) {
+            known.computeIfAbsent(entry.path, p -> new ArrayList<>()).add(entry);
+        }
+        List<Entry> entries = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (File dir : dirs) {
+            collectFontFiles(dir, files);
+        }
+        int parsed = 0;
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            List<Entry> cached = known.get(path);
+            if (cached != null && cached.get(0).length == file.length()
+                    && cached.get(0).lastModified == file.lastModified()) {
+                entries.addAll(cached);
+                continue;
+            }
+            entries.addAll(parse(file));
+            parsed++;
+        }
+        log.debug("字体目录扫描完成，字体文件: {}，重新解析: {}", files.size(), parsed);
+        return new FontIndex(entries);
+    }
+
+    /**
+     * 扫描结果与另一个索引是否一致（用于判断是否需要重新保存）
+     */
+    public boolean sameFiles(FontIndex other) {
+        if (entries.size() != other.entries.size()) {
+            return false;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            Entry a = entries.get(i);
+            Entry b = other.entries.get(i);
+            if (!a.path.equals(b.path) || a.length != b.length || a.lastModified != b.lastModified
+                    || !a.postScriptName.equals(b.postScriptName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static FontIndex load(File file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("字体索引文件格式不正确: " + file.getAbsolutePath());
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 5) {
+                    throw new IOException("字体索引文件格式不正确: " + file.getAbsolutePath());
+                }
+                entries.add(new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3], parts[4]));
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("字体索引文件格式不正确: " + file.getAbsolutePath(), e);
+        }
+        return new FontIndex(entries);
+    }
+
+    /**
+     * 保存索引（先写临时文件再替换，避免并发启动的实例读到写了一半的文件）
+     */
+    public void save(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("无法创建字体索引目录: " + dir.getAbsolutePath());
+        }
+        File temp = new File(dir, file.getName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Entry entry : entries) {
+                writer.write(entry.format + "\t" + entry.length + "\t" + entry.lastModified + "\t"
+                        + entry.path + "\t" + entry.postScriptName);
+                writer.newLine();
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void collectFontFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectFontFiles(child, files);
+                continue;
+            }
+            String name = child.getName().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".ttf") || name.endsWith(".otf") || name.endsWith(".ttc")) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * 只读取字体的名称与格式，字形数据按需解析，不会整体读入
+     */
+    private static List<Entry> parse(File file) {
+        List<Entry> entries = new ArrayList<>();
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        try {
+            if (name.endsWith(".ttc")) {
+                try (TrueTypeCollection collection = new TrueTypeCollection(file)) {
+                    collection.processAllFonts(font -> addEntry(entries, font, length, lastModified, path));
+                }
+            } else {
+                TrueTypeFont font = name.endsWith(".otf")
+                        ? new OTFParser(false, true).parse(file) : new TTFParser(false, true).parse(file);
+                try {
+                    addEntry(entries, font, length, lastModified, path);
+                } finally {
+                    font.close();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("无法解析字体文件: {}，原因: {}", path, e.getMessage());
+            entries.clear();
+        }
+        if (entries.isEmpty()) {
+            entries.add(new Entry(FORMAT_BAD, length, lastModified, path, ""));
+        }
+        return entries;
+    }
+
+    private static void addEntry(List<Entry> entries, TrueTypeFont font, long length, long lastModified, String path)
+            throws IOException {
+        String postScriptName = font.getName();
+        if (postScriptName == null || postScriptName.trim().isEmpty() || postScriptName.contains("\t")) {
+            return;
+        }
+        String format = font instanceof OpenTypeFont && ((OpenTypeFont) font).isPostScript() ? FORMAT_OTF : FORMAT_TTF;
+        entries.add(new Entry(format, length, lastModified, path, postScriptName.trim()));
+    }
+
+    /**
+     * 构建期生成索引：FontIndex &lt;索引文件&gt; [字体目录,...]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("用法: FontIndex <索引文件> [字体目录,...]");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        FontIndex previous = file.isFile() ? load(file) : empty();
+        FontIndex index = scan(directories(args.length > 1 ? args[1] : null), previous);
+        index.save(file);
+        Map<String, Integer> formats = new LinkedHashMap<>();
+        for (Entry entry : index.entries) {
+            formats.merge(entry.format, 1, Integer::sum);
+        }
+        System.out.println("字体索引已写入 " + file.getAbsolutePath() + "，条目: " + formats);
+    }
+}
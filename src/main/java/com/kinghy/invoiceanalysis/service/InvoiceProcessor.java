@@ -1,36 +1,53 @@
 package com.kinghy.invoiceanalysis.service;
 
-import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
+import com.kinghy.invoiceanalysis.config.AnalysisExecutorConfig;
+import com.kinghy.invoiceanalysis.entity.dto.AnalysisTrace;
+import com.kinghy.invoiceanalysis.entity.dto.FieldTrace;
 import com.kinghy.invoiceanalysis.entity.dto.InvoiceAnalysisResult;
 import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.entity.dto.MultiPageAnalysisResult;
+import com.kinghy.invoiceanalysis.entity.dto.PageAnalysisResult;
+import com.kinghy.invoiceanalysis.entity.dto.PjcyItemNode;
+import com.kinghy.invoiceanalysis.exception.BusinessException;
+import com.kinghy.invoiceanalysis.exception.ErrorCode;
 import com.kinghy.invoiceanalysis.exception.ExtractionFailedException;
-import com.kinghy.invoiceanalysis.exception.InvalidTemplateOptionException;
+import com.kinghy.invoiceanalysis.exception.InvalidRequestException;
 import com.kinghy.invoiceanalysis.exception.PdfParseException;
-import com.kinghy.invoiceanalysis.exception.StrategyNotFoundException;
 import com.kinghy.invoiceanalysis.exception.TemplateNotMatchedException;
+import com.kinghy.invoiceanalysis.strategy.CompiledField;
+import com.kinghy.invoiceanalysis.strategy.CompiledTemplate;
 import com.kinghy.invoiceanalysis.strategy.ExtractionContext;
-import com.kinghy.invoiceanalysis.strategy.ExtractionStrategy;
-import com.kinghy.invoiceanalysis.strategy.StrategyFactory;
+import com.kinghy.invoiceanalysis.strategy.TemplateCompiler;
+import com.kinghy.invoiceanalysis.strategy.util.KeywordIndex;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import com.kinghy.invoiceanalysis.strategy.util.PageLayout;
+import com.kinghy.invoiceanalysis.strategy.util.SpatialIndex;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.text.TextPosition;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Comparator;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 发票处理器（策略模式重构版）
- * 消除if-else分支，通过策略工厂动态选择策略
+ * 消除if-else分支，模板经TemplateCompiler预编译后按提取计划执行策略
  */
 @Slf4j
 @Service
@@ -40,7 +57,48 @@ public class InvoiceProcessor {
     private TemplateService templateService;
 
     @Autowired
-    private StrategyFactory strategyFactory;
+    private TemplateCompiler templateCompiler;
+
+    @Autowired
+    private PdfDocumentLoader pdfDocumentLoader;
+
+    @Autowired
+    private LineItemExtractor lineItemExtractor;
+
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+
+    @Autowired
+    @Qualifier(AnalysisExecutorConfig.FIELD_EXECUTOR)
+    private ThreadPoolTaskExecutor fieldExecutor;
+
+    /**
+     * 是否在单张票据内并行提取字段
+     */
+    @Value("${analysis.field.parallel.enabled:false}")
+    private boolean parallelFields;
+
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
+    @Autowired
+    private AnalysisDiagnostics analysisDiagnostics;
+
+    @Autowired
+    private PdfFontMapper pdfFontMapper;
+
+    @Autowired
+    private SharedFontCache sharedFontCache;
+
+    @Autowired
+    @Qualifier(AnalysisExecutorConfig.PAGE_EXECUTOR)
+    private ThreadPoolTaskExecutor pageExecutor;
+
+    /**
+     * 多页模式单个文件最大页数
+     */
+    @Value("${analysis.page.max-pages:500}")
+    private int maxPages;
 
     /**
      * 处理PDF发票文件
@@ -48,11 +106,7 @@ public class InvoiceProcessor {
      * @return 提取的字段Map
      */
     public InvoiceAnalysisResult process(File pdfFile) {
-        try (PDDocument document = PDDocument.load(pdfFile)) {
-            return processDocument(document, pdfFile.getName());
-        } catch (IOException e) {
-            throw new PdfParseException("PDF文件解析失败: " + pdfFile.getName(), e);
-        }
+        return analyze(pdfFile.getName(), "PDF文件解析失败: ", () -> pdfDocumentLoader.load(pdfFile), false);
     }
 
     /**
@@ -62,170 +116,469 @@ public class InvoiceProcessor {
      * @return 提取的字段Map
      */
     public InvoiceAnalysisResult process(InputStream inputStream, String fileName) {
-        try (PDDocument document = PDDocument.load(inputStream)) {
-            return processDocument(document, fileName);
+        return analyze(fileName, "PDF输入流解析失败: ", () -> pdfDocumentLoader.load(inputStream), false);
+    }
+
+    /**
+     * 处理暂存的上传文件（落盘文件按需随机读取，不整体读入内存）
+     * @param source 上传文件
+     * @return 提取的字段Map
+     */
+    public InvoiceAnalysisResult process(AnalysisSource source) {
+        return process(source, false);
+    }
+
+    /**
+     * 处理暂存的上传文件
+     * 内容相同的文件直接返回缓存结果（见AnalysisResultCache）；开启追踪时绕过缓存，追踪反映实际执行过程。
+     * @param source 上传文件
+     * @param trace 是否在结果中附带执行追踪（各阶段与字段耗时、命中关键字、取用字形、请求线程分配字节数）
+     * @return 提取的字段Map
+     */
+    public InvoiceAnalysisResult process(AnalysisSource source, boolean trace) {
+        if (trace || !analysisResultCache.isEnabled()) {
+            return analyze(source, trace);
+        }
+        String contentHash;
+        try {
+            contentHash = source.getContentHash();
+        } catch (IOException e) {
+            throw new PdfParseException("PDF文件读取失败: " + source.getFileName(), e);
+        }
+        return analysisResultCache.get(contentHash, source.getFileName(), () -> analyze(source, false));
+    }
+
+    private InvoiceAnalysisResult analyze(AnalysisSource source, boolean trace) {
+        return analyze(source.getFileName(), "PDF文件解析失败: ", () -> pdfDocumentLoader.load(source), trace);
+    }
+
+    /**
+     * 加载并处理文档：上报指标，失败或慢分析写入诊断记录，按采样输出详细日志
+     * @param parseError 加载失败时的错误信息前缀
+     * @param trace 是否在结果中附带执行追踪
+     */
+    private InvoiceAnalysisResult analyze(String fileName, String parseError, DocumentSource source, boolean trace) {
+        // 字段级现场始终记录（每字段一个小对象），字形外接框只在开启追踪时记录
+        AnalysisTrace analysisTrace = new AnalysisTrace();
+        boolean verbose = analysisDiagnostics.sampleVerbose();
+        long allocatedBefore = trace ? allocatedBytes() : -1;
+        AnalysisMetrics.DocumentTimer timer = analysisMetrics.startDocument();
+        try (PDDocument document = source.load()) {
+            timer.stage(AnalysisMetrics.STAGE_LOAD);
+            InvoiceAnalysisResult result = processPage(document, 1, Integer.MAX_VALUE, fileName,
+                    timer, analysisTrace, trace, verbose);
+            recordSuccess(fileName, timer, analysisTrace, result);
+            if (trace) {
+                long allocatedAfter = allocatedBytes();
+                if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                    analysisTrace.setAllocatedBytes(allocatedAfter - allocatedBefore);
+                }
+                result.setTrace(analysisTrace);
+            }
+            return result;
+        } catch (IOException e) {
+            recordFailure(fileName, timer, analysisTrace, e);
+            throw new PdfParseException(parseError + fileName, e);
+        } catch (RuntimeException e) {
+            recordFailure(fileName, timer, analysisTrace, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 启动预热：完整执行一次加载与分析，不经过结果缓存，不计入指标与诊断记录
+     * @param inputStream PDF输入流
+     * @param fileName 文件名（用于日志）
+     */
+    public InvoiceAnalysisResult warmUp(InputStream inputStream, String fileName) throws IOException {
+        AnalysisMetrics.DocumentTimer timer = analysisMetrics.startUnrecordedDocument();
+        try (PDDocument document = pdfDocumentLoader.load(inputStream)) {
+            timer.stage(AnalysisMetrics.STAGE_LOAD);
+            return processPage(document, 1, Integer.MAX_VALUE, fileName, timer, new AnalysisTrace(), false, false);
+        }
+    }
+
+    /**
+     * 多页模式：每页视为一张独立票据，逐页提取字形、匹配模板并提取字段（明细表只读取本页），页面在线程池中并行处理。
+     * PDDocument不是线程安全的，每个工作线程独立加载一份文档，从共享计数器领取页码，调用线程同样参与处理；
+     * 单页失败只影响该页结果。不经过结果缓存。
+     * @param source 上传文件
+     * @return 按页码排列的逐页结果
+     */
+    public MultiPageAnalysisResult processPages(AnalysisSource source) {
+        long start = System.nanoTime();
+        String fileName = source.getFileName();
+        try (PDDocument document = pdfDocumentLoader.load(source)) {
+            int pageCount = document.getNumberOfPages();
+            if (pageCount > maxPages) {
+                throw new InvalidRequestException("PDF页数超出限制: " + pageCount + "，最多 " + maxPages + " 页");
+            }
+            PageAnalysisResult[] results = new PageAnalysisResult[pageCount];
+            AtomicInteger nextPage = new AtomicInteger(1);
+
+            int workers = Math.min(pageCount, pageExecutor.getMaxPoolSize());
+            List<Future<?>> futures = new ArrayList<>(workers);
+            for (int i = 1; i < workers; i++) {
+                futures.add(pageExecutor.submit(() -> {
+                    try (PDDocument own = pdfDocumentLoader.load(source)) {
+                        analyzePages(own, fileName, nextPage, results);
+                    }
+                    return null;
+                }));
+            }
+            analyzePages(document, fileName, nextPage, results);
+            awaitPages(fileName, futures);
+
+            int successCount = 0;
+            for (int i = 0; i < pageCount; i++) {
+                if (results[i] == null) {
+                    results[i] = PageAnalysisResult.fail(i + 1, ErrorCode.INTERNAL_ERROR.getCode(),
+                            ErrorCode.INTERNAL_ERROR.getDefaultMessage(), 0);
+                } else if (results[i].getSuccess()) {
+                    successCount++;
+                }
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("多页分析完成: {}，页数: {}，成功: {}，耗时: {} ms", fileName, pageCount, successCount, elapsedMs);
+            return new MultiPageAnalysisResult(fileName, pageCount, successCount, pageCount - successCount,
+                    elapsedMs, Arrays.asList(results));
+        } catch (IOException e) {
+            throw new PdfParseException("PDF文件解析失败: " + fileName, e);
+        }
+    }
+
+    /**
+     * 从共享计数器领取页码并逐页处理，直到全部页面被领取
+     */
+    private void analyzePages(PDDocument document, String fileName, AtomicInteger nextPage,
+                              PageAnalysisResult[] results) {
+        int page;
+        while ((page = nextPage.getAndIncrement()) <= results.length) {
+            results[page - 1] = analyzePage(document, fileName, page);
+        }
+    }
+
+    /**
+     * 等待其他工作线程处理完已领取的页面；工作线程加载文档失败时，未领取的页面已由其余线程处理
+     */
+    private void awaitPages(String fileName, List<Future<?>> futures) {
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                log.warn("多页分析工作线程失败: {}，原因: {}", fileName, e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new BusinessException(ErrorCode.ANALYSIS_TIMEOUT, "多页分析被中断: " + fileName, e);
+            }
+        }
+    }
+
+    /**
+     * 处理单页票据，失败转换为该页的错误结果
+     */
+    private PageAnalysisResult analyzePage(PDDocument document, String fileName, int pageNumber) {
+        long start = System.nanoTime();
+        String label = fileName + " 第" + pageNumber + "页";
+        AnalysisTrace analysisTrace = new AnalysisTrace();
+        // 文档由工作线程加载一次后逐页复用，单页不记录加载阶段
+        AnalysisMetrics.DocumentTimer timer = analysisMetrics.startDocument();
+        try {
+            InvoiceAnalysisResult result = processPage(document, pageNumber, pageNumber, label,
+                    timer, analysisTrace, false, analysisDiagnostics.sampleVerbose());
+            result.setFileName(fileName);
+            recordSuccess(label, timer, analysisTrace, result);
+            return PageAnalysisResult.success(pageNumber, result, elapsedMs(start));
+        } catch (BusinessException e) {
+            recordFailure(label, timer, analysisTrace, e);
+            log.warn("页面分析失败: {}，原因: {}", label, e.getMessage());
+            return PageAnalysisResult.fail(pageNumber, e.getErrorCode().getCode(), e.getMessage(), elapsedMs(start));
         } catch (IOException e) {
-            throw new PdfParseException("PDF输入流解析失败: " + fileName, e);
+            recordFailure(label, timer, analysisTrace, e);
+            log.warn("页面解析失败: {}，原因: {}", label, e.getMessage());
+            return PageAnalysisResult.fail(pageNumber, ErrorCode.PDF_PARSE_FAILED.getCode(),
+                    "PDF页面解析失败: " + label, elapsedMs(start));
+        } catch (RuntimeException e) {
+            recordFailure(label, timer, analysisTrace, e);
+            log.error("页面分析异常: {}", label, e);
+            return PageAnalysisResult.fail(pageNumber, ErrorCode.INTERNAL_ERROR.getCode(),
+                    ErrorCode.INTERNAL_ERROR.getDefaultMessage(), elapsedMs(start));
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 成功计入指标，输出摘要，慢分析写入诊断记录
+     */
+    private void recordSuccess(String fileName, AnalysisMetrics.DocumentTimer timer, AnalysisTrace trace,
+                               InvoiceAnalysisResult result) {
+        trace.setStageMillis(timer.stageMillis());
+        trace.setTotalMillis(timer.elapsedMillis());
+        timer.success();
+        log.info("分析完成: {}，模板: {}，字段: {}/{}，明细: {}，耗时: {} ms", fileName, result.getTemplateName(),
+                result.getFields().size(), trace.getFields().size(),
+                result.getItems() != null ? result.getItems().size() : 0, Math.round(trace.getTotalMillis()));
+        analysisDiagnostics.recordIfSlow(fileName, result.getTemplateName(), trace);
+    }
+
+    /**
+     * 失败计入指标与诊断记录（结果返回后关闭文档失败时不重复记录）
+     */
+    private void recordFailure(String fileName, AnalysisMetrics.DocumentTimer timer, AnalysisTrace trace, Exception e) {
+        if (timer.isFinished()) {
+            return;
+        }
+        trace.setStageMillis(timer.stageMillis());
+        trace.setTotalMillis(timer.elapsedMillis());
+        String templateName = timer.getTemplateName();
+        // 未匹配模板时匹配阶段已结束计时
+        String stage = e instanceof TemplateNotMatchedException ? AnalysisMetrics.STAGE_MATCH : timer.getCurrentStage();
+        timer.failure(e);
+        analysisDiagnostics.recordFailure(fileName, templateName, stage, trace, e);
+    }
+
+    /**
+     * 文档加载方式
+     */
+    @FunctionalInterface
+    private interface DocumentSource {
+        PDDocument load() throws IOException;
+    }
+
+    /**
+     * 处理一张票据，处理期间从跨文档字体缓存租借字体，结束后归还
+     */
+    private InvoiceAnalysisResult processPage(PDDocument document, int pageNumber, int lastDetailPage, String fileName,
+                                              AnalysisMetrics.DocumentTimer timer, AnalysisTrace trace,
+                                              boolean traceGlyphs, boolean verbose) throws IOException {
+        try (SharedFontCache.Lease ignored = sharedFontCache.lease(document, timer)) {
+            return extractPage(document, pageNumber, lastDetailPage, fileName, timer, trace, traceGlyphs, verbose);
         }
     }
 
     /**
-     * 处理PDF文档
+     * 提取一张票据（各阶段耗时记入timer，视觉行文本与字段现场记入trace）
+     * @param pageNumber 票据所在页（从1开始），主字段在该页提取
+     * @param lastDetailPage 明细表读取的最后一页（含）
+     * @param fileName 文件名（多页模式下带页码，用于日志与诊断）
+     * @param traceGlyphs 是否记录关键字外接框与取用的字形
+     * @param verbose 是否以INFO级别输出视觉行文本与逐字段结果（采样）
      */
-    private InvoiceAnalysisResult processDocument(PDDocument document, String fileName) throws IOException {
+    private InvoiceAnalysisResult extractPage(PDDocument document, int pageNumber, int lastDetailPage, String fileName,
+                                              AnalysisMetrics.DocumentTimer timer, AnalysisTrace trace,
+                                              boolean traceGlyphs, boolean verbose) throws IOException {
         Map<String, String> extractedData = new HashMap<>();
+        long fontNanos = pdfFontMapper.resolutionNanos();
 
         // 1. 提取带位置的文本（按坐标排序，避免阅读顺序错乱）
-        TextPositionExtractor positionExtractor = new TextPositionExtractor();
-        positionExtractor.setSortByPosition(true);
-        positionExtractor.setStartPage(1);
-        positionExtractor.setEndPage(1);
-        positionExtractor.getText(document);
-        List<TextPosition> allTextPositions = positionExtractor.getTextPositions();
-        log.debug("提取文本位置信息，总字符数: {}", allTextPositions.size());
-
-        // 2. 按视觉行重建文本，确保同一行字段保持相邻关系
-        String fullText = rebuildVisualLines(allTextPositions);
-        log.info("视觉行文本:{}", fullText);
+        PageGlyphs pageGlyphs = PageGlyphCollector.forCurrentThread().collect(document, pageNumber);
+        timer.stage(AnalysisMetrics.STAGE_STRIP);
+        log.debug("提取文本位置信息，总字符数: {}", pageGlyphs.size());
+
+        // 2. 按视觉行重建文本，确保同一行字段保持相邻关系（布局在所有字段间共享）
+        PageLayout pageLayout = PageLayout.build(pageGlyphs);
+        String fullText = pageLayout.getText();
+        timer.stage(AnalysisMetrics.STAGE_LAYOUT);
+        trace.setPageText(fullText);
+        if (verbose) {
+            log.info("[采样] {} 视觉行文本:\n{}", fileName, fullText);
+        } else {
+            log.debug("视觉行文本:\n{}", fullText);
+        }
 
         // 3. 查找匹配的模板
         InvoiceTemplate template = templateService.findTemplateFor(fullText);
+        timer.stage(AnalysisMetrics.STAGE_MATCH);
         if (template == null) {
             log.warn("未找到匹配的模板: {}", fileName);
             throw new TemplateNotMatchedException(fileName);
         }
-        log.info("使用模板: {}", template.getTemplateName());
+        log.debug("使用模板: {}", template.getTemplateName());
+        timer.template(template.getTemplateName());
 
         // 4. 获取页面尺寸
-        PDPage page = document.getPage(0);
+        PDPage page = document.getPage(pageNumber - 1);
         float pageWidth = page.getMediaBox().getWidth();
         float pageHeight = page.getMediaBox().getHeight();
 
-        // 5. 遍历字段，使用策略模式提取（消除if-else）
-        for (FieldDefinition field : template.getFields()) {
-            String strategyName = field.getStrategy();
-
-            // 从工厂获取策略
-            ExtractionStrategy strategy = strategyFactory.getStrategy(strategyName);
-            if (strategy == null) {
-                log.error("字段 {} 使用了未知策略: {}", field.getFieldName(), strategyName);
-                throw new StrategyNotFoundException(field.getFieldName(), strategyName);
-            }
+        // 5. 获取预编译模板（策略解析与options校验仅在模板加载后执行一次）
+        CompiledTemplate compiledTemplate = templateCompiler.compile(template);
 
-            // 验证options参数
-            if (!strategy.validateOptions(field.getOptions())) {
-                log.error("字段 {} 的options参数验证失败", field.getFieldName());
-                throw new InvalidTemplateOptionException(field.getFieldName(), strategyName);
-            }
+        // 6. 构建页面级关键字索引与空间索引（每个文档一次，所有字段共享）
+        KeywordIndex keywordIndex = KeywordIndex.build(pageGlyphs, compiledTemplate.getKeywordAutomaton());
+        SpatialIndex spatialIndex = SpatialIndex.build(pageGlyphs);
 
+        // 7. 按预编译的提取计划执行策略（可选并行）
+        List<ExtractionContext> contexts = new ArrayList<>(compiledTemplate.getFields().size());
+        for (CompiledField field : compiledTemplate.getFields()) {
+            FieldTrace fieldTrace = new FieldTrace(field.getFieldName(), field.getStrategyName());
+            trace.getFields().add(fieldTrace);
             // 构建上下文
-            ExtractionContext context = ExtractionContext.builder()
+            contexts.add(ExtractionContext.builder()
                     .document(document)
-                    .pageNumber(1)
+                    .pageNumber(pageNumber)
                     .fullText(fullText)
-                    .allTextPositions(allTextPositions)
-                    .fieldDefinition(field)
-                    .templateFields(template.getFields())
+                    .pageGlyphs(pageGlyphs)
+                    .pageLayout(pageLayout)
+                    .fieldDefinition(field.getDefinition())
+                    .compiledOptions(field.getCompiledOptions())
+                    .templateFields(compiledTemplate.getFieldDefinitions())
+                    .keywordIndex(keywordIndex)
+                    .spatialIndex(spatialIndex)
                     .pageWidth(pageWidth)
                     .pageHeight(pageHeight)
-                    .build();
+                    .trace(fieldTrace)
+                    .traceGlyphs(traceGlyphs)
+                    .build());
+        }
 
-            log.info("上下文: {}", context);
-            // 执行策略
-            try {
-                String value = strategy.extract(context);
-                if (value != null && !value.isEmpty()) {
-                    extractedData.put(field.getFieldName(), value);
-                    log.info("提取字段成功: {} = {}", field.getFieldName(), value);
-                } else {
-                    log.warn("字段 {} 提取结果为空", field.getFieldName());
-                }
-            } catch (Exception e) {
-                log.error("字段 {} 提取失败: {}", field.getFieldName(), e.getMessage(), e);
-                throw new ExtractionFailedException(field.getFieldName(), e);
+        String[] values = parallelFields && contexts.size() > 1
+                ? extractFieldsInParallel(timer, compiledTemplate.getFields(), contexts)
+                : extractFieldsSequentially(timer, compiledTemplate.getFields(), contexts);
+
+        // 按模板顺序合并结果（同名字段以后者为准）
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null && !values[i].isEmpty()) {
+                extractedData.put(compiledTemplate.getFields().get(i).getFieldName(), values[i]);
+            }
+        }
+        timer.stage(AnalysisMetrics.STAGE_FIELDS);
+        if (verbose) {
+            for (FieldTrace fieldTrace : trace.getFields()) {
+                log.info("[采样] {} 字段 {}（{}，关键字: {}）耗时 {} ms，结果: {}", fileName, fieldTrace.getFieldName(),
+                        fieldTrace.getStrategy(), fieldTrace.getMatchedKeyword(),
+                        String.format("%.3f", fieldTrace.getElapsedMillis()), fieldTrace.getValue());
             }
         }
 
-        return new InvoiceAnalysisResult(fileName, template.getTemplateName(), extractedData);
+        // 8. 提取明细表（模板配置了detailFields时，逐页流式读取）
+        List<PjcyItemNode> items = null;
+        if (compiledTemplate.getDetailTable() != null) {
+            items = new ArrayList<>();
+            lineItemExtractor.extract(document, pageNumber, lastDetailPage, pageLayout,
+                    compiledTemplate.getDetailTable(), items::add);
+            log.debug("提取明细项: {} 条", items.size());
+            timer.stage(AnalysisMetrics.STAGE_DETAILS);
+        }
+        fontNanos = pdfFontMapper.resolutionNanos() - fontNanos;
+        timer.fontResolution(fontNanos);
+        trace.setFontMillis(fontNanos / 1_000_000.0);
+
+        return new InvoiceAnalysisResult(fileName, template.getTemplateName(), extractedData, items);
+    }
+
+    private String[] extractFieldsSequentially(AnalysisMetrics.DocumentTimer timer, List<CompiledField> fields,
+                                               List<ExtractionContext> contexts) {
+        String[] values = new String[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            values[i] = extractField(timer, fields.get(i), contexts.get(i));
+        }
+        return values;
     }
 
     /**
-     * 按坐标重建视觉行文本，避免默认阅读顺序导致的错行。
+     * 并行执行字段策略
+     * 策略为无状态单例，上下文中的页面数据（字形、布局、索引）均为不可变或线程安全对象；PDDocument不是线程安全的，策略不得访问。
+     * 失败语义与顺序执行一致：按模板顺序等待结果，抛出模板顺序中第一个失败字段的异常；
+     * 某字段失败后，排在其后且尚未开始的字段直接跳过，已在执行的被中断。
      */
-    private String rebuildVisualLines(List<TextPosition> allTextPositions) {
-        if (allTextPositions == null || allTextPositions.isEmpty()) {
-            return "";
+    private String[] extractFieldsInParallel(AnalysisMetrics.DocumentTimer timer, List<CompiledField> fields,
+                                             List<ExtractionContext> contexts) {
+        AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+        List<Future<String>> futures = new ArrayList<>(fields.size());
+        for (int i = 0; i < fields.size(); i++) {
+            final int index = i;
+            futures.add(fieldExecutor.submit(() -> {
+                if (index > firstFailure.get()) {
+                    return null;
+                }
+                try {
+                    return extractField(timer, fields.get(index), contexts.get(index));
+                } catch (RuntimeException e) {
+                    firstFailure.accumulateAndGet(index, Math::min);
+                    throw e;
+                }
+            }));
         }
 
-        List<TextPosition> sorted = allTextPositions.stream()
-                .filter(tp -> tp != null && tp.getUnicode() != null && !tp.getUnicode().isEmpty())
-                .sorted(Comparator
-                        .comparing(TextPosition::getYDirAdj)
-                        .thenComparing(TextPosition::getXDirAdj))
-                .collect(Collectors.toList());
-
-        List<List<TextPosition>> lines = new ArrayList<>();
-        List<TextPosition> currentLine = new ArrayList<>();
-        float currentY = Float.MIN_VALUE;
-        float currentHeight = 0F;
-
-        for (TextPosition tp : sorted) {
-            float y = tp.getYDirAdj();
-            float height = tp.getHeightDir();
-
-            if (currentLine.isEmpty()) {
-                currentLine.add(tp);
-                currentY = y;
-                currentHeight = height;
-                continue;
-            }
-
-            float tolerance = Math.min(Math.max(currentHeight * 0.6F, 1.5F), 6.0F);
-            if (Math.abs(y - currentY) <= tolerance) {
-                currentLine.add(tp);
-                currentY = (currentY * (currentLine.size() - 1) + y) / currentLine.size();
-                currentHeight = Math.max(currentHeight, height);
-            } else {
-                lines.add(currentLine);
-                currentLine = new ArrayList<>();
-                currentLine.add(tp);
-                currentY = y;
-                currentHeight = height;
+        String[] values = new String[fields.size()];
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                values[i] = futures.get(i).get();
+            } catch (ExecutionException e) {
+                cancelFrom(futures, i + 1);
+                Throwable cause = e.getCause();
+                if (cause instanceof ExtractionFailedException) {
+                    throw (ExtractionFailedException) cause;
+                }
+                throw new ExtractionFailedException(fields.get(i).getFieldName(), cause);
+            } catch (InterruptedException e) {
+                cancelFrom(futures, i);
+                Thread.currentThread().interrupt();
+                throw new ExtractionFailedException(fields.get(i).getFieldName(), e);
             }
         }
+        return values;
+    }
 
-        if (!currentLine.isEmpty()) {
-            lines.add(currentLine);
+    private void cancelFrom(List<Future<String>> futures, int from) {
+        for (int i = from; i < futures.size(); i++) {
+            futures.get(i).cancel(true);
         }
+    }
 
-        List<String> visualLines = new ArrayList<>();
-        for (List<TextPosition> line : lines) {
-            line.sort(Comparator.comparing(TextPosition::getXDirAdj));
-            String lineText = buildLineText(line);
-            if (!lineText.isEmpty()) {
-                visualLines.add(lineText);
+    /**
+     * 执行单个字段的策略并记录耗时，失败时转换为ExtractionFailedException
+     */
+    private String extractField(AnalysisMetrics.DocumentTimer timer, CompiledField field, ExtractionContext context) {
+        String strategyName = field.getStrategyName();
+        FieldTrace trace = context.getTrace();
+        log.trace("字段上下文: {}", context);
+        long start = System.nanoTime();
+        try {
+            String value = field.getStrategy().extract(context);
+            boolean empty = value == null || value.isEmpty();
+            long nanos = System.nanoTime() - start;
+            timer.recordField(strategyName, nanos, empty);
+            if (trace != null) {
+                trace.setElapsedMillis(nanos / 1_000_000.0);
+                trace.setValue(value);
             }
+            if (!empty) {
+                log.debug("提取字段成功: {} = {}", field.getFieldName(), value);
+            } else {
+                log.debug("字段 {} 提取结果为空", field.getFieldName());
+            }
+            return value;
+        } catch (Exception e) {
+            long nanos = System.nanoTime() - start;
+            timer.recordField(strategyName, nanos, false);
+            if (trace != null) {
+                trace.setElapsedMillis(nanos / 1_000_000.0);
+                trace.setError(e.getMessage());
+            }
+            log.error("字段 {} 提取失败: {}", field.getFieldName(), e.getMessage(), e);
+            throw new ExtractionFailedException(field.getFieldName(), e);
         }
-
-        return String.join("\n", visualLines);
     }
 
-    private String buildLineText(List<TextPosition> line) {
-        StringBuilder sb = new StringBuilder();
-        TextPosition prev = null;
-
-        for (TextPosition curr : line) {
-            if (prev != null) {
-                float gap = curr.getXDirAdj() - prev.getEndX();
-                float spaceThreshold = Math.max(prev.getWidthOfSpace() * 0.35F, 1.0F);
-                if (gap > spaceThreshold) {
-                    sb.append(' ');
-                }
+    /**
+     * 当前线程累计分配的堆内存字节数，JVM不支持线程分配统计时返回-1
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            if (threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled()) {
+                return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
             }
-            sb.append(curr.getUnicode());
-            prev = curr;
         }
-
-        return sb.toString().replaceAll("\\s+", " ").trim();
+        return -1;
     }
 }
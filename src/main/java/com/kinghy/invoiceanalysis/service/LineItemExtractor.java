@@ -0,0 +1,461 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.entity.dto.PjcyItemNode;
+import com.kinghy.invoiceanalysis.strategy.CompiledDetailTable;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import com.kinghy.invoiceanalysis.strategy.util.PageLayout;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 明细表提取引擎
+ * 按模板detailFields定位一次表头行并据此划分列边界，随后逐页流式读取表格行、生成明细项交给调用方。
+ * 每次只持有当前页的字形与布局，处理完即释放；一页的明细行延迟到下一页读完后才交给调用方（下一页开头可能是折行续写），
+ * 已生成的明细项由调用方持有，数量受max-items限制。
+ *
+ * 规则：
+ * 1. 表头行为同时包含全部tableIdentifiers（忽略空白）的视觉行；同一行中列表头重复出现时（左右两栏并排的票据）按栏拆分；
+ * 2. 相邻两列表头之间取中点为列边界，字形按中心X归入列；
+ * 3. 后续页若再次出现表头行，从表头行之后继续读取，否则从页首读取；
+ * 4. 每页只接受落在表头列带（表头左右各放宽一个平均列宽）内、列边界都落在空白处、且填充列数不少于每栏列数一半
+ *    （至少2列）的行；本页已读到表格行后，第一条不满足列带或列边界条件的行即视为表格在本页结束，
+ *    表格下方的合计、其他信息、收款单位等字段与页眉、页脚、页码都不会被当作明细；
+ * 5. 只有每栏第一列有内容的行视为上一行第一列的折行续写，页首的折行续写并入上一页该栏的最后一行；
+ * 6. 遇到包含endKeywords的行即结束提取。
+ */
+@Slf4j
+@Component
+public class LineItemExtractor {
+
+    @Value("${analysis.detail.max-pages:500}")
+    private int maxPages;
+
+    @Value("${analysis.detail.max-items:20000}")
+    private int maxItems;
+
+    /**
+     * 流式提取明细项（从第1页读到文档末尾）
+     * @param document PDF文档
+     * @param firstPageLayout 第1页视觉行布局（主字段提取时已构建，直接复用），为null时重新提取
+     * @param table 明细表提取计划
+     * @param sink 明细项接收方，按页、按栏、按行顺序回调
+     * @return 提取的明细项数量
+     */
+    public int extract(PDDocument document, PageLayout firstPageLayout, CompiledDetailTable table,
+                       Consumer<PjcyItemNode> sink) throws IOException {
+        return extract(document, 1, document.getNumberOfPages(), firstPageLayout, table, sink);
+    }
+
+    /**
+     * 流式提取指定页范围内的明细项
+     * @param document PDF文档
+     * @param firstPage 起始页（从1开始）
+     * @param lastPage 结束页（含）
+     * @param firstPageLayout 起始页视觉行布局（主字段提取时已构建，直接复用），为null时重新提取
+     * @param table 明细表提取计划
+     * @param sink 明细项接收方，按页、按栏、按行顺序回调
+     * @return 提取的明细项数量
+     */
+    public int extract(PDDocument document, int firstPage, int lastPage, PageLayout firstPageLayout,
+                       CompiledDetailTable table, Consumer<PjcyItemNode> sink) throws IOException {
+        int endPage = Math.min(lastPage, document.getNumberOfPages());
+        int pageCount = Math.min(endPage - firstPage + 1, maxPages);
+        TableCursor cursor = new TableCursor(table, sink, maxItems);
+
+        for (int page = firstPage; page < firstPage + pageCount && !cursor.finished; page++) {
+            PageLayout layout = page == firstPage && firstPageLayout != null ? firstPageLayout : loadPage(document, page);
+            cursor.consumePage(layout, page);
+        }
+        cursor.flush();
+
+        int remaining = endPage - firstPage + 1 - pageCount;
+        if (cursor.header == null) {
+            log.warn("未找到明细表表头: {}", table.getTableIdentifiers());
+        } else if (!cursor.finished && remaining > 0) {
+            log.warn("明细表超过最大页数 {}，其余 {} 页未处理", maxPages, remaining);
+        }
+        log.debug("明细表提取完成，明细项数: {}", cursor.itemCount);
+        return cursor.itemCount;
+    }
+
+    private PageLayout loadPage(PDDocument document, int page) throws IOException {
+        return PageLayout.build(PageGlyphCollector.forCurrentThread().collect(document, page));
+    }
+
+    /**
+     * 表头定位结果：每个已定位的列表头为一个区间，区间按X排序
+     */
+    private static final class HeaderLayout {
+
+        /**
+         * 栏数（列表头重复出现的次数）
+         */
+        private final int groups;
+
+        /**
+         * 区间 -> 栏号、列号
+         */
+        private final int[] spanGroup;
+        private final int[] spanColumn;
+
+        /**
+         * 区间起始X（第0个为负无穷），相邻表头之间取中点
+         */
+        private final float[] spanStart;
+
+        /**
+         * 每栏最左侧的列号（折行续写判断用）
+         */
+        private final int[] firstColumn;
+
+        /**
+         * 表头列带：只读取字形全部落在该范围内的行
+         */
+        private final float bandLeft;
+        private final float bandRight;
+
+        private HeaderLayout(int groups, List<float[]> spans) {
+            this.groups = groups;
+            spans.sort((a, b) -> Float.compare(a[2], b[2]));
+            int n = spans.size();
+            this.spanGroup = new int[n];
+            this.spanColumn = new int[n];
+            this.spanStart = new float[n];
+            this.firstColumn = new int[groups];
+            Arrays.fill(firstColumn, -1);
+            for (int s = 0; s < n; s++) {
+                float[] span = spans.get(s);
+                spanGroup[s] = (int) span[0];
+                spanColumn[s] = (int) span[1];
+                spanStart[s] = s == 0 ? Float.NEGATIVE_INFINITY
+                        : Math.max(spanStart[s - 1], (spans.get(s - 1)[3] + span[2]) / 2);
+                if (firstColumn[spanGroup[s]] < 0) {
+                    firstColumn[spanGroup[s]] = spanColumn[s];
+                }
+            }
+            float left = Float.POSITIVE_INFINITY;
+            float right = Float.NEGATIVE_INFINITY;
+            for (float[] span : spans) {
+                left = Math.min(left, span[2]);
+                right = Math.max(right, span[3]);
+            }
+            // 表头文字通常比列内容窄，左右各放宽一个平均列宽
+            float margin = (right - left) / n;
+            this.bandLeft = left - margin;
+            this.bandRight = right + margin;
+        }
+
+        private boolean inBand(float x) {
+            return x >= bandLeft && x <= bandRight;
+        }
+
+        private int spanOf(float x) {
+            int pos = Arrays.binarySearch(spanStart, x);
+            if (pos >= 0) {
+                // 恰好落在边界上时归入右侧区间（边界值相同时取最后一个）
+                while (pos + 1 < spanStart.length && spanStart[pos + 1] == x) {
+                    pos++;
+                }
+                return pos;
+            }
+            return Math.max(-pos - 2, 0);
+        }
+
+        private int spans() {
+            return spanStart.length;
+        }
+    }
+
+    /**
+     * 跨页的表格读取状态
+     */
+    private static final class TableCursor {
+
+        private final CompiledDetailTable table;
+        private final Consumer<PjcyItemNode> sink;
+        private final int maxItems;
+
+        private HeaderLayout header;
+        private boolean finished;
+        private int itemCount;
+
+        /**
+         * 上一页按栏缓存、尚未交给调用方的行（本页开头的折行续写还要并入）
+         */
+        private List<List<String[]>> pendingRows;
+
+        private TableCursor(CompiledDetailTable table, Consumer<PjcyItemNode> sink, int maxItems) {
+            this.table = table;
+            this.sink = sink;
+            this.maxItems = maxItems;
+        }
+
+        private void consumePage(PageLayout layout, int page) {
+            int headerLine = -1;
+            int startLine = 0;
+            for (int line = 0; line < layout.lineCount(); line++) {
+                CompactLine compact = CompactLine.of(layout, line);
+                if (compact.containsAll(table.getTableIdentifiers())) {
+                    headerLine = line;
+                    if (header == null) {
+                        header = locateColumns(layout, compact, page);
+                    }
+                    break;
+                }
+            }
+            if (header == null) {
+                return;
+            }
+            if (headerLine >= 0) {
+                startLine = headerLine + 1;
+            }
+            int minCells = minRowCells();
+
+            // 当前页按栏缓存行，下一页读完（或提取结束）后逐栏输出（两栏并排时先左栏后右栏）
+            List<List<String[]>> pageRows = new ArrayList<>(header.groups);
+            for (int g = 0; g < header.groups; g++) {
+                pageRows.add(new ArrayList<>());
+            }
+
+            boolean bodyStarted = false;
+            for (int line = startLine; line < layout.lineCount(); line++) {
+                if (isEndLine(layout, line)) {
+                    finished = true;
+                    break;
+                }
+                String[][] cells = splitLine(layout, line);
+                if (cells == null) {
+                    // 表格行之前的是页眉，之后的是表格下方的字段或页脚
+                    if (bodyStarted) {
+                        break;
+                    }
+                    continue;
+                }
+                for (int g = 0; g < header.groups; g++) {
+                    List<String[]> carried = pendingRows != null ? pendingRows.get(g) : null;
+                    if (appendRow(pageRows.get(g), carried, cells[g], header.firstColumn[g], minCells)) {
+                        bodyStarted = true;
+                    }
+                }
+            }
+
+            flush();
+            pendingRows = pageRows;
+        }
+
+        /**
+         * 把缓存的行交给调用方
+         */
+        private void flush() {
+            if (pendingRows == null) {
+                return;
+            }
+            List<List<String[]>> rowsByGroup = pendingRows;
+            pendingRows = null;
+            for (List<String[]> rows : rowsByGroup) {
+                for (String[] row : rows) {
+                    if (itemCount >= maxItems) {
+                        log.warn("明细项超过上限 {}，停止提取", maxItems);
+                        finished = true;
+                        return;
+                    }
+                    sink.accept(toItem(row));
+                    itemCount++;
+                }
+            }
+        }
+
+        private HeaderLayout locateColumns(PageLayout layout, CompactLine compact, int page) {
+            PageGlyphs glyphs = layout.getGlyphs();
+            List<CompiledDetailTable.Column> columns = table.getColumns();
+            List<float[]> spans = new ArrayList<>();
+            int groups = 1;
+
+            for (int c = 0; c < columns.size(); c++) {
+                String headerText = columns.get(c).getHeader();
+                int occurrence = 0;
+                int from = 0;
+                int index;
+                while ((index = compact.text.indexOf(headerText, from)) >= 0) {
+                    int first = compact.owners[index];
+                    int last = compact.owners[index + headerText.length() - 1];
+                    spans.add(new float[]{occurrence, c, glyphs.x(first), glyphs.x(last) + glyphs.width(last)});
+                    occurrence++;
+                    from = index + headerText.length();
+                }
+                if (occurrence == 0) {
+                    log.warn("明细列 {} 的表头 {} 未在表头行中找到", columns.get(c).getFieldName(), headerText);
+                }
+                groups = Math.max(groups, occurrence);
+            }
+
+            if (spans.isEmpty()) {
+                return null;
+            }
+            log.debug("第{}页定位到明细表头，栏数: {}，列区间数: {}", page, groups, spans.size());
+            return new HeaderLayout(groups, spans);
+        }
+
+        private boolean isEndLine(PageLayout layout, int line) {
+            if (table.getEndKeywords().isEmpty()) {
+                return false;
+            }
+            return CompactLine.of(layout, line).containsAny(table.getEndKeywords());
+        }
+
+        /**
+         * 明细行至少要填充的列数：每栏列数的一半（向上取整），至少2列
+         */
+        private int minRowCells() {
+            int columnCount = table.getColumns().size();
+            return columnCount < 2 ? 1 : Math.max(2, (columnCount + 1) / 2);
+        }
+
+        /**
+         * 按列区间切分行文本，返回 [栏][列] 的单元格值；有字形落在表头列带之外、
+         * 或列边界落在词中间（前一个字符不是空白）的行不是表格行，返回null
+         */
+        private String[][] splitLine(PageLayout layout, int line) {
+            PageGlyphs glyphs = layout.getGlyphs();
+            int columnCount = table.getColumns().size();
+            StringBuilder[] spanText = new StringBuilder[header.spans()];
+            String text = layout.getText();
+            int lastSpan = -1;
+
+            for (int offset = layout.lineTextStart(line); offset < layout.lineTextEnd(line); offset++) {
+                int glyph = layout.glyphAt(offset);
+                int span;
+                if (glyph >= 0) {
+                    float center = glyphs.x(glyph) + glyphs.width(glyph) / 2;
+                    if (!header.inBand(center)) {
+                        return null;
+                    }
+                    span = header.spanOf(center);
+                    if (lastSpan >= 0 && span != lastSpan
+                            && !Character.isWhitespace(text.charAt(offset - 1))) {
+                        return null;
+                    }
+                    lastSpan = span;
+                } else if (lastSpan >= 0) {
+                    // 补入的空格跟随前一个字符所在的列
+                    span = lastSpan;
+                } else {
+                    continue;
+                }
+                if (spanText[span] == null) {
+                    spanText[span] = new StringBuilder();
+                }
+                spanText[span].append(text.charAt(offset));
+            }
+
+            String[][] cells = new String[header.groups][columnCount];
+            for (int s = 0; s < header.spans(); s++) {
+                if (spanText[s] != null) {
+                    cells[header.spanGroup[s]][header.spanColumn[s]] = spanText[s].toString().trim();
+                }
+            }
+            return cells;
+        }
+
+        /**
+         * 追加一行；空行丢弃，只有首列有内容的行并入上一行首列（本页该栏还没有行时并入carried的最后一行），
+         * 其余填充列数少于minCells的行丢弃
+         * @param carried 上一页该栏尚未输出的行，可为null
+         * @return 是否追加或并入了该行
+         */
+        private boolean appendRow(List<String[]> rows, List<String[]> carried, String[] cells, int firstColumn,
+                                  int minCells) {
+            int filled = 0;
+            for (String cell : cells) {
+                if (cell != null && !cell.isEmpty()) {
+                    filled++;
+                }
+            }
+            if (filled == 0) {
+                return false;
+            }
+            List<String[]> target = rows.isEmpty() ? carried : rows;
+            boolean continuation = filled == 1 && firstColumn >= 0 && cells.length > 1
+                    && cells[firstColumn] != null && !cells[firstColumn].isEmpty()
+                    && target != null && !target.isEmpty();
+            if (continuation) {
+                String[] previous = target.get(target.size() - 1);
+                previous[firstColumn] = previous[firstColumn] != null
+                        ? previous[firstColumn] + cells[firstColumn] : cells[firstColumn];
+                return true;
+            }
+            if (filled < minCells) {
+                return false;
+            }
+            rows.add(cells);
+            return true;
+        }
+
+        private PjcyItemNode toItem(String[] row) {
+            PjcyItemNode item = new PjcyItemNode();
+            List<CompiledDetailTable.Column> columns = table.getColumns();
+            for (int c = 0; c < columns.size(); c++) {
+                if (row[c] != null && !row[c].isEmpty()) {
+                    columns.get(c).write(item, row[c]);
+                }
+            }
+            return item;
+        }
+    }
+
+    /**
+     * 去除空白后的行文本，保留每个字符对应的字形下标
+     */
+    private static final class CompactLine {
+
+        private final String text;
+        private final int[] owners;
+
+        private CompactLine(String text, int[] owners) {
+            this.text = text;
+            this.owners = owners;
+        }
+
+        private static CompactLine of(PageLayout layout, int line) {
+            String source = layout.getText();
+            int start = layout.lineTextStart(line);
+            int end = layout.lineTextEnd(line);
+            StringBuilder sb = new StringBuilder(end - start);
+            int[] owners = new int[end - start];
+            for (int offset = start; offset < end; offset++) {
+                char c = source.charAt(offset);
+                if (!Character.isWhitespace(c)) {
+                    owners[sb.length()] = layout.glyphAt(offset);
+                    sb.append(c);
+                }
+            }
+            return new CompactLine(sb.toString(), Arrays.copyOf(owners, sb.length()));
+        }
+
+        private boolean containsAll(List<String> keywords) {
+            for (String keyword : keywords) {
+                if (!text.contains(keyword)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean containsAny(List<String> keywords) {
+            for (String keyword : keywords) {
+                if (text.contains(keyword)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
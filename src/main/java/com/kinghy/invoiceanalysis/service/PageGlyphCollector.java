@@ -0,0 +1,370 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.fontbox.util.BoundingBox;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.DrawObject;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.contentstream.operator.state.SetGraphicsStateParameters;
+import org.apache.pdfbox.contentstream.operator.state.SetMatrix;
+import org.apache.pdfbox.contentstream.operator.text.BeginText;
+import org.apache.pdfbox.contentstream.operator.text.EndText;
+import org.apache.pdfbox.contentstream.operator.text.MoveText;
+import org.apache.pdfbox.contentstream.operator.text.MoveTextSetLeading;
+import org.apache.pdfbox.contentstream.operator.text.NextLine;
+import org.apache.pdfbox.contentstream.operator.text.SetCharSpacing;
+import org.apache.pdfbox.contentstream.operator.text.SetFontAndSize;
+import org.apache.pdfbox.contentstream.operator.text.SetTextHorizontalScaling;
+import org.apache.pdfbox.contentstream.operator.text.SetTextLeading;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRenderingMode;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRise;
+import org.apache.pdfbox.contentstream.operator.text.SetWordSpacing;
+import org.apache.pdfbox.contentstream.operator.text.ShowText;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextAdjusted;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLine;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLineAndSpace;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDCIDFont;
+import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType3Font;
+import org.apache.pdfbox.pdmodel.font.encoding.GlyphList;
+import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
+import org.apache.pdfbox.text.TextPosition;
+import org.apache.pdfbox.text.TextPositionComparator;
+import org.apache.pdfbox.util.IterativeMergeSort;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 页面字形收集器
+ * 直接基于PDFStreamEngine处理内容流，把带位置的字形写入PageGlyphs。
+ * 此前继承PDFTextStripper只为截获writeString，剥离器仍会做文章线程（bead）分区、分词分段并拼接一份随即丢弃的文本；
+ * 这里只保留影响字形结果的部分：字形位置与Unicode的计算（与PDFTextStripper所用的LegacyPDFStreamEngine一致，
+ * 该类在PDFBox中不公开）、重叠重复字形的去除、变音符合并以及按位置排序，字形顺序与原先setSortByPosition(true)的输出一致。
+ * 票据不使用文章线程，不再按bead分区。
+ *
+ * 收集器持有解析状态，不是线程安全的，通过 forCurrentThread() 按线程复用。
+ */
+@Slf4j
+public final class PageGlyphCollector extends PDFStreamEngine {
+
+    /**
+     * 与PDFTextStripper相同的附加字形名表
+     */
+    private static final GlyphList GLYPH_LIST;
+
+    static {
+        try (InputStream input = GlyphList.class.getResourceAsStream(
+                "/org/apache/pdfbox/resources/glyphlist/additional.txt")) {
+            GLYPH_LIST = new GlyphList(GlyphList.getAdobeGlyphList(), input);
+        } catch (IOException e) {
+            throw new IllegalStateException("无法加载PDFBox附加字形名表", e);
+        }
+    }
+
+    /**
+     * 收集结束后切换到该空白页，避免线程复用的收集器继续引用已关闭文档的页面
+     */
+    private static final PDPage RELEASED_PAGE = new PDPage();
+
+    private static final ThreadLocal<PageGlyphCollector> CURRENT = ThreadLocal.withInitial(PageGlyphCollector::new);
+
+    private final PageGlyphs.Builder glyphs = new PageGlyphs.Builder(2048);
+
+    private final ArrayList<TextPosition> positions = new ArrayList<>(2048);
+
+    /**
+     * 字形文本 -> x -> y，用于识别重叠绘制的重复字形（部分票据以多次绘制模拟加粗）
+     */
+    private final Map<String, TreeMap<Float, TreeSet<Float>>> drawnCharacters = new HashMap<>();
+
+    private final Map<COSDictionary, Float> fontHeights = new HashMap<>();
+
+    private int pageRotation;
+    private PDRectangle pageSize;
+    private Matrix translateMatrix;
+
+    private PageGlyphCollector() {
+        addOperator(new BeginText());
+        addOperator(new Concatenate());
+        addOperator(new DrawObject());
+        addOperator(new EndText());
+        addOperator(new SetGraphicsStateParameters());
+        addOperator(new Save());
+        addOperator(new Restore());
+        addOperator(new NextLine());
+        addOperator(new SetCharSpacing());
+        addOperator(new MoveText());
+        addOperator(new MoveTextSetLeading());
+        addOperator(new SetFontAndSize());
+        addOperator(new ShowText());
+        addOperator(new ShowTextAdjusted());
+        addOperator(new SetTextLeading());
+        addOperator(new SetMatrix());
+        addOperator(new SetTextRenderingMode());
+        addOperator(new SetTextRise());
+        addOperator(new SetWordSpacing());
+        addOperator(new SetTextHorizontalScaling());
+        addOperator(new ShowTextLine());
+        addOperator(new ShowTextLineAndSpace());
+    }
+
+    /**
+     * 当前线程的收集器
+     */
+    public static PageGlyphCollector forCurrentThread() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 收集指定页的字形（按位置排序）
+     * 只处理该页的内容流（其他页面已在加载时解析，但不会被处理）；页码超出范围时返回空字形。
+     * @param pageNumber 页码，从1开始
+     */
+    public PageGlyphs collect(PDDocument document, int pageNumber) throws IOException {
+        if (pageNumber < 1 || pageNumber > document.getNumberOfPages()) {
+            return PageGlyphs.EMPTY;
+        }
+        boolean completed = false;
+        try {
+            PDPage page = document.getPage(pageNumber - 1);
+            if (page.hasContents()) {
+                processPage(page);
+            }
+            sortByPosition();
+            for (TextPosition position : positions) {
+                glyphs.add(position);
+            }
+            PageGlyphs result = glyphs.build();
+            completed = true;
+            return result;
+        } finally {
+            reset();
+            if (!completed) {
+                // 解析中途失败时内部状态（图形状态栈、嵌套层级）不可信，丢弃该收集器
+                CURRENT.remove();
+            }
+        }
+    }
+
+    @Override
+    public void processPage(PDPage page) throws IOException {
+        pageRotation = page.getRotation();
+        pageSize = page.getCropBox();
+        if (pageSize.getLowerLeftX() == 0 && pageSize.getLowerLeftY() == 0) {
+            translateMatrix = null;
+        } else {
+            // 裁剪框不在原点时平移到原点
+            translateMatrix = Matrix.getTranslateInstance(-pageSize.getLowerLeftX(), -pageSize.getLowerLeftY());
+        }
+        super.processPage(page);
+    }
+
+    /**
+     * 计算字形位置，沿用PDFTextStripper的度量方式（宽度不计字间距与词间距、高度取字体包围盒的一半等），
+     * 以保证坐标与原先的提取结果一致。
+     * 覆盖不带unicode参数的重载：父类的该重载会先查一次toUnicode(code)再转调已废弃的重载，这里只按GLYPH_LIST查一次
+     */
+    @Override
+    protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, Vector displacement)
+            throws IOException {
+        PDGraphicsState state = getGraphicsState();
+        Matrix ctm = state.getCurrentTransformationMatrix();
+        float fontSize = state.getTextState().getFontSize();
+        float horizontalScaling = state.getTextState().getHorizontalScaling() / 100f;
+        Matrix textMatrix = getTextMatrix();
+
+        // 竖排字体的位移不适合作为字宽，按字体宽度计算
+        float displacementX = displacement.getX();
+        if (font.isVertical()) {
+            displacementX = font.getWidth(code) / 1000;
+            TrueTypeFont ttf = null;
+            if (font instanceof PDTrueTypeFont) {
+                ttf = ((PDTrueTypeFont) font).getTrueTypeFont();
+            } else if (font instanceof PDType0Font) {
+                PDCIDFont cidFont = ((PDType0Font) font).getDescendantFont();
+                if (cidFont instanceof PDCIDFontType2) {
+                    ttf = ((PDCIDFontType2) cidFont).getTrueTypeFont();
+                }
+            }
+            if (ttf != null && ttf.getUnitsPerEm() != 1000) {
+                displacementX *= 1000f / ttf.getUnitsPerEm();
+            }
+        }
+
+        float tx = displacementX * fontSize * horizontalScaling;
+        float ty = displacement.getY() * fontSize;
+        Matrix nextTextRenderingMatrix = Matrix.getTranslateInstance(tx, ty).multiply(textMatrix).multiply(ctm);
+        float nextX = nextTextRenderingMatrix.getTranslateX();
+        float nextY = nextTextRenderingMatrix.getTranslateY();
+
+        float dxDisplay = nextX - textRenderingMatrix.getTranslateX();
+        Float fontHeight = fontHeights.get(font.getCOSObject());
+        if (fontHeight == null) {
+            fontHeight = computeFontHeight(font);
+            fontHeights.put(font.getCOSObject(), fontHeight);
+        }
+        float dyDisplay = fontHeight * textRenderingMatrix.getScalingFactorY();
+
+        float glyphSpaceToTextSpaceFactor = 1 / 1000f;
+        if (font instanceof PDType3Font) {
+            glyphSpaceToTextSpaceFactor = font.getFontMatrix().getScaleX();
+        }
+        float spaceWidthText = 0;
+        try {
+            spaceWidthText = font.getSpaceWidth() * glyphSpaceToTextSpaceFactor;
+        } catch (Throwable e) {
+            log.warn("字体空格宽度读取失败: {}", e.getMessage());
+        }
+        if (spaceWidthText == 0) {
+            spaceWidthText = font.getAverageFontWidth() * glyphSpaceToTextSpaceFactor;
+            spaceWidthText *= .80f;
+        }
+        if (spaceWidthText == 0) {
+            spaceWidthText = 1.0f;
+        }
+        float spaceWidthDisplay = spaceWidthText * textRenderingMatrix.getScalingFactorX();
+
+        // 无Unicode映射时简单字体按字符码取字符，复合字体跳过（与Acrobat一致）
+        String unicode = font.toUnicode(code, GLYPH_LIST);
+        if (unicode == null) {
+            if (!(font instanceof PDSimpleFont)) {
+                return;
+            }
+            unicode = String.valueOf((char) code);
+        }
+
+        Matrix translatedTextRenderingMatrix = textRenderingMatrix;
+        if (translateMatrix != null) {
+            translatedTextRenderingMatrix = Matrix.concatenate(translateMatrix, textRenderingMatrix);
+            nextX -= pageSize.getLowerLeftX();
+            nextY -= pageSize.getLowerLeftY();
+        }
+
+        addPosition(new TextPosition(pageRotation, pageSize.getWidth(), pageSize.getHeight(),
+                translatedTextRenderingMatrix, nextX, nextY, Math.abs(dyDisplay), dxDisplay,
+                Math.abs(spaceWidthDisplay), unicode, new int[]{code}, font, fontSize,
+                (int) (fontSize * textMatrix.getScalingFactorX())));
+    }
+
+    /**
+     * 字形高度：取字体包围盒高度的一半，CapHeight或Ascent/Descent更合理时改用后者
+     */
+    private static float computeFontHeight(PDFont font) throws IOException {
+        BoundingBox bbox = font.getBoundingBox();
+        if (bbox.getLowerLeftY() < Short.MIN_VALUE) {
+            bbox.setLowerLeftY(-(bbox.getLowerLeftY() + 65536));
+        }
+        float glyphHeight = bbox.getHeight() / 2;
+
+        PDFontDescriptor fontDescriptor = font.getFontDescriptor();
+        if (fontDescriptor != null) {
+            float capHeight = fontDescriptor.getCapHeight();
+            if (Float.compare(capHeight, 0) != 0
+                    && (capHeight < glyphHeight || Float.compare(glyphHeight, 0) == 0)) {
+                glyphHeight = capHeight;
+            }
+            float ascent = fontDescriptor.getAscent();
+            float descent = fontDescriptor.getDescent();
+            if (capHeight > ascent && ascent > 0 && descent < 0
+                    && ((ascent - descent) / 2 < glyphHeight || Float.compare(glyphHeight, 0) == 0)) {
+                glyphHeight = (ascent - descent) / 2;
+            }
+        }
+
+        if (font instanceof PDType3Font) {
+            return font.getFontMatrix().transformPoint(0, glyphHeight).y;
+        }
+        return glyphHeight / 1000;
+    }
+
+    /**
+     * 去除重叠的重复字形并合并变音符
+     */
+    private void addPosition(TextPosition text) {
+        String character = text.getUnicode();
+        float x = text.getX();
+        float y = text.getY();
+        TreeMap<Float, TreeSet<Float>> sameCharacters = drawnCharacters.computeIfAbsent(character, c -> new TreeMap<>());
+        float tolerance = text.getWidth() / character.length() / 3.0f;
+        SortedMap<Float, TreeSet<Float>> xMatches = sameCharacters.subMap(x - tolerance, x + tolerance);
+        for (TreeSet<Float> xMatch : xMatches.values()) {
+            if (!xMatch.subSet(y - tolerance, y + tolerance).isEmpty()) {
+                return;
+            }
+        }
+        sameCharacters.computeIfAbsent(x, k -> new TreeSet<>()).add(y);
+
+        if (positions.isEmpty()) {
+            positions.add(text);
+            return;
+        }
+        int last = positions.size() - 1;
+        TextPosition previous = positions.get(last);
+        if (text.isDiacritic() && previous.contains(text)) {
+            previous.mergeDiacritic(text);
+        } else if (previous.isDiacritic() && text.contains(previous)) {
+            text.mergeDiacritic(previous);
+            positions.set(last, text);
+        } else {
+            positions.add(text);
+        }
+    }
+
+    /**
+     * 按阅读顺序排序（与PDFTextStripper的setSortByPosition(true)一致）。
+     * PageLayout.build之后还会按坐标再排一次，但这次排序不能省：PageGlyphs的下标顺序即阅读顺序，
+     * KeywordIndex在拼接文本上匹配关键字、各策略的稳定排序在坐标相同时都依赖它；
+     * 且TextPositionComparator按行高重叠判断同行，与PageLayout的精确坐标排序结果不同，不能互相替代。
+     * TextPositionComparator不满足传递性，JDK的排序可能抛出IllegalArgumentException，此时改用PDFBox的归并排序
+     */
+    private void sortByPosition() {
+        TextPositionComparator comparator = new TextPositionComparator();
+        try {
+            Collections.sort(positions, comparator);
+        } catch (IllegalArgumentException e) {
+            IterativeMergeSort.sort(positions, comparator);
+        }
+    }
+
+    /**
+     * 清空单页状态，保留已分配的容量
+     */
+    private void reset() {
+        positions.clear();
+        drawnCharacters.clear();
+        fontHeights.clear();
+        glyphs.clear();
+        pageSize = null;
+        translateMatrix = null;
+        try {
+            super.processPage(RELEASED_PAGE);
+        } catch (IOException e) {
+            // 空白页没有内容流，不会抛出
+            CURRENT.remove();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.kinghy.invoiceanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * PDF加载器
+ * 统一按配置的MemoryUsageSetting加载文档，限制PDFBox解析过程中的堆内存占用：
+ * main-only: 全部在内存中（PDFBox默认行为）
+ * mixed: 超过max-main-memory-bytes的缓冲写入临时文件
+ * temp-file: 缓冲全部写入临时文件
+ *
+ * 注意：PDFBox 2的PDDocument.load会从trailer递归解析全部可达对象（含每一页的页面字典与内容流，
+ * 流数据复制到ScratchFile），且COSObject不支持延迟解引用，无法只加载部分页面；
+ * 多页文档的加载内存只能由上面的memory-mode/max-main-memory-bytes约束。
+ */
+@Slf4j
+@Component
+public class PdfDocumentLoader {
+
+    private static final String MODE_MAIN_ONLY = "main-only";
+    private static final String MODE_TEMP_FILE = "temp-file";
+
+    @Value("${analysis.pdf.memory-mode:mixed}")
+    private String memoryMode;
+
+    /**
+     * mixed模式下每个文档可使用的最大堆内存（字节）
+     */
+    @Value("${analysis.pdf.max-main-memory-bytes:4194304}")
+    private long maxMainMemoryBytes;
+
+    /**
+     * PDFBox临时文件目录，为空时使用系统临时目录
+     */
+    @Value("${analysis.pdf.temp-dir:}")
+    private String tempDir;
+
+    /**
+     * 从文件加载：按需随机读取，文件内容不会整体读入内存
+     */
+    public PDDocument load(File file) throws IOException {
+        return PDDocument.load(file, memoryUsageSetting());
+    }
+
+    /**
+     * 从输入流加载：mixed/temp-file模式下输入流先复制到临时缓冲而不是整体读入内存
+     */
+    public PDDocument load(InputStream inputStream) throws IOException {
+        return PDDocument.load(inputStream, memoryUsageSetting());
+    }
+
+    /**
+     * 从暂存的上传文件加载
+     */
+    public PDDocument load(AnalysisSource source) throws IOException {
+        if (source.isSpooled()) {
+            return load(source.getFile());
+        }
+        return PDDocument.load(source.getContent(), "", null, null, memoryUsageSetting());
+    }
+
+    /**
+     * MemoryUsageSetting会被ScratchFile持有，每个文档使用独立实例
+     */
+    private MemoryUsageSetting memoryUsageSetting() {
+        MemoryUsageSetting setting;
+        if (MODE_MAIN_ONLY.equalsIgnoreCase(memoryMode)) {
+            setting = MemoryUsageSetting.setupMainMemoryOnly();
+        } else if (MODE_TEMP_FILE.equalsIgnoreCase(memoryMode)) {
+            setting = MemoryUsageSetting.setupTempFileOnly();
+        } else {
+            setting = MemoryUsageSetting.setupMixed(maxMainMemoryBytes);
+        }
+        if (tempDir != null && !tempDir.trim().isEmpty()) {
+            setting.setTempDir(new File(tempDir));
+        }
+        return setting;
+    }
+}
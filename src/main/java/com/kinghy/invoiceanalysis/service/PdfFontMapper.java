@@ -0,0 +1,323 @@
+package com.kinghy.invoiceanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fontbox.FontBoxFont;
+import org.apache.fontbox.ttf.OTFParser;
+import org.apache.fontbox.ttf.OpenTypeFont;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeCollection;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.font.CIDFontMapping;
+import org.apache.pdfbox.pdmodel.font.FontMapper;
+import org.apache.pdfbox.pdmodel.font.FontMappers;
+import org.apache.pdfbox.pdmodel.font.FontMapping;
+import org.apache.pdfbox.pdmodel.font.PDCIDSystemInfo;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PDF非内嵌字体映射
+ * 替换PDFBox默认的FontMapper：默认实现在首次遇到非内嵌字体（包括加载标准14字体）时同步扫描并解析全部系统字体，
+ * 触发扫描的请求会被阻塞数秒，且每个新容器都要重复一次。
+ *
+ * - 字体索引（FontIndex）在启动时从 analysis.font.index-file 加载，后台线程增量扫描字体目录后替换并保存；
+ *   扫描完成前的查找直接使用回退字体，文本提取不会等待扫描；
+ * - 字体名先按索引中的PostScript名精确查找，再按映射表（analysis.font.mapping）查找候选字体，
+ *   CID字体再按字符集（@GB1 / @CNS1 / @Japan1 / @Korea1）查找；都找不到时使用PDFBox自带的LiberationSans；
+ * - 字体程序在首次使用时按需加载（只读表目录），之后在进程内复用。
+ *
+ * 文本提取的字符与宽度来自ToUnicode/CMap与字宽数组，映射到的字体只影响缺少字宽时的度量，因此回退不影响提取结果。
+ * 每个线程累计字体解析耗时（resolutionNanos），InvoiceProcessor据此上报每张票据的字体解析耗时。
+ */
+@Slf4j
+@Component
+public class PdfFontMapper implements FontMapper {
+
+    private static final String LAST_RESORT_FONT = "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf";
+
+    @Value("${analysis.font.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 字体目录（逗号分隔），为空时使用各平台的系统字体目录
+     */
+    @Value("${analysis.font.dirs:}")
+    private String fontDirs;
+
+    /**
+     * 字体索引文件，为空时不持久化
+     */
+    @Value("${analysis.font.index-file:}")
+    private String indexFile;
+
+    @Value("${analysis.font.mapping:classpath:fonts/font-mapping.properties}")
+    private String mappingLocation;
+
+    private volatile FontIndex index = FontIndex.empty();
+
+    /**
+     * 归一化字体名 -> 候选PostScript名
+     */
+    private Map<String, List<String>> substitutes = Collections.emptyMap();
+
+    /**
+     * 已加载的字体程序，键为文件路径与PostScript名；加载失败记为空
+     */
+    private final Map<String, Optional<FontBoxFont>> fonts = new ConcurrentHashMap<>();
+
+    /**
+     * 打开的字体集合（.ttc），集合中的字体依赖其数据源，进程内保持打开
+     */
+    private final Map<String, TrueTypeCollection> collections = new HashMap<>();
+
+    private final ThreadLocal<long[]> resolutionNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    private TrueTypeFont lastResortFont;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            log.info("未启用托管字体映射，使用PDFBox默认FontMapper");
+            return;
+        }
+        try (InputStream inputStream = PdfFontMapper.class.getResourceAsStream(LAST_RESORT_FONT)) {
+            if (inputStream == null) {
+                throw new IOException("未找到回退字体: " + LAST_RESORT_FONT);
+            }
+            lastResortFont = new TTFParser().parse(inputStream);
+        }
+        substitutes = loadMapping();
+
+        File persisted = indexFile();
+        if (persisted != null && persisted.isFile()) {
+            try {
+                index = FontIndex.load(persisted);
+                log.info("已加载字体索引: {}，字体数: {}", persisted.getAbsolutePath(), index.size());
+            } catch (IOException e) {
+                log.warn("字体索引加载失败，将重新扫描: {}", e.getMessage());
+            }
+        }
+        FontMappers.set(this);
+
+        Thread scanner = new Thread(this::refreshIndex, "font-index");
+        scanner.setDaemon(true);
+        scanner.start();
+    }
+
+    /**
+     * 当前线程累计的字体解析耗时（纳秒）
+     */
+    public long resolutionNanos() {
+        return resolutionNanos.get()[0];
+    }
+
+    @Override
+    public FontMapping<TrueTypeFont> getTrueTypeFont(String baseFont, PDFontDescriptor fontDescriptor) {
+        long start = System.nanoTime();
+        try {
+            FontBoxFont font = find(baseFont, FontIndex.FORMAT_TTF);
+            if (font != null) {
+                return new FontMapping<>((TrueTypeFont) font, false);
+            }
+            font = find(fallbackName(fontDescriptor), FontIndex.FORMAT_TTF);
+            return new FontMapping<>(font != null ? (TrueTypeFont) font : lastResortFont, true);
+        } finally {
+            resolutionNanos.get()[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public FontMapping<FontBoxFont> getFontBoxFont(String baseFont, PDFontDescriptor fontDescriptor) {
+        long start = System.nanoTime();
+        try {
+            FontBoxFont font = find(baseFont, null);
+            if (font != null) {
+                return new FontMapping<>(font, false);
+            }
+            font = find(fallbackName(fontDescriptor), null);
+            return new FontMapping<>(font != null ? font : lastResortFont, true);
+        } finally {
+            resolutionNanos.get()[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public CIDFontMapping getCIDFont(String baseFont, PDFontDescriptor fontDescriptor, PDCIDSystemInfo cidSystemInfo) {
+        long start = System.nanoTime();
+        try {
+            CIDFontMapping mapping = cidMapping(baseFont, false);
+            if (mapping == null && cidSystemInfo != null && cidSystemInfo.getOrdering() != null) {
+                mapping = cidMapping("@" + cidSystemInfo.getOrdering(), true);
+            }
+            return mapping != null ? mapping : new CIDFontMapping(null, lastResortFont, true);
+        } finally {
+            resolutionNanos.get()[0] += System.nanoTime() - start;
+        }
+    }
+
+    private CIDFontMapping cidMapping(String name, boolean fallback) {
+        FontBoxFont otf = find(name, FontIndex.FORMAT_OTF);
+        if (otf != null) {
+            return new CIDFontMapping((OpenTypeFont) otf, null, fallback);
+        }
+        FontBoxFont ttf = find(name, FontIndex.FORMAT_TTF);
+        return ttf != null ? new CIDFontMapping(null, ttf, fallback) : null;
+    }
+
+    /**
+     * 按字体名查找：去掉子集前缀后依次尝试完整名称、去掉样式后缀（",Bold"）的名称，各自先查索引再查映射表
+     * @param format 限定格式，为null时不限
+     */
+    private FontBoxFont find(String baseFont, String format) {
+        if (baseFont == null) {
+            return null;
+        }
+        String name = baseFont.length() > 7 && baseFont.charAt(6) == '+' ? baseFont.substring(7) : baseFont;
+        FontBoxFont font = findByName(name, format);
+        int comma = name.indexOf(',');
+        if (font == null && comma > 0) {
+            font = findByName(name.substring(0, comma), format);
+        }
+        return font;
+    }
+
+    private FontBoxFont findByName(String name, String format) {
+        FontIndex current = index;
+        FontBoxFont font = load(current.find(name), format);
+        if (font != null) {
+            return font;
+        }
+        List<String> candidates = substitutes.get(FontIndex.normalize(name));
+        if (candidates != null) {
+            for (String candidate : candidates) {
+                font = load(current.find(candidate), format);
+                if (font != null) {
+                    return font;
+                }
+            }
+        }
+        return null;
+    }
+
+    private FontBoxFont load(FontIndex.Entry entry, String format) {
+        if (entry == null || (format != null && !format.equals(entry.getFormat()))) {
+            return null;
+        }
+        return fonts.computeIfAbsent(entry.getPath() + "#" + entry.getPostScriptName(), key -> {
+            try {
+                FontBoxFont font;
+                if (entry.isCollection()) {
+                    TrueTypeCollection collection;
+                    synchronized (collections) {
+                        collection = collections.get(entry.getPath());
+                        if (collection == null) {
+                            collection = new TrueTypeCollection(new File(entry.getPath()));
+                            collections.put(entry.getPath(), collection);
+                        }
+                    }
+                    font = collection.getFontByName(entry.getPostScriptName());
+                } else if (FontIndex.FORMAT_OTF.equals(entry.getFormat())) {
+                    font = new OTFParser(false, true).parse(new File(entry.getPath()));
+                } else {
+                    font = new TTFParser(false, true).parse(new File(entry.getPath()));
+                }
+                log.debug("加载字体: {} ({})", entry.getPostScriptName(), entry.getPath());
+                return Optional.ofNullable(font);
+            } catch (IOException | RuntimeException e) {
+                log.warn("加载字体失败: {}，原因: {}", entry.getPath(), e.getMessage());
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    /**
+     * 按字体描述选择回退字体名（等宽 / 衬线 / 无衬线），再经映射表查找
+     */
+    private static String fallbackName(PDFontDescriptor fontDescriptor) {
+        if (fontDescriptor == null) {
+            return "Helvetica";
+        }
+        boolean bold = fontDescriptor.isForceBold() || fontDescriptor.getFontWeight() >= 700
+                || (fontDescriptor.getFontName() != null && fontDescriptor.getFontName().toLowerCase().contains("bold"));
+        if (fontDescriptor.isFixedPitch()) {
+            return bold ? "Courier-Bold" : "Courier";
+        }
+        if (fontDescriptor.isSerif()) {
+            return bold ? "Times-Bold" : "Times-Roman";
+        }
+        return bold ? "Helvetica-Bold" : "Helvetica";
+    }
+
+    /**
+     * 后台增量扫描字体目录，完成后原子替换索引并在有变化时保存
+     */
+    private void refreshIndex() {
+        long start = System.nanoTime();
+        try {
+            FontIndex previous = index;
+            FontIndex scanned = FontIndex.scan(FontIndex.directories(fontDirs), previous);
+            index = scanned;
+            log.info("字体索引就绪，字体数: {}，耗时: {} ms", scanned.size(), (System.nanoTime() - start) / 1_000_000);
+            File persisted = indexFile();
+            if (persisted != null && !(persisted.isFile() && scanned.sameFiles(previous))) {
+                scanned.save(persisted);
+                log.info("字体索引已保存: {}", persisted.getAbsolutePath());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("字体目录扫描或索引保存失败: {}", e.getMessage());
+        }
+    }
+
+    private File indexFile() {
+        return indexFile == null || indexFile.trim().isEmpty() ? null : new File(indexFile.trim());
+    }
+
+    /**
+     * 映射表：键为PDF中的字体名（多个别名以|分隔，@开头表示CID字符集），值为逗号分隔的候选PostScript名
+     */
+    private Map<String, List<String>> loadMapping() throws IOException {
+        Resource resource = new DefaultResourceLoader().getResource(mappingLocation);
+        if (!resource.exists()) {
+            log.warn("字体映射表不存在: {}", mappingLocation);
+            return Collections.emptyMap();
+        }
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        Map<String, List<String>> mapping = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            List<String> candidates = new ArrayList<>();
+            for (String candidate : properties.getProperty(key).split(",")) {
+                if (!candidate.trim().isEmpty()) {
+                    candidates.add(candidate.trim());
+                }
+            }
+            for (String alias : key.split("\\|")) {
+                if (!alias.trim().isEmpty()) {
+                    mapping.put(FontIndex.normalize(alias.trim()), candidates);
+                }
+            }
+        }
+        return mapping;
+    }
+}
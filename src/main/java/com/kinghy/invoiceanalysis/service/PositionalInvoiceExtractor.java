@@ -1,15 +1,12 @@
 package com.kinghy.invoiceanalysis.service;
 
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.TextPosition;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 
 //@Service
 public class PositionalInvoiceExtractor {
@@ -19,13 +16,8 @@ public class PositionalInvoiceExtractor {
         File pdfFile = new File("C:\\Users\\PC\\Downloads\\42060223_0001782219.pdf");
 
         try (PDDocument document = PDDocument.load(pdfFile)) {
-            TextPositionExtractor stripper = new TextPositionExtractor();
             // 我们只处理第一页
-            stripper.setStartPage(1);
-            stripper.setEndPage(1);
-            stripper.getText(document); // 这会触发 writeString 并填充我们的列表
-
-            List<TextPosition> allTextPositions = stripper.getTextPositions();
+            PageGlyphs allTextPositions = PageGlyphCollector.forCurrentThread().collect(document, 1);
 
             // 1. 查找“交款人”
             String payer = findValueOnSameLine(allTextPositions, "交款人");
@@ -51,38 +43,39 @@ public class PositionalInvoiceExtractor {
      * @param keyword 关键字
      * @return 找到的值，否则返回null
      */
-    private static String findValueOnSameLine(List<TextPosition> allTextPositions, String keyword) {
-        TextPosition keywordPosition = findKeywordPosition(allTextPositions, keyword);
+    private static String findValueOnSameLine(PageGlyphs allTextPositions, String keyword) {
+        int keywordPosition = findKeywordPosition(allTextPositions, keyword);
 
-        if (keywordPosition == null) {
+        if (keywordPosition < 0) {
             return null;
         }
 
         // 定义查找区域 (ROI - Region of Interest)
         // Y坐标：关键字的Y坐标上下一点容差（例如，半个字符高度）
         // X坐标：从关键字的右侧开始，到页面末尾（或一个合理的最大宽度）
-        float yTolerance = keywordPosition.getHeight() / 2;
-        float roiY_start = keywordPosition.getY() - yTolerance;
-        float roiY_end = keywordPosition.getY() + keywordPosition.getHeight() + yTolerance;
-        float roiX_start = keywordPosition.getX() + keywordPosition.getWidth();
-
-        List<TextPosition> valuePositions = new ArrayList<>();
-        for (TextPosition text : allTextPositions) {
+        float yTolerance = allTextPositions.height(keywordPosition) / 2;
+        float roiY_start = allTextPositions.y(keywordPosition) - yTolerance;
+        float roiY_end = allTextPositions.y(keywordPosition) + allTextPositions.height(keywordPosition) + yTolerance;
+        float roiX_start = allTextPositions.x(keywordPosition) + allTextPositions.width(keywordPosition);
+
+        int[] valuePositions = new int[allTextPositions.size()];
+        int count = 0;
+        for (int i = 0; i < allTextPositions.size(); i++) {
             // 检查文本是否在定义的ROI内
-            if (text.getY() >= roiY_start && text.getY() <= roiY_end && text.getX() >= roiX_start) {
-                valuePositions.add(text);
+            float y = allTextPositions.y(i);
+            if (y >= roiY_start && y <= roiY_end && allTextPositions.x(i) >= roiX_start) {
+                valuePositions[count++] = i;
             }
         }
 
-        if (valuePositions.isEmpty()) {
+        if (count == 0) {
             return null;
         }
 
         // 将找到的字符按X坐标排序，然后拼接成字符串
-        valuePositions.sort(Comparator.comparing(TextPosition::getX));
         StringBuilder result = new StringBuilder();
-        for(TextPosition tp : valuePositions){
-            result.append(tp.getUnicode());
+        for (int i : allTextPositions.sortByX(Arrays.copyOf(valuePositions, count))) {
+            allTextPositions.appendUnicode(result, i);
         }
 
         // 清理一下可能存在的冒号和空格
@@ -93,21 +86,21 @@ public class PositionalInvoiceExtractor {
      * 在文本列表中查找并定位一个关键字
      * @param allTextPositions 页面上所有文本的位置信息
      * @param keyword 要查找的关键字
-     * @return 关键字最后一个字符的TextPosition，如果未找到则返回null
+     * @return 关键字最后一个字符的字形下标，如果未找到则返回-1
      */
-    private static TextPosition findKeywordPosition(List<TextPosition> allTextPositions, String keyword) {
+    private static int findKeywordPosition(PageGlyphs allTextPositions, String keyword) {
         for (int i = 0; i <= allTextPositions.size() - keyword.length(); i++) {
             // 构造一个与关键字等长的字符串进行比较
             StringBuilder sb = new StringBuilder();
             for (int j = 0; j < keyword.length(); j++) {
-                sb.append(allTextPositions.get(i + j).getUnicode());
+                allTextPositions.appendUnicode(sb, i + j);
             }
 
             if (keyword.equals(sb.toString())) {
                 // 找到了！返回关键字最后一个字符的位置信息，因为我们需要它的结束坐标。
-                return allTextPositions.get(i + keyword.length() - 1);
+                return i + keyword.length() - 1;
             }
         }
-        return null;
+        return -1;
     }
 }
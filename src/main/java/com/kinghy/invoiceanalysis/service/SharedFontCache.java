@@ -0,0 +1,407 @@
+package com.kinghy.invoiceanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.ScratchFile;
+import org.apache.pdfbox.pdmodel.DefaultResourceCache;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.ResourceCache;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 跨文档字体缓存
+ * 同一医院的票据内嵌相同的子集字体与ToUnicode CMap，PDFBox每加载一个文档都会重新解析。
+ * PDFBox 2没有向字体构造过程注入已解析字体程序或CMap的扩展点，因此在PDFont一级缓存：
+ * 以字体字典（递归包含字体流、ToUnicode、字宽数组等原始字节）的SHA-256为键，已构建的PDFont包含解析后的字体程序、CMap与字宽表。
+ *
+ * PDFont内部有按需填充的HashMap（字宽、字形高度等），不能被多个线程同时使用，因此按租借方式共享：
+ * 处理页面前通过lease在文档上安装租约（ResourceCache），页面内用到的字体从空闲池中取出或新建，只在当前线程使用；
+ * 租约关闭时字体归还空闲池，供其他文档复用。空闲池按LRU同时限制实例数与占用字节数，使用中的实例不计入。
+ *
+ * 缓存的字体在其来源文档关闭后仍被复用。COSStream持有所属文档的ScratchFile，直接缓存PDFBox为文档新建的字体
+ * 会把整个文档的内存缓冲一起留住，因此未命中时由这里构建字体：字体字典深拷贝为直接对象，字体流的原始字节复制到
+ * 该字体独占、按实际大小分配的ScratchFile中，缓存的字体与来源文档再无引用关系。
+ * 每个空闲实例的占用按复制的原始字节加解码后的字节（解析后的字体程序、CMap大致与之相当）计算。
+ * Type3字体的字形过程按需读取文档中的内容流，不参与缓存。
+ */
+@Slf4j
+@Component
+public class SharedFontCache {
+
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * ScratchFile的页大小（PDFBox 2固定为4KB），每个流至少占一页
+     */
+    private static final int SCRATCH_PAGE_SIZE = 4096;
+
+    @Value("${analysis.font.cache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 空闲池中最多保留的字体实例数
+     */
+    @Value("${analysis.font.cache.max-entries:256}")
+    private int maxEntries;
+
+    /**
+     * 空闲池最多占用的字节数（字体流副本与解码后字节之和），超过该值的单个字体不进入空闲池
+     */
+    @Value("${analysis.font.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    /**
+     * 内容哈希 -> 空闲实例，访问顺序
+     */
+    private final LinkedHashMap<String, ArrayDeque<CachedFont>> idle = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int idleCount;
+
+    private long idleBytes;
+
+    /**
+     * 在文档上安装租约，关闭租约时恢复文档原有的ResourceCache并归还字体
+     * @param timer 字体缓存命中与未命中计入该票据
+     */
+    public Lease lease(PDDocument document, AnalysisMetrics.DocumentTimer timer) {
+        Lease lease = new Lease(document, timer);
+        if (enabled && maxEntries > 0) {
+            document.setResourceCache(lease);
+        }
+        return lease;
+    }
+
+    public int size() {
+        synchronized (idle) {
+            return idleCount;
+        }
+    }
+
+    /**
+     * 空闲池当前占用的字节数
+     */
+    public long bytes() {
+        synchronized (idle) {
+            return idleBytes;
+        }
+    }
+
+    private CachedFont borrow(String key) {
+        synchronized (idle) {
+            ArrayDeque<CachedFont> fonts = idle.get(key);
+            if (fonts == null) {
+                return null;
+            }
+            CachedFont font = fonts.poll();
+            if (fonts.isEmpty()) {
+                idle.remove(key);
+            }
+            idleCount--;
+            idleBytes -= font.bytes;
+            return font;
+        }
+    }
+
+    private void giveBack(Map<String, List<CachedFont>> fonts) {
+        synchronized (idle) {
+            for (Map.Entry<String, List<CachedFont>> entry : fonts.entrySet()) {
+                for (CachedFont font : entry.getValue()) {
+                    if (font.bytes > maxBytes) {
+                        continue;
+                    }
+                    idle.computeIfAbsent(entry.getKey(), k -> new ArrayDeque<>()).add(font);
+                    idleCount++;
+                    idleBytes += font.bytes;
+                }
+            }
+            Iterator<ArrayDeque<CachedFont>> eldest = idle.values().iterator();
+            while ((idleCount > maxEntries || idleBytes > maxBytes) && eldest.hasNext()) {
+                for (CachedFont evicted : eldest.next()) {
+                    idleCount--;
+                    idleBytes -= evicted.bytes;
+                }
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * 由字体字典的独立副本构建字体，副本不引用来源文档的任何对象与缓冲
+     */
+    static CachedFont detach(COSDictionary fontDict) throws IOException {
+        // 先读出全部字体流的原始字节，按实际大小为该字体分配独占的ScratchFile
+        Map<COSStream, byte[]> raw = new IdentityHashMap<>();
+        collectStreams(fontDict, raw, Collections.newSetFromMap(new IdentityHashMap<>()), 0);
+        long pages = 1;
+        for (byte[] data : raw.values()) {
+            pages += Math.max(1, (data.length + SCRATCH_PAGE_SIZE - 1) / SCRATCH_PAGE_SIZE);
+        }
+        ScratchFile scratch = new ScratchFile(MemoryUsageSetting.setupMainMemoryOnly(pages * SCRATCH_PAGE_SIZE));
+
+        long[] bytes = new long[1];
+        COSDictionary copy = (COSDictionary) copy(fontDict, raw, scratch, new IdentityHashMap<>(), bytes);
+        return new CachedFont(PDFontFactory.createFont(copy), bytes[0]);
+    }
+
+    private static void collectStreams(COSBase base, Map<COSStream, byte[]> raw, Set<COSBase> seen, int depth)
+            throws IOException {
+        if (base instanceof COSObject) {
+            base = ((COSObject) base).getObject();
+        }
+        if (base == null || !seen.add(base)) {
+            return;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new IOException("字体对象嵌套过深");
+        }
+        if (base instanceof COSDictionary) {
+            for (COSBase value : ((COSDictionary) base).getValues()) {
+                collectStreams(value, raw, seen, depth + 1);
+            }
+            if (base instanceof COSStream) {
+                try (InputStream in = ((COSStream) base).createRawInputStream()) {
+                    raw.put((COSStream) base, IOUtils.toByteArray(in));
+                }
+            }
+        } else if (base instanceof COSArray) {
+            for (COSBase value : (COSArray) base) {
+                collectStreams(value, raw, seen, depth + 1);
+            }
+        }
+    }
+
+    /**
+     * 深拷贝COS对象：间接引用替换为被引用对象的副本，共享与循环引用保持为同一副本，
+     * 流的原始字节写入新的ScratchFile，bytes[0]累计原始字节与解码后字节
+     */
+    private static COSBase copy(COSBase base, Map<COSStream, byte[]> raw, ScratchFile scratch,
+                                Map<COSBase, COSBase> copies, long[] bytes) throws IOException {
+        if (base instanceof COSObject) {
+            base = ((COSObject) base).getObject();
+        }
+        if (base == null) {
+            return null;
+        }
+        COSBase existing = copies.get(base);
+        if (existing != null) {
+            return existing;
+        }
+        if (base instanceof COSDictionary) {
+            COSDictionary target = base instanceof COSStream ? new COSStream(scratch) : new COSDictionary();
+            copies.put(base, target);
+            for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) base).entrySet()) {
+                target.setItem(entry.getKey(), copy(entry.getValue(), raw, scratch, copies, bytes));
+            }
+            if (base instanceof COSStream) {
+                COSStream stream = (COSStream) target;
+                byte[] data = raw.get(base);
+                try (OutputStream out = stream.createRawOutputStream()) {
+                    out.write(data);
+                }
+                bytes[0] += data.length + decodedLength(stream);
+            }
+            return target;
+        }
+        if (base instanceof COSArray) {
+            COSArray target = new COSArray();
+            copies.put(base, target);
+            for (COSBase value : (COSArray) base) {
+                target.add(copy(value, raw, scratch, copies, bytes));
+            }
+            return target;
+        }
+        // 名称、数值、布尔、字符串不持有文档缓冲，直接共享
+        return base;
+    }
+
+    private static long decodedLength(COSStream stream) throws IOException {
+        long length = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = stream.createInputStream()) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                length += n;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 字体内容哈希，Type3字体或无法读取时返回null（不缓存）
+     */
+    static String contentHash(COSDictionary fontDict) {
+        if (COSName.TYPE3.equals(fontDict.getCOSName(COSName.SUBTYPE))) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, fontDict, Collections.newSetFromMap(new IdentityHashMap<>()), 0);
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.debug("字体内容哈希计算失败，不缓存: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void update(MessageDigest digest, COSBase base, Set<COSBase> path, int depth) throws IOException {
+        if (base instanceof COSObject) {
+            base = ((COSObject) base).getObject();
+        }
+        if (base == null || depth > MAX_DEPTH || !path.add(base)) {
+            digest.update((byte) 'r');
+            return;
+        }
+        try {
+            if (base instanceof COSDictionary) {
+                digest.update((byte) 'd');
+                for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) base).entrySet()) {
+                    digest.update(entry.getKey().getName().getBytes(StandardCharsets.UTF_8));
+                    update(digest, entry.getValue(), path, depth + 1);
+                }
+                if (base instanceof COSStream) {
+                    digest.update((byte) 'S');
+                    byte[] buffer = new byte[8192];
+                    try (InputStream raw = ((COSStream) base).createRawInputStream()) {
+                        int n;
+                        while ((n = raw.read(buffer)) != -1) {
+                            digest.update(buffer, 0, n);
+                        }
+                    }
+                }
+                digest.update((byte) 'e');
+            } else if (base instanceof COSArray) {
+                COSArray array = (COSArray) base;
+                digest.update((byte) 'a');
+                for (int i = 0; i < array.size(); i++) {
+                    update(digest, array.get(i), path, depth + 1);
+                }
+                digest.update((byte) 'e');
+            } else if (base instanceof COSName) {
+                digest.update((byte) 'n');
+                digest.update(((COSName) base).getName().getBytes(StandardCharsets.UTF_8));
+            } else if (base instanceof COSString) {
+                digest.update((byte) 's');
+                digest.update(((COSString) base).getBytes());
+            } else if (base instanceof COSInteger) {
+                digest.update((byte) 'i');
+                digest.update(Long.toString(((COSInteger) base).longValue()).getBytes(StandardCharsets.US_ASCII));
+            } else if (base instanceof COSFloat) {
+                digest.update((byte) 'f');
+                digest.update(Float.toString(((COSFloat) base).floatValue()).getBytes(StandardCharsets.US_ASCII));
+            } else if (base instanceof COSBoolean) {
+                digest.update((byte) (((COSBoolean) base).getValue() ? 'T' : 'F'));
+            } else {
+                digest.update((byte) '0');
+            }
+            digest.update((byte) ';');
+        } finally {
+            path.remove(base);
+        }
+    }
+
+    /**
+     * 单个文档一次页面处理期间的字体租约（只在处理线程中使用）
+     * 同一文档内的字体仍按间接对象缓存（与PDFBox默认行为一致），首次遇到的字体先按内容哈希从空闲池中租借，
+     * 未命中时构建与文档无关的副本；副本构建失败的字体交回PDFBox按常规方式构建，不进入空闲池。
+     */
+    public final class Lease extends DefaultResourceCache implements AutoCloseable {
+        private final PDDocument document;
+        private final ResourceCache previous;
+        private final AnalysisMetrics.DocumentTimer timer;
+
+        /**
+         * 本次租借或新建的字体，关闭时归还
+         */
+        private final Map<String, List<CachedFont>> leased = new LinkedHashMap<>();
+
+        private Lease(PDDocument document, AnalysisMetrics.DocumentTimer timer) {
+            this.document = document;
+            this.previous = document.getResourceCache();
+            this.timer = timer;
+        }
+
+        @Override
+        public PDFont getFont(COSObject indirect) throws IOException {
+            PDFont font = super.getFont(indirect);
+            if (font != null || !(indirect.getObject() instanceof COSDictionary)) {
+                return font;
+            }
+            String key = contentHash((COSDictionary) indirect.getObject());
+            if (key == null) {
+                return null;
+            }
+            CachedFont cached = borrow(key);
+            timer.fontCache(cached != null);
+            if (cached == null) {
+                try {
+                    cached = detach((COSDictionary) indirect.getObject());
+                } catch (IOException | RuntimeException e) {
+                    // 交给PDFBox按常规方式在文档上构建，该字体不进入空闲池
+                    log.debug("字体副本构建失败，不缓存: {}", e.getMessage());
+                    return null;
+                }
+            }
+            super.put(indirect, cached.font);
+            leased.computeIfAbsent(key, k -> new ArrayList<>()).add(cached);
+            return cached.font;
+        }
+
+        @Override
+        public void close() {
+            if (document.getResourceCache() == this) {
+                document.setResourceCache(previous);
+            }
+            if (!leased.isEmpty()) {
+                giveBack(leased);
+                leased.clear();
+            }
+        }
+    }
+
+    /**
+     * 与来源文档无关的字体实例及其占用字节数
+     */
+    static final class CachedFont {
+        final PDFont font;
+        final long bytes;
+
+        CachedFont(PDFont font, long bytes) {
+            this.font = font;
+            this.bytes = bytes;
+        }
+    }
+}
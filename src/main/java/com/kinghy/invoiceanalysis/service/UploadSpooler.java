@@ -0,0 +1,127 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.exception.InvalidRequestException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 上传文件暂存
+ * 不超过阈值的文件保留在内存中，超过阈值的文件写入临时文件，避免多个大文件同时占用堆内存。
+ * Tomcat默认已将multipart内容写入磁盘，落盘时直接转移该文件而不经过堆。
+ */
+@Slf4j
+@Component
+public class UploadSpooler {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * 内存暂存阈值（字节），超过该大小的文件落盘
+     */
+    @Value("${analysis.upload.memory-threshold-bytes:1048576}")
+    private long memoryThresholdBytes;
+
+    /**
+     * 临时文件目录，为空时使用系统临时目录
+     */
+    @Value("${analysis.upload.spool-dir:}")
+    private String spoolDir;
+
+    private File spoolDirectory;
+
+    @PostConstruct
+    public void init() {
+        spoolDirectory = spoolDir == null || spoolDir.trim().isEmpty()
+                ? new File(System.getProperty("java.io.tmpdir"), "invoice-analysis-spool")
+                : new File(spoolDir);
+        if (!spoolDirectory.isDirectory() && !spoolDirectory.mkdirs()) {
+            log.warn("创建上传临时目录失败: {}", spoolDirectory.getAbsolutePath());
+        }
+        log.info("上传暂存目录: {}，内存阈值: {} 字节", spoolDirectory.getAbsolutePath(), memoryThresholdBytes);
+    }
+
+    /**
+     * 暂存上传文件
+     */
+    public AnalysisSource spool(MultipartFile file) throws IOException {
+        String fileName = file.getOriginalFilename();
+        if (file.getSize() <= memoryThresholdBytes) {
+            return new AnalysisSource(fileName, file.getBytes());
+        }
+        File target = createSpoolFile();
+        try {
+            file.transferTo(target);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(target);
+            throw e;
+        }
+        return new AnalysisSource(fileName, target);
+    }
+
+    /**
+     * 暂存输入流（如ZIP条目），读取超过maxBytes时抛出InvalidRequestException
+     * @param fileName 文件名
+     * @param inputStream 输入流（不会被关闭）
+     * @param maxBytes 最大允许读取的字节数
+     */
+    public AnalysisSource spool(String fileName, InputStream inputStream, long maxBytes) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        long total = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            total += read;
+            if (total > maxBytes) {
+                throw new InvalidRequestException("文件大小超出限制: " + fileName);
+            }
+            memory.write(buffer, 0, read);
+            if (total > memoryThresholdBytes) {
+                return spoolToFile(fileName, memory, inputStream, buffer, total, maxBytes);
+            }
+        }
+        return new AnalysisSource(fileName, memory.toByteArray());
+    }
+
+    private AnalysisSource spoolToFile(String fileName, ByteArrayOutputStream head, InputStream inputStream,
+                                       byte[] buffer, long total, long maxBytes) throws IOException {
+        File target = createSpoolFile();
+        try (OutputStream out = new FileOutputStream(target)) {
+            head.writeTo(out);
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new InvalidRequestException("文件大小超出限制: " + fileName);
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(target);
+            throw e;
+        }
+        return new AnalysisSource(fileName, target);
+    }
+
+    private File createSpoolFile() throws IOException {
+        if (!spoolDirectory.isDirectory()) {
+            spoolDirectory.mkdirs();
+        }
+        return File.createTempFile("upload-", ".pdf", spoolDirectory);
+    }
+
+    private void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -2,17 +2,25 @@ package com.kinghy.invoiceanalysis.service.impl;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kinghy.invoiceanalysis.entity.dto.DetailFieldsDefinition;
 import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
 import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.service.AnalysisResultCache;
 import com.kinghy.invoiceanalysis.entity.pojo.InvoiceTemplateEntity;
 import com.kinghy.invoiceanalysis.repository.InvoiceTemplateRepository;
 import com.kinghy.invoiceanalysis.service.TemplateService;
+import com.kinghy.invoiceanalysis.strategy.TemplateCompiler;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -21,6 +29,10 @@ import java.util.Optional;
  * 数据库模板服务
  * 从MySQL数据库加载模板（用于生产环境）
  *
+ * 启用的模板在启动时一次性加载为内存快照，模板匹配不再访问数据库、也不再重复反序列化JSON。
+ * 后台按 template.database.refresh-interval-ms 基于 updatedAt 增量刷新（兼容其他节点的修改），
+ * 本节点的保存/删除立即更新快照。
+ *
  * 配置: template.source=database
  */
 @Slf4j
@@ -28,45 +40,133 @@ import java.util.Optional;
 @ConditionalOnProperty(name = "template.source", havingValue = "database")
 public class DatabaseTemplateService implements TemplateService {
 
+    /**
+     * 数据库模板须命中全部identifier才匹配
+     */
+    private static final TemplateMatcher.MatchMode MATCH_MODE = TemplateMatcher.MatchMode.ALL;
+
     @Autowired
     private InvoiceTemplateRepository templateRepository;
 
+    @Autowired
+    private TemplateCompiler templateCompiler;
+
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    @Override
-    public InvoiceTemplate findTemplateFor(String pdfTextContent) {
-        List<InvoiceTemplateEntity> allEntities = templateRepository.findByEnabledTrue();
+    /**
+     * 当前启用模板的快照，整体替换，读取无锁
+     */
+    private volatile TemplateSnapshot snapshot = TemplateSnapshot.empty(MATCH_MODE);
 
-        for (InvoiceTemplateEntity entity : allEntities) {
-            try {
-                InvoiceTemplate template = entityToDto(entity);
-                
-                if (template.getIdentifiers() == null || template.getIdentifiers().isEmpty()) {
-                    continue;
+    /**
+     * 已同步到快照的最大updatedAt，作为增量刷新水位
+     */
+    private LocalDateTime watermark;
+
+    /**
+     * 刷新/保存/删除之间互斥
+     */
+    private final Object writeLock = new Object();
+
+    @PostConstruct
+    public void loadTemplates() {
+        reloadTemplates();
+    }
+
+    @Override
+    public void reloadTemplates() {
+        synchronized (writeLock) {
+            List<InvoiceTemplate> loaded = new ArrayList<>();
+            LocalDateTime latest = null;
+            for (InvoiceTemplateEntity entity : templateRepository.findByEnabledTrue()) {
+                try {
+                    loaded.add(entityToDto(entity));
+                    latest = later(latest, entity.getUpdatedAt());
+                } catch (Exception e) {
+                    log.error("解析数据库模板失败: {}", entity.getTemplateName(), e);
                 }
+            }
+            watermark = latest;
+            publish(TemplateSnapshot.of(loaded, MATCH_MODE));
+            log.info("数据库模板服务加载完成，已加载 {} 个模板", snapshot.size());
+        }
+    }
 
-                boolean allIdentifiersFound = true;
-                for (String identifier : template.getIdentifiers()) {
-                    if (!pdfTextContent.contains(identifier)) {
-                        allIdentifiersFound = false;
-                        break;
+    /**
+     * 增量刷新：只拉取updatedAt不早于水位的模板；启用数量与快照不一致时（如其他节点删除模板）全量重载
+     */
+    @Scheduled(initialDelayString = "${template.database.refresh-interval-ms:30000}",
+            fixedDelayString = "${template.database.refresh-interval-ms:30000}")
+    public void refreshTemplates() {
+        try {
+            synchronized (writeLock) {
+                if (watermark == null) {
+                    reloadTemplates();
+                    return;
+                }
+                TemplateSnapshot next = snapshot;
+                LocalDateTime latest = watermark;
+                for (InvoiceTemplateEntity entity : templateRepository.findByUpdatedAtGreaterThanEqual(watermark)) {
+                    latest = later(latest, entity.getUpdatedAt());
+                    if (!Boolean.TRUE.equals(entity.getEnabled())) {
+                        next = next.without(entity.getTemplateName());
+                        continue;
+                    }
+                    InvoiceTemplate current = next.get(entity.getTemplateName());
+                    InvoiceTemplate refreshed = entityToDto(entity);
+                    if (!refreshed.equals(current)) {
+                        next = next.with(refreshed);
+                        log.info("数据库模板已更新: {}", entity.getTemplateName());
                     }
                 }
-
-                if (allIdentifiersFound) {
-                    log.debug("匹配到数据库模板: {}", template.getTemplateName());
-                    return template;
+                watermark = latest;
+                if (next.size() != templateRepository.countByEnabledTrue()) {
+                    log.info("数据库启用模板数量与缓存不一致，执行全量重载");
+                    reloadTemplates();
+                } else if (next != snapshot) {
+                    publish(next);
                 }
+            }
+        } catch (Exception e) {
+            log.error("增量刷新数据库模板失败，保留当前模板快照", e);
+        }
+    }
+
+    /**
+     * 替换快照并预编译模板
+     */
+    private void publish(TemplateSnapshot next) {
+        snapshot = next;
+        templateCompiler.clear();
+        analysisResultCache.invalidateAll();
+        for (InvoiceTemplate template : next.values()) {
+            try {
+                templateCompiler.compile(template);
             } catch (Exception e) {
-                log.error("解析数据库模板失败: {}", entity.getTemplateName(), e);
+                log.error("模板预编译失败: {}，原因: {}", template.getTemplateName(), e.getMessage());
             }
         }
+    }
 
-        return null;
+    @Override
+    public InvoiceTemplate findTemplateFor(String pdfTextContent) {
+        InvoiceTemplate template = snapshot.match(pdfTextContent);
+        if (template != null) {
+            log.debug("匹配到数据库模板: {}", template.getTemplateName());
+        }
+        return template;
     }
 
     @Override
     public InvoiceTemplate getTemplateByName(String templateName) {
+        InvoiceTemplate cached = snapshot.get(templateName);
+        if (cached != null) {
+            return cached;
+        }
+        // 停用模板不在快照中，回源查询
         return templateRepository.findByTemplateName(templateName)
                 .map(this::entityToDto)
                 .orElse(null);
@@ -105,9 +205,20 @@ public class DatabaseTemplateService implements TemplateService {
             // 更新字段
             entity.setIdentifiersJson(objectMapper.writeValueAsString(template.getIdentifiers()));
             entity.setFieldsJson(objectMapper.writeValueAsString(template.getFields()));
+            entity.setDetailFieldsJson(template.getDetailFields() != null
+                    ? objectMapper.writeValueAsString(template.getDetailFields()) : null);
             entity.setEnabled(true);
             
             templateRepository.save(entity);
+            InvoiceTemplate saved = entityToDto(entity);
+            afterCommit(() -> {
+                synchronized (writeLock) {
+                    InvoiceTemplate previous = snapshot.get(saved.getTemplateName());
+                    snapshot = snapshot.with(saved);
+                    templateCompiler.evict(saved.getTemplateName());
+                    analysisResultCache.invalidate(previous, saved);
+                }
+            });
             log.info("保存数据库模板: {}", template.getTemplateName());
             return true;
         } catch (Exception e) {
@@ -122,6 +233,13 @@ public class DatabaseTemplateService implements TemplateService {
         try {
             if (templateRepository.existsByTemplateName(templateName)) {
                 templateRepository.deleteByTemplateName(templateName);
+                afterCommit(() -> {
+                    synchronized (writeLock) {
+                        snapshot = snapshot.without(templateName);
+                        templateCompiler.evict(templateName);
+                        analysisResultCache.invalidate(templateName);
+                    }
+                });
                 log.info("删除数据库模板: {}", templateName);
                 return true;
             }
@@ -132,6 +250,29 @@ public class DatabaseTemplateService implements TemplateService {
         }
     }
 
+    /**
+     * 事务提交成功后再更新快照，避免回滚时缓存与数据库不一致
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static LocalDateTime later(LocalDateTime current, LocalDateTime candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        return current == null || candidate.isAfter(current) ? candidate : current;
+    }
+
     /**
      * Entity转DTO
      */
@@ -154,6 +295,12 @@ public class DatabaseTemplateService implements TemplateService {
             );
             template.setFields(fields);
 
+            // 解析detailFields JSON字符串（可选）
+            if (entity.getDetailFieldsJson() != null && !entity.getDetailFieldsJson().trim().isEmpty()) {
+                template.setDetailFields(objectMapper.readValue(
+                        entity.getDetailFieldsJson(), DetailFieldsDefinition.class));
+            }
+
             return template;
         } catch (Exception e) {
             throw new RuntimeException("模板转换失败: " + entity.getTemplateName(), e);
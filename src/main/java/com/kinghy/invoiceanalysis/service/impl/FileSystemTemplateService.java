@@ -2,8 +2,11 @@ package com.kinghy.invoiceanalysis.service.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.service.AnalysisResultCache;
 import com.kinghy.invoiceanalysis.service.TemplateService;
+import com.kinghy.invoiceanalysis.strategy.TemplateCompiler;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.core.io.Resource;
@@ -11,19 +14,34 @@ import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 文件系统模板服务
  * 从JSON文件加载模板（用于开发调试）
  *
+ * 模板以不可变快照的形式持有，读请求不做任何文件IO。
+ * template.cache.enabled=false 时启用热加载：后台线程通过WatchService监听模板目录，
+ * 检测到JSON变更后在请求链路之外重新解析并原子替换快照。
+ * 重新加载时单个文件解析失败（编辑器保存到一半、JSON写错）不会让该模板从快照中消失：沿用该文件上一次成功加载的版本。
+ *
  * 配置: template.source=filesystem（默认）
  */
 @Slf4j
@@ -34,62 +52,132 @@ public class FileSystemTemplateService implements TemplateService {
     private static final String CLASSPATH_PREFIX = "classpath:";
     private static final String LEGACY_TEMPLATE_PATH = "src/main/java/com/kinghy/invoiceanalysis/config/templates";
 
+    /**
+     * 文件系统模板命中任一identifier即匹配（如同一模板同时适配门诊/住院票据）
+     */
+    private static final TemplateMatcher.MatchMode MATCH_MODE = TemplateMatcher.MatchMode.ANY;
+
     @Value("${template.filesystem.path:classpath:templates/invoice}")
     private String templatesPath;
 
     @Value("${template.cache.enabled:false}")
     private boolean templateCacheEnabled;
 
-    private final Map<String, InvoiceTemplate> templateCache = new ConcurrentHashMap<>();
+    @Value("${template.watch.debounce-ms:300}")
+    private long watchDebounceMs;
+
+    @Autowired
+    private TemplateCompiler templateCompiler;
+
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * 当前模板快照，整体替换，读取无锁
+     */
+    private volatile TemplateSnapshot snapshot = TemplateSnapshot.empty(MATCH_MODE);
+
+    /**
+     * 模板来源（文件路径或classpath资源描述） -> 上一次成功解析的模板，在writeLock内读写
+     */
+    private Map<String, InvoiceTemplate> templatesBySource = Collections.emptyMap();
+
+    /**
+     * 保存/删除/重载之间互斥，避免并发写快照时互相覆盖
+     */
+    private final Object writeLock = new Object();
+
+    private volatile WatchService watchService;
+
     @PostConstruct
     public void loadTemplates() {
         reloadTemplates();
+        if (!templateCacheEnabled) {
+            startWatcher();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        WatchService current = watchService;
+        watchService = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.warn("关闭模板目录监听失败", e);
+            }
+        }
     }
 
     @Override
     public void reloadTemplates() {
-        templateCache.clear();
-
-        try {
-            if (templatesPath.startsWith(CLASSPATH_PREFIX)) {
-                loadFromClasspath(templatesPath);
-            } else {
-                loadFromFileSystem(templatesPath);
-                if (templateCache.isEmpty() && !LEGACY_TEMPLATE_PATH.equals(templatesPath)) {
-                    log.warn("当前路径未加载到模板，尝试兼容旧路径: {}", LEGACY_TEMPLATE_PATH);
-                    loadFromFileSystem(LEGACY_TEMPLATE_PATH);
+        synchronized (writeLock) {
+            Map<String, InvoiceTemplate> loaded = new LinkedHashMap<>();
+            try {
+                if (isClasspathPath()) {
+                    loadFromClasspath(templatesPath, loaded);
+                } else {
+                    loadFromFileSystem(templatesPath, loaded);
+                    if (loaded.isEmpty() && !LEGACY_TEMPLATE_PATH.equals(templatesPath)) {
+                        log.warn("当前路径未加载到模板，尝试兼容旧路径: {}", LEGACY_TEMPLATE_PATH);
+                        loadFromFileSystem(LEGACY_TEMPLATE_PATH, loaded);
+                    }
                 }
+            } catch (Exception e) {
+                log.error("加载文件系统模板失败，保留当前模板快照", e);
+                return;
             }
-            log.info("文件系统模板服务初始化完成，已加载 {} 个模板", templateCache.size());
-        } catch (Exception e) {
-            log.error("初始化文件系统模板服务失败", e);
+            templatesBySource = loaded;
+            publish(TemplateSnapshot.of(new ArrayList<>(loaded.values()), MATCH_MODE));
+            log.info("文件系统模板服务加载完成，已加载 {} 个模板", snapshot.size());
         }
     }
 
-    private void loadFromClasspath(String classpath) throws IOException {
-        String basePath = classpath.substring(CLASSPATH_PREFIX.length());
-        if (basePath.startsWith("/")) {
-            basePath = basePath.substring(1);
-        }
-        if (!basePath.endsWith("/")) {
-            basePath = basePath + "/";
+    /**
+     * 替换快照，并在请求链路之外预编译模板，提前暴露配置错误
+     */
+    private void publish(TemplateSnapshot next) {
+        snapshot = next;
+        templateCompiler.clear();
+        analysisResultCache.invalidateAll();
+        for (InvoiceTemplate template : next.values()) {
+            try {
+                templateCompiler.compile(template);
+            } catch (Exception e) {
+                log.error("模板预编译失败: {}，原因: {}", template.getTemplateName(), e.getMessage());
+            }
         }
-        String pattern = "classpath*:" + basePath + "*.json";
+    }
+
+    private void loadFromClasspath(String classpath, Map<String, InvoiceTemplate> loaded) throws IOException {
+        String pattern = "classpath*:" + classpathBase(classpath) + "*.json";
         Resource[] resources = new PathMatchingResourcePatternResolver().getResources(pattern);
         for (Resource resource : resources) {
             try (InputStream inputStream = resource.getInputStream()) {
                 InvoiceTemplate template = objectMapper.readValue(inputStream, InvoiceTemplate.class);
-                templateCache.put(template.getTemplateName(), template);
+                loaded.put(resource.getDescription(), template);
                 log.info("加载模板: {} (资源: {})", template.getTemplateName(), resource.getFilename());
             } catch (Exception e) {
-                log.error("加载模板资源失败: {}", resource.getFilename(), e);
+                keepPrevious(resource.getDescription(), resource.getFilename(), loaded, e);
             }
         }
     }
 
-    private void loadFromFileSystem(String path) {
+    private String classpathBase(String classpath) {
+        String basePath = classpath.substring(CLASSPATH_PREFIX.length());
+        if (basePath.startsWith("/")) {
+            basePath = basePath.substring(1);
+        }
+        if (!basePath.endsWith("/")) {
+            basePath = basePath + "/";
+        }
+        return basePath;
+    }
+
+    private void loadFromFileSystem(String path, Map<String, InvoiceTemplate> loaded) {
         File dir = new File(path);
         if (!dir.exists()) {
             log.warn("模板目录不存在: {}", path);
@@ -104,14 +192,101 @@ public class FileSystemTemplateService implements TemplateService {
         for (File file : templateFiles) {
             try {
                 InvoiceTemplate template = objectMapper.readValue(file, InvoiceTemplate.class);
-                templateCache.put(template.getTemplateName(), template);
+                loaded.put(file.getAbsolutePath(), template);
                 log.info("加载模板: {} (文件: {})", template.getTemplateName(), file.getName());
             } catch (Exception e) {
-                log.error("加载模板文件失败: {}", file.getName(), e);
+                keepPrevious(file.getAbsolutePath(), file.getName(), loaded, e);
             }
         }
     }
 
+    /**
+     * 模板文件解析失败时沿用该文件上一次成功加载的版本；从未成功加载过的文件直接跳过
+     */
+    private void keepPrevious(String source, String fileName, Map<String, InvoiceTemplate> loaded, Exception e) {
+        InvoiceTemplate previous = templatesBySource.get(source);
+        if (previous == null) {
+            log.error("加载模板文件失败: {}", fileName, e);
+            return;
+        }
+        loaded.put(source, previous);
+        log.error("加载模板文件失败: {}，沿用上一版本模板: {}，原因: {}",
+                fileName, previous.getTemplateName(), e.getMessage());
+    }
+
+    /**
+     * 启动模板目录监听线程（仅当模板目录位于本地文件系统时可用）
+     */
+    private void startWatcher() {
+        File dir = resolveWatchDirectory();
+        if (dir == null || !dir.isDirectory()) {
+            log.info("模板路径 {} 不是本地目录，热加载未启用", templatesPath);
+            return;
+        }
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            dir.toPath().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchService = service;
+            Thread watcher = new Thread(() -> watchLoop(service), "template-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+            log.info("模板热加载已启用，监听目录: {}", dir.getAbsolutePath());
+        } catch (IOException e) {
+            log.error("启动模板目录监听失败: {}", dir.getAbsolutePath(), e);
+        }
+    }
+
+    private File resolveWatchDirectory() {
+        if (!isClasspathPath()) {
+            File dir = new File(templatesPath);
+            return dir.isDirectory() ? dir : new File(LEGACY_TEMPLATE_PATH);
+        }
+        try {
+            Resource resource = new PathMatchingResourcePatternResolver()
+                    .getResource(CLASSPATH_PREFIX + classpathBase(templatesPath));
+            return resource.exists() ? resource.getFile() : null;
+        } catch (IOException e) {
+            // 模板打包在jar内，无法监听
+            return null;
+        }
+    }
+
+    private void watchLoop(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = drainJsonEvents(key);
+                // 合并短时间内的连续事件（编辑器保存通常会产生多次写入）
+                WatchKey next;
+                while ((next = service.poll(watchDebounceMs, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drainJsonEvents(next);
+                }
+                if (changed) {
+                    log.info("检测到模板文件变更，重新加载模板");
+                    reloadTemplates();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            log.debug("模板目录监听线程退出");
+        }
+    }
+
+    private boolean drainJsonEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || (context instanceof Path && context.toString().endsWith(".json"))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
     private boolean isClasspathPath() {
         return templatesPath != null && templatesPath.startsWith(CLASSPATH_PREFIX);
     }
@@ -123,8 +298,13 @@ public class FileSystemTemplateService implements TemplateService {
             return false;
         }
         try {
-            // 更新缓存
-            templateCache.put(template.getTemplateName(), template);
+            // 更新快照
+            synchronized (writeLock) {
+                InvoiceTemplate previous = snapshot.get(template.getTemplateName());
+                snapshot = snapshot.with(template);
+                templateCompiler.evict(template.getTemplateName());
+                analysisResultCache.invalidate(previous, template);
+            }
 
             // 保存到文件
             String fileName = template.getTemplateName()
@@ -146,7 +326,15 @@ public class FileSystemTemplateService implements TemplateService {
             log.error("classpath模板路径为只读，无法删除模板: {}", templateName);
             return false;
         }
-        InvoiceTemplate removed = templateCache.remove(templateName);
+        InvoiceTemplate removed;
+        synchronized (writeLock) {
+            removed = snapshot.get(templateName);
+            if (removed != null) {
+                snapshot = snapshot.without(templateName);
+                templateCompiler.evict(templateName);
+                analysisResultCache.invalidate(templateName);
+            }
+        }
         if (removed != null) {
             // 尝试删除文件
             File dir = new File(templatesPath);
@@ -172,42 +360,20 @@ public class FileSystemTemplateService implements TemplateService {
 
     @Override
     public InvoiceTemplate findTemplateFor(String pdfTextContent) {
-        ensureTemplatesReady();
-        for (InvoiceTemplate template : templateCache.values()) {
-            if (template.getIdentifiers() == null || template.getIdentifiers().isEmpty()) {
-                continue;
-            }
-
-            boolean allIdentifiersFound = false;
-            for (String identifier : template.getIdentifiers()) {
-                if (pdfTextContent.contains(identifier)) {
-                    allIdentifiersFound = true;
-                    break;
-                }
-            }
-            if (allIdentifiersFound) {
-                log.debug("匹配到模板: {}", template.getTemplateName());
-                return template;
-            }
+        InvoiceTemplate template = snapshot.match(pdfTextContent);
+        if (template != null) {
+            log.debug("匹配到模板: {}", template.getTemplateName());
         }
-        return null;
+        return template;
     }
 
     @Override
     public InvoiceTemplate getTemplateByName(String templateName) {
-        ensureTemplatesReady();
-        return templateCache.get(templateName);
+        return snapshot.get(templateName);
     }
 
     @Override
     public List<InvoiceTemplate> getAllTemplates() {
-        ensureTemplatesReady();
-        return new ArrayList<>(templateCache.values());
-    }
-
-    private void ensureTemplatesReady() {
-        if (!templateCacheEnabled || templateCache.isEmpty()) {
-            reloadTemplates();
-        }
+        return new ArrayList<>(snapshot.values());
     }
 }
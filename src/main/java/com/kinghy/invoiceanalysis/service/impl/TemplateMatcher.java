@@ -0,0 +1,144 @@
+package com.kinghy.invoiceanalysis.service.impl;
+
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.strategy.util.AhoCorasickAutomaton;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 模板路由索引
+ * 将所有模板的identifiers编译进同一个Aho-Corasick自动机，对页面文本只扫描一遍即可得到全部命中的模板。
+ * 扫描时只为实际命中的identifier累加所属模板的命中数，再在命中过的模板中选出最优者，
+ * 匹配成本取决于页面文本长度与命中次数，不随未命中的模板数量增长。
+ *
+ * 多个模板同时命中时的优先级（确定性）：
+ * 1. 命中的identifier数量多者优先（识别依据更充分/更具体）；
+ * 2. 数量相同时按模板名称升序。
+ */
+public final class TemplateMatcher {
+
+    /**
+     * identifiers命中规则
+     */
+    public enum MatchMode {
+        /**
+         * 命中任一identifier即匹配
+         */
+        ANY,
+        /**
+         * 必须命中全部identifier
+         */
+        ALL
+    }
+
+    private final MatchMode mode;
+
+    /**
+     * 参与匹配的模板（已按名称排序）
+     */
+    private final List<InvoiceTemplate> templates;
+
+    /**
+     * 每个模板去重后的identifier数量
+     */
+    private final int[] identifierCounts;
+
+    /**
+     * 模式ID -> 包含该identifier的模板下标
+     */
+    private final int[][] patternTemplates;
+
+    private final AhoCorasickAutomaton automaton;
+
+    /**
+     * @param templates 已按名称排序的模板
+     * @param mode identifiers命中规则
+     */
+    public TemplateMatcher(List<InvoiceTemplate> templates, MatchMode mode) {
+        this.mode = mode;
+        this.templates = new ArrayList<>();
+        List<Set<String>> identifierSets = new ArrayList<>();
+        Set<String> allIdentifiers = new LinkedHashSet<>();
+        for (InvoiceTemplate template : templates) {
+            Set<String> identifiers = new LinkedHashSet<>();
+            if (template.getIdentifiers() != null) {
+                for (String identifier : template.getIdentifiers()) {
+                    if (identifier != null && !identifier.isEmpty()) {
+                        identifiers.add(identifier);
+                    }
+                }
+            }
+            // 未配置identifiers的模板永远不会被匹配
+            if (identifiers.isEmpty()) {
+                continue;
+            }
+            this.templates.add(template);
+            identifierSets.add(identifiers);
+            allIdentifiers.addAll(identifiers);
+        }
+
+        this.automaton = AhoCorasickAutomaton.build(allIdentifiers);
+        List<String> patterns = automaton.getPatterns();
+        Map<String, Integer> patternIds = new HashMap<>();
+        List<List<Integer>> owners = new ArrayList<>(patterns.size());
+        for (int i = 0; i < patterns.size(); i++) {
+            patternIds.put(patterns.get(i), i);
+            owners.add(new ArrayList<>());
+        }
+        this.identifierCounts = new int[this.templates.size()];
+        for (int t = 0; t < identifierSets.size(); t++) {
+            identifierCounts[t] = identifierSets.get(t).size();
+            for (String identifier : identifierSets.get(t)) {
+                owners.get(patternIds.get(identifier)).add(t);
+            }
+        }
+        this.patternTemplates = new int[patterns.size()][];
+        for (int i = 0; i < patterns.size(); i++) {
+            patternTemplates[i] = owners.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * 单次扫描页面文本，返回优先级最高的匹配模板，未匹配返回null
+     */
+    public InvoiceTemplate match(String pdfTextContent) {
+        if (pdfTextContent == null || templates.isEmpty()) {
+            return null;
+        }
+        Set<Integer> seenPatterns = new HashSet<>();
+        Map<Integer, Integer> hitCounts = new HashMap<>();
+        automaton.scan(pdfTextContent, (patternId, start, end) -> {
+            if (seenPatterns.add(patternId)) {
+                for (int t : patternTemplates[patternId]) {
+                    hitCounts.merge(t, 1, Integer::sum);
+                }
+            }
+        });
+
+        int best = -1;
+        int bestHits = 0;
+        for (Map.Entry<Integer, Integer> entry : hitCounts.entrySet()) {
+            int t = entry.getKey();
+            int hits = entry.getValue();
+            if (mode == MatchMode.ALL && hits != identifierCounts[t]) {
+                continue;
+            }
+            // 模板已按名称排序，同分时下标小（名称靠前）者胜出
+            if (best < 0 || hits > bestHits || (hits == bestHits && t < best)) {
+                best = t;
+                bestHits = hits;
+            }
+        }
+        return best >= 0 ? templates.get(best) : null;
+    }
+
+    public MatchMode getMode() {
+        return mode;
+    }
+}
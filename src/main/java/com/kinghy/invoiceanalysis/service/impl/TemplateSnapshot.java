@@ -0,0 +1,90 @@
+package com.kinghy.invoiceanalysis.service.impl;
+
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 不可变模板快照
+ * 模板服务整体替换快照引用（volatile写）实现原子切换，读请求无锁且永远看不到半加载状态。
+ * 模板按名称排序，保证遍历顺序稳定；模板路由索引随快照一起构建，与模板集合始终一致。
+ */
+public final class TemplateSnapshot {
+
+    private final Map<String, InvoiceTemplate> templates;
+
+    private final TemplateMatcher matcher;
+
+    private TemplateSnapshot(Map<String, InvoiceTemplate> templates, TemplateMatcher.MatchMode mode) {
+        this.templates = templates;
+        this.matcher = new TemplateMatcher(new ArrayList<>(templates.values()), mode);
+    }
+
+    /**
+     * 空快照
+     */
+    public static TemplateSnapshot empty(TemplateMatcher.MatchMode mode) {
+        return new TemplateSnapshot(Collections.emptyMap(), mode);
+    }
+
+    /**
+     * 由模板集合构建快照，同名模板以后出现者为准
+     */
+    public static TemplateSnapshot of(Collection<InvoiceTemplate> templates, TemplateMatcher.MatchMode mode) {
+        Map<String, InvoiceTemplate> sorted = new TreeMap<>();
+        for (InvoiceTemplate template : templates) {
+            sorted.put(template.getTemplateName(), template);
+        }
+        return new TemplateSnapshot(Collections.unmodifiableMap(sorted), mode);
+    }
+
+    /**
+     * 返回新增或替换指定模板后的新快照
+     */
+    public TemplateSnapshot with(InvoiceTemplate template) {
+        List<InvoiceTemplate> copy = new ArrayList<>(templates.values());
+        copy.add(template);
+        return of(copy, matcher.getMode());
+    }
+
+    /**
+     * 返回移除指定模板后的新快照
+     */
+    public TemplateSnapshot without(String templateName) {
+        List<InvoiceTemplate> copy = new ArrayList<>();
+        for (InvoiceTemplate template : templates.values()) {
+            if (!template.getTemplateName().equals(templateName)) {
+                copy.add(template);
+            }
+        }
+        return of(copy, matcher.getMode());
+    }
+
+    /**
+     * 通过模板路由索引匹配页面文本
+     */
+    public InvoiceTemplate match(String pdfTextContent) {
+        return matcher.match(pdfTextContent);
+    }
+
+    public InvoiceTemplate get(String templateName) {
+        return templateName != null ? templates.get(templateName) : null;
+    }
+
+    public Collection<InvoiceTemplate> values() {
+        return templates.values();
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public boolean isEmpty() {
+        return templates.isEmpty();
+    }
+}
@@ -0,0 +1,138 @@
+package com.kinghy.invoiceanalysis.strategy;
+
+import com.kinghy.invoiceanalysis.entity.dto.DetailFieldColumn;
+import com.kinghy.invoiceanalysis.entity.dto.DetailFieldsDefinition;
+import com.kinghy.invoiceanalysis.entity.dto.PjcyItemNode;
+import com.kinghy.invoiceanalysis.exception.InvalidDetailFieldsException;
+import lombok.Getter;
+import org.springframework.beans.BeanUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 预编译后的明细表提取计划
+ * 表头、结束关键字已去除空白（与行文本去空白后比较，不受字间补空格影响），
+ * 列已绑定到PjcyItemNode的属性写方法。
+ */
+@Getter
+public class CompiledDetailTable {
+
+    /**
+     * 表头行必须同时包含的关键字（已去空白）
+     */
+    private final List<String> tableIdentifiers;
+
+    /**
+     * 按模板顺序排列的列
+     */
+    private final List<Column> columns;
+
+    /**
+     * 结束关键字（已去空白）
+     */
+    private final List<String> endKeywords;
+
+    private CompiledDetailTable(List<String> tableIdentifiers, List<Column> columns, List<String> endKeywords) {
+        this.tableIdentifiers = tableIdentifiers;
+        this.columns = columns;
+        this.endKeywords = endKeywords;
+    }
+
+    /**
+     * 编译明细表配置，未配置或未配置列时返回null
+     * @throws InvalidDetailFieldsException 列缺少表头或fieldName不是明细项属性
+     */
+    public static CompiledDetailTable compile(String templateName, DetailFieldsDefinition definition) {
+        if (definition == null || definition.getColumns() == null || definition.getColumns().isEmpty()) {
+            return null;
+        }
+
+        List<Column> columns = new ArrayList<>();
+        for (DetailFieldColumn column : definition.getColumns()) {
+            String header = stripWhitespace(column.getHeader());
+            if (header.isEmpty()) {
+                throw new InvalidDetailFieldsException(templateName, "列 " + column.getFieldName() + " 未配置header");
+            }
+            PropertyDescriptor property = column.getFieldName() != null
+                    ? BeanUtils.getPropertyDescriptor(PjcyItemNode.class, column.getFieldName()) : null;
+            if (property == null || property.getWriteMethod() == null
+                    || property.getPropertyType() != String.class) {
+                throw new InvalidDetailFieldsException(templateName, "列 " + column.getFieldName() + " 不是明细项字段");
+            }
+            columns.add(new Column(column.getFieldName(), header, property.getWriteMethod()));
+        }
+
+        List<String> identifiers = stripAll(definition.getTableIdentifiers());
+        if (identifiers.isEmpty()) {
+            // 未配置表头识别关键字时以全部列表头识别
+            for (Column column : columns) {
+                identifiers.add(column.getHeader());
+            }
+        }
+        return new CompiledDetailTable(
+                Collections.unmodifiableList(identifiers),
+                Collections.unmodifiableList(columns),
+                Collections.unmodifiableList(stripAll(definition.getEndKeywords())));
+    }
+
+    /**
+     * 去除全部空白字符
+     */
+    public static String stripWhitespace(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static List<String> stripAll(List<String> values) {
+        List<String> stripped = new ArrayList<>();
+        if (values != null) {
+            for (String value : values) {
+                String s = stripWhitespace(value);
+                if (!s.isEmpty()) {
+                    stripped.add(s);
+                }
+            }
+        }
+        return stripped;
+    }
+
+    /**
+     * 明细列
+     */
+    @Getter
+    public static final class Column {
+        private final String fieldName;
+        private final String header;
+        private final Method writeMethod;
+
+        private Column(String fieldName, String header, Method writeMethod) {
+            this.fieldName = fieldName;
+            this.header = header;
+            this.writeMethod = writeMethod;
+        }
+
+        /**
+         * 将单元格值写入明细项
+         */
+        public void write(PjcyItemNode item, String value) {
+            try {
+                writeMethod.invoke(item, value);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("写入明细字段失败: " + fieldName, e);
+            }
+        }
+    }
+}
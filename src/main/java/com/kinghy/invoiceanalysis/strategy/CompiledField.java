@@ -0,0 +1,37 @@
+package com.kinghy.invoiceanalysis.strategy;
+
+import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 预编译后的字段提取计划
+ * 策略已解析、options已校验并转换为类型化参数
+ */
+@Getter
+@AllArgsConstructor
+public class CompiledField {
+
+    /**
+     * 原始字段定义
+     */
+    private final FieldDefinition definition;
+
+    /**
+     * 已解析的提取策略
+     */
+    private final ExtractionStrategy strategy;
+
+    /**
+     * 预编译后的options
+     */
+    private final Object compiledOptions;
+
+    public String getFieldName() {
+        return definition.getFieldName();
+    }
+
+    public String getStrategyName() {
+        return strategy.getStrategyName();
+    }
+}
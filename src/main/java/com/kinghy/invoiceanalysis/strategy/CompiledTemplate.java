@@ -0,0 +1,46 @@
+package com.kinghy.invoiceanalysis.strategy;
+
+import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.strategy.util.AhoCorasickAutomaton;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 预编译模板
+ * 模板加载后编译一次，请求处理时只执行预先构建好的提取计划
+ */
+@Getter
+@AllArgsConstructor
+public class CompiledTemplate {
+
+    /**
+     * 编译来源模板（用于判断模板是否已被重新加载）
+     */
+    private final InvoiceTemplate source;
+
+    /**
+     * 按模板顺序排列的字段提取计划
+     */
+    private final List<CompiledField> fields;
+
+    /**
+     * 模板全部关键字的多模式匹配自动机（用于构建页面关键字索引）
+     */
+    private final AhoCorasickAutomaton keywordAutomaton;
+
+    /**
+     * 明细表提取计划，模板未配置detailFields时为null
+     */
+    private final CompiledDetailTable detailTable;
+
+    public String getTemplateName() {
+        return source.getTemplateName();
+    }
+
+    public List<FieldDefinition> getFieldDefinitions() {
+        return source.getFields();
+    }
+}
@@ -1,17 +1,23 @@
 package com.kinghy.invoiceanalysis.strategy;
 
 import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
+import com.kinghy.invoiceanalysis.entity.dto.FieldTrace;
+import com.kinghy.invoiceanalysis.entity.dto.GlyphBox;
+import com.kinghy.invoiceanalysis.strategy.util.KeywordIndex;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import com.kinghy.invoiceanalysis.strategy.util.PageLayout;
+import com.kinghy.invoiceanalysis.strategy.util.SpatialIndex;
 import lombok.Builder;
 import lombok.Data;
+import lombok.ToString;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.TextPosition;
 
 import java.util.List;
 import java.util.Map;
 
 /**
  * 策略执行上下文
- * 封装策略执行所需的所有数据
+ * 封装策略执行所需的所有数据；toString只输出字段级信息，不展开文档、页面文本、字形与索引
  */
 @Data
 @Builder
@@ -20,6 +26,7 @@ public class ExtractionContext {
     /**
      * PDF文档对象
      */
+    @ToString.Exclude
     private PDDocument document;
 
     /**
@@ -30,23 +37,50 @@ public class ExtractionContext {
     /**
      * 当前页面的纯文本内容
      */
+    @ToString.Exclude
     private String fullText;
 
     /**
-     * 当前页面的所有文本位置信息
+     * 当前页面的全部字形（按提取顺序）
      */
-    private List<TextPosition> allTextPositions;
+    @ToString.Exclude
+    private PageGlyphs pageGlyphs;
+
+    /**
+     * 当前页面的视觉行布局（fullText即其文本，每个文档构建一次，所有字段共享）
+     */
+    @ToString.Exclude
+    private PageLayout pageLayout;
 
     /**
      * 当前字段的定义（包含keywords, options等）
      */
     private FieldDefinition fieldDefinition;
 
+    /**
+     * 当前字段预编译后的options（由ExtractionStrategy#compileOptions生成）
+     */
+    @ToString.Exclude
+    private Object compiledOptions;
+
     /**
      * 当前模板的全部字段定义（用于跨字段边界判断）
      */
+    @ToString.Exclude
     private List<FieldDefinition> templateFields;
 
+    /**
+     * 页面级关键字索引（每个文档构建一次，所有字段共享）
+     */
+    @ToString.Exclude
+    private KeywordIndex keywordIndex;
+
+    /**
+     * 页面级空间索引（每个文档构建一次，所有字段共享）
+     */
+    @ToString.Exclude
+    private SpatialIndex spatialIndex;
+
     /**
      * 页面宽度
      */
@@ -57,6 +91,48 @@ public class ExtractionContext {
      */
     private float pageHeight;
 
+    /**
+     * 字段执行追踪（策略通过traceXxx方法记录命中的关键字与取用的字形，为空时均为空操作）
+     */
+    @ToString.Exclude
+    private FieldTrace trace;
+
+    /**
+     * 是否记录关键字外接框与取用的字形（仅请求开启trace时为true，否则只记录命中的关键字）
+     */
+    @ToString.Exclude
+    private boolean traceGlyphs;
+
+    /**
+     * 获取关键字索引，未由调用方提供时按当前模板关键字现场构建
+     */
+    public KeywordIndex getKeywordIndex() {
+        if (keywordIndex == null) {
+            keywordIndex = KeywordIndex.build(pageGlyphs, KeywordIndex.collectKeywords(templateFields));
+        }
+        return keywordIndex;
+    }
+
+    /**
+     * 获取视觉行布局，未由调用方提供时按当前页面字形现场构建
+     */
+    public PageLayout getPageLayout() {
+        if (pageLayout == null) {
+            pageLayout = PageLayout.build(pageGlyphs);
+        }
+        return pageLayout;
+    }
+
+    /**
+     * 获取空间索引，未由调用方提供时按当前页面字形现场构建
+     */
+    public SpatialIndex getSpatialIndex() {
+        if (spatialIndex == null) {
+            spatialIndex = SpatialIndex.build(pageGlyphs);
+        }
+        return spatialIndex;
+    }
+
     /**
      * 快捷方法：获取关键字列表
      */
@@ -77,4 +153,74 @@ public class ExtractionContext {
     public String getFieldName() {
         return fieldDefinition != null ? fieldDefinition.getFieldName() : null;
     }
+
+    /**
+     * 追踪：记录命中的关键字及其字形区间 [startGlyph, endGlyph]（区间未知时传-1）
+     * 区间按pageGlyphs下标连续（如KeywordIndex的命中），按视觉行文本命中时使用{@link #traceKeyword(String, int[], int)}
+     */
+    public void traceKeyword(String keyword, int startGlyph, int endGlyph) {
+        if (trace == null) {
+            return;
+        }
+        trace.setMatchedKeyword(keyword);
+        if (!traceGlyphs || startGlyph < 0 || endGlyph < startGlyph) {
+            return;
+        }
+        int[] glyphs = new int[endGlyph - startGlyph + 1];
+        for (int k = 0; k < glyphs.length; k++) {
+            glyphs[k] = startGlyph + k;
+        }
+        setKeywordBox(keyword, glyphs, glyphs.length);
+    }
+
+    /**
+     * 追踪：记录命中的关键字及其对应的前count个字形（下标不要求连续）
+     */
+    public void traceKeyword(String keyword, int[] glyphs, int count) {
+        if (trace == null) {
+            return;
+        }
+        trace.setMatchedKeyword(keyword);
+        if (!traceGlyphs || count <= 0) {
+            return;
+        }
+        setKeywordBox(keyword, glyphs, count);
+    }
+
+    private void setKeywordBox(String keyword, int[] glyphs, int count) {
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for (int k = 0; k < count; k++) {
+            int i = glyphs[k];
+            left = Math.min(left, pageGlyphs.x(i));
+            top = Math.min(top, pageGlyphs.y(i) - pageGlyphs.height(i));
+            right = Math.max(right, pageGlyphs.endX(i));
+            bottom = Math.max(bottom, pageGlyphs.y(i));
+        }
+        trace.setKeywordBox(new GlyphBox(keyword, left, top, right - left, bottom - top));
+    }
+
+    /**
+     * 追踪：记录策略取用的字形
+     */
+    public void traceGlyph(int glyph) {
+        if (trace != null && traceGlyphs) {
+            float height = pageGlyphs.height(glyph);
+            trace.getGlyphs().add(new GlyphBox(pageGlyphs.unicode(glyph), pageGlyphs.x(glyph),
+                    pageGlyphs.y(glyph) - height, pageGlyphs.width(glyph), height));
+        }
+    }
+
+    /**
+     * 追踪：记录策略取用的前count个字形
+     */
+    public void traceGlyphs(int[] glyphs, int count) {
+        if (trace != null && traceGlyphs) {
+            for (int i = 0; i < count; i++) {
+                traceGlyph(glyphs[i]);
+            }
+        }
+    }
 }
@@ -29,4 +29,14 @@ public interface ExtractionStrategy {
     default boolean validateOptions(Map<String, Object> options) {
         return true;
     }
+
+    /**
+     * 将options预编译为策略内部使用的类型化参数（如预编译正则），在模板编译时只执行一次
+     * 调用前须已通过validateOptions校验
+     * @param options 字段定义中的options参数
+     * @return 预编译后的参数对象，通过ExtractionContext#getCompiledOptions传回策略
+     */
+    default Object compileOptions(Map<String, Object> options) {
+        return options;
+    }
 }
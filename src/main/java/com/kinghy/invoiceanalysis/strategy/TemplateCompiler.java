@@ -0,0 +1,94 @@
+package com.kinghy.invoiceanalysis.strategy;
+
+import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.exception.InvalidDetailFieldsException;
+import com.kinghy.invoiceanalysis.exception.InvalidTemplateOptionException;
+import com.kinghy.invoiceanalysis.exception.StrategyNotFoundException;
+import com.kinghy.invoiceanalysis.strategy.util.AhoCorasickAutomaton;
+import com.kinghy.invoiceanalysis.strategy.util.KeywordIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模板编译器
+ * 负责将InvoiceTemplate编译为CompiledTemplate：解析策略、校验并预编译options、构建关键字自动机。
+ * 编译结果按模板名称缓存，模板对象被重新加载（实例变化）后自动重新编译。
+ */
+@Slf4j
+@Component
+public class TemplateCompiler {
+
+    @Autowired
+    private StrategyFactory strategyFactory;
+
+    private final Map<String, CompiledTemplate> compiledTemplates = new ConcurrentHashMap<>();
+
+    /**
+     * 获取模板的编译结果（命中缓存时不再重复校验）
+     * @param template 模板
+     * @return 编译后的模板
+     * @throws StrategyNotFoundException 字段引用了不存在的策略
+     * @throws InvalidTemplateOptionException 字段options校验失败
+     * @throws InvalidDetailFieldsException 明细表配置非法
+     */
+    public CompiledTemplate compile(InvoiceTemplate template) {
+        String templateName = template.getTemplateName();
+        CompiledTemplate cached = compiledTemplates.get(templateName);
+        if (cached != null && cached.getSource() == template) {
+            return cached;
+        }
+
+        CompiledTemplate compiled = doCompile(template);
+        compiledTemplates.put(templateName, compiled);
+        log.info("模板编译完成: {}，字段数: {}", templateName, compiled.getFields().size());
+        return compiled;
+    }
+
+    /**
+     * 移除指定模板的编译结果
+     */
+    public void evict(String templateName) {
+        compiledTemplates.remove(templateName);
+    }
+
+    /**
+     * 清空全部编译结果
+     */
+    public void clear() {
+        compiledTemplates.clear();
+    }
+
+    private CompiledTemplate doCompile(InvoiceTemplate template) {
+        List<FieldDefinition> definitions = template.getFields() != null
+                ? template.getFields() : Collections.emptyList();
+        List<CompiledField> fields = new ArrayList<>(definitions.size());
+
+        for (FieldDefinition field : definitions) {
+            String strategyName = field.getStrategy();
+            ExtractionStrategy strategy = strategyFactory.getStrategy(strategyName);
+            if (strategy == null) {
+                log.error("模板 {} 字段 {} 使用了未知策略: {}", template.getTemplateName(), field.getFieldName(), strategyName);
+                throw new StrategyNotFoundException(field.getFieldName(), strategyName);
+            }
+
+            if (!strategy.validateOptions(field.getOptions())) {
+                log.error("模板 {} 字段 {} 的options参数验证失败", template.getTemplateName(), field.getFieldName());
+                throw new InvalidTemplateOptionException(field.getFieldName(), strategyName);
+            }
+
+            fields.add(new CompiledField(field, strategy, strategy.compileOptions(field.getOptions())));
+        }
+
+        AhoCorasickAutomaton keywordAutomaton = AhoCorasickAutomaton.build(KeywordIndex.collectKeywords(definitions));
+        CompiledDetailTable detailTable = CompiledDetailTable.compile(template.getTemplateName(), template.getDetailFields());
+        return new CompiledTemplate(template, Collections.unmodifiableList(fields), keywordAutomaton, detailTable);
+    }
+}
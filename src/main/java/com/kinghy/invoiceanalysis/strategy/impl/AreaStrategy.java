@@ -2,9 +2,9 @@ package com.kinghy.invoiceanalysis.strategy.impl;
 
 import com.kinghy.invoiceanalysis.strategy.ExtractionContext;
 import com.kinghy.invoiceanalysis.strategy.ExtractionStrategy;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
 import com.kinghy.invoiceanalysis.strategy.util.TextPositionUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.text.TextPosition;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -33,66 +33,55 @@ public class AreaStrategy implements ExtractionStrategy {
 
     @Override
     public String extract(ExtractionContext context) {
-        List<TextPosition> allPositions = context.getAllTextPositions();
-        Map<String, Object> options = context.getOptions();
+        PageGlyphs glyphs = context.getPageGlyphs();
+        Options options = resolveOptions(context);
 
-        // 1. 解析必需参数
-        Double xStart = TextPositionUtil.getDoubleOption(options, "x_start", null);
-        Double yStart = TextPositionUtil.getDoubleOption(options, "y_start", null);
-        Double width = TextPositionUtil.getDoubleOption(options, "width", null);
-        Double height = TextPositionUtil.getDoubleOption(options, "height", null);
-
-        if (xStart == null || yStart == null || width == null || height == null) {
+        // 1. 校验必需参数
+        if (!options.complete) {
             log.error("字段 {} AREA策略缺少必需参数: x_start, y_start, width, height", context.getFieldName());
             return null;
         }
 
         // 2. 计算区域边界
-        float xEnd = xStart.floatValue() + width.floatValue();
-        float yEnd = yStart.floatValue() + height.floatValue();
+        float xStart = options.xStart;
+        float yStart = options.yStart;
+        float xEnd = xStart + options.width;
+        float yEnd = yStart + options.height;
 
         log.debug("AREA策略搜索区域: ({}, {}) - ({}, {})", xStart, yStart, xEnd, yEnd);
 
-        // 3. 收集区域内的文本
-        List<TextPosition> areaPositions = new ArrayList<>();
-        for (TextPosition text : allPositions) {
-            float x = text.getX();
-            float y = text.getY();
-
-            if (x >= xStart && x <= xEnd && y >= yStart && y <= yEnd) {
-                areaPositions.add(text);
-            }
-        }
+        // 3. 通过空间索引收集区域内的文本
+        int[] sorted = context.getSpatialIndex().query(xStart, yStart, xEnd, yEnd);
 
-        if (areaPositions.isEmpty()) {
+        if (sorted.length == 0) {
             log.warn("字段 {} 在指定区域内未找到文本", context.getFieldName());
             return null;
         }
 
         // 4. 根据sortOrder排序
-        String sortOrder = TextPositionUtil.getStringOption(options, "sortOrder", "XY");
-        switch (sortOrder.toUpperCase()) {
+        switch (options.sortOrder) {
             case "X":
-                areaPositions.sort(Comparator.comparing(TextPosition::getX));
+                glyphs.sortByX(sorted);
                 break;
             case "Y":
-                areaPositions.sort(Comparator.comparing(TextPosition::getY));
+                glyphs.sortByY(sorted);
                 break;
             case "XY":
             default:
-                areaPositions.sort(Comparator.comparing(TextPosition::getY)
-                        .thenComparing(TextPosition::getX));
+                glyphs.sortByYThenX(sorted);
                 break;
         }
 
+        context.traceGlyphs(sorted, sorted.length);
+
         // 5. 拼接文本
         StringBuilder result = new StringBuilder();
-        for (TextPosition tp : areaPositions) {
-            result.append(tp.getUnicode());
+        for (int i : sorted) {
+            glyphs.appendUnicode(result, i);
         }
 
         String value = result.toString().trim();
-        log.info("字段 {} AREA策略提取结果: {}", context.getFieldName(), value);
+        log.debug("字段 {} AREA策略提取结果: {}", context.getFieldName(), value);
         return value;
     }
 
@@ -112,4 +101,39 @@ public class AreaStrategy implements ExtractionStrategy {
         }
         return true;
     }
+
+    @Override
+    public Object compileOptions(Map<String, Object> options) {
+        return new Options(options);
+    }
+
+    private Options resolveOptions(ExtractionContext context) {
+        Object compiled = context.getCompiledOptions();
+        return compiled instanceof Options ? (Options) compiled : new Options(context.getOptions());
+    }
+
+    /**
+     * AREA策略预编译参数
+     */
+    private static final class Options {
+        private final boolean complete;
+        private final float xStart;
+        private final float yStart;
+        private final float width;
+        private final float height;
+        private final String sortOrder;
+
+        private Options(Map<String, Object> options) {
+            Double x = TextPositionUtil.getDoubleOption(options, "x_start", null);
+            Double y = TextPositionUtil.getDoubleOption(options, "y_start", null);
+            Double w = TextPositionUtil.getDoubleOption(options, "width", null);
+            Double h = TextPositionUtil.getDoubleOption(options, "height", null);
+            this.complete = x != null && y != null && w != null && h != null;
+            this.xStart = x != null ? x.floatValue() : 0F;
+            this.yStart = y != null ? y.floatValue() : 0F;
+            this.width = w != null ? w.floatValue() : 0F;
+            this.height = h != null ? h.floatValue() : 0F;
+            this.sortOrder = TextPositionUtil.getStringOption(options, "sortOrder", "XY").toUpperCase();
+        }
+    }
 }
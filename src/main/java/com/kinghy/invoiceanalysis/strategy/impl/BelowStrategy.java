@@ -2,9 +2,10 @@ package com.kinghy.invoiceanalysis.strategy.impl;
 
 import com.kinghy.invoiceanalysis.strategy.ExtractionContext;
 import com.kinghy.invoiceanalysis.strategy.ExtractionStrategy;
+import com.kinghy.invoiceanalysis.strategy.util.KeywordIndex;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
 import com.kinghy.invoiceanalysis.strategy.util.TextPositionUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.text.TextPosition;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -31,9 +32,9 @@ public class BelowStrategy implements ExtractionStrategy {
 
     @Override
     public String extract(ExtractionContext context) {
-        List<TextPosition> allPositions = context.getAllTextPositions();
+        PageGlyphs glyphs = context.getPageGlyphs();
         List<String> keywords = context.getKeywords();
-        Map<String, Object> options = context.getOptions();
+        Options options = resolveOptions(context);
 
         if (keywords == null || keywords.isEmpty()) {
             log.warn("字段 {} 未配置关键字", context.getFieldName());
@@ -41,47 +42,47 @@ public class BelowStrategy implements ExtractionStrategy {
         }
 
         // 1. 查找关键字位置（使用起始位置用于对齐）
-        TextPosition keywordStartPosition = null;
-        TextPosition keywordEndPosition = null;
+        int keywordStart = -1;
+        int keywordEnd = -1;
         String matchedKeyword = null;
-        
+        KeywordIndex keywordIndex = context.getKeywordIndex();
+
         for (String keyword : keywords) {
-            keywordStartPosition = TextPositionUtil.findKeywordStartPosition(allPositions, keyword);
-            keywordEndPosition = TextPositionUtil.findKeywordPosition(allPositions, keyword);
-            if (keywordStartPosition != null && keywordEndPosition != null) {
+            int startIndex = keywordIndex.firstStartIndex(keyword);
+            if (startIndex >= 0) {
+                keywordStart = startIndex;
+                keywordEnd = keywordIndex.endIndex(startIndex, keyword);
                 matchedKeyword = keyword;
                 log.debug("BELOW策略找到关键字: {}", keyword);
                 break;
             }
         }
 
-        if (keywordStartPosition == null) {
+        if (keywordStart < 0) {
             log.warn("字段 {} 未找到任何关键字: {}", context.getFieldName(), keywords);
             return null;
         }
 
-        // 2. 解析options参数
-        int maxLinesBelow = TextPositionUtil.getIntOption(options, "maxLinesBelow", 1);
-        List<String> stopKeywords = TextPositionUtil.getListOption(options, "stopAtKeywords");
-        String xAlignment = TextPositionUtil.getStringOption(options, "xAlignment", "ANY");
-        double xTolerance = TextPositionUtil.getDoubleOption(options, "xTolerance", 50.0);
-        double lineHeightMultiplier = TextPositionUtil.getDoubleOption(options, "lineHeight", 2.0);
+        context.traceKeyword(matchedKeyword, keywordStart, keywordEnd);
 
-        // 3. 计算搜索区域
-        float lineHeight = (float) (keywordEndPosition.getHeight() * lineHeightMultiplier);
-        float searchYStart = keywordEndPosition.getY() + keywordEndPosition.getHeight();
+        // 2. 计算搜索区域
+        int maxLinesBelow = options.maxLinesBelow;
+        List<String> stopKeywords = options.stopKeywords;
+        double xTolerance = options.xTolerance;
+        float lineHeight = (float) (glyphs.height(keywordEnd) * options.lineHeightMultiplier);
+        float searchYStart = glyphs.y(keywordEnd) + glyphs.height(keywordEnd);
         float searchYEnd = searchYStart + (lineHeight * maxLinesBelow);
 
-        // 4. 根据xAlignment确定X范围
+        // 3. 根据xAlignment确定X范围
         float searchXStart, searchXEnd;
-        switch (xAlignment.toUpperCase()) {
+        switch (options.xAlignment) {
             case "LEFT":
-                searchXStart = keywordStartPosition.getX() - (float) xTolerance;
-                searchXEnd = keywordStartPosition.getX() + (float) xTolerance;
+                searchXStart = glyphs.x(keywordStart) - (float) xTolerance;
+                searchXEnd = glyphs.x(keywordStart) + (float) xTolerance;
                 break;
             case "RIGHT":
-                searchXStart = keywordEndPosition.getEndX() - (float) xTolerance;
-                searchXEnd = keywordEndPosition.getEndX() + (float) xTolerance;
+                searchXStart = glyphs.endX(keywordEnd) - (float) xTolerance;
+                searchXEnd = glyphs.endX(keywordEnd) + (float) xTolerance;
                 break;
             case "ANY":
             default:
@@ -92,56 +93,45 @@ public class BelowStrategy implements ExtractionStrategy {
 
         log.debug("BELOW策略搜索区域: Y({}-{}), X({}-{})", searchYStart, searchYEnd, searchXStart, searchXEnd);
 
-        // 5. 收集下方区域的文本
-        List<TextPosition> belowPositions = new ArrayList<>();
-        for (TextPosition text : allPositions) {
-            // 检查Y坐标
-            if (text.getY() < searchYStart || text.getY() > searchYEnd) {
-                continue;
-            }
+        // 4. 通过空间索引收集下方区域的文本
+        int[] belowGlyphs = context.getSpatialIndex().query(searchXStart, searchYStart, searchXEnd, searchYEnd);
 
-            // 检查X坐标
-            if (text.getX() < searchXStart || text.getX() > searchXEnd) {
-                continue;
-            }
-
-            belowPositions.add(text);
-        }
-
-        if (belowPositions.isEmpty()) {
+        if (belowGlyphs.length == 0) {
             log.warn("字段 {} 在关键字 {} 下方未找到文本", context.getFieldName(), matchedKeyword);
             return null;
         }
 
-        // 6. 按位置排序（先按Y，再按X）
-        belowPositions.sort(Comparator.comparing(TextPosition::getY)
-                .thenComparing(TextPosition::getX));
+        // 5. 按位置排序（先按Y，再按X）
+        int[] sorted = glyphs.sortByYThenX(belowGlyphs);
 
-        // 7. 拼接文本，检查停止关键字
+        // 6. 拼接文本，检查停止关键字
         StringBuilder result = new StringBuilder();
-        for (TextPosition tp : belowPositions) {
-            String unicode = tp.getUnicode();
-            
-            // 检查停止关键字
+        int used = 0;
+        for (int i : sorted) {
+            int lengthBefore = result.length();
+            glyphs.appendUnicode(result, i);
+
+            // 检查停止关键字：此前的文本不含停止关键字，只需检查以新字形结尾的部分
             if (stopKeywords != null && !stopKeywords.isEmpty()) {
-                String currentText = result.toString() + unicode;
                 boolean shouldStop = false;
                 for (String stopKw : stopKeywords) {
-                    if (currentText.contains(stopKw)) {
+                    int from = Math.max(0, lengthBefore - stopKw.length() + 1);
+                    if (result.indexOf(stopKw, from) >= 0) {
                         shouldStop = true;
                         break;
                     }
                 }
                 if (shouldStop) {
+                    result.setLength(lengthBefore);
                     break;
                 }
             }
-            
-            result.append(unicode);
+            used++;
         }
+        context.traceGlyphs(sorted, used);
 
         String value = result.toString().trim();
-        log.info("字段 {} BELOW策略提取结果: {}", context.getFieldName(), value);
+        log.debug("字段 {} BELOW策略提取结果: {}", context.getFieldName(), value);
         return value;
     }
 
@@ -185,4 +175,33 @@ public class BelowStrategy implements ExtractionStrategy {
         }
         return true;
     }
+
+    @Override
+    public Object compileOptions(Map<String, Object> options) {
+        return new Options(options);
+    }
+
+    private Options resolveOptions(ExtractionContext context) {
+        Object compiled = context.getCompiledOptions();
+        return compiled instanceof Options ? (Options) compiled : new Options(context.getOptions());
+    }
+
+    /**
+     * BELOW策略预编译参数
+     */
+    private static final class Options {
+        private final int maxLinesBelow;
+        private final List<String> stopKeywords;
+        private final String xAlignment;
+        private final double xTolerance;
+        private final double lineHeightMultiplier;
+
+        private Options(Map<String, Object> options) {
+            this.maxLinesBelow = TextPositionUtil.getIntOption(options, "maxLinesBelow", 1);
+            this.stopKeywords = TextPositionUtil.getListOption(options, "stopAtKeywords");
+            this.xAlignment = TextPositionUtil.getStringOption(options, "xAlignment", "ANY").toUpperCase();
+            this.xTolerance = TextPositionUtil.getDoubleOption(options, "xTolerance", 50.0);
+            this.lineHeightMultiplier = TextPositionUtil.getDoubleOption(options, "lineHeight", 2.0);
+        }
+    }
 }
@@ -2,6 +2,7 @@ package com.kinghy.invoiceanalysis.strategy.impl;
 
 import com.kinghy.invoiceanalysis.strategy.ExtractionContext;
 import com.kinghy.invoiceanalysis.strategy.ExtractionStrategy;
+import com.kinghy.invoiceanalysis.strategy.util.PageLayout;
 import com.kinghy.invoiceanalysis.strategy.util.TextPositionUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -31,29 +32,28 @@ public class RegexStrategy implements ExtractionStrategy {
 
     @Override
     public String extract(ExtractionContext context) {
-        Map<String, Object> options = context.getOptions();
+        Options options = resolveOptions(context);
 
         // 1. 获取必需的pattern参数
-        String patternStr = TextPositionUtil.getStringOption(options, "pattern", null);
-        if (patternStr == null) {
+        if (options.pattern == null) {
             log.error("字段 {} REGEX策略缺少pattern参数", context.getFieldName());
             return null;
         }
 
-        // 2. 解析可选参数
-        int groupIndex = TextPositionUtil.getIntOption(options, "groupIndex", 0);
-        String searchScope = TextPositionUtil.getStringOption(options, "searchScope", "FULL");
-
-        // 3. 确定搜索文本
+        // 2. 确定搜索范围（以region限定，匹配偏移始终对应fullText）
         String searchText = context.getFullText();
-        if ("AFTER_KEYWORD".equalsIgnoreCase(searchScope)) {
-            // 查找关键字位置，提取关键字后的文本
+        int regionStart = 0;
+        if (options.afterKeyword) {
+            // 查找关键字位置，只在关键字后的文本中匹配
             List<String> keywords = context.getKeywords();
             if (keywords != null && !keywords.isEmpty()) {
                 for (String keyword : keywords) {
                     int index = searchText.indexOf(keyword);
                     if (index >= 0) {
-                        searchText = searchText.substring(index + keyword.length());
+                        regionStart = index + keyword.length();
+                        if (context.getTrace() != null) {
+                            traceKeyword(context, keyword, index, regionStart);
+                        }
                         log.debug("REGEX策略：在关键字 {} 后搜索", keyword);
                         break;
                     }
@@ -61,29 +61,99 @@ public class RegexStrategy implements ExtractionStrategy {
             }
         }
 
-        // 4. 执行正则匹配
-        try {
-            Pattern pattern = Pattern.compile(patternStr);
-            Matcher matcher = pattern.matcher(searchText);
-
-            if (matcher.find()) {
-                String value;
-                if (groupIndex > 0 && groupIndex <= matcher.groupCount()) {
-                    value = matcher.group(groupIndex);
-                } else {
-                    value = matcher.group();
-                }
-                log.info("字段 {} REGEX策略提取结果: {}", context.getFieldName(), value);
-                return value != null ? value.trim() : null;
+        // 3. 执行正则匹配
+        Matcher matcher = options.pattern.matcher(searchText).region(regionStart, searchText.length());
+        if (matcher.find()) {
+            String value;
+            int valueStart;
+            int valueEnd;
+            if (options.groupIndex > 0 && options.groupIndex <= matcher.groupCount()) {
+                value = matcher.group(options.groupIndex);
+                valueStart = matcher.start(options.groupIndex);
+                valueEnd = matcher.end(options.groupIndex);
+            } else {
+                value = matcher.group();
+                valueStart = matcher.start();
+                valueEnd = matcher.end();
             }
-        } catch (Exception e) {
-            log.error("字段 {} REGEX策略执行失败: {}", context.getFieldName(), e.getMessage(), e);
+            if (log.isDebugEnabled() && valueStart >= 0) {
+                logValuePosition(context, valueStart, valueEnd);
+            }
+            if (context.isTraceGlyphs() && valueStart >= 0) {
+                traceValue(context, valueStart, valueEnd);
+            }
+            log.debug("字段 {} REGEX策略提取结果: {}", context.getFieldName(), value);
+            return value != null ? value.trim() : null;
         }
 
-        log.warn("字段 {} REGEX策略未匹配到内容，模式: {}", context.getFieldName(), patternStr);
+        log.warn("字段 {} REGEX策略未匹配到内容，模式: {}", context.getFieldName(), options.pattern.pattern());
         return null;
     }
 
+    /**
+     * 追踪：通过视觉行布局把关键字区间 [start, end) 的每个字符映射回字形，外接框只由这些字形构成
+     * （pageGlyphs按提取顺序排列而非视觉行顺序，首尾字形之间的下标不一定属于关键字；区间跨行时不记录外接框）
+     */
+    private void traceKeyword(ExtractionContext context, String keyword, int start, int end) {
+        PageLayout layout = context.getPageLayout();
+        if (!context.isTraceGlyphs() || !layout.getText().equals(context.getFullText())) {
+            context.traceKeyword(keyword, -1, -1);
+            return;
+        }
+        int[] glyphs = new int[end - start];
+        int count = 0;
+        int line = -1;
+        for (int offset = start; offset < end; offset++) {
+            int glyph = layout.glyphAt(offset);
+            if (glyph < 0) {
+                continue;
+            }
+            int glyphLine = layout.lineOfGlyph(glyph);
+            if (line >= 0 && glyphLine != line) {
+                context.traceKeyword(keyword, -1, -1);
+                return;
+            }
+            line = glyphLine;
+            // 连字等一个字形对应多个字符时只记录一次
+            if (count == 0 || glyphs[count - 1] != glyph) {
+                glyphs[count++] = glyph;
+            }
+        }
+        context.traceKeyword(keyword, glyphs, count);
+    }
+
+    /**
+     * 追踪：通过视觉行布局把命中区间映射回字形
+     */
+    private void traceValue(ExtractionContext context, int start, int end) {
+        PageLayout layout = context.getPageLayout();
+        if (!layout.getText().equals(context.getFullText())) {
+            return;
+        }
+        for (int offset = start; offset < end; offset++) {
+            int glyph = layout.glyphAt(offset);
+            if (glyph >= 0) {
+                context.traceGlyph(glyph);
+            }
+        }
+    }
+
+    /**
+     * 通过视觉行布局把命中区间映射回页面坐标（仅调试用）
+     */
+    private void logValuePosition(ExtractionContext context, int start, int end) {
+        PageLayout layout = context.getPageLayout();
+        if (layout == null || !layout.getText().equals(context.getFullText())) {
+            return;
+        }
+        int glyph = layout.firstGlyphIn(start, end);
+        if (glyph >= 0) {
+            int line = layout.lineOfGlyph(glyph);
+            log.debug("字段 {} REGEX命中位置: 第{}行, x={}, y={}", context.getFieldName(), line + 1,
+                    layout.getGlyphs().x(glyph), layout.getGlyphs().y(glyph));
+        }
+    }
+
     @Override
     public boolean validateOptions(Map<String, Object> options) {
         if (options == null || !options.containsKey("pattern")) {
@@ -115,4 +185,31 @@ public class RegexStrategy implements ExtractionStrategy {
         }
         return true;
     }
+
+    @Override
+    public Object compileOptions(Map<String, Object> options) {
+        return new Options(options);
+    }
+
+    private Options resolveOptions(ExtractionContext context) {
+        Object compiled = context.getCompiledOptions();
+        return compiled instanceof Options ? (Options) compiled : new Options(context.getOptions());
+    }
+
+    /**
+     * REGEX策略预编译参数
+     */
+    private static final class Options {
+        private final Pattern pattern;
+        private final int groupIndex;
+        private final boolean afterKeyword;
+
+        private Options(Map<String, Object> options) {
+            String patternStr = TextPositionUtil.getStringOption(options, "pattern", null);
+            this.pattern = patternStr != null ? Pattern.compile(patternStr) : null;
+            this.groupIndex = TextPositionUtil.getIntOption(options, "groupIndex", 0);
+            this.afterKeyword = "AFTER_KEYWORD".equalsIgnoreCase(
+                    TextPositionUtil.getStringOption(options, "searchScope", "FULL"));
+        }
+    }
 }
@@ -3,9 +3,10 @@ package com.kinghy.invoiceanalysis.strategy.impl;
 import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
 import com.kinghy.invoiceanalysis.strategy.ExtractionContext;
 import com.kinghy.invoiceanalysis.strategy.ExtractionStrategy;
+import com.kinghy.invoiceanalysis.strategy.util.KeywordIndex;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
 import com.kinghy.invoiceanalysis.strategy.util.TextPositionUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.text.TextPosition;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -33,10 +34,11 @@ public class SameLineStrategy implements ExtractionStrategy {
 
     @Override
     public String extract(ExtractionContext context) {
-        List<TextPosition> allPositions = context.getAllTextPositions();
+        PageGlyphs glyphs = context.getPageGlyphs();
         List<String> keywords = context.getKeywords();
-        Map<String, Object> options = context.getOptions();
+        Options options = resolveOptions(context);
         List<FieldDefinition> templateFields = context.getTemplateFields();
+        KeywordIndex keywordIndex = context.getKeywordIndex();
 
         if (keywords == null || keywords.isEmpty()) {
             log.warn("字段 {} 未配置关键字", context.getFieldName());
@@ -45,88 +47,85 @@ public class SameLineStrategy implements ExtractionStrategy {
 
         // 1. 遍历所有关键字，找到第一个匹配的
         Integer keywordEndIndex = null;
-        TextPosition keywordPosition = null;
         String matchedKeyword = null;
         for (String keyword : keywords) {
-            keywordEndIndex = findKeywordEndIndex(allPositions, keyword);
+            keywordEndIndex = findKeywordEndIndex(keywordIndex, keyword);
             if (keywordEndIndex != null) {
-                keywordPosition = allPositions.get(keywordEndIndex);
                 matchedKeyword = keyword;
                 log.debug("在字段 {} 中找到关键字: {}", context.getFieldName(), keyword);
                 break;
             }
         }
 
-        if (keywordPosition == null || keywordEndIndex == null) {
+        if (keywordEndIndex == null) {
             log.warn("字段 {} 未找到任何关键字: {}", context.getFieldName(), keywords);
             return null;
         }
 
-        // 2. 解析options参数
-        double yToleranceFactor = TextPositionUtil.getDoubleOption(options, "yTolerance", 0.5);
-        Double maxDistance = TextPositionUtil.getDoubleOption(options, "maxDistance", null);
+        context.traceKeyword(matchedKeyword, keywordIndex.firstStartIndex(matchedKeyword), keywordEndIndex);
 
-        // 3. 定义ROI区域
-        float yTolerance = (float) (keywordPosition.getHeight() * yToleranceFactor);
-        float roiYStart = keywordPosition.getY() - yTolerance;
-        float roiYEnd = keywordPosition.getY() + keywordPosition.getHeight() + yTolerance;
-        float roiXStart = keywordPosition.getEndX();
+        // 2. 定义ROI区域
+        Double maxDistance = options.maxDistance;
+        float keywordY = glyphs.y(keywordEndIndex);
+        float keywordHeight = glyphs.height(keywordEndIndex);
+        float yTolerance = (float) (keywordHeight * options.yToleranceFactor);
+        float roiYStart = keywordY - yTolerance;
+        float roiYEnd = keywordY + keywordHeight + yTolerance;
+        float roiXStart = glyphs.endX(keywordEndIndex);
         Integer nextKeywordStartIndex = findNextKeywordStartIndex(
-                allPositions, keywordEndIndex + 1, roiYStart, roiYEnd, keywords, templateFields
+                glyphs, keywordIndex, keywordEndIndex + 1, roiYStart, roiYEnd, keywords, templateFields
         );
 
-        // 4. 收集ROI内的字符
-        List<TextPosition> valuePositions = new ArrayList<>();
-        for (int i = keywordEndIndex + 1; i < allPositions.size(); i++) {
-            if (nextKeywordStartIndex != null && i >= nextKeywordStartIndex) {
-                break;
-            }
-            TextPosition text = allPositions.get(i);
-            if (text.getY() >= roiYStart && text.getY() <= roiYEnd) {
+        // 3. 收集ROI内的字符
+        int end = nextKeywordStartIndex != null ? nextKeywordStartIndex : glyphs.size();
+        int[] valueGlyphs = new int[Math.max(end - keywordEndIndex - 1, 0)];
+        int count = 0;
+        for (int i = keywordEndIndex + 1; i < end; i++) {
+            float y = glyphs.y(i);
+            if (y >= roiYStart && y <= roiYEnd) {
                 // 检查距离限制
-                if (maxDistance != null && text.getX() - roiXStart > maxDistance) {
+                if (maxDistance != null && glyphs.x(i) - roiXStart > maxDistance) {
                     continue;
                 }
-                valuePositions.add(text);
+                valueGlyphs[count++] = i;
             }
         }
 
-        if (valuePositions.isEmpty()) {
+        if (count == 0) {
             log.warn("字段 {} 在关键字 {} 右侧未找到任何文本", context.getFieldName(), matchedKeyword);
             return null;
         }
 
-        // 5. 按X坐标排序并拼接
-        valuePositions.sort(Comparator.comparing(TextPosition::getX));
+        // 4. 按X坐标排序并拼接
+        int[] sorted = glyphs.sortByX(Arrays.copyOf(valueGlyphs, count));
+        context.traceGlyphs(sorted, sorted.length);
         StringBuilder result = new StringBuilder();
-        for (TextPosition tp : valuePositions) {
-            result.append(tp.getUnicode());
+        for (int i : sorted) {
+            glyphs.appendUnicode(result, i);
         }
 
         String value = result.toString();
 
-        // 6. 应用trimChars
-        String trimChars = TextPositionUtil.getStringOption(options, "trimChars", null);
-        if (trimChars != null) {
-            value = TextPositionUtil.trimStart(value, trimChars);
+        // 5. 应用trimChars
+        if (options.trimChars != null) {
+            value = TextPositionUtil.trimStart(value, options.trimChars);
         }
         value = value.trim();
         if (value.isEmpty()) {
-            log.info("字段 {} 在关键字 {} 与下一关键字之间无有效内容，返回空值", context.getFieldName(), matchedKeyword);
+            log.debug("字段 {} 在关键字 {} 与下一关键字之间无有效内容，返回空值", context.getFieldName(), matchedKeyword);
             return null;
         }
 
-        // 7. 应用valuePattern验证
-        String valuePattern = TextPositionUtil.getStringOption(options, "valuePattern", null);
-        if (valuePattern != null) {
-            value = extractByPattern(value, valuePattern);
+        // 6. 应用valuePattern验证
+        if (options.valuePattern != null) {
+            value = extractByPattern(value, options.valuePattern);
             if (value == null || value.trim().isEmpty()) {
-                log.info("字段 {} 未匹配valuePattern，返回空值", context.getFieldName());
+                log.debug("字段 {} 未匹配valuePattern，返回空值", context.getFieldName());
                 return null;
             }
         }
 
-        log.info("字段 {} SAME_LINE策略提取结果: {}", context.getFieldName(), value);
+        log.debug("字段 {} SAME_LINE策略提取结果: {}", context.getFieldName(), value);
         return value;
     }
 
@@ -149,61 +148,52 @@ public class SameLineStrategy implements ExtractionStrategy {
         return true;
     }
 
+    @Override
+    public Object compileOptions(Map<String, Object> options) {
+        return new Options(options);
+    }
+
+    private Options resolveOptions(ExtractionContext context) {
+        Object compiled = context.getCompiledOptions();
+        return compiled instanceof Options ? (Options) compiled : new Options(context.getOptions());
+    }
+
     /**
-     * 使用正则表达式提取匹配的部分
+     * 使用预编译的正则表达式提取匹配的部分
      */
-    private String extractByPattern(String text, String patternStr) {
+    private String extractByPattern(String text, Pattern pattern) {
         if (text == null || text.isEmpty()) {
             return null;
         }
-        try {
-            Pattern pattern = Pattern.compile(patternStr);
-            Matcher matcher = pattern.matcher(text);
-            if (matcher.find()) {
-                return matcher.group();
-            }
-        } catch (Exception e) {
-            log.error("正则表达式匹配失败: {}", patternStr, e);
-        }
-        return null;
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group() : null;
     }
 
     /**
-     * 在TextPosition序列中查找关键字结束索引
+     * 通过页面关键字索引查找关键字结束索引
      */
-    private Integer findKeywordEndIndex(List<TextPosition> allTextPositions, String keyword) {
-        if (keyword == null || keyword.isEmpty() || allTextPositions == null || allTextPositions.isEmpty()) {
-            return null;
-        }
-
-        for (int i = 0; i <= allTextPositions.size() - keyword.length(); i++) {
-            StringBuilder sb = new StringBuilder();
-            for (int j = 0; j < keyword.length(); j++) {
-                sb.append(allTextPositions.get(i + j).getUnicode());
-            }
-            if (keyword.equals(sb.toString())) {
-                return i + keyword.length() - 1;
-            }
-        }
-        return null;
+    private Integer findKeywordEndIndex(KeywordIndex keywordIndex, String keyword) {
+        int endIndex = keywordIndex.firstEndIndex(keyword);
+        return endIndex >= 0 ? endIndex : null;
     }
 
     /**
      * 查找同一行中紧随当前字段后的下一个关键字起始索引，用于截断串值
      */
     private Integer findNextKeywordStartIndex(
-            List<TextPosition> allTextPositions,
+            PageGlyphs glyphs,
+            KeywordIndex keywordIndex,
             int searchFromIndex,
             float roiYStart,
             float roiYEnd,
             List<String> currentFieldKeywords,
             List<FieldDefinition> templateFields
     ) {
-        if (allTextPositions == null || allTextPositions.isEmpty() || templateFields == null || templateFields.isEmpty()) {
+        if (glyphs == null || glyphs.isEmpty() || templateFields == null || templateFields.isEmpty()) {
             return null;
         }
 
-        Set<String> stopKeywords = new LinkedHashSet<>();
+        Integer nearest = null;
         for (FieldDefinition field : templateFields) {
             if (field == null || field.getKeywords() == null || field.getKeywords().isEmpty()) {
                 continue;
@@ -215,54 +205,53 @@ public class SameLineStrategy implements ExtractionStrategy {
                 if (currentFieldKeywords != null && currentFieldKeywords.contains(keyword)) {
                     continue;
                 }
-                stopKeywords.add(keyword);
-            }
-        }
-
-        if (stopKeywords.isEmpty()) {
-            return null;
-        }
-
-        for (int i = searchFromIndex; i < allTextPositions.size(); i++) {
-            TextPosition tp = allTextPositions.get(i);
-            if (tp.getY() < roiYStart || tp.getY() > roiYEnd) {
-                continue;
-            }
-
-            for (String keyword : stopKeywords) {
-                if (matchesKeywordAt(allTextPositions, i, keyword, roiYStart, roiYEnd)) {
-                    return i;
+                int candidate = keywordIndex.nextOccurrence(keyword, searchFromIndex);
+                while (candidate >= 0 && (nearest == null || candidate < nearest)) {
+                    if (isWithinRoi(glyphs, candidate, keywordIndex.endIndex(candidate, keyword), roiYStart, roiYEnd)) {
+                        nearest = candidate;
+                        break;
+                    }
+                    candidate = keywordIndex.nextOccurrence(keyword, candidate + 1);
                 }
             }
         }
-        return null;
+        return nearest;
     }
 
     /**
-     * 判断在指定索引处是否命中某个关键字，且关键字字符都位于同一ROI行范围内
+     * 判断关键字命中的所有字符是否都位于同一ROI行范围内
      */
-    private boolean matchesKeywordAt(
-            List<TextPosition> allTextPositions,
+    private boolean isWithinRoi(
+            PageGlyphs glyphs,
             int startIndex,
-            String keyword,
+            int endIndex,
             float roiYStart,
             float roiYEnd
     ) {
-        if (startIndex < 0 || keyword == null || keyword.isEmpty()) {
-            return false;
-        }
-        if (startIndex + keyword.length() > allTextPositions.size()) {
-            return false;
-        }
-
-        StringBuilder sb = new StringBuilder();
-        for (int j = 0; j < keyword.length(); j++) {
-            TextPosition tp = allTextPositions.get(startIndex + j);
-            if (tp.getY() < roiYStart || tp.getY() > roiYEnd) {
+        for (int i = startIndex; i <= endIndex; i++) {
+            float y = glyphs.y(i);
+            if (y < roiYStart || y > roiYEnd) {
                 return false;
             }
-            sb.append(tp.getUnicode());
         }
-        return keyword.equals(sb.toString());
+        return true;
+    }
+
+    /**
+     * SAME_LINE策略预编译参数
+     */
+    private static final class Options {
+        private final String trimChars;
+        private final Pattern valuePattern;
+        private final Double maxDistance;
+        private final double yToleranceFactor;
+
+        private Options(Map<String, Object> options) {
+            this.trimChars = TextPositionUtil.getStringOption(options, "trimChars", null);
+            String pattern = TextPositionUtil.getStringOption(options, "valuePattern", null);
+            this.valuePattern = pattern != null ? Pattern.compile(pattern) : null;
+            this.maxDistance = TextPositionUtil.getDoubleOption(options, "maxDistance", null);
+            this.yToleranceFactor = TextPositionUtil.getDoubleOption(options, "yTolerance", 0.5);
+        }
     }
 }
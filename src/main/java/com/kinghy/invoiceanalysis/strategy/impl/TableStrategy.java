@@ -2,13 +2,13 @@ package com.kinghy.invoiceanalysis.strategy.impl;
 
 import com.kinghy.invoiceanalysis.strategy.ExtractionContext;
 import com.kinghy.invoiceanalysis.strategy.ExtractionStrategy;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import com.kinghy.invoiceanalysis.strategy.util.PageLayout;
 import com.kinghy.invoiceanalysis.strategy.util.TextPositionUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.text.TextPosition;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 表格提取策略
@@ -21,12 +21,16 @@ import java.util.stream.Collectors;
  * - tableStartY: Double - 表格起始Y坐标
  * - tableEndY: Double - 表格结束Y坐标
  * - rowTolerance: Double - 行分组的Y坐标容差，默认5.0
+ * - rowSource: String - 行来源: "TOLERANCE"(按rowTolerance重新分组),"LAYOUT"(复用页面视觉行布局PageLayout)，默认"TOLERANCE"
  * - columnDelimiter: String - 列分隔符，用于分隔结果，默认","
  */
 @Slf4j
 @Component
 public class TableStrategy implements ExtractionStrategy {
 
+    private static final String ROW_SOURCE_TOLERANCE = "TOLERANCE";
+    private static final String ROW_SOURCE_LAYOUT = "LAYOUT";
+
     @Override
     public String getStrategyName() {
         return "TABLE";
@@ -34,40 +38,42 @@ public class TableStrategy implements ExtractionStrategy {
 
     @Override
     public String extract(ExtractionContext context) {
-        Map<String, Object> options = context.getOptions();
-        List<TextPosition> allPositions = context.getAllTextPositions();
-
-        // 1. 解析参数
-        Integer columnIndex = TextPositionUtil.getIntOption(options, "columnIndex", null);
-        Integer rowIndex = TextPositionUtil.getIntOption(options, "rowIndex", null);
-        String headerKeyword = TextPositionUtil.getStringOption(options, "headerKeyword", null);
-        Double tableStartY = TextPositionUtil.getDoubleOption(options, "tableStartY", null);
-        Double tableEndY = TextPositionUtil.getDoubleOption(options, "tableEndY", null);
-        double rowTolerance = TextPositionUtil.getDoubleOption(options, "rowTolerance", 5.0);
-        String columnDelimiter = TextPositionUtil.getStringOption(options, "columnDelimiter", ",");
+        Options options = resolveOptions(context);
+        PageGlyphs glyphs = context.getPageGlyphs();
+
+        // 1. 读取预编译参数
+        Integer columnIndex = options.columnIndex;
+        Integer rowIndex = options.rowIndex;
+        String headerKeyword = options.headerKeyword;
+        Double tableStartY = options.tableStartY;
+        Double tableEndY = options.tableEndY;
+        double rowTolerance = options.rowTolerance;
+        String columnDelimiter = options.columnDelimiter;
 
         if (columnIndex == null && headerKeyword == null) {
             log.error("字段 {} TABLE策略必须提供columnIndex或headerKeyword", context.getFieldName());
             return null;
         }
 
-        // 2. 过滤表格区域的文本
-        List<TextPosition> tablePositions = allPositions;
+        // 2. 通过空间索引过滤表格区域的文本
+        int[] tableGlyphs;
         if (tableStartY != null || tableEndY != null) {
             double startY = tableStartY != null ? tableStartY : 0;
             double endY = tableEndY != null ? tableEndY : context.getPageHeight();
-            tablePositions = allPositions.stream()
-                    .filter(tp -> tp.getY() >= startY && tp.getY() <= endY)
-                    .collect(Collectors.toList());
+            tableGlyphs = context.getSpatialIndex().queryBand(startY, endY);
+        } else {
+            tableGlyphs = glyphs.allIndices();
         }
 
-        if (tablePositions.isEmpty()) {
+        if (tableGlyphs.length == 0) {
             log.warn("字段 {} 在表格区域内未找到文本", context.getFieldName());
             return null;
         }
 
-        // 3. 按行分组（Y坐标相近的为同一行）
-        List<List<TextPosition>> rows = groupByRows(tablePositions, rowTolerance);
+        // 3. 按行分组：默认按Y坐标容差分组，rowSource=LAYOUT时复用页面视觉行
+        List<int[]> rows = ROW_SOURCE_LAYOUT.equals(options.rowSource)
+                ? rowsFromLayout(context.getPageLayout(), tableGlyphs)
+                : groupByRows(glyphs, tableGlyphs, rowTolerance);
         log.debug("TABLE策略识别到 {} 行", rows.size());
 
         if (rows.isEmpty()) {
@@ -76,16 +82,17 @@ public class TableStrategy implements ExtractionStrategy {
 
         // 4. 如果提供headerKeyword，查找列索引
         if (headerKeyword != null && columnIndex == null) {
-            columnIndex = findColumnByHeader(rows, headerKeyword);
+            columnIndex = findColumnByHeader(glyphs, rows, headerKeyword);
             if (columnIndex == null) {
                 log.warn("字段 {} 未找到表头关键字: {}", context.getFieldName(), headerKeyword);
                 return null;
             }
             log.debug("通过表头关键字 {} 定位到列索引: {}", headerKeyword, columnIndex);
+            context.traceKeyword(headerKeyword, -1, -1);
         }
 
         // 5. 计算列边界
-        List<Float> columnBoundaries = calculateColumnBoundaries(rows);
+        List<Float> columnBoundaries = calculateColumnBoundaries(glyphs, rows);
         log.debug("TABLE策略识别到列边界: {}", columnBoundaries);
 
         // 6. 提取单元格或整列
@@ -94,7 +101,7 @@ public class TableStrategy implements ExtractionStrategy {
             // 提取单个单元格（跳过表头行）
             int dataRowIndex = rowIndex + 1;
             if (dataRowIndex < rows.size()) {
-                value = extractCellValue(rows.get(dataRowIndex), columnIndex, columnBoundaries);
+                value = extractCellValue(context, rows.get(dataRowIndex), columnIndex, columnBoundaries);
             } else {
                 log.warn("字段 {} 请求的行索引 {} 超出范围（共 {} 行数据）", 
                         context.getFieldName(), rowIndex, rows.size() - 1);
@@ -104,7 +111,7 @@ public class TableStrategy implements ExtractionStrategy {
             // 提取整列（跳过表头）
             List<String> columnValues = new ArrayList<>();
             for (int i = 1; i < rows.size(); i++) {
-                String cellValue = extractCellValue(rows.get(i), columnIndex, columnBoundaries);
+                String cellValue = extractCellValue(context, rows.get(i), columnIndex, columnBoundaries);
                 if (cellValue != null && !cellValue.isEmpty()) {
                     columnValues.add(cellValue);
                 }
@@ -112,7 +119,7 @@ public class TableStrategy implements ExtractionStrategy {
             value = String.join(columnDelimiter, columnValues);
         }
 
-        log.info("字段 {} TABLE策略提取结果: {}", context.getFieldName(), value);
+        log.debug("字段 {} TABLE策略提取结果: {}", context.getFieldName(), value);
         return value;
     }
 
@@ -161,6 +168,15 @@ public class TableStrategy implements ExtractionStrategy {
             return false;
         }
 
+        String rowSource = TextPositionUtil.getStringOption(options, "rowSource", ROW_SOURCE_TOLERANCE);
+        if (rowSource != null) {
+            String upper = rowSource.toUpperCase();
+            if (!ROW_SOURCE_TOLERANCE.equals(upper) && !ROW_SOURCE_LAYOUT.equals(upper)) {
+                log.error("TABLE策略参数rowSource非法: {}", rowSource);
+                return false;
+            }
+        }
+
         String columnDelimiter = TextPositionUtil.getStringOption(options, "columnDelimiter", ",");
         if (options.containsKey("columnDelimiter") && columnDelimiter == null) {
             log.error("TABLE策略参数columnDelimiter必须为字符串");
@@ -170,58 +186,77 @@ public class TableStrategy implements ExtractionStrategy {
     }
 
     /**
-     * 按行分组（Y坐标容差内的为同一行）
+     * 按行分组（Y坐标容差内的为同一行），每行为按X排序的字形下标
      */
-    private List<List<TextPosition>> groupByRows(List<TextPosition> positions, double rowTolerance) {
-        if (positions.isEmpty()) {
-            return new ArrayList<>();
+    private List<int[]> groupByRows(PageGlyphs glyphs, int[] indices, double rowTolerance) {
+        List<int[]> rows = new ArrayList<>();
+        if (indices.length == 0) {
+            return rows;
         }
 
         // 按Y坐标排序
-        List<TextPosition> sorted = new ArrayList<>(positions);
-        sorted.sort(Comparator.comparing(TextPosition::getY));
-
-        List<List<TextPosition>> rows = new ArrayList<>();
-        List<TextPosition> currentRow = new ArrayList<>();
-        float lastY = sorted.get(0).getY();
+        int[] sorted = glyphs.sortByY(indices.clone());
 
-        for (TextPosition tp : sorted) {
-            if (Math.abs(tp.getY() - lastY) > rowTolerance) {
+        int rowStart = 0;
+        float lastY = glyphs.y(sorted[0]);
+        for (int k = 0; k < sorted.length; k++) {
+            float y = glyphs.y(sorted[k]);
+            if (Math.abs(y - lastY) > rowTolerance) {
                 // 新行
-                if (!currentRow.isEmpty()) {
+                if (k > rowStart) {
                     // 按X坐标排序当前行
-                    currentRow.sort(Comparator.comparing(TextPosition::getX));
-                    rows.add(currentRow);
+                    rows.add(glyphs.sortByX(Arrays.copyOfRange(sorted, rowStart, k)));
                 }
-                currentRow = new ArrayList<>();
-                lastY = tp.getY();
+                rowStart = k;
+                lastY = y;
             }
-            currentRow.add(tp);
         }
 
         // 添加最后一行
-        if (!currentRow.isEmpty()) {
-            currentRow.sort(Comparator.comparing(TextPosition::getX));
-            rows.add(currentRow);
+        rows.add(glyphs.sortByX(Arrays.copyOfRange(sorted, rowStart, sorted.length)));
+        return rows;
+    }
+
+    /**
+     * 从页面视觉行布局中取出表格区域内的行，每行为按X排序的字形下标
+     */
+    private List<int[]> rowsFromLayout(PageLayout layout, int[] indices) {
+        PageGlyphs glyphs = layout.getGlyphs();
+        boolean[] inTable = new boolean[glyphs.size()];
+        for (int i : indices) {
+            inTable[i] = true;
         }
 
+        List<int[]> rows = new ArrayList<>();
+        for (int line = 0; line < layout.lineCount(); line++) {
+            int[] lineGlyphs = layout.lineGlyphs(line);
+            int count = 0;
+            for (int i : lineGlyphs) {
+                if (inTable[i]) {
+                    lineGlyphs[count++] = i;
+                }
+            }
+            if (count > 0) {
+                rows.add(glyphs.sortByX(Arrays.copyOf(lineGlyphs, count)));
+            }
+        }
         return rows;
     }
 
     /**
      * 根据表头关键字查找列索引
      */
-    private Integer findColumnByHeader(List<List<TextPosition>> rows, String headerKeyword) {
+    private Integer findColumnByHeader(PageGlyphs glyphs, List<int[]> rows, String headerKeyword) {
         if (rows.isEmpty()) {
             return null;
         }
 
         // 假设第一行是表头
-        List<TextPosition> headerRow = rows.get(0);
+        int[] headerRow = rows.get(0);
         StringBuilder headerText = new StringBuilder();
-        
-        for (TextPosition tp : headerRow) {
-            headerText.append(tp.getUnicode());
+
+        for (int i : headerRow) {
+            glyphs.appendUnicode(headerText, i);
         }
 
         // 在表头文本中查找关键字位置
@@ -233,15 +268,15 @@ public class TableStrategy implements ExtractionStrategy {
 
         // 计算关键字所在的列（简化处理：按字符索引估算列）
         // 更精确的方法是计算关键字的X坐标并与列边界比较
-        List<Float> columnBoundaries = calculateColumnBoundaries(rows);
-        
-        // 找到关键字对应的TextPosition
+        List<Float> columnBoundaries = calculateColumnBoundaries(glyphs, rows);
+
+        // 找到关键字对应的字形
         int charCount = 0;
-        for (int i = 0; i < headerRow.size(); i++) {
-            charCount += headerRow.get(i).getUnicode().length();
+        for (int i : headerRow) {
+            charCount += glyphs.unicodeLength(i);
             if (charCount > keywordIndex) {
-                // 找到关键字所在的TextPosition，确定其列索引
-                float x = headerRow.get(i).getX();
+                // 找到关键字所在的字形，确定其列索引
+                float x = glyphs.x(i);
                 for (int col = 0; col < columnBoundaries.size() - 1; col++) {
                     if (x >= columnBoundaries.get(col) && x < columnBoundaries.get(col + 1)) {
                         return col;
@@ -257,29 +292,34 @@ public class TableStrategy implements ExtractionStrategy {
     /**
      * 计算列边界（基于所有行的X坐标聚类）
      */
-    private List<Float> calculateColumnBoundaries(List<List<TextPosition>> rows) {
+    private List<Float> calculateColumnBoundaries(PageGlyphs glyphs, List<int[]> rows) {
         // 收集所有X坐标
-        List<Float> allXPositions = new ArrayList<>();
-        for (List<TextPosition> row : rows) {
-            for (TextPosition tp : row) {
-                allXPositions.add(tp.getX());
-            }
+        int total = 0;
+        for (int[] row : rows) {
+            total += row.length;
         }
-        
-        if (allXPositions.isEmpty()) {
+
+        if (total == 0) {
             return Arrays.asList(0f, Float.MAX_VALUE);
         }
 
-        Collections.sort(allXPositions);
+        float[] allXPositions = new float[total];
+        int n = 0;
+        for (int[] row : rows) {
+            for (int i : row) {
+                allXPositions[n++] = glyphs.x(i);
+            }
+        }
+        Arrays.sort(allXPositions);
 
         // 简单的列边界检测：查找X坐标的间隙
         List<Float> boundaries = new ArrayList<>();
         boundaries.add(0f);
 
-        float lastX = allXPositions.get(0);
+        float lastX = allXPositions[0];
         float gapThreshold = 20f; // 列间隙阈值
 
-        for (Float x : allXPositions) {
+        for (float x : allXPositions) {
             if (x - lastX > gapThreshold) {
                 boundaries.add((lastX + x) / 2);
             }
@@ -293,7 +333,8 @@ public class TableStrategy implements ExtractionStrategy {
     /**
      * 提取指定列的单元格值
      */
-    private String extractCellValue(List<TextPosition> row, int columnIndex, List<Float> columnBoundaries) {
+    private String extractCellValue(ExtractionContext context, int[] row, int columnIndex, List<Float> columnBoundaries) {
+        PageGlyphs glyphs = context.getPageGlyphs();
         if (columnIndex < 0 || columnIndex >= columnBoundaries.size() - 1) {
             return null;
         }
@@ -302,12 +343,49 @@ public class TableStrategy implements ExtractionStrategy {
         float colEnd = columnBoundaries.get(columnIndex + 1);
 
         StringBuilder cellText = new StringBuilder();
-        for (TextPosition tp : row) {
-            if (tp.getX() >= colStart && tp.getX() < colEnd) {
-                cellText.append(tp.getUnicode());
+        for (int i : row) {
+            float x = glyphs.x(i);
+            if (x >= colStart && x < colEnd) {
+                glyphs.appendUnicode(cellText, i);
+                context.traceGlyph(i);
             }
         }
 
         return cellText.toString().trim();
     }
+
+    @Override
+    public Object compileOptions(Map<String, Object> options) {
+        return new Options(options);
+    }
+
+    private Options resolveOptions(ExtractionContext context) {
+        Object compiled = context.getCompiledOptions();
+        return compiled instanceof Options ? (Options) compiled : new Options(context.getOptions());
+    }
+
+    /**
+     * TABLE策略预编译参数
+     */
+    private static final class Options {
+        private final Integer columnIndex;
+        private final Integer rowIndex;
+        private final String headerKeyword;
+        private final Double tableStartY;
+        private final Double tableEndY;
+        private final double rowTolerance;
+        private final String rowSource;
+        private final String columnDelimiter;
+
+        private Options(Map<String, Object> options) {
+            this.columnIndex = TextPositionUtil.getIntOption(options, "columnIndex", null);
+            this.rowIndex = TextPositionUtil.getIntOption(options, "rowIndex", null);
+            this.headerKeyword = TextPositionUtil.getStringOption(options, "headerKeyword", null);
+            this.tableStartY = TextPositionUtil.getDoubleOption(options, "tableStartY", null);
+            this.tableEndY = TextPositionUtil.getDoubleOption(options, "tableEndY", null);
+            this.rowTolerance = TextPositionUtil.getDoubleOption(options, "rowTolerance", 5.0);
+            this.rowSource = TextPositionUtil.getStringOption(options, "rowSource", ROW_SOURCE_TOLERANCE).toUpperCase();
+            this.columnDelimiter = TextPositionUtil.getStringOption(options, "columnDelimiter", ",");
+        }
+    }
 }
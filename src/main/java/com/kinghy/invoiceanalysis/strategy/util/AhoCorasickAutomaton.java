@@ -0,0 +1,225 @@
+package com.kinghy.invoiceanalysis.strategy.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick多模式匹配自动机
+ * 构建后不可变，可在多线程间共享；一次扫描即可找出文本中所有模式的全部出现位置
+ */
+public final class AhoCorasickAutomaton {
+
+    private static final int ROOT = 0;
+
+    private static final int NONE = -1;
+
+    /**
+     * 去重后的模式串，下标即模式ID
+     */
+    private final List<String> patterns;
+
+    /**
+     * 模式串长度，按模式ID索引
+     */
+    private final int[] patternLengths;
+
+    /**
+     * 状态转移表（按状态压缩存储）：状态s的转移位于 [childStart[s], childStart[s + 1])，
+     * childLabel在区间内升序排列，二分查找，扫描时不产生装箱
+     */
+    private final int[] childStart;
+    private final char[] childLabel;
+    private final int[] childTarget;
+
+    /**
+     * 失败指针
+     */
+    private final int[] failure;
+
+    /**
+     * 每个状态命中的模式ID（已合并失败链上的输出）
+     */
+    private final int[][] outputs;
+
+    private AhoCorasickAutomaton(List<String> patterns, int[] childStart, char[] childLabel, int[] childTarget,
+                                 int[] failure, int[][] outputs) {
+        this.patterns = patterns;
+        this.patternLengths = new int[patterns.size()];
+        for (int id = 0; id < patterns.size(); id++) {
+            patternLengths[id] = patterns.get(id).length();
+        }
+        this.childStart = childStart;
+        this.childLabel = childLabel;
+        this.childTarget = childTarget;
+        this.failure = failure;
+        this.outputs = outputs;
+    }
+
+    /**
+     * 命中回调
+     */
+    @FunctionalInterface
+    public interface MatchListener {
+        /**
+         * @param patternId 命中的模式ID
+         * @param start 命中在文本中的起始偏移（包含）
+         * @param end 命中在文本中的结束偏移（不包含）
+         */
+        void onMatch(int patternId, int start, int end);
+    }
+
+    /**
+     * 构建自动机，空串和null会被忽略，重复模式只保留一个
+     */
+    public static AhoCorasickAutomaton build(Collection<String> keywords) {
+        Map<String, Integer> patternIds = new LinkedHashMap<>();
+        if (keywords != null) {
+            for (String keyword : keywords) {
+                if (keyword != null && !keyword.isEmpty() && !patternIds.containsKey(keyword)) {
+                    patternIds.put(keyword, patternIds.size());
+                }
+            }
+        }
+        List<String> patterns = Collections.unmodifiableList(new ArrayList<>(patternIds.keySet()));
+
+        // 1. 构建Trie（构建期使用有序Map，随后压缩为数组）
+        List<TreeMap<Character, Integer>> nodeChildren = new ArrayList<>();
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        nodeChildren.add(new TreeMap<>());
+        nodeOutputs.add(new ArrayList<>());
+        int transitionCount = 0;
+
+        for (int id = 0; id < patterns.size(); id++) {
+            String pattern = patterns.get(id);
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                Integer next = nodeChildren.get(state).get(c);
+                if (next == null) {
+                    next = nodeChildren.size();
+                    nodeChildren.add(new TreeMap<>());
+                    nodeOutputs.add(new ArrayList<>());
+                    nodeChildren.get(state).put(c, next);
+                    transitionCount++;
+                }
+                state = next;
+            }
+            nodeOutputs.get(state).add(id);
+        }
+
+        int stateCount = nodeChildren.size();
+        int[] childStart = new int[stateCount + 1];
+        char[] childLabel = new char[transitionCount];
+        int[] childTarget = new int[transitionCount];
+        int offset = 0;
+        for (int state = 0; state < stateCount; state++) {
+            childStart[state] = offset;
+            for (Map.Entry<Character, Integer> child : nodeChildren.get(state).entrySet()) {
+                childLabel[offset] = child.getKey();
+                childTarget[offset] = child.getValue();
+                offset++;
+            }
+        }
+        childStart[stateCount] = offset;
+
+        // 2. BFS计算失败指针，并合并输出
+        int[] failure = new int[stateCount];
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int t = childStart[ROOT]; t < childStart[ROOT + 1]; t++) {
+            failure[childTarget[t]] = ROOT;
+            queue[tail++] = childTarget[t];
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int t = childStart[state]; t < childStart[state + 1]; t++) {
+                char c = childLabel[t];
+                int child = childTarget[t];
+                int fallback = failure[state];
+                int target = next(childStart, childLabel, childTarget, fallback, c);
+                while (target == NONE && fallback != ROOT) {
+                    fallback = failure[fallback];
+                    target = next(childStart, childLabel, childTarget, fallback, c);
+                }
+                failure[child] = target != NONE ? target : ROOT;
+                nodeOutputs.get(child).addAll(nodeOutputs.get(failure[child]));
+                queue[tail++] = child;
+            }
+        }
+
+        int[][] outputs = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            List<Integer> ids = nodeOutputs.get(state);
+            outputs[state] = ids.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new AhoCorasickAutomaton(patterns, childStart, childLabel, childTarget, failure, outputs);
+    }
+
+    /**
+     * 扫描文本，按命中结束位置的先后顺序回调
+     */
+    public void scan(CharSequence text, MatchListener listener) {
+        if (text == null || patterns.isEmpty()) {
+            return;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = next(childStart, childLabel, childTarget, state, c);
+            while (next == NONE && state != ROOT) {
+                state = failure[state];
+                next = next(childStart, childLabel, childTarget, state, c);
+            }
+            state = next != NONE ? next : ROOT;
+            int[] matched = outputs[state];
+            for (int k = 0; k < matched.length; k++) {
+                int end = i + 1;
+                listener.onMatch(matched[k], end - patternLengths[matched[k]], end);
+            }
+        }
+    }
+
+    /**
+     * 判断文本中是否出现过每个模式，返回按模式ID索引的命中标记
+     */
+    public boolean[] findPresent(CharSequence text) {
+        boolean[] present = new boolean[patterns.size()];
+        scan(text, (patternId, start, end) -> present[patternId] = true);
+        return present;
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    @Override
+    public String toString() {
+        return "AhoCorasickAutomaton{patterns=" + patterns.size() + ", states=" + failure.length + "}";
+    }
+
+    /**
+     * 状态state经字符c的转移目标，不存在时返回NONE
+     */
+    private static int next(int[] childStart, char[] childLabel, int[] childTarget, int state, char c) {
+        int low = childStart[state];
+        int high = childStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = childLabel[mid];
+            if (label < c) {
+                low = mid + 1;
+            } else if (label > c) {
+                high = mid - 1;
+            } else {
+                return childTarget[mid];
+            }
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,163 @@
+package com.kinghy.invoiceanalysis.strategy.util;
+
+import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 页面级关键字索引
+ * 每个文档只构建一次：基于PageGlyphs拍平后的字符流，用Aho-Corasick自动机一次扫描
+ * 记录模板中所有关键字的全部出现位置，策略查询关键字时不再逐字符重扫整页。
+ *
+ * 命中位置以字形下标表示，且要求关键字首尾都落在字形边界上。
+ * 未预先索引的关键字会在首次查询时按字符流补算一次并缓存（线程安全）。
+ */
+public final class KeywordIndex {
+
+    private static final int[] NO_HITS = new int[0];
+
+    private final PageGlyphs glyphs;
+
+    /**
+     * 拍平后的字符流
+     */
+    private final String text;
+
+    /**
+     * 关键字 -> 命中的起始字形下标（升序）
+     */
+    private final Map<String, int[]> hits = new ConcurrentHashMap<>();
+
+    private KeywordIndex(PageGlyphs glyphs) {
+        this.glyphs = glyphs;
+        this.text = glyphs.getText();
+    }
+
+    /**
+     * 使用关键字集合构建索引
+     */
+    public static KeywordIndex build(PageGlyphs glyphs, Collection<String> keywords) {
+        return build(glyphs, AhoCorasickAutomaton.build(keywords));
+    }
+
+    /**
+     * 使用预先构建好的自动机构建索引
+     */
+    public static KeywordIndex build(PageGlyphs glyphs, AhoCorasickAutomaton automaton) {
+        KeywordIndex index = new KeywordIndex(glyphs != null ? glyphs : PageGlyphs.EMPTY);
+        index.indexAll(automaton);
+        return index;
+    }
+
+    /**
+     * 收集模板全部字段的关键字（去重，保持顺序）
+     */
+    public static Collection<String> collectKeywords(List<FieldDefinition> fields) {
+        Collection<String> keywords = new LinkedHashSet<>();
+        if (fields != null) {
+            for (FieldDefinition field : fields) {
+                if (field != null && field.getKeywords() != null) {
+                    keywords.addAll(field.getKeywords());
+                }
+            }
+        }
+        return keywords;
+    }
+
+    private void indexAll(AhoCorasickAutomaton automaton) {
+        List<String> patterns = automaton.getPatterns();
+        List<List<Integer>> collected = new ArrayList<>(patterns.size());
+        for (int i = 0; i < patterns.size(); i++) {
+            collected.add(new ArrayList<>());
+        }
+        automaton.scan(text, (patternId, start, end) -> {
+            if (isGlyphBoundary(start) && isGlyphBoundary(end)) {
+                collected.get(patternId).add(glyphs.glyphAt(start));
+            }
+        });
+        for (int i = 0; i < patterns.size(); i++) {
+            hits.put(patterns.get(i), toArray(collected.get(i)));
+        }
+    }
+
+    /**
+     * 关键字全部出现位置（起始字形下标，升序）
+     */
+    public int[] occurrences(String keyword) {
+        if (keyword == null || keyword.isEmpty()) {
+            return NO_HITS;
+        }
+        return hits.computeIfAbsent(keyword, this::scanKeyword);
+    }
+
+    /**
+     * 关键字第一次出现的起始字形下标，未找到返回-1
+     */
+    public int firstStartIndex(String keyword) {
+        int[] starts = occurrences(keyword);
+        return starts.length > 0 ? starts[0] : -1;
+    }
+
+    /**
+     * 关键字第一次出现的最后一个字形下标，未找到返回-1
+     */
+    public int firstEndIndex(String keyword) {
+        int start = firstStartIndex(keyword);
+        return start >= 0 ? endIndex(start, keyword) : -1;
+    }
+
+    /**
+     * 从startIndex开始的关键字命中对应的最后一个字形下标
+     */
+    public int endIndex(int startIndex, String keyword) {
+        return glyphs.glyphAt(glyphs.textStart(startIndex) + keyword.length() - 1);
+    }
+
+    /**
+     * 第一个不小于fromIndex的命中起始下标，未找到返回-1
+     */
+    public int nextOccurrence(String keyword, int fromIndex) {
+        int[] starts = occurrences(keyword);
+        int pos = Arrays.binarySearch(starts, fromIndex);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        return pos < starts.length ? starts[pos] : -1;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    private int[] scanKeyword(String keyword) {
+        List<Integer> found = new ArrayList<>();
+        int from = text.indexOf(keyword);
+        while (from >= 0) {
+            if (isGlyphBoundary(from) && isGlyphBoundary(from + keyword.length())) {
+                found.add(glyphs.glyphAt(from));
+            }
+            from = text.indexOf(keyword, from + 1);
+        }
+        return toArray(found);
+    }
+
+    private boolean isGlyphBoundary(int charOffset) {
+        if (charOffset >= text.length()) {
+            return charOffset == text.length();
+        }
+        return glyphs.textStart(glyphs.glyphAt(charOffset)) == charOffset;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        if (values.isEmpty()) {
+            return NO_HITS;
+        }
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,354 @@
+package com.kinghy.invoiceanalysis.strategy.util;
+
+import org.apache.pdfbox.text.TextPosition;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 页面字形模型（不可变）
+ * 按"数组结构"存储：每个属性一个并行的float数组，字形文本拍平为同一个字符串，
+ * 以下标访问，避免持有大量TextPosition对象以及策略中反复的虚调用与装箱排序。
+ *
+ * 坐标含义与TextPosition一致：x/y为按文本方向调整后的坐标（原点在左上角），
+ * xDirAdj/yDirAdj/heightDir为按书写方向调整后的值。
+ */
+public final class PageGlyphs {
+
+    public static final PageGlyphs EMPTY = new Builder(0).build();
+
+    private final int size;
+
+    /**
+     * 全部字形拼接而成的文本
+     */
+    private final String text;
+
+    /**
+     * 每个字形在text中的起始偏移，长度为 size + 1
+     */
+    private final int[] textStart;
+
+    /**
+     * 字符偏移 -> 字形下标
+     */
+    private final int[] charToGlyph;
+
+    private final float[] x;
+    private final float[] y;
+    private final float[] width;
+    private final float[] height;
+    private final float[] endX;
+    private final float[] xDirAdj;
+    private final float[] yDirAdj;
+    private final float[] heightDir;
+    private final float[] widthOfSpace;
+
+    private PageGlyphs(Builder builder) {
+        int n = builder.size;
+        this.size = n;
+        this.text = builder.text.toString();
+        this.textStart = Arrays.copyOf(builder.textStart, n + 1);
+        this.textStart[n] = text.length();
+        this.x = Arrays.copyOf(builder.x, n);
+        this.y = Arrays.copyOf(builder.y, n);
+        this.width = Arrays.copyOf(builder.width, n);
+        this.height = Arrays.copyOf(builder.height, n);
+        this.endX = Arrays.copyOf(builder.endX, n);
+        this.xDirAdj = Arrays.copyOf(builder.xDirAdj, n);
+        this.yDirAdj = Arrays.copyOf(builder.yDirAdj, n);
+        this.heightDir = Arrays.copyOf(builder.heightDir, n);
+        this.widthOfSpace = Arrays.copyOf(builder.widthOfSpace, n);
+        this.charToGlyph = new int[text.length()];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(charToGlyph, textStart[i], textStart[i + 1], i);
+        }
+    }
+
+    /**
+     * 由TextPosition列表构建
+     */
+    public static PageGlyphs of(List<TextPosition> positions) {
+        if (positions == null || positions.isEmpty()) {
+            return EMPTY;
+        }
+        Builder builder = new Builder(positions.size());
+        for (TextPosition position : positions) {
+            builder.add(position);
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public float x(int i) {
+        return x[i];
+    }
+
+    public float y(int i) {
+        return y[i];
+    }
+
+    public float width(int i) {
+        return width[i];
+    }
+
+    public float height(int i) {
+        return height[i];
+    }
+
+    public float endX(int i) {
+        return endX[i];
+    }
+
+    public float xDirAdj(int i) {
+        return xDirAdj[i];
+    }
+
+    public float yDirAdj(int i) {
+        return yDirAdj[i];
+    }
+
+    public float heightDir(int i) {
+        return heightDir[i];
+    }
+
+    public float widthOfSpace(int i) {
+        return widthOfSpace[i];
+    }
+
+    /**
+     * 字形对应的文本（通常为单个字符，连字等情况可能为多个字符）
+     */
+    public String unicode(int i) {
+        return text.substring(textStart[i], textStart[i + 1]);
+    }
+
+    /**
+     * 字形文本长度，0表示该字形没有可用的unicode映射
+     */
+    public int unicodeLength(int i) {
+        return textStart[i + 1] - textStart[i];
+    }
+
+    /**
+     * 将字形文本追加到sb，不产生中间字符串
+     */
+    public StringBuilder appendUnicode(StringBuilder sb, int i) {
+        return sb.append(text, textStart[i], textStart[i + 1]);
+    }
+
+    /**
+     * 全部字形拼接而成的文本
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * 字形在getText()中的起始偏移，i可取size（返回文本长度）
+     */
+    public int textStart(int i) {
+        return textStart[i];
+    }
+
+    /**
+     * 字符偏移所在的字形下标
+     */
+    public int glyphAt(int charOffset) {
+        return charToGlyph[charOffset];
+    }
+
+    /**
+     * 0..size-1 的下标数组
+     */
+    public int[] allIndices() {
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * 按x稳定排序下标（原地）
+     */
+    public int[] sortByX(int[] indices) {
+        return sort(indices, x, null);
+    }
+
+    /**
+     * 按y稳定排序下标（原地）
+     */
+    public int[] sortByY(int[] indices) {
+        return sort(indices, y, null);
+    }
+
+    /**
+     * 先按y再按x稳定排序下标（原地）
+     */
+    public int[] sortByYThenX(int[] indices) {
+        return sort(indices, y, x);
+    }
+
+    /**
+     * 按xDirAdj稳定排序下标（原地）
+     */
+    public int[] sortByXDirAdj(int[] indices) {
+        return sort(indices, xDirAdj, null);
+    }
+
+    /**
+     * 先按yDirAdj再按xDirAdj稳定排序下标（原地）
+     */
+    public int[] sortByYDirAdjThenXDirAdj(int[] indices) {
+        return sort(indices, yDirAdj, xDirAdj);
+    }
+
+    @Override
+    public String toString() {
+        return "PageGlyphs(size=" + size + ")";
+    }
+
+    /**
+     * 稳定归并排序（与List.sort + Comparator.comparing的顺序一致），比较规则同Float.compare
+     */
+    private static int[] sort(int[] indices, float[] primary, float[] secondary) {
+        if (indices.length < 2) {
+            return indices;
+        }
+        int[] buffer = indices.clone();
+        mergeSort(buffer, indices, 0, indices.length, primary, secondary);
+        return indices;
+    }
+
+    private static void mergeSort(int[] src, int[] dest, int low, int high, float[] primary, float[] secondary) {
+        int length = high - low;
+        if (length < 7) {
+            // 小区间插入排序
+            for (int i = low; i < high; i++) {
+                for (int j = i; j > low && compare(dest[j - 1], dest[j], primary, secondary) > 0; j--) {
+                    int t = dest[j];
+                    dest[j] = dest[j - 1];
+                    dest[j - 1] = t;
+                }
+            }
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, primary, secondary);
+        mergeSort(dest, src, mid, high, primary, secondary);
+        if (compare(src[mid - 1], src[mid], primary, secondary) <= 0) {
+            System.arraycopy(src, low, dest, low, length);
+            return;
+        }
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || (p < mid && compare(src[p], src[q], primary, secondary) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+    private static int compare(int a, int b, float[] primary, float[] secondary) {
+        int c = Float.compare(primary[a], primary[b]);
+        if (c == 0 && secondary != null) {
+            c = Float.compare(secondary[a], secondary[b]);
+        }
+        return c;
+    }
+
+    /**
+     * 增量构建器，文本提取过程中逐个追加字形，不保留TextPosition对象
+     */
+    public static final class Builder {
+
+        private int size;
+        private final StringBuilder text;
+        private int[] textStart;
+        private float[] x;
+        private float[] y;
+        private float[] width;
+        private float[] height;
+        private float[] endX;
+        private float[] xDirAdj;
+        private float[] yDirAdj;
+        private float[] heightDir;
+        private float[] widthOfSpace;
+
+        public Builder(int initialCapacity) {
+            int capacity = Math.max(initialCapacity, 16);
+            text = new StringBuilder(capacity);
+            textStart = new int[capacity + 1];
+            x = new float[capacity];
+            y = new float[capacity];
+            width = new float[capacity];
+            height = new float[capacity];
+            endX = new float[capacity];
+            xDirAdj = new float[capacity];
+            yDirAdj = new float[capacity];
+            heightDir = new float[capacity];
+            widthOfSpace = new float[capacity];
+        }
+
+        public Builder add(TextPosition position) {
+            ensureCapacity(size + 1);
+            int i = size++;
+            textStart[i] = text.length();
+            String unicode = position.getUnicode();
+            if (unicode != null) {
+                text.append(unicode);
+            }
+            x[i] = position.getX();
+            y[i] = position.getY();
+            width[i] = position.getWidth();
+            height[i] = position.getHeight();
+            endX[i] = position.getEndX();
+            xDirAdj[i] = position.getXDirAdj();
+            yDirAdj[i] = position.getYDirAdj();
+            heightDir[i] = position.getHeightDir();
+            widthOfSpace[i] = position.getWidthOfSpace();
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 清空已追加的字形，保留已分配的数组（build()会复制数组，构建器可在下一页复用）
+         */
+        public void clear() {
+            size = 0;
+            text.setLength(0);
+        }
+
+        public PageGlyphs build() {
+            return new PageGlyphs(this);
+        }
+
+        private void ensureCapacity(int required) {
+            if (required <= x.length) {
+                return;
+            }
+            int capacity = Math.max(required, x.length + (x.length >> 1));
+            textStart = Arrays.copyOf(textStart, capacity + 1);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            width = Arrays.copyOf(width, capacity);
+            height = Arrays.copyOf(height, capacity);
+            endX = Arrays.copyOf(endX, capacity);
+            xDirAdj = Arrays.copyOf(xDirAdj, capacity);
+            yDirAdj = Arrays.copyOf(yDirAdj, capacity);
+            heightDir = Arrays.copyOf(heightDir, capacity);
+            widthOfSpace = Arrays.copyOf(widthOfSpace, capacity);
+        }
+    }
+}
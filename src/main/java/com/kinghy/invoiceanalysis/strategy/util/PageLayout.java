@@ -0,0 +1,384 @@
+package com.kinghy.invoiceanalysis.strategy.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 页面视觉行布局（不可变）
+ * 每个文档只构建一次：字形按书写方向坐标排序并按自适应容差分组为视觉行，
+ * 同时保留行内字形、行框以及全文字符偏移到字形的映射，供模板匹配与各策略共享，
+ * 策略无需再各自排序、分行。
+ *
+ * 全文文本getText()即原InvoiceProcessor按视觉行重建的文本：行内字形间距超过空格阈值时补空格，
+ * 连续空白折叠为一个空格并去除首尾空白，空行丢弃，行之间以换行分隔。
+ */
+public final class PageLayout {
+
+    public static final PageLayout EMPTY = build(PageGlyphs.EMPTY);
+
+    private final PageGlyphs glyphs;
+
+    private final String text;
+
+    /**
+     * 各行字形下标按行拼接（行内按xDirAdj排序），第line行为 order[lineStart[line] .. lineStart[line + 1]]
+     */
+    private final int[] order;
+    private final int[] lineStart;
+
+    /**
+     * 行在text中的起止偏移（不含换行符）
+     */
+    private final int[] lineTextStart;
+    private final int[] lineTextEnd;
+
+    /**
+     * 行框（书写方向坐标，原点在左上角）与行基线Y（行内字形yDirAdj的均值）
+     */
+    private final float[] lineLeft;
+    private final float[] lineTop;
+    private final float[] lineRight;
+    private final float[] lineBottom;
+    private final float[] lineBaseline;
+
+    /**
+     * text字符偏移 -> 字形下标，补入的空格与换行为-1
+     */
+    private final int[] charToGlyph;
+
+    /**
+     * 字形下标 -> 行号，未进入任何行的字形为-1
+     */
+    private final int[] glyphLine;
+
+    private PageLayout(PageGlyphs glyphs, String text, int[] order, int[] lineStart,
+                       int[] lineTextStart, int[] lineTextEnd, float[] baselines, int[] charToGlyph) {
+        this.glyphs = glyphs;
+        this.text = text;
+        this.order = order;
+        this.lineStart = lineStart;
+        this.lineTextStart = lineTextStart;
+        this.lineTextEnd = lineTextEnd;
+        this.lineBaseline = baselines;
+        this.charToGlyph = charToGlyph;
+
+        int lines = lineTextStart.length;
+        this.lineLeft = new float[lines];
+        this.lineTop = new float[lines];
+        this.lineRight = new float[lines];
+        this.lineBottom = new float[lines];
+        this.glyphLine = new int[glyphs.size()];
+        Arrays.fill(glyphLine, -1);
+        for (int line = 0; line < lines; line++) {
+            float left = Float.POSITIVE_INFINITY;
+            float top = Float.POSITIVE_INFINITY;
+            float right = Float.NEGATIVE_INFINITY;
+            float bottom = Float.NEGATIVE_INFINITY;
+            for (int k = lineStart[line]; k < lineStart[line + 1]; k++) {
+                int i = order[k];
+                glyphLine[i] = line;
+                left = Math.min(left, glyphs.xDirAdj(i));
+                right = Math.max(right, glyphs.endX(i));
+                top = Math.min(top, glyphs.yDirAdj(i) - glyphs.heightDir(i));
+                bottom = Math.max(bottom, glyphs.yDirAdj(i));
+            }
+            lineLeft[line] = left;
+            lineTop[line] = top;
+            lineRight[line] = right;
+            lineBottom[line] = bottom;
+        }
+    }
+
+    /**
+     * 对页面字形排序、分行并构建布局
+     */
+    public static PageLayout build(PageGlyphs glyphs) {
+        if (glyphs == null) {
+            glyphs = PageGlyphs.EMPTY;
+        }
+
+        int[] candidates = new int[glyphs.size()];
+        int count = 0;
+        for (int i = 0; i < glyphs.size(); i++) {
+            if (glyphs.unicodeLength(i) > 0) {
+                candidates[count++] = i;
+            }
+        }
+        // 字形已按阅读顺序排列，大段有序，归并排序遇到已有序的相邻区间直接复制
+        int[] sorted = glyphs.sortByYDirAdjThenXDirAdj(Arrays.copyOf(candidates, count));
+
+        // 1. 按自适应容差分行（容差取行高的0.6倍，限制在1.5~6之间，行Y取均值）
+        List<int[]> lines = new ArrayList<>();
+        List<Float> baselines = new ArrayList<>();
+        int lineBegin = 0;
+        float currentY = Float.MIN_VALUE;
+        float currentHeight = 0F;
+
+        for (int k = 0; k < sorted.length; k++) {
+            int i = sorted[k];
+            float y = glyphs.yDirAdj(i);
+            float height = glyphs.heightDir(i);
+
+            if (k == lineBegin) {
+                currentY = y;
+                currentHeight = height;
+                continue;
+            }
+
+            float tolerance = Math.min(Math.max(currentHeight * 0.6F, 1.5F), 6.0F);
+            if (Math.abs(y - currentY) <= tolerance) {
+                int lineSize = k - lineBegin + 1;
+                currentY = (currentY * (lineSize - 1) + y) / lineSize;
+                currentHeight = Math.max(currentHeight, height);
+            } else {
+                lines.add(Arrays.copyOfRange(sorted, lineBegin, k));
+                baselines.add(currentY);
+                lineBegin = k;
+                currentY = y;
+                currentHeight = height;
+            }
+        }
+
+        if (lineBegin < sorted.length) {
+            lines.add(Arrays.copyOfRange(sorted, lineBegin, sorted.length));
+            baselines.add(currentY);
+        }
+
+        // 2. 逐行生成文本并记录字符 -> 字形映射，丢弃空行
+        LineTextBuilder builder = new LineTextBuilder(glyphs, count + lines.size());
+        int[] order = new int[count];
+        int[] lineStart = new int[lines.size() + 1];
+        int[] lineTextStart = new int[lines.size()];
+        int[] lineTextEnd = new int[lines.size()];
+        float[] lineBaselines = new float[lines.size()];
+        int lineCount = 0;
+        int orderCount = 0;
+
+        for (int l = 0; l < lines.size(); l++) {
+            int[] line = glyphs.sortByXDirAdj(lines.get(l));
+            int mark = builder.length();
+            if (lineCount > 0) {
+                builder.appendSeparator('\n');
+            }
+            int textStart = builder.length();
+            builder.appendLine(line);
+            if (builder.length() == textStart) {
+                builder.truncate(mark);
+                continue;
+            }
+            System.arraycopy(line, 0, order, orderCount, line.length);
+            orderCount += line.length;
+            lineTextStart[lineCount] = textStart;
+            lineTextEnd[lineCount] = builder.length();
+            lineBaselines[lineCount] = baselines.get(l);
+            lineCount++;
+            lineStart[lineCount] = orderCount;
+        }
+
+        return new PageLayout(glyphs, builder.text(),
+                Arrays.copyOf(order, orderCount),
+                Arrays.copyOf(lineStart, lineCount + 1),
+                Arrays.copyOf(lineTextStart, lineCount),
+                Arrays.copyOf(lineTextEnd, lineCount),
+                Arrays.copyOf(lineBaselines, lineCount),
+                builder.owners());
+    }
+
+    public PageGlyphs getGlyphs() {
+        return glyphs;
+    }
+
+    /**
+     * 按视觉行重建的全文文本
+     */
+    public String getText() {
+        return text;
+    }
+
+    public int lineCount() {
+        return lineTextStart.length;
+    }
+
+    /**
+     * 行内字形下标（按xDirAdj排序），返回副本
+     */
+    public int[] lineGlyphs(int line) {
+        return Arrays.copyOfRange(order, lineStart[line], lineStart[line + 1]);
+    }
+
+    public int lineSize(int line) {
+        return lineStart[line + 1] - lineStart[line];
+    }
+
+    public int lineTextStart(int line) {
+        return lineTextStart[line];
+    }
+
+    public int lineTextEnd(int line) {
+        return lineTextEnd[line];
+    }
+
+    /**
+     * 行文本（不含换行符）
+     */
+    public String lineText(int line) {
+        return text.substring(lineTextStart[line], lineTextEnd[line]);
+    }
+
+    public float lineLeft(int line) {
+        return lineLeft[line];
+    }
+
+    public float lineTop(int line) {
+        return lineTop[line];
+    }
+
+    public float lineRight(int line) {
+        return lineRight[line];
+    }
+
+    public float lineBottom(int line) {
+        return lineBottom[line];
+    }
+
+    public float lineBaseline(int line) {
+        return lineBaseline[line];
+    }
+
+    /**
+     * 全文字符偏移对应的字形下标，补入的空格、换行返回-1
+     */
+    public int glyphAt(int charOffset) {
+        return charToGlyph[charOffset];
+    }
+
+    /**
+     * 全文字符偏移所在的行号，偏移位于行间换行符上时返回其后一行
+     */
+    public int lineAt(int charOffset) {
+        if (lineTextStart.length == 0) {
+            return -1;
+        }
+        int pos = Arrays.binarySearch(lineTextStart, charOffset);
+        return pos >= 0 ? pos : Math.max(-pos - 2, 0);
+    }
+
+    /**
+     * 字形所在行号，未进入任何行（无unicode映射或所在行为空白行）返回-1
+     */
+    public int lineOfGlyph(int glyph) {
+        return glyphLine[glyph];
+    }
+
+    /**
+     * 全文区间 [start, end) 覆盖的第一个字形下标，不存在返回-1
+     */
+    public int firstGlyphIn(int start, int end) {
+        for (int offset = Math.max(start, 0); offset < Math.min(end, charToGlyph.length); offset++) {
+            if (charToGlyph[offset] >= 0) {
+                return charToGlyph[offset];
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "PageLayout(lines=" + lineCount() + ", chars=" + text.length() + ")";
+    }
+
+    /**
+     * 行文本构建器：字形间距超过空格阈值时补空格，连续空白（\s）折叠为一个空格并按String.trim规则去除首尾，
+     * 与逐行 replaceAll("\\s+", " ").trim() 的结果一致，同时记录每个字符来自哪个字形
+     */
+    private static final class LineTextBuilder {
+
+        private final PageGlyphs glyphs;
+        private final StringBuilder text;
+        private int[] owners;
+
+        private LineTextBuilder(PageGlyphs glyphs, int capacity) {
+            this.glyphs = glyphs;
+            this.text = new StringBuilder(Math.max(capacity, 16));
+            this.owners = new int[Math.max(capacity, 16)];
+        }
+
+        private int length() {
+            return text.length();
+        }
+
+        private void truncate(int length) {
+            text.setLength(length);
+        }
+
+        private void appendSeparator(char c) {
+            append(c, -1);
+        }
+
+        private void appendLine(int[] line) {
+            int lineBegin = text.length();
+            int prev = -1;
+            for (int curr : line) {
+                if (prev >= 0) {
+                    float gap = glyphs.xDirAdj(curr) - glyphs.endX(prev);
+                    float spaceThreshold = Math.max(glyphs.widthOfSpace(prev) * 0.35F, 1.0F);
+                    if (gap > spaceThreshold) {
+                        appendWhitespaceAware(' ', -1, lineBegin);
+                    }
+                }
+                for (int k = glyphs.textStart(curr); k < glyphs.textStart(curr + 1); k++) {
+                    appendWhitespaceAware(glyphs.getText().charAt(k), curr, lineBegin);
+                }
+                prev = curr;
+            }
+
+            // 去除首尾空白（String.trim语义：<= ' ' 的字符）
+            int end = text.length();
+            while (end > lineBegin && text.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            int start = lineBegin;
+            while (start < end && text.charAt(start) <= ' ') {
+                start++;
+            }
+            if (start > lineBegin) {
+                text.delete(lineBegin, start);
+                System.arraycopy(owners, start, owners, lineBegin, end - start);
+                end -= start - lineBegin;
+            }
+            text.setLength(end);
+        }
+
+        /**
+         * 追加字符，\s类空白统一写为空格；行内上一个字符已是空格（必然来自空白折叠）时丢弃
+         */
+        private void appendWhitespaceAware(char c, int owner, int lineBegin) {
+            if (!isRegexWhitespace(c)) {
+                append(c, owner);
+            } else if (text.length() == lineBegin || text.charAt(text.length() - 1) != ' ') {
+                append(' ', owner);
+            }
+        }
+
+        private void append(char c, int owner) {
+            if (text.length() == owners.length) {
+                owners = Arrays.copyOf(owners, owners.length << 1);
+            }
+            owners[text.length()] = owner;
+            text.append(c);
+        }
+
+        private String text() {
+            return text.toString();
+        }
+
+        private int[] owners() {
+            return Arrays.copyOf(owners, text.length());
+        }
+
+        private static boolean isRegexWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+        }
+    }
+}
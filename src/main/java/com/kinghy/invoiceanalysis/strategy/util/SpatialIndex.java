@@ -0,0 +1,211 @@
+package com.kinghy.invoiceanalysis.strategy.util;
+
+import java.util.Arrays;
+
+/**
+ * 页面级空间索引（均匀网格）
+ * 每个文档只构建一次：按字形原点(x, y)把字形分桶到网格单元，矩形/横带查询只访问与查询区域相交的单元，
+ * 查询成本与命中字形数量成正比，而不是与整页字形数量成正比。
+ *
+ * 判定规则与策略原先的线性扫描一致：字形原点落在闭区间 [xStart, xEnd] × [yStart, yEnd] 内即命中。
+ * 返回的字形下标按升序排列（即提取顺序），因此后续稳定排序的结果与线性扫描完全相同。
+ */
+public final class SpatialIndex {
+
+    private static final int[] NO_HITS = new int[0];
+
+    /**
+     * 每个单元格的目标平均字形数
+     */
+    private static final int GLYPHS_PER_CELL = 4;
+
+    /**
+     * 单个方向上的最大单元格数
+     */
+    private static final int MAX_CELLS_PER_AXIS = 256;
+
+    private final PageGlyphs glyphs;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+
+    /**
+     * 单元格 -> 字形下标区间（CSR布局：cellStart[c] .. cellStart[c + 1]）
+     */
+    private final int[] cellStart;
+    private final int[] cellGlyphs;
+
+    /**
+     * 坐标非有限值（NaN/Infinity）的字形，无法分桶，查询时逐个判断
+     */
+    private final int[] unbounded;
+
+    private SpatialIndex(PageGlyphs glyphs) {
+        this.glyphs = glyphs;
+        int n = glyphs.size();
+
+        double x0 = Double.POSITIVE_INFINITY;
+        double y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY;
+        double y1 = Double.NEGATIVE_INFINITY;
+        int[] unboundedBuffer = new int[n];
+        int unboundedCount = 0;
+        for (int i = 0; i < n; i++) {
+            float x = glyphs.x(i);
+            float y = glyphs.y(i);
+            if (!isFinite(x) || !isFinite(y)) {
+                unboundedBuffer[unboundedCount++] = i;
+                continue;
+            }
+            x0 = Math.min(x0, x);
+            y0 = Math.min(y0, y);
+            x1 = Math.max(x1, x);
+            y1 = Math.max(y1, y);
+        }
+        this.unbounded = Arrays.copyOf(unboundedBuffer, unboundedCount);
+
+        int bounded = n - unboundedCount;
+        if (bounded == 0) {
+            this.minX = this.minY = this.maxX = this.maxY = 0;
+            this.cellWidth = this.cellHeight = 1;
+            this.columns = this.rows = 1;
+            this.cellStart = new int[2];
+            this.cellGlyphs = NO_HITS;
+            return;
+        }
+        this.minX = x0;
+        this.minY = y0;
+        this.maxX = x1;
+        this.maxY = y1;
+
+        // 按页面内容的宽高比划分网格，使每个单元格平均约GLYPHS_PER_CELL个字形
+        double spanX = Math.max(x1 - x0, 1.0);
+        double spanY = Math.max(y1 - y0, 1.0);
+        double cells = Math.max(1.0, (double) bounded / GLYPHS_PER_CELL);
+        this.columns = clampAxis(Math.sqrt(cells * spanX / spanY));
+        this.rows = clampAxis(cells / columns);
+        this.cellWidth = spanX / columns;
+        this.cellHeight = spanY / rows;
+
+        // 两遍计数排序，字形下标按升序落入各单元格
+        int[] cellOf = new int[n];
+        this.cellStart = new int[columns * rows + 1];
+        for (int i = 0, u = 0; i < n; i++) {
+            if (u < unboundedCount && unbounded[u] == i) {
+                cellOf[i] = -1;
+                u++;
+                continue;
+            }
+            int cell = row(glyphs.y(i)) * columns + column(glyphs.x(i));
+            cellOf[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        this.cellGlyphs = new int[bounded];
+        int[] cursor = Arrays.copyOf(cellStart, columns * rows);
+        for (int i = 0; i < n; i++) {
+            if (cellOf[i] >= 0) {
+                cellGlyphs[cursor[cellOf[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * 为页面字形构建空间索引
+     */
+    public static SpatialIndex build(PageGlyphs glyphs) {
+        return new SpatialIndex(glyphs != null ? glyphs : PageGlyphs.EMPTY);
+    }
+
+    public PageGlyphs getGlyphs() {
+        return glyphs;
+    }
+
+    /**
+     * 矩形查询：原点落在 [xStart, xEnd] × [yStart, yEnd] 内的字形下标（升序）
+     */
+    public int[] query(double xStart, double yStart, double xEnd, double yEnd) {
+        int[] hits = new int[16];
+        int count = 0;
+
+        if (cellGlyphs.length > 0 && xStart <= maxX && xEnd >= minX && yStart <= maxY && yEnd >= minY) {
+            int c0 = column(xStart);
+            int c1 = column(xEnd);
+            int r0 = row(yStart);
+            int r1 = row(yEnd);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    int cell = r * columns + c;
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int i = cellGlyphs[k];
+                        if (contains(i, xStart, yStart, xEnd, yEnd)) {
+                            if (count == hits.length) {
+                                hits = Arrays.copyOf(hits, count << 1);
+                            }
+                            hits[count++] = i;
+                        }
+                    }
+                }
+            }
+        }
+        for (int i : unbounded) {
+            if (contains(i, xStart, yStart, xEnd, yEnd)) {
+                if (count == hits.length) {
+                    hits = Arrays.copyOf(hits, count << 1);
+                }
+                hits[count++] = i;
+            }
+        }
+
+        if (count == 0) {
+            return NO_HITS;
+        }
+        int[] result = Arrays.copyOf(hits, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * 横带查询：原点Y落在 [yStart, yEnd] 内的字形下标（升序），不限X
+     */
+    public int[] queryBand(double yStart, double yEnd) {
+        return query(Double.NEGATIVE_INFINITY, yStart, Double.POSITIVE_INFINITY, yEnd);
+    }
+
+    private boolean contains(int i, double xStart, double yStart, double xEnd, double yEnd) {
+        float x = glyphs.x(i);
+        float y = glyphs.y(i);
+        return x >= xStart && x <= xEnd && y >= yStart && y <= yEnd;
+    }
+
+    private int column(double x) {
+        return clampIndex((x - minX) / cellWidth, columns);
+    }
+
+    private int row(double y) {
+        return clampIndex((y - minY) / cellHeight, rows);
+    }
+
+    private static int clampIndex(double position, int limit) {
+        if (!(position > 0)) {
+            return 0;
+        }
+        return position >= limit ? limit - 1 : (int) position;
+    }
+
+    private static int clampAxis(double cells) {
+        return (int) Math.max(1, Math.min(MAX_CELLS_PER_AXIS, Math.round(cells)));
+    }
+
+    private static boolean isFinite(float value) {
+        return !Float.isNaN(value) && !Float.isInfinite(value);
+    }
+}
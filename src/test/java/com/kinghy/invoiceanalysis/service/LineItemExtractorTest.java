@@ -0,0 +1,164 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.entity.dto.DetailFieldsDefinition;
+import com.kinghy.invoiceanalysis.entity.dto.PjcyItemNode;
+import com.kinghy.invoiceanalysis.sample.SyntheticPdfWriter;
+import com.kinghy.invoiceanalysis.strategy.CompiledDetailTable;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.kinghy.invoiceanalysis.support.TestFixtures.JILIN_TEMPLATE;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.template;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 明细表提取：按医疗电子票据的常见版式，表格下方依次是金额合计、其他信息、收款单位/复核人/收款人，
+ * 这些字段以及页眉、页脚都不能成为明细项；折行的项目名称在页内和跨页时都并入上一行
+ */
+public class LineItemExtractorTest {
+
+    private static final float FONT_SIZE = 9F;
+    private static final float ROW_HEIGHT = 18F;
+    private static final float MARGIN = 40F;
+    private static final float COLUMN_WIDTH = (SyntheticPdfWriter.PAGE_WIDTH - MARGIN * 2) / 4;
+
+    private static final String[][] ROWS = {
+            {"西药费", "2/盒", "35.60", "甲类"},
+            {"化验费", "1/项", "120.00", "乙类"},
+            {"检查费", "1/次", "260.00", ""},
+            {"治疗费", "3/次", "45.00", "甲类"}
+    };
+
+    private final LineItemExtractor extractor = extractor();
+
+    @Test
+    public void stopsAtEndKeywordBelowTable() throws IOException {
+        DetailFieldsDefinition definition = template(JILIN_TEMPLATE).getDetailFields();
+
+        List<PjcyItemNode> items = extract(singlePage(), definition);
+
+        assertItems(items, ROWS);
+    }
+
+    @Test
+    public void fieldsBelowTableAreNotItemsWithoutEndKeywords() throws IOException {
+        DetailFieldsDefinition definition = template(JILIN_TEMPLATE).getDetailFields();
+        definition.setEndKeywords(null);
+
+        List<PjcyItemNode> items = extract(singlePage(), definition);
+
+        assertItems(items, ROWS);
+    }
+
+    @Test
+    public void mergesWrappedNamesWithinAndAcrossPages() throws IOException {
+        SyntheticPdfWriter writer = new SyntheticPdfWriter();
+        float y = header(writer, 120F);
+        y = row(writer, y, ROWS[0]);
+        y = row(writer, y, new String[]{"注射用头孢", "1/支", "18.50", "乙类"});
+        y = row(writer, y, new String[]{"曲松钠", "", "", ""});
+        y = row(writer, y, new String[]{"复方氨基酸", "2/瓶", "66.00", "乙类"});
+        writer.text(270F, y + ROW_HEIGHT * 2, FONT_SIZE, "第1页 共2页");
+
+        // 第2页没有重复表头：页眉之后第一行是上一页最后一行的折行
+        writer.newPage();
+        writer.text(150F, 60F, FONT_SIZE, "吉林大学第一医院医疗收费票据（续页）");
+        y = row(writer, 80F, new String[]{"注射液", "", "", ""});
+        y = row(writer, y, ROWS[1]);
+        fieldsBelowTable(writer, y);
+
+        DetailFieldsDefinition definition = template(JILIN_TEMPLATE).getDetailFields();
+        definition.setEndKeywords(null);
+        List<PjcyItemNode> items = extract(writer.toPdf(), definition);
+
+        assertItems(items, new String[][]{
+                ROWS[0],
+                {"注射用头孢曲松钠", "1/支", "18.50", "乙类"},
+                {"复方氨基酸注射液", "2/瓶", "66.00", "乙类"},
+                ROWS[1]
+        });
+    }
+
+    private static byte[] singlePage() throws IOException {
+        SyntheticPdfWriter writer = new SyntheticPdfWriter();
+        writer.text(200F, 50F, 14F, "医疗收费票据");
+        writer.text(MARGIN, 80F, FONT_SIZE, "交款人：王芳");
+        writer.text(MARGIN + COLUMN_WIDTH * 2, 80F, FONT_SIZE, "开票日期：2024-05-17");
+        float y = header(writer, 120F);
+        for (String[] row : ROWS) {
+            y = row(writer, y, row);
+        }
+        fieldsBelowTable(writer, y);
+        return writer.toPdf();
+    }
+
+    /**
+     * 表格下方的字段，按列附近的位置排布（部分文字恰好落在单列内）
+     */
+    private static void fieldsBelowTable(SyntheticPdfWriter writer, float y) {
+        writer.text(MARGIN, y + ROW_HEIGHT, FONT_SIZE, "金额合计（大写）肆佰陆拾元陆角");
+        writer.text(MARGIN + COLUMN_WIDTH * 2, y + ROW_HEIGHT, FONT_SIZE, "（小写）460.60");
+        writer.text(MARGIN, y + ROW_HEIGHT * 2, FONT_SIZE, "其他信息");
+        writer.text(MARGIN, y + ROW_HEIGHT * 3, FONT_SIZE, "业务流水号：20240517093015001");
+        writer.text(MARGIN + COLUMN_WIDTH * 2, y + ROW_HEIGHT * 3, FONT_SIZE, "门诊号：3456789");
+        writer.text(MARGIN, y + ROW_HEIGHT * 4, FONT_SIZE, "医保类型：职工");
+        writer.text(MARGIN + COLUMN_WIDTH, y + ROW_HEIGHT * 4, FONT_SIZE, "统筹：12.00");
+        writer.text(MARGIN + COLUMN_WIDTH * 2, y + ROW_HEIGHT * 4, FONT_SIZE, "自付：1.00");
+        writer.text(MARGIN, y + ROW_HEIGHT * 5, FONT_SIZE, "收款单位（章）：吉林大学第一医院");
+        writer.text(MARGIN + COLUMN_WIDTH * 2, y + ROW_HEIGHT * 5, FONT_SIZE, "复核人：张三");
+        writer.text(MARGIN + COLUMN_WIDTH * 3, y + ROW_HEIGHT * 5, FONT_SIZE, "收款人：李四");
+    }
+
+    private static float header(SyntheticPdfWriter writer, float y) {
+        return row(writer, y - ROW_HEIGHT, new String[]{"项目名称", "数量/单位", "金额（元）", "备注"});
+    }
+
+    /**
+     * 在y的下一行绘制一行表格，返回该行基线
+     */
+    private static float row(SyntheticPdfWriter writer, float y, String[] cells) {
+        float baseline = y + ROW_HEIGHT;
+        for (int c = 0; c < cells.length; c++) {
+            if (!cells[c].isEmpty()) {
+                writer.text(MARGIN + COLUMN_WIDTH * c, baseline, FONT_SIZE, cells[c]);
+            }
+        }
+        return baseline;
+    }
+
+    private List<PjcyItemNode> extract(byte[] pdf, DetailFieldsDefinition definition) throws IOException {
+        CompiledDetailTable table = CompiledDetailTable.compile("test", definition);
+        List<PjcyItemNode> items = new ArrayList<>();
+        try (PDDocument document = PDDocument.load(pdf)) {
+            int count = extractor.extract(document, null, table, items::add);
+            assertEquals(items.size(), count);
+        }
+        return items;
+    }
+
+    private static void assertItems(List<PjcyItemNode> items, String[][] expected) {
+        List<String> actual = new ArrayList<>();
+        for (PjcyItemNode item : items) {
+            actual.add(Arrays.toString(new String[]{item.getItemName(), item.getItemQuantity(),
+                    item.getItemAmount(), item.getItemRemark() != null ? item.getItemRemark() : ""}));
+        }
+        List<String> wanted = new ArrayList<>();
+        for (String[] row : expected) {
+            wanted.add(Arrays.toString(row));
+        }
+        assertEquals(wanted, actual);
+    }
+
+    private static LineItemExtractor extractor() {
+        LineItemExtractor extractor = new LineItemExtractor();
+        ReflectionTestUtils.setField(extractor, "maxPages", 500);
+        ReflectionTestUtils.setField(extractor, "maxItems", 20000);
+        return extractor;
+    }
+}
@@ -0,0 +1,112 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.sample.SyntheticInvoiceOptions;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static com.kinghy.invoiceanalysis.support.TestFixtures.JILIN_TEMPLATE;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.TEMPLATES;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.TONGZHOU_TEMPLATE;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.invoice;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.strippedPositions;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.template;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PageGlyphCollector与PDFTextStripper（setSortByPosition(true)，逐页输出的TextPosition）提取结果逐字形对比
+ */
+public class PageGlyphCollectorTest {
+
+    @Test
+    public void matchesTextStripperOnSyntheticInvoices() throws IOException {
+        long seed = 20240601L;
+        int pages = 0;
+        for (String resource : TEMPLATES) {
+            InvoiceTemplate template = template(resource);
+            for (int i = 0; i < 6; i++) {
+                SyntheticInvoiceOptions options = SyntheticInvoiceOptions.builder()
+                        .seed(seed++)
+                        .jitter(i % 2 == 0 ? 0F : 1.5F)
+                        .fontVariation(i % 2 == 1)
+                        .detailRows(20 + i * 15)
+                        .extraPages(i % 3)
+                        .build();
+                byte[] pdf = invoice(template, options);
+                pages += assertSameGlyphs(resource + " #" + i, pdf);
+            }
+        }
+        assertTrue(pages > 12);
+    }
+
+    @Test
+    public void matchesTextStripperOnRotatedAndCroppedPages() throws IOException {
+        InvoiceTemplate template = template(JILIN_TEMPLATE);
+        byte[] source = invoice(template, SyntheticInvoiceOptions.builder().seed(7L).build());
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            byte[] pdf;
+            try (PDDocument document = PDDocument.load(source);
+                 ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+                PDPage page = document.getPage(0);
+                PDRectangle media = page.getMediaBox();
+                page.setRotation(rotation);
+                page.setCropBox(new PDRectangle(20F, 30F, media.getWidth() - 40F, media.getHeight() - 60F));
+                document.save(out);
+                pdf = out.toByteArray();
+            }
+            assertSameGlyphs("rotation " + rotation, pdf);
+        }
+    }
+
+    @Test
+    public void returnsEmptyGlyphsForPagesOutOfRange() throws IOException {
+        InvoiceTemplate template = template(TONGZHOU_TEMPLATE);
+        byte[] pdf = invoice(template, SyntheticInvoiceOptions.builder().seed(3L).build());
+        try (PDDocument document = PDDocument.load(pdf)) {
+            PageGlyphCollector collector = PageGlyphCollector.forCurrentThread();
+
+            assertSame(PageGlyphs.EMPTY, collector.collect(document, 0));
+            assertSame(PageGlyphs.EMPTY, collector.collect(document, document.getNumberOfPages() + 1));
+            assertTrue(collector.collect(document, 1).size() > 0);
+        }
+    }
+
+    /**
+     * 逐页对比，返回对比的页数
+     */
+    private static int assertSameGlyphs(String name, byte[] pdf) throws IOException {
+        try (PDDocument document = PDDocument.load(pdf)) {
+            int pageCount = document.getNumberOfPages();
+            for (int page = 1; page <= pageCount; page++) {
+                PageGlyphs expected = PageGlyphs.of(strippedPositions(document, page));
+                PageGlyphs actual = PageGlyphCollector.forCurrentThread().collect(document, page);
+                String at = name + " page " + page;
+
+                assertEquals(at, expected.size(), actual.size());
+                assertEquals(at, expected.getText(), actual.getText());
+                for (int i = 0; i < expected.size(); i++) {
+                    String glyph = at + " glyph " + i;
+                    assertEquals(glyph, expected.textStart(i), actual.textStart(i));
+                    assertEquals(glyph, expected.x(i), actual.x(i), 0F);
+                    assertEquals(glyph, expected.y(i), actual.y(i), 0F);
+                    assertEquals(glyph, expected.width(i), actual.width(i), 0F);
+                    assertEquals(glyph, expected.height(i), actual.height(i), 0F);
+                    assertEquals(glyph, expected.endX(i), actual.endX(i), 0F);
+                    assertEquals(glyph, expected.xDirAdj(i), actual.xDirAdj(i), 0F);
+                    assertEquals(glyph, expected.yDirAdj(i), actual.yDirAdj(i), 0F);
+                    assertEquals(glyph, expected.heightDir(i), actual.heightDir(i), 0F);
+                    assertEquals(glyph, expected.widthOfSpace(i), actual.widthOfSpace(i), 0F);
+                }
+            }
+            return pageCount;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.kinghy.invoiceanalysis.service;
+
+import com.kinghy.invoiceanalysis.sample.SyntheticInvoiceOptions;
+import com.kinghy.invoiceanalysis.support.TestFixtures;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.kinghy.invoiceanalysis.support.TestFixtures.JILIN_TEMPLATE;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.template;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 跨文档字体缓存：缓存的字体不引用来源文档，空闲池按实例数与字节数限制
+ */
+public class SharedFontCacheTest {
+
+    private final AnalysisMetrics metrics = new AnalysisMetrics();
+
+    @Test
+    public void detachedFontOutlivesSourceDocument() throws IOException {
+        Map<SharedFontCache.CachedFont, Map<Integer, String>> detached = new LinkedHashMap<>();
+        try (PDDocument document = PDDocument.load(invoice(11L))) {
+            PDResources resources = document.getPage(0).getResources();
+            for (COSName name : resources.getFontNames()) {
+                PDFont font = resources.getFont(name);
+                SharedFontCache.CachedFont cached = SharedFontCache.detach(font.getCOSObject());
+                Map<Integer, String> unicode = new LinkedHashMap<>();
+                for (int code = 0; code < 256; code++) {
+                    if (font.toUnicode(code) != null) {
+                        unicode.put(code, font.toUnicode(code));
+                    }
+                }
+                assertFalse(unicode.isEmpty());
+                assertTrue(cached.bytes > 0);
+                detached.put(cached, unicode);
+            }
+        }
+
+        assertFalse(detached.isEmpty());
+        for (Map.Entry<SharedFontCache.CachedFont, Map<Integer, String>> entry : detached.entrySet()) {
+            PDFont font = entry.getKey().font;
+            // 来源文档的ScratchFile已关闭，仍引用它的流在读取时会失败
+            for (COSStream stream : streams(font.getCOSObject())) {
+                try (InputStream in = stream.createInputStream()) {
+                    IOUtils.toByteArray(in);
+                }
+            }
+            for (Map.Entry<Integer, String> code : entry.getValue().entrySet()) {
+                assertEquals(code.getValue(), font.toUnicode(code.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void reusesIdleFontsAcrossDocuments() throws IOException {
+        SharedFontCache cache = cache(256, Long.MAX_VALUE);
+
+        List<PDFont> first = leaseFonts(cache, invoice(21L));
+        int idle = cache.size();
+        assertEquals(first.size(), idle);
+        assertTrue(cache.bytes() > 0);
+
+        List<PDFont> second = leaseFonts(cache, invoice(21L));
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+        assertEquals(idle, cache.size());
+    }
+
+    @Test
+    public void idlePoolIsBoundedByBytes() throws IOException {
+        SharedFontCache unbounded = cache(256, Long.MAX_VALUE);
+        leaseFonts(unbounded, invoice(31L));
+        long bytes = unbounded.bytes();
+        assertTrue(unbounded.size() > 0);
+
+        SharedFontCache bounded = cache(256, bytes - 1);
+        leaseFonts(bounded, invoice(31L));
+        assertTrue(bounded.size() < unbounded.size());
+        assertTrue(bounded.bytes() <= bytes - 1);
+
+        SharedFontCache tiny = cache(256, 1);
+        leaseFonts(tiny, invoice(31L));
+        assertEquals(0, tiny.size());
+        assertEquals(0, tiny.bytes());
+    }
+
+    /**
+     * 在租约内解析第1页的全部字体，按资源名顺序返回
+     */
+    private List<PDFont> leaseFonts(SharedFontCache cache, byte[] pdf) throws IOException {
+        List<PDFont> fonts = new ArrayList<>();
+        try (PDDocument document = PDDocument.load(pdf);
+             SharedFontCache.Lease ignored = cache.lease(document, metrics.startUnrecordedDocument())) {
+            PDResources resources = document.getPage(0).getResources();
+            List<COSName> names = new ArrayList<>();
+            resources.getFontNames().forEach(names::add);
+            names.sort((a, b) -> a.getName().compareTo(b.getName()));
+            for (COSName name : names) {
+                fonts.add(resources.getFont(name));
+            }
+        }
+        return fonts;
+    }
+
+    private static SharedFontCache cache(int maxEntries, long maxBytes) {
+        SharedFontCache cache = new SharedFontCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(cache, "maxBytes", maxBytes);
+        return cache;
+    }
+
+    private static byte[] invoice(long seed) throws IOException {
+        return TestFixtures.invoice(template(JILIN_TEMPLATE), SyntheticInvoiceOptions.builder().seed(seed).build());
+    }
+
+    private static List<COSStream> streams(COSBase root) {
+        List<COSStream> streams = new ArrayList<>();
+        collect(root, streams, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return streams;
+    }
+
+    private static void collect(COSBase base, List<COSStream> streams, Set<COSBase> seen) {
+        if (base instanceof COSObject) {
+            base = ((COSObject) base).getObject();
+        }
+        if (base == null || !seen.add(base)) {
+            return;
+        }
+        if (base instanceof COSDictionary) {
+            if (base instanceof COSStream) {
+                streams.add((COSStream) base);
+            }
+            for (COSBase value : ((COSDictionary) base).getValues()) {
+                collect(value, streams, seen);
+            }
+        } else if (base instanceof COSArray) {
+            for (COSBase value : (COSArray) base) {
+                collect(value, streams, seen);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.kinghy.invoiceanalysis.strategy.impl;
+
+import com.kinghy.invoiceanalysis.entity.dto.FieldDefinition;
+import com.kinghy.invoiceanalysis.entity.dto.FieldTrace;
+import com.kinghy.invoiceanalysis.entity.dto.GlyphBox;
+import com.kinghy.invoiceanalysis.strategy.ExtractionContext;
+import com.kinghy.invoiceanalysis.strategy.util.PageGlyphs;
+import com.kinghy.invoiceanalysis.strategy.util.PageLayout;
+import com.kinghy.invoiceanalysis.support.TestFixtures;
+import org.apache.pdfbox.text.TextPosition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.kinghy.invoiceanalysis.support.TestFixtures.PAGE_HEIGHT;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.PAGE_WIDTH;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.position;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * REGEX策略AFTER_KEYWORD追踪：关键字外接框只由关键字字符对应的字形构成，与字形的提取顺序无关
+ */
+public class RegexStrategyTest {
+
+    private final RegexStrategy strategy = new RegexStrategy();
+
+    @Test
+    public void keywordBoxSkipsGlyphsInterleavedFromOtherLines() {
+        // 提取顺序中"金"与"额"之间夹着另一行的字形
+        List<TextPosition> positions = new ArrayList<>();
+        positions.add(position(50F, 100F, "金"));
+        positions.add(position(400F, 300F, "Z"));
+        positions.add(position(60F, 100F, "额"));
+        positions.add(position(70F, 100F, ":"));
+        positions.add(position(80F, 100F, "1"));
+        positions.add(position(90F, 100F, "2"));
+
+        FieldTrace trace = extract(positions);
+
+        GlyphBox box = trace.getKeywordBox();
+        assertNotNull(box);
+        assertEquals(50F, box.getX(), 0.001F);
+        assertEquals(20F, box.getWidth(), 0.001F);
+        assertEquals(91F, box.getTop(), 0.001F);
+        assertEquals(9F, box.getHeight(), 0.001F);
+    }
+
+    @Test
+    public void keywordBoxIsKeptWhenGlyphsAreExtractedInReverse() {
+        List<TextPosition> positions = new ArrayList<>();
+        positions.add(position(90F, 100F, "2"));
+        positions.add(position(80F, 100F, "1"));
+        positions.add(position(70F, 100F, ":"));
+        positions.add(position(60F, 100F, "额"));
+        positions.add(position(50F, 100F, "金"));
+
+        FieldTrace trace = extract(positions);
+
+        GlyphBox box = trace.getKeywordBox();
+        assertNotNull(box);
+        assertEquals(50F, box.getX(), 0.001F);
+        assertEquals(20F, box.getWidth(), 0.001F);
+    }
+
+    private FieldTrace extract(List<TextPosition> positions) {
+        Map<String, Object> options = new HashMap<>();
+        options.put("pattern", "\\d+");
+        options.put("searchScope", "AFTER_KEYWORD");
+        FieldDefinition field = new FieldDefinition();
+        field.setFieldName("amount");
+        field.setStrategy("REGEX");
+        field.setKeywords(Collections.singletonList("金额"));
+        field.setOptions(options);
+
+        PageGlyphs glyphs = PageGlyphs.of(positions);
+        PageLayout layout = PageLayout.build(glyphs);
+        FieldTrace trace = new FieldTrace("amount", "REGEX");
+        ExtractionContext context = ExtractionContext.builder()
+                .pageNumber(1)
+                .fullText(layout.getText())
+                .pageGlyphs(glyphs)
+                .pageLayout(layout)
+                .fieldDefinition(field)
+                .compiledOptions(strategy.compileOptions(options))
+                .pageWidth(PAGE_WIDTH)
+                .pageHeight(PAGE_HEIGHT)
+                .trace(trace)
+                .traceGlyphs(true)
+                .build();
+
+        assertEquals("12", strategy.extract(context));
+        assertEquals("金额", trace.getMatchedKeyword());
+        return trace;
+    }
+
+    private static TextPosition position(float x, float y, String unicode) {
+        return TestFixtures.position(x, y, 10F, 9F, 2.5F, unicode);
+    }
+}
@@ -0,0 +1,110 @@
+package com.kinghy.invoiceanalysis.strategy.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AhoCorasickAutomaton与逐个模式 String#indexOf 的结果对比
+ */
+public class AhoCorasickAutomatonTest {
+
+    /**
+     * 小字母表，模式之间大量共享前缀、后缀并相互重叠
+     */
+    private static final String ALPHABET = "票据号码金额合计(小写)ab:";
+
+    @Test
+    public void findsOverlappingMatches() {
+        AhoCorasickAutomaton automaton = AhoCorasickAutomaton.build(Arrays.asList("he", "she", "his", "hers"));
+
+        List<String> matches = scan(automaton, "ushers");
+
+        assertEquals(Arrays.asList("she@1", "he@2", "hers@2"), matches);
+    }
+
+    @Test
+    public void ignoresEmptyNullAndDuplicatePatterns() {
+        AhoCorasickAutomaton automaton = AhoCorasickAutomaton.build(Arrays.asList("票据", null, "", "票据", "号码"));
+
+        assertEquals(Arrays.asList("票据", "号码"), automaton.getPatterns());
+        assertArrayEquals(new boolean[]{true, false}, automaton.findPresent("票据代码"));
+        assertTrue(scan(AhoCorasickAutomaton.build(Collections.emptyList()), "票据").isEmpty());
+    }
+
+    @Test
+    public void matchesIndexOfOnRandomInput() {
+        Random random = new Random(20240101L);
+        for (int round = 0; round < 500; round++) {
+            List<String> keywords = new ArrayList<>();
+            int keywordCount = 1 + random.nextInt(12);
+            for (int i = 0; i < keywordCount; i++) {
+                keywords.add(randomText(random, 1 + random.nextInt(4)));
+            }
+            String text = randomText(random, random.nextInt(300));
+            AhoCorasickAutomaton automaton = AhoCorasickAutomaton.build(keywords);
+
+            List<String> expected = new ArrayList<>();
+            List<String> patterns = automaton.getPatterns();
+            for (String pattern : patterns) {
+                for (int at = text.indexOf(pattern); at >= 0; at = text.indexOf(pattern, at + 1)) {
+                    expected.add(pattern + "@" + at);
+                }
+            }
+            List<String> actual = scan(automaton, text);
+            List<String> sortedActual = new ArrayList<>(actual);
+            Collections.sort(expected);
+            Collections.sort(sortedActual);
+            assertEquals("keywords=" + keywords + " text=" + text, expected, sortedActual);
+
+            boolean[] present = automaton.findPresent(text);
+            for (int id = 0; id < patterns.size(); id++) {
+                assertEquals(text.contains(patterns.get(id)), present[id]);
+            }
+        }
+    }
+
+    @Test
+    public void reportsMatchesInEndOrder() {
+        AhoCorasickAutomaton automaton = AhoCorasickAutomaton.build(Arrays.asList("金额合计", "合计", "计(小写)", "额"));
+        String text = "金额合计(小写)金额合计";
+        List<Integer> ends = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+
+        automaton.scan(text, (patternId, start, end) -> {
+            ends.add(end);
+            assertEquals(automaton.getPatterns().get(patternId), text.substring(start, end));
+            seen.add(automaton.getPatterns().get(patternId));
+        });
+
+        List<Integer> sorted = new ArrayList<>(ends);
+        Collections.sort(sorted);
+        assertEquals(sorted, ends);
+        assertEquals(4, seen.size());
+    }
+
+    private static List<String> scan(AhoCorasickAutomaton automaton, String text) {
+        List<String> matches = new ArrayList<>();
+        automaton.scan(text, (patternId, start, end) ->
+                matches.add(automaton.getPatterns().get(patternId) + "@" + start));
+        return matches;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+}
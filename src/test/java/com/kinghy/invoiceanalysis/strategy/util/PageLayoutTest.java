@@ -0,0 +1,178 @@
+package com.kinghy.invoiceanalysis.strategy.util;
+
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.sample.SyntheticInvoiceOptions;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.TextPosition;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static com.kinghy.invoiceanalysis.support.TestFixtures.TEMPLATES;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.invoice;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.position;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.strippedPositions;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.template;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PageLayout全文文本与改造前InvoiceProcessor#rebuildVisualLines（基于TextPosition列表）的结果对比
+ */
+public class PageLayoutTest {
+
+    private static final String ALPHABET = "金额合计票据号码0123456789.:ab";
+
+    @Test
+    public void matchesLegacyTextOnRandomGlyphs() {
+        Random random = new Random(20240301L);
+        for (int round = 0; round < 300; round++) {
+            List<TextPosition> positions = randomPositions(random, random.nextInt(400));
+
+            assertEquals("round " + round, rebuildVisualLines(positions),
+                    PageLayout.build(PageGlyphs.of(positions)).getText());
+        }
+    }
+
+    @Test
+    public void matchesLegacyTextOnSyntheticInvoices() throws IOException {
+        long seed = 20240517L;
+        for (String resource : TEMPLATES) {
+            InvoiceTemplate template = template(resource);
+            for (int i = 0; i < 10; i++) {
+                SyntheticInvoiceOptions options = SyntheticInvoiceOptions.builder()
+                        .seed(seed++)
+                        .jitter(i % 2 == 0 ? 0F : 1.5F)
+                        .fontVariation(i % 3 == 0)
+                        .keywordVariants(i % 4 == 0)
+                        .build();
+                List<TextPosition> positions;
+                try (PDDocument document = PDDocument.load(invoice(template, options))) {
+                    positions = strippedPositions(document, 1);
+                }
+                String expected = rebuildVisualLines(positions);
+
+                assertTrue(expected.contains("\n"));
+                assertEquals(resource + " #" + i, expected, PageLayout.build(PageGlyphs.of(positions)).getText());
+            }
+        }
+    }
+
+    @Test
+    public void emptyPageHasNoLines() {
+        PageLayout layout = PageLayout.build(PageGlyphs.EMPTY);
+
+        assertEquals("", layout.getText());
+        assertEquals(0, layout.lineCount());
+    }
+
+    /**
+     * 随机字形：若干行基线附近抖动，字高、间距随机，夹杂无unicode映射与空白字形
+     */
+    private static List<TextPosition> randomPositions(Random random, int count) {
+        List<TextPosition> positions = new ArrayList<>(count);
+        int rows = 1 + random.nextInt(30);
+        for (int i = 0; i < count; i++) {
+            float height = 4F + random.nextInt(12);
+            float baseline = 40F + random.nextInt(rows) * (4F + random.nextInt(14)) + (random.nextFloat() - 0.5F) * 4F;
+            float x = 20F + random.nextInt(500) + random.nextFloat();
+            float width = 2F + random.nextFloat() * 8F;
+            String unicode;
+            int kind = random.nextInt(20);
+            if (kind == 0) {
+                unicode = null;
+            } else if (kind == 1) {
+                unicode = " ";
+            } else {
+                unicode = String.valueOf(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            positions.add(position(x, baseline, width, height, 1F + random.nextFloat() * 4F, unicode));
+        }
+        return positions;
+    }
+
+    /**
+     * 改造前InvoiceProcessor#rebuildVisualLines的原样副本，作为对比基准
+     */
+    private static String rebuildVisualLines(List<TextPosition> allTextPositions) {
+        if (allTextPositions == null || allTextPositions.isEmpty()) {
+            return "";
+        }
+
+        List<TextPosition> sorted = allTextPositions.stream()
+                .filter(tp -> tp != null && tp.getUnicode() != null && !tp.getUnicode().isEmpty())
+                .sorted(Comparator
+                        .comparing(TextPosition::getYDirAdj)
+                        .thenComparing(TextPosition::getXDirAdj))
+                .collect(Collectors.toList());
+
+        List<List<TextPosition>> lines = new ArrayList<>();
+        List<TextPosition> currentLine = new ArrayList<>();
+        float currentY = Float.MIN_VALUE;
+        float currentHeight = 0F;
+
+        for (TextPosition tp : sorted) {
+            float y = tp.getYDirAdj();
+            float height = tp.getHeightDir();
+
+            if (currentLine.isEmpty()) {
+                currentLine.add(tp);
+                currentY = y;
+                currentHeight = height;
+                continue;
+            }
+
+            float tolerance = Math.min(Math.max(currentHeight * 0.6F, 1.5F), 6.0F);
+            if (Math.abs(y - currentY) <= tolerance) {
+                currentLine.add(tp);
+                currentY = (currentY * (currentLine.size() - 1) + y) / currentLine.size();
+                currentHeight = Math.max(currentHeight, height);
+            } else {
+                lines.add(currentLine);
+                currentLine = new ArrayList<>();
+                currentLine.add(tp);
+                currentY = y;
+                currentHeight = height;
+            }
+        }
+
+        if (!currentLine.isEmpty()) {
+            lines.add(currentLine);
+        }
+
+        List<String> visualLines = new ArrayList<>();
+        for (List<TextPosition> line : lines) {
+            line.sort(Comparator.comparing(TextPosition::getXDirAdj));
+            String lineText = buildLineText(line);
+            if (!lineText.isEmpty()) {
+                visualLines.add(lineText);
+            }
+        }
+
+        return String.join("\n", visualLines);
+    }
+
+    private static String buildLineText(List<TextPosition> line) {
+        StringBuilder sb = new StringBuilder();
+        TextPosition prev = null;
+
+        for (TextPosition curr : line) {
+            if (prev != null) {
+                float gap = curr.getXDirAdj() - prev.getEndX();
+                float spaceThreshold = Math.max(prev.getWidthOfSpace() * 0.35F, 1.0F);
+                if (gap > spaceThreshold) {
+                    sb.append(' ');
+                }
+            }
+            sb.append(curr.getUnicode());
+            prev = curr;
+        }
+
+        return sb.toString().replaceAll("\\s+", " ").trim();
+    }
+}
@@ -0,0 +1,106 @@
+package com.kinghy.invoiceanalysis.strategy.util;
+
+import com.kinghy.invoiceanalysis.support.TestFixtures;
+import org.apache.pdfbox.text.TextPosition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.kinghy.invoiceanalysis.support.TestFixtures.PAGE_HEIGHT;
+import static com.kinghy.invoiceanalysis.support.TestFixtures.PAGE_WIDTH;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SpatialIndex矩形/横带查询与整页线性扫描的结果对比
+ */
+public class SpatialIndexTest {
+
+    @Test
+    public void matchesLinearScanOnRandomRectangles() {
+        Random random = new Random(20240315L);
+        for (int page = 0; page < 40; page++) {
+            PageGlyphs glyphs = randomGlyphs(random, random.nextInt(2000));
+            SpatialIndex index = SpatialIndex.build(glyphs);
+            for (int q = 0; q < 500; q++) {
+                double xStart = random.nextDouble() * 700 - 50;
+                double yStart = random.nextDouble() * 900 - 50;
+                double xEnd = xStart + random.nextDouble() * 300;
+                double yEnd = yStart + random.nextDouble() * 200;
+
+                assertArrayEquals("page " + page + " query " + q,
+                        linearScan(glyphs, xStart, yStart, xEnd, yEnd), index.query(xStart, yStart, xEnd, yEnd));
+                assertArrayEquals(linearScan(glyphs, Double.NEGATIVE_INFINITY, yStart, Double.POSITIVE_INFINITY, yEnd),
+                        index.queryBand(yStart, yEnd));
+            }
+        }
+    }
+
+    @Test
+    public void includesGlyphsOnTheBoundary() {
+        PageGlyphs glyphs = PageGlyphs.of(Arrays.asList(
+                position(10F, 100F), position(20F, 100F), position(30F, 120F)));
+        SpatialIndex index = SpatialIndex.build(glyphs);
+
+        assertArrayEquals(new int[]{0, 1}, index.query(10, 100, 20, 100));
+        assertArrayEquals(new int[]{2}, index.query(30, 120, 30, 120));
+        assertArrayEquals(new int[]{0, 1, 2}, index.queryBand(100, 120));
+    }
+
+    @Test
+    public void handlesEmptyAndNonFiniteGlyphs() {
+        assertEquals(0, SpatialIndex.build(PageGlyphs.EMPTY).query(0, 0, 1000, 1000).length);
+        assertEquals(0, SpatialIndex.build(null).queryBand(0, 1000).length);
+
+        PageGlyphs glyphs = PageGlyphs.of(Arrays.asList(
+                position(Float.NaN, 100F), position(50F, 100F), position(Float.POSITIVE_INFINITY, 100F)));
+        SpatialIndex index = SpatialIndex.build(glyphs);
+
+        assertArrayEquals(new int[]{1}, index.query(0, 0, 1000, 1000));
+        assertArrayEquals(new int[]{1, 2}, index.query(0, 0, Double.POSITIVE_INFINITY, 1000));
+    }
+
+    /**
+     * 随机字形：多数聚集在若干行上，少量散布全页，偶尔夹杂非有限坐标
+     */
+    private static PageGlyphs randomGlyphs(Random random, int count) {
+        List<TextPosition> positions = new ArrayList<>(count);
+        int rows = 1 + random.nextInt(40);
+        for (int i = 0; i < count; i++) {
+            float x;
+            float y;
+            if (random.nextInt(10) == 0) {
+                x = random.nextFloat() * PAGE_WIDTH;
+                y = random.nextFloat() * PAGE_HEIGHT;
+            } else {
+                x = 30F + random.nextInt(60) * 9F;
+                y = 40F + random.nextInt(rows) * 18F;
+            }
+            if (random.nextInt(500) == 0) {
+                x = Float.NaN;
+            }
+            positions.add(position(x, y));
+        }
+        return PageGlyphs.of(positions);
+    }
+
+    private static TextPosition position(float x, float y) {
+        return TestFixtures.position(x, y, 5F, 9F, 2.5F, "a");
+    }
+
+    private static int[] linearScan(PageGlyphs glyphs, double xStart, double yStart, double xEnd, double yEnd) {
+        int[] hits = new int[glyphs.size()];
+        int count = 0;
+        for (int i = 0; i < glyphs.size(); i++) {
+            float x = glyphs.x(i);
+            float y = glyphs.y(i);
+            if (x >= xStart && x <= xEnd && y >= yStart && y <= yEnd) {
+                hits[count++] = i;
+            }
+        }
+        return Arrays.copyOf(hits, count);
+    }
+}
@@ -0,0 +1,97 @@
+package com.kinghy.invoiceanalysis.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kinghy.invoiceanalysis.entity.dto.InvoiceTemplate;
+import com.kinghy.invoiceanalysis.sample.SyntheticInvoiceGenerator;
+import com.kinghy.invoiceanalysis.sample.SyntheticInvoiceOptions;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.apache.pdfbox.util.Matrix;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试公用夹具：内置模板、合成票据、手工构造的TextPosition，以及作为对比基准的PDFTextStripper提取
+ */
+public final class TestFixtures {
+
+    public static final String JILIN_TEMPLATE = "templates/invoice/jilin-university-hospital-template.json";
+
+    public static final String TONGZHOU_TEMPLATE = "templates/invoice/beijing-tongzhou-hospital-template.json";
+
+    public static final String[] TEMPLATES = {JILIN_TEMPLATE, TONGZHOU_TEMPLATE};
+
+    /**
+     * A4页面尺寸
+     */
+    public static final float PAGE_WIDTH = 595F;
+
+    public static final float PAGE_HEIGHT = 842F;
+
+    private TestFixtures() {
+    }
+
+    public static InvoiceTemplate template(String resource) throws IOException {
+        try (InputStream in = new ClassPathResource(resource).getInputStream()) {
+            return new ObjectMapper().readValue(in, InvoiceTemplate.class);
+        }
+    }
+
+    /**
+     * 按模板生成一张合成票据PDF
+     */
+    public static byte[] invoice(InvoiceTemplate template, SyntheticInvoiceOptions options) throws IOException {
+        return new SyntheticInvoiceGenerator(template, options).generate("sample.pdf").getPdf();
+    }
+
+    /**
+     * 在A4页面上构造一个字形
+     * @param x 左边界
+     * @param yDirAdj 基线Y（自上而下）
+     */
+    public static TextPosition position(float x, float yDirAdj, float width, float height, float spaceWidth,
+                                        String unicode) {
+        Matrix textMatrix = new Matrix(height, 0F, 0F, height, x, PAGE_HEIGHT - yDirAdj);
+        return new TextPosition(0, PAGE_WIDTH, PAGE_HEIGHT, textMatrix, x + width, PAGE_HEIGHT - yDirAdj, height,
+                width, spaceWidth, unicode, new int[]{0}, null, 1F, (int) height);
+    }
+
+    /**
+     * 改造前的提取方式：PDFTextStripper按位置排序后，按输出顺序收集指定页的全部字形
+     */
+    public static List<TextPosition> strippedPositions(PDDocument document, int page) throws IOException {
+        List<TextPosition> positions = new ArrayList<>();
+        PDFTextStripper stripper = new PDFTextStripper() {
+            @Override
+            protected void writeString(String text, List<TextPosition> textPositions) {
+                positions.addAll(textPositions);
+            }
+        };
+        stripper.setSortByPosition(true);
+        stripper.setStartPage(page);
+        stripper.setEndPage(page);
+        stripper.writeText(document, new NullWriter());
+        return positions;
+    }
+
+    private static final class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}